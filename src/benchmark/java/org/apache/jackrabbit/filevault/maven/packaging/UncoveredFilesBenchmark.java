@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link VaultMojo#getUncoveredFiles(File, String, Collection, Collection)} for a synthetic source tree
+ * in which every 1000th file is not covered by a package entry.
+ * This is only compiled with the {@code benchmark} profile, run it with
+ * {@code mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=org.apache.jackrabbit.filevault.maven.packaging.UncoveredFilesBenchmark -Dexec.classpathScope=test}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UncoveredFilesBenchmark {
+
+    /** the number of files in the source tree */
+    @Param({ "10000", "250000" })
+    private int files;
+
+    private List<String> relativeFileNames;
+
+    private List<String> entryNames;
+
+    @Setup
+    public void setUp() {
+        relativeFileNames = new ArrayList<>(files);
+        entryNames = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            String relativeFileName = "apps/component" + (i / 100) + "/file" + i + ".txt";
+            relativeFileNames.add(relativeFileName);
+            if (i % 1000 != 0) {
+                entryNames.add(new File("jcr_root/prefix/" + relativeFileName).getPath());
+            }
+        }
+    }
+
+    @Benchmark
+    public Collection<File> getUncoveredFiles() {
+        return VaultMojo.getUncoveredFiles(new File("jcr_root"), "/prefix/", relativeFileNames, entryNames);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UncoveredFilesBenchmark.class.getSimpleName()).build()).run();
+    }
+}
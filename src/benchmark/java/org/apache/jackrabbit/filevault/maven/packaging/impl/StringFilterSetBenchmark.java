@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link StringFilterSet#contains(String)} with {@link CompiledStringFilterSet#contains(String)}
+ * for filter sets consisting of literal entries and regular expressions (like the group id/artifact id filters of embeds).
+ * This is only compiled with the {@code benchmark} profile, run it with
+ * {@code mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=org.apache.jackrabbit.filevault.maven.packaging.impl.StringFilterSetBenchmark -Dexec.classpathScope=test}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringFilterSetBenchmark {
+
+    /** the number of entries in the filter set */
+    @Param({ "4", "32", "256" })
+    private int entries;
+
+    /** the percentage of entries which are regular expressions */
+    @Param({ "0", "25", "100" })
+    private int regexPercentage;
+
+    private StringFilterSet filterSet;
+
+    private CompiledStringFilterSet compiledFilterSet;
+
+    private String[] values;
+
+    @Setup
+    public void setUp() throws ConfigurationException {
+        filterSet = new StringFilterSet();
+        int regexEntries = entries * regexPercentage / 100;
+        for (int i = 0; i < entries; i++) {
+            String exclude = i % 5 == 4 ? "~" : "";
+            if (i < regexEntries) {
+                filterSet.addEntry(exclude + "/org\\.example\\.group" + i + "(\\..*)?/");
+            } else {
+                filterSet.addEntry(exclude + "org.example.group" + i);
+            }
+        }
+        compiledFilterSet = filterSet.compile();
+        List<String> valueList = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // mix of matching and non-matching values
+            valueList.add("org.example.group" + (i % (entries * 2)) + (i % 3 == 0 ? ".sub" : ""));
+        }
+        values = valueList.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void contains(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(filterSet.contains(value));
+        }
+    }
+
+    @Benchmark
+    public void compiledContains(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(compiledFilterSet.contains(value));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StringFilterSetBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageMetadataCache;
 import org.apache.jackrabbit.filevault.maven.packaging.validator.impl.context.DependencyResolver;
 import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.packaging.Dependency;
@@ -224,14 +225,15 @@ public abstract class AbstractValidateMojo extends AbstractMojo {
         }
         // resolve mapping map
         resolver = new DependencyResolver(DefaultRepositoryRequest.getRepositoryRequest(session, project), repositorySystem,
-                resolutionErrorHandler, resolveMap(mapPackageDependencyToMavenGa), resolvedDependencies);
+                resolutionErrorHandler, resolveMap(mapPackageDependencyToMavenGa), resolvedDependencies,
+                PackageMetadataCache.get(session, getPluginContext()));
         doExecute();
     }
 
     private Collection<PackageInfo> getPackageInfoFromMavenBasedDependencies(Collection<MavenBasedPackageDependency> dependencies) throws IOException {
         Collection<PackageInfo> packageInfos = new LinkedList<>();
         // try to resolve from project artifacts (in case a project is given)
-        MavenBasedPackageDependency.resolve(project, getLog(), dependencies);
+        MavenBasedPackageDependency.resolve(project, getLog(), dependencies, PackageMetadataCache.get(session, getPluginContext()));
         for (MavenBasedPackageDependency dependency : dependencies) {
             // check if resolution was successful
             if (dependency.getInfo() != null) {
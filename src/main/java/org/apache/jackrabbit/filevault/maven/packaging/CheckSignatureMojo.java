@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ArtifactIndex;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.repository.ArtifactRepository;
@@ -178,8 +179,9 @@ public class CheckSignatureMojo extends AbstractMojo {
 
     private Collection<File> getEmbeddeds() throws MojoFailureException {
         Set<File> files = new HashSet<File>();
+        final ArtifactIndex artifactIndex = new ArtifactIndex(project);
         for (Embedded emb : embeddeds) {
-            final Collection<Artifact> artifacts = emb.getMatchingArtifacts(project);
+            final Collection<Artifact> artifacts = emb.getMatchingArtifacts(artifactIndex);
             if (artifacts.isEmpty()) {
                 if (failOnMissingEmbed) {
                     throw new MojoFailureException(
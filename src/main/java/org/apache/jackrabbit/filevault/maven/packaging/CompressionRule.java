@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging;
+
+/**
+ * The {@code CompressionRule} class defines the compression level for all package entries matching a pattern.
+ * Such a rule is declared in {@code <compressionRule>} elements inside the list style
+ * {@code <compressionRules>} element as follows:
+ * <pre>
+ * &lt;compressionRule&gt;
+ *     &lt;pattern&gt;jcr_root/content/dam/**&lt;/pattern&gt;
+ *     &lt;level&gt;1&lt;/level&gt;
+ * &lt;/compressionRule&gt;
+ * </pre>
+ * The pattern is an Ant-style path pattern relative to the package root (e.g. {@code **}{@code /*.jar}).
+ * Level {@code 0} stores the matching entries uncompressed, levels {@code 1} to {@code 9} deflate them with the given level.
+ */
+public class CompressionRule {
+
+    /**
+     * Ant-style path pattern.
+     */
+    private String pattern;
+
+    /**
+     * The compression level.
+     */
+    private int level = -1;
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public void setPattern(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public String toString() {
+        return "CompressionRule: pattern=" + pattern + ",level=" + level;
+    }
+}
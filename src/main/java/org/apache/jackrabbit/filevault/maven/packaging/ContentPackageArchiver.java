@@ -16,13 +16,512 @@
  */
 package org.apache.jackrabbit.filevault.maven.packaging;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.CanonicalEntryOrder;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.CompressionPolicy;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ContentHashIndex;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ConcurrentZipWriter;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.FileTreeSnapshot;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.IncrementalPackageIndex;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.LeanZipOutputStream;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PathFingerprintSet;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.SnapshotEntryResource;
+import org.codehaus.plexus.archiver.ArchiveEntry;
+import org.codehaus.plexus.archiver.ArchiverException;
+import org.codehaus.plexus.archiver.ResourceIterator;
 import org.codehaus.plexus.archiver.jar.JarArchiver;
+import org.codehaus.plexus.archiver.jar.Manifest;
+import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.components.io.resources.ResourceFactory;
 
+/**
+ * Archiver for content packages. By default the entries are written with the {@link JarArchiver}. If
+ * {@link #setCompressionThreads(int) compression threads}, a selective {@link #setCompressionPolicy(CompressionPolicy) compression policy}
+ * or an {@link #setIncrementalIndexFile(File) incremental index file} are configured, the entries are compressed concurrently and
+ * written in the order in which they have been added, so the output does not depend on the number of threads.
+ * <p>
+ * In incremental mode the compressed data of all entries whose source has not changed since the previous execution
+ * is copied verbatim from the previous archive. As the compression is deterministic the result is the same as when compressing
+ * all entries again.
+ * <p>
+ * With the {@link #setCanonicalEntryOrder(boolean) canonical entry order} the entries are sorted according to {@link CanonicalEntryOrder}
+ * instead.
+ * <p>
+ * With a {@link #setContentHashAlgorithm(ContentHashIndex.Algorithm) content hash algorithm} a {@link ContentHashIndex} is written as last entry.
+ */
 public class ContentPackageArchiver extends JarArchiver {
-    
+
+    private static final String META_INF_DIR = "META-INF/";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private int compressionThreads;
+
+    private CompressionPolicy compressionPolicy = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION);
+
+    private File manifestFile;
+
+    private Manifest configuredManifest;
+
+    private Date lastModifiedDate;
+
+    private File incrementalIndexFile;
+
+    private String incrementalSettings = "";
+
+    private boolean compactEntryTracking;
+
+    private boolean leanZipWriter;
+
+    private boolean canonicalEntryOrder;
+
+    private ContentHashIndex.Algorithm contentHashAlgorithm;
+
+    private int rawCopiedEntries;
+
     public ContentPackageArchiver() {
         super();
         archiveType = "content-package";
     }
 
+    /**
+     * Sets the number of threads used to compress the entries.
+     * @param compressionThreads the number of threads or {@code 0} to use the default implementation of the {@link JarArchiver}
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        if (compressionThreads < 0) {
+            throw new IllegalArgumentException("The number of compression threads must not be negative but is " + compressionThreads);
+        }
+        this.compressionThreads = compressionThreads;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the policy which determines the compression level of each entry. Only has an effect if {@link #isCompress()} is {@code true}.
+     * @param compressionPolicy the policy
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * Enables the incremental mode.
+     * @param incrementalIndexFile the file which records the sources of the entries of the previous archive or {@code null} to disable the incremental mode
+     */
+    public void setIncrementalIndexFile(File incrementalIndexFile) {
+        this.incrementalIndexFile = incrementalIndexFile;
+    }
+
+    public File getIncrementalIndexFile() {
+        return incrementalIndexFile;
+    }
+
+    /**
+     * Sets additional settings which affect the content of the entries but not their sources (e.g. the values used for filtering).
+     * In case those differ from the ones of the previous archive no entry is copied in incremental mode.
+     * @param incrementalSettings the additional settings
+     */
+    public void setIncrementalSettings(String incrementalSettings) {
+        this.incrementalSettings = incrementalSettings;
+    }
+
+    public String getIncrementalSettings() {
+        return incrementalSettings;
+    }
+
+    /**
+     * Enables tracking the names of the written entries (for skipping duplicates) in a compact set indexed by their 64-bit fingerprints
+     * instead of a set of strings (see {@link PathFingerprintSet}). Always uses the concurrent implementation.
+     * @param compactEntryTracking {@code true} to use the compact set
+     */
+    public void setCompactEntryTracking(boolean compactEntryTracking) {
+        this.compactEntryTracking = compactEntryTracking;
+    }
+
+    public boolean isCompactEntryTracking() {
+        return compactEntryTracking;
+    }
+
+    /**
+     * Enables writing the archive with the {@link LeanZipOutputStream} instead of the {@link ZipArchiveOutputStream}.
+     * In addition the entries added via {@link #addSnapshotEntry(FileTreeSnapshot.Entry, String)} take over the attributes from the snapshot.
+     * Always uses the concurrent implementation.
+     * @param leanZipWriter {@code true} to use the lean writer
+     */
+    public void setLeanZipWriter(boolean leanZipWriter) {
+        this.leanZipWriter = leanZipWriter;
+    }
+
+    public boolean isLeanZipWriter() {
+        return leanZipWriter;
+    }
+
+    /**
+     * Enables writing the entries in {@link CanonicalEntryOrder} instead of the order in which they have been added. Duplicate entries are
+     * still skipped, i.e. the first added entry with a given name wins. All entries are collected before writing the first one.
+     * Always uses the concurrent implementation.
+     * @param canonicalEntryOrder {@code true} to sort the entries
+     */
+    public void setCanonicalEntryOrder(boolean canonicalEntryOrder) {
+        this.canonicalEntryOrder = canonicalEntryOrder;
+    }
+
+    public boolean isCanonicalEntryOrder() {
+        return canonicalEntryOrder;
+    }
+
+    /**
+     * Enables writing a {@link ContentHashIndex} of all file entries as last entry of the archive. The hashes are calculated by the
+     * compression threads. In incremental mode the hashes of copied entries are taken over from the incremental index.
+     * Always uses the concurrent implementation.
+     * @param contentHashAlgorithm the algorithm or {@code null} to not write an index
+     */
+    public void setContentHashAlgorithm(ContentHashIndex.Algorithm contentHashAlgorithm) {
+        this.contentHashAlgorithm = contentHashAlgorithm;
+    }
+
+    public ContentHashIndex.Algorithm getContentHashAlgorithm() {
+        return contentHashAlgorithm;
+    }
+
+    /**
+     * Adds a file whose content is written as is (e.g. an embedded bundle or sub package). With the {@link #setLeanZipWriter(boolean) lean writer}
+     * large stored entries are transferred directly from the file into the archive, otherwise the same as {@link #addFile(File, String)}.
+     * @param file the file
+     * @param destFileName the name in the archive
+     * @throws ArchiverException in case the file could not be added
+     */
+    public void addTransferableFile(File file, String destFileName) throws ArchiverException {
+        if (!leanZipWriter) {
+            addFile(file, destFileName);
+            return;
+        }
+        try {
+            addSnapshotEntry(FileTreeSnapshot.Entry.of(file), destFileName);
+        } catch (IOException e) {
+            throw new ArchiverException("Could not add file " + file, e);
+        }
+    }
+
+    /**
+     * Adds a file or directory from a snapshot. With the {@link #setLeanZipWriter(boolean) lean writer} its size and modification date are
+     * taken from the snapshot, otherwise the same as {@link #addFile(File, String)} (or {@link #addResource(PlexusIoResource, String, int)}
+     * for directories).
+     * @param entry the snapshot entry
+     * @param destFileName the name in the archive
+     * @throws IOException in case the resource could not be created
+     */
+    public void addSnapshotEntry(FileTreeSnapshot.Entry entry, String destFileName) throws IOException {
+        if (leanZipWriter) {
+            addResource(new SnapshotEntryResource(entry), destFileName, -1);
+        } else if (entry.isDirectory()) {
+            addResource(ResourceFactory.createResource(entry.getFile(), destFileName), destFileName, -1);
+        } else {
+            addFile(entry.getFile(), destFileName);
+        }
+    }
+
+    /**
+     * 
+     * @return the number of entries which have been copied from the previous archive in incremental mode
+     */
+    public int getRawCopiedEntries() {
+        return rawCopiedEntries;
+    }
+
+    @Override
+    public void setManifest(File manifestFile) {
+        super.setManifest(manifestFile);
+        this.manifestFile = manifestFile;
+    }
+
+    @Override
+    public void addConfiguredManifest(Manifest newManifest) throws ManifestException {
+        super.addConfiguredManifest(newManifest);
+        this.configuredManifest = newManifest;
+    }
+
+    @Override
+    public void configureReproducible(Date lastModifiedDate) {
+        super.configureReproducible(lastModifiedDate);
+        // use the same (possibly normalized) date as the default archiver
+        this.lastModifiedDate = getLastModifiedDate();
+    }
+
+    private boolean isConcurrent() {
+        return compressionThreads > 0 || compressionPolicy.isSelective() || incrementalIndexFile != null || compactEntryTracking
+                || leanZipWriter || canonicalEntryOrder || contentHashAlgorithm != null;
+    }
+
+    @Override
+    protected void execute() throws ArchiverException, IOException {
+        if (!isConcurrent()) {
+            super.execute();
+            return;
+        }
+        rawCopiedEntries = 0;
+        File destFile = getDestFile();
+        IncrementalPackageIndex previousIndex = null;
+        IncrementalPackageIndex index = null;
+        File previousFile = null;
+        if (incrementalIndexFile != null) {
+            String settings = compressionPolicy + ", compress=" + isCompress() + ", contentHash=" + contentHashAlgorithm + ", " + incrementalSettings;
+            previousIndex = IncrementalPackageIndex.load(incrementalIndexFile);
+            if (previousIndex != null && previousIndex.getSettings().equals(settings) && destFile.isFile()) {
+                previousFile = new File(destFile.getPath() + ".previous");
+                Files.move(destFile.toPath(), previousFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            // only valid once the new archive has been completely written
+            Files.deleteIfExists(incrementalIndexFile.toPath());
+            index = new IncrementalPackageIndex(settings);
+        }
+        try (ZipFile previousArchive = previousFile != null ? new ZipFile(previousFile) : null) {
+            write(destFile, previousArchive, previousIndex, index);
+        } finally {
+            if (previousFile != null) {
+                Files.deleteIfExists(previousFile.toPath());
+            }
+        }
+        if (index != null) {
+            index.store(incrementalIndexFile);
+        }
+    }
+
+    private void write(File destFile, ZipFile previousArchive, IncrementalPackageIndex previousIndex, IncrementalPackageIndex index) throws IOException {
+        if (leanZipWriter) {
+            try (LeanZipOutputStream output = new LeanZipOutputStream(destFile);
+                 ConcurrentZipWriter writer = new ConcurrentZipWriter(output, getEffectiveCompressionThreads(), compressionPolicy)) {
+                write(writer, previousArchive, previousIndex, index);
+            }
+        } else {
+            try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(new BufferedOutputStream(new FileOutputStream(destFile), BUFFER_SIZE));
+                 ConcurrentZipWriter writer = new ConcurrentZipWriter(output, getEffectiveCompressionThreads(), compressionPolicy)) {
+                output.setEncoding("UTF-8");
+                write(writer, previousArchive, previousIndex, index);
+            }
+        }
+    }
+
+    private void write(ConcurrentZipWriter writer, ZipFile previousArchive, IncrementalPackageIndex previousIndex, IncrementalPackageIndex index) throws IOException {
+        // returns false for entries which have been added before
+        Predicate<String> addedEntries;
+        if (compactEntryTracking) {
+            addedEntries = new PathFingerprintSet()::add;
+        } else {
+            addedEntries = new HashSet<String>()::add;
+        }
+        ContentHashIndex contentHashIndex = null;
+        if (contentHashAlgorithm != null) {
+            contentHashIndex = new ContentHashIndex(contentHashAlgorithm);
+            // the generated index takes precedence
+            addedEntries.test(ContentHashIndex.ENTRY_NAME);
+        }
+        writer.setContentHashIndex(contentHashIndex);
+        addDirectory(writer, META_INF_DIR, addedEntries);
+        addManifest(writer, addedEntries);
+        Iterator<ArchiveEntry> resources = getEntries();
+        while (resources.hasNext()) {
+            ArchiveEntry entry = resources.next();
+            String name = getEntryName(entry);
+            if (entry.getType() == ArchiveEntry.DIRECTORY) {
+                addParentDirectories(writer, name, addedEntries);
+                if (addedEntries.test(name)) {
+                    ZipArchiveEntry zipEntry = createEntry(name, entry.getResource().getLastModified());
+                    zipEntry.setUnixMode(entry.getMode());
+                    writer.addDirectory(zipEntry);
+                }
+            } else {
+                addParentDirectories(writer, name, addedEntries);
+                // the first entry with a given name wins
+                if (addedEntries.test(name)) {
+                    PlexusIoResource resource = entry.getResource();
+                    ZipArchiveEntry zipEntry = createEntry(name, resource.getLastModified());
+                    zipEntry.setUnixMode(entry.getMode());
+                    zipEntry.setMethod(isCompress() ? ZipEntry.DEFLATED : ZipEntry.STORED);
+                    boolean isTrackable = resource.getSize() != PlexusIoResource.UNKNOWN_RESOURCE_SIZE
+                            && resource.getLastModified() != PlexusIoResource.UNKNOWN_MODIFICATION_DATE;
+                    ZipArchiveEntry previousEntry = null;
+                    if (previousArchive != null && isTrackable && previousIndex.isUnchanged(name, resource.getSize(), resource.getLastModified())) {
+                        previousEntry = previousArchive.getEntry(name);
+                    }
+                    String previousHash = null;
+                    if (previousEntry != null && contentHashIndex != null) {
+                        previousHash = previousIndex.getContentHash(name);
+                        if (previousHash == null) {
+                            // the hash can only be calculated while compressing
+                            previousEntry = null;
+                        }
+                    }
+                    if (previousEntry != null && previousEntry.getSize() == resource.getSize()) {
+                        writer.addRawEntry(zipEntry, previousArchive, previousEntry);
+                        if (previousHash != null) {
+                            contentHashIndex.put(name, previousEntry.getSize(), previousHash);
+                        }
+                        rawCopiedEntries++;
+                    } else if (resource instanceof SnapshotEntryResource) {
+                        writer.addFileEntry(zipEntry, ((SnapshotEntryResource) resource).getFile());
+                    } else {
+                        writer.addEntry(zipEntry, entry::getInputStream);
+                    }
+                    if (index != null && isTrackable) {
+                        index.put(name, resource.getSize(), resource.getLastModified());
+                    }
+                }
+            }
+        }
+        writer.finish();
+        if (contentHashIndex != null) {
+            addContentHashIndex(writer, contentHashIndex, addedEntries);
+            if (index != null) {
+                contentHashIndex.forEach(index::putContentHash);
+            }
+        }
+    }
+
+    private void addContentHashIndex(ConcurrentZipWriter writer, ContentHashIndex contentHashIndex, Predicate<String> addedEntries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        contentHashIndex.write(bytes);
+        writer.setContentHashIndex(null);
+        addParentDirectories(writer, ContentHashIndex.ENTRY_NAME, addedEntries);
+        ZipArchiveEntry zipEntry = createEntry(ContentHashIndex.ENTRY_NAME, System.currentTimeMillis());
+        zipEntry.setUnixMode(UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+        zipEntry.setMethod(isCompress() ? ZipEntry.DEFLATED : ZipEntry.STORED);
+        writer.addEntry(zipEntry, () -> new ByteArrayInputStream(bytes.toByteArray()));
+        writer.finish();
+    }
+
+    /**
+     * 
+     * @return all added entries, either in the order in which they have been added or in {@link CanonicalEntryOrder}
+     */
+    private Iterator<ArchiveEntry> getEntries() {
+        ResourceIterator resources = getResources();
+        if (!canonicalEntryOrder) {
+            return resources;
+        }
+        Map<String, ArchiveEntry> sortedEntries = new TreeMap<>(CanonicalEntryOrder.INSTANCE);
+        while (resources.hasNext()) {
+            ArchiveEntry entry = resources.next();
+            // the first entry with a given name wins
+            sortedEntries.putIfAbsent(getEntryName(entry), entry);
+        }
+        return sortedEntries.values().iterator();
+    }
+
+    /**
+     * 
+     * @param entry the entry
+     * @return the name with forward slashes (and a trailing slash for directories)
+     */
+    private static String getEntryName(ArchiveEntry entry) {
+        String name = entry.getName().replace(File.separatorChar, '/');
+        if (entry.getType() == ArchiveEntry.DIRECTORY && !name.endsWith("/")) {
+            name += "/";
+        }
+        return name;
+    }
+
+    private int getEffectiveCompressionThreads() {
+        return compressionThreads > 0 ? compressionThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    protected void close() throws IOException {
+        // the concurrent writer is closed within execute()
+        if (!isConcurrent()) {
+            super.close();
+        }
+    }
+
+    private ZipArchiveEntry createEntry(String name, long lastModified) {
+        ZipArchiveEntry zipEntry = new ZipArchiveEntry(name);
+        zipEntry.setTime(lastModifiedDate != null ? lastModifiedDate.getTime() : lastModified);
+        return zipEntry;
+    }
+
+    private void addParentDirectories(ConcurrentZipWriter writer, String name, Predicate<String> addedEntries) throws IOException {
+        int index = name.lastIndexOf('/', name.length() - 2);
+        if (index > 0) {
+            String parent = name.substring(0, index + 1);
+            if (addedEntries.test(parent)) {
+                addParentDirectories(writer, parent, addedEntries);
+                writeDirectory(writer, parent);
+            }
+        }
+    }
+
+    private void addDirectory(ConcurrentZipWriter writer, String name, Predicate<String> addedEntries) throws IOException {
+        if (addedEntries.test(name)) {
+            writeDirectory(writer, name);
+        }
+    }
+
+    private void writeDirectory(ConcurrentZipWriter writer, String name) throws IOException {
+        ZipArchiveEntry zipEntry = createEntry(name, System.currentTimeMillis());
+        zipEntry.setUnixMode(UnixStat.DIR_FLAG | UnixStat.DEFAULT_DIR_PERM);
+        writer.addDirectory(zipEntry);
+    }
+
+    /**
+     * Writes the manifest as first file entry. Similar to {@link JarArchiver} the attributes from the manifest file
+     * take precedence over the ones from the configured manifest.
+     */
+    private void addManifest(ConcurrentZipWriter writer, Predicate<String> addedEntries) throws IOException {
+        java.util.jar.Manifest manifest = new java.util.jar.Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (configuredManifest != null) {
+            mergeManifest(manifest, configuredManifest);
+        }
+        if (manifestFile != null) {
+            try (InputStream input = new FileInputStream(manifestFile)) {
+                mergeManifest(manifest, new java.util.jar.Manifest(input));
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        addedEntries.test(JarFile.MANIFEST_NAME);
+        ZipArchiveEntry zipEntry = createEntry(JarFile.MANIFEST_NAME, System.currentTimeMillis());
+        zipEntry.setUnixMode(UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+        zipEntry.setMethod(isCompress() ? ZipEntry.DEFLATED : ZipEntry.STORED);
+        writer.addEntry(zipEntry, () -> new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void mergeManifest(java.util.jar.Manifest target, java.util.jar.Manifest source) {
+        target.getMainAttributes().putAll(source.getMainAttributes());
+        for (Map.Entry<String, Attributes> section : source.getEntries().entrySet()) {
+            target.getEntries().computeIfAbsent(section.getKey(), k -> new Attributes()).putAll(section.getValue());
+        }
+    }
 }
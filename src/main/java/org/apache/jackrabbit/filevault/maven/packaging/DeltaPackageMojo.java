@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.jackrabbit.filevault.maven.packaging.impl.DeltaPackageBuilder;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.AbstractArtifactResolutionException;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Creates a delta package which only contains the content which has been added or changed compared to a baseline package.
+ * Removed content is removed during installation of the delta package via dedicated filter roots.
+ * The entries are copied in their compressed form from the package built by the project.
+ * @since 1.1.3
+ */
+@Mojo(
+        name = "delta-package",
+        defaultPhase = LifecyclePhase.PACKAGE,
+        requiresProject = false,
+        threadSafe = true
+)
+public class DeltaPackageMojo extends AbstractMojo {
+
+    /**
+     * The Maven project.
+     */
+    @Parameter(property = "project", readonly = true, required = true)
+    private MavenProject project;
+
+    /**
+     * The baseline package given as Maven coordinates in the format {@code groupId:artifactId:version[:classifier]}.
+     * Only evaluated in case {@link #basePackage} is not set.
+     */
+    @Parameter(property = "vault.delta.baseline")
+    private String baseline;
+
+    /**
+     * The baseline package given as file.
+     */
+    @Parameter(property = "vault.delta.basePackage")
+    private File basePackage;
+
+    /**
+     * The package from which to create the delta. Defaults to the main artifact of the project.
+     */
+    @Parameter(property = "vault.delta.package", defaultValue = "${project.artifact.file}")
+    private File packageFile;
+
+    /**
+     * The delta package to create.
+     */
+    @Parameter(property = "vault.delta.outputFile", defaultValue = "${project.build.directory}/${project.build.finalName}-delta.zip",
+            required = true)
+    private File outputFile;
+
+    /**
+     * The suffix appended to the package name of the delta package.
+     */
+    @Parameter(property = "vault.delta.nameSuffix", defaultValue = "-delta")
+    private String nameSuffix;
+
+    /**
+     * If true, skip the creation of the delta package.
+     */
+    @Parameter(property = "vault.delta.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     */
+    @Parameter(property = "localRepository", readonly = true)
+    private ArtifactRepository localRepository;
+
+    /**
+     */
+    @Component
+    private ArtifactFactory artifactFactory;
+
+    /**
+     */
+    @Component
+    private ArtifactResolver resolver;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping delta package.");
+            return;
+        }
+        if (packageFile == null || !packageFile.isFile()) {
+            throw new MojoExecutionException("Package to create the delta from does not exist: " + packageFile);
+        }
+        File baseFile = getBasePackage();
+        DeltaPackageBuilder builder = new DeltaPackageBuilder(baseFile, packageFile);
+        builder.setNameSuffix(nameSuffix != null ? nameSuffix : "");
+        try {
+            File parent = outputFile.getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory " + parent);
+            }
+            builder.build(outputFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to create delta package " + outputFile, e);
+        }
+        getLog().info("Created delta package " + outputFile + " against " + baseFile + " with " + builder.getFilter().getFilterSets().size()
+                + " filter roots and " + builder.getCopiedEntries() + " entries (" + outputFile.length() + " bytes)");
+        if (getLog().isDebugEnabled()) {
+            for (String line : builder.getDiff().toReport()) {
+                getLog().debug("  " + line);
+            }
+        }
+    }
+
+    private File getBasePackage() throws MojoExecutionException {
+        if (basePackage != null) {
+            if (!basePackage.isFile()) {
+                throw new MojoExecutionException("Base package does not exist: " + basePackage);
+            }
+            return basePackage;
+        }
+        if (baseline == null || baseline.isEmpty()) {
+            throw new MojoExecutionException("Either 'basePackage' or 'baseline' must be set.");
+        }
+        String[] coordinates = baseline.split(":");
+        if (coordinates.length < 3 || coordinates.length > 4) {
+            throw new MojoExecutionException("Invalid baseline '" + baseline + "', expected groupId:artifactId:version[:classifier]");
+        }
+        Artifact artifact = artifactFactory.createArtifactWithClassifier(coordinates[0], coordinates[1], coordinates[2],
+                VaultMojo.PACKAGE_TYPE, coordinates.length > 3 ? coordinates[3] : null);
+        try {
+            resolver.resolve(artifact, project.getRemoteArtifactRepositories(), localRepository);
+        } catch (AbstractArtifactResolutionException e) {
+            throw new MojoExecutionException("Failed to resolve baseline package " + baseline, e);
+        }
+        return artifact.getFile();
+    }
+}
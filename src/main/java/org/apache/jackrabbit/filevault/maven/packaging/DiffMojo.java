@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageDiff;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Compares two content packages and reports the added, removed and changed repository paths as well as the changes
+ * of the filter and the package properties. The comparison is based on the CRC-32 and sizes from the packages' central
+ * directories, so that only entries whose metadata differs need to be read.
+ * @since 1.1.3
+ */
+@Mojo(
+        name = "diff",
+        requiresProject = false,
+        threadSafe = true
+)
+public class DiffMojo extends AbstractMojo {
+
+    /**
+     * The package to compare against.
+     */
+    @Parameter(property = "vault.diff.basePackage", required = true)
+    private File basePackage;
+
+    /**
+     * The package whose changes are reported. Defaults to the main artifact of the project.
+     */
+    @Parameter(property = "vault.diff.package", defaultValue = "${project.artifact.file}")
+    private File packageFile;
+
+    /**
+     * Optional file to which the report is written additionally, one difference per line.
+     */
+    @Parameter(property = "vault.diff.reportFile")
+    private File reportFile;
+
+    /**
+     * If true, fail the build in case the packages differ.
+     */
+    @Parameter(property = "vault.diff.failOnDifferences", defaultValue = "false")
+    private boolean failOnDifferences;
+
+    /**
+     * If true, skip the comparison.
+     */
+    @Parameter(property = "vault.diff.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping package diff.");
+            return;
+        }
+        if (packageFile == null || !packageFile.isFile()) {
+            throw new MojoExecutionException("Package to compare does not exist: " + packageFile);
+        }
+        if (!basePackage.isFile()) {
+            throw new MojoExecutionException("Base package does not exist: " + basePackage);
+        }
+        PackageDiff diff;
+        try {
+            diff = PackageDiff.compare(basePackage, packageFile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to compare " + packageFile + " with " + basePackage, e);
+        }
+        List<String> report = diff.toReport();
+        getLog().info("Comparing " + packageFile + " with " + basePackage + ": " + report.size() + " difference(s), "
+                + diff.getInflatedEntries() + " entries read");
+        for (String line : report) {
+            getLog().info("  " + line);
+        }
+        if (reportFile != null) {
+            try {
+                FileUtils.writeLines(reportFile, StandardCharsets.UTF_8.name(), report, "\n");
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to write diff report " + reportFile, e);
+            }
+        }
+        if (failOnDifferences && !report.isEmpty()) {
+            throw new MojoFailureException("Package " + packageFile + " differs from " + basePackage);
+        }
+    }
+}
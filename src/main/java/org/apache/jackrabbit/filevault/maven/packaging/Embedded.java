@@ -16,6 +16,9 @@
  */
 package org.apache.jackrabbit.filevault.maven.packaging;
 
+import org.apache.jackrabbit.filevault.maven.packaging.impl.InputFingerprint;
+import org.jetbrains.annotations.NotNull;
+
 /**
  * The {@code Embedded} class represents an embedded artifact dependency
  * from the project descriptor. Such an embedding is declared in
@@ -66,6 +69,13 @@ public class Embedded extends SimpleEmbedded{
         return target;
     }
 
+    @Override
+    void addToFingerprint(@NotNull InputFingerprint fingerprint) {
+        super.addToFingerprint(fingerprint);
+        fingerprint.addValue("target", target);
+        fingerprint.addValue("destFileName", destFileName);
+    }
+
     public String toString() {
         final StringBuilder builder = new StringBuilder();
         builder.append("Embedded: ");
@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.filevault.maven.packaging;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -24,15 +25,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -40,14 +45,16 @@ import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ArtifactIndex;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.InputFingerprint;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageMetadataCache;
 import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.fs.api.WorkspaceFilter;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
@@ -107,6 +114,11 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
      */
     private final DateFormat iso8601DateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
 
+    /**
+     * The index of the project's artifacts, lazily created by {@link #getArtifactIndex()}
+     */
+    private ArtifactIndex artifactIndex;
+
     /**
      * For m2e incremental build support
      */
@@ -159,14 +171,14 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
      * In addition optionally a number of {@code include} and {@code exclude} elements are supported below {@code includes}/{@code excludes} respectively.
      */
     @Parameter
-    private final Filters filters = new Filters();
+    final Filters filters = new Filters();
 
     /**
      * Optional file that specifies the source of the workspace filter. The filters specified in the configuration
      * and injected via emebedds or subpackages are merged into it.
      */
     @Parameter
-    private File filterSource;
+    File filterSource;
 
     /**
      * Controls if empty workspace filter fails the build.
@@ -311,7 +323,7 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
      * <i>The difference between {@link #embeddeds} and {@link #subPackages} is that for the former an explicit target is given while for the latter the target is being computed from the artifact's vault property file.</i>
      */
     @Parameter
-    private Embedded[] embeddeds = new Embedded[0];
+    Embedded[] embeddeds = new Embedded[0];
 
     /**
      * Defines whether to fail the build when an embedded artifact is not
@@ -368,6 +380,19 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
     @Parameter
     private File thumbnailImage;
 
+    /**
+     * If set to {@code true} the generated metadata in the {@link AbstractMetadataPackageMojo#workDirectory} is left untouched
+     * in case none of the inputs (filters, properties, dependencies, embeddeds, sub packages, import package, output timestamp, ...)
+     * has changed since the last execution. This is determined with a fingerprint stored in the work directory.
+     * In this case also the {@code created} property of the properties.xml keeps its previous value.
+     * Independent of this setting the generated files (except for the filter.xml) are only written if their content differs from the existing ones.
+     * This is configured independently of the {@code skipIfUpToDate} parameter of the {@code package} goal.
+     *
+     * @since 1.1.3
+     */
+    @Parameter(property = "vault.generateMetadata.skipIfUpToDate", defaultValue = "false")
+    private boolean skipIfUpToDate;
+
 
     /**
      * Defines the content package type. This is either 'application', 'content', 'container' or 'mixed'.
@@ -403,6 +428,13 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
     // take the first "-" followed by a digit as separator between version suffix and rest
     private static final Pattern FILENAME_PATTERN_WITHOUT_VERSION_IN_GROUP1 = Pattern.compile("((?!-\\d).*-)\\d.*");
 
+    /** The name of the file in the {@link AbstractMetadataPackageMojo#workDirectory} containing the fingerprint of the last execution */
+    static final String FINGERPRINT_FILE_NAME = "metadata.fingerprint";
+
+    private static final String FINGERPRINT_PROPERTY_INPUTS = "inputs";
+
+    private static final String FINGERPRINT_PROPERTY_OUTPUTS = "outputs";
+
 
     public GenerateMetadataMojo() {
         super();
@@ -472,7 +504,23 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         try {
             // find the meta-inf source directory
             File metaInfDirectory = getMetaInfVaultSourceDirectory();
-            
+
+            // must be calculated before the filters are modified
+            final File fingerprintFile = new File(workDirectory, FINGERPRINT_FILE_NAME);
+            String fingerprint = null;
+            if (skipIfUpToDate) {
+                fingerprint = calculateInputFingerprint(metaInfDirectory);
+                if (isUpToDate(fingerprintFile, fingerprint)) {
+                    getLog().info("Package metadata is up to date, skipping generation");
+                    // the embedded files are still needed by the package goal
+                    Map<String, File> embeddedFiles = getEmbeddeds();
+                    embeddedFiles.putAll(getSubPackages());
+                    setEmbeddedFilesMap(embeddedFiles);
+                    return;
+                }
+                Files.deleteIfExists(fingerprintFile.toPath());
+            }
+
             // generate the filter.xml
             String sourceFilters = computeFilters(metaInfDirectory);
             computeImportPackage();
@@ -493,9 +541,9 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
             
             // generate properties.xml
             final Properties vaultProperties = computeProperties(dependenciesString, dependenciesLocations);
-            try (FileOutputStream fos = new FileOutputStream(new File(vaultDir, Constants.PROPERTIES_XML))) {
-                vaultProperties.storeToXML(fos, project.getName());
-            }
+            ByteArrayOutputStream propertiesBuffer = new ByteArrayOutputStream();
+            vaultProperties.storeToXML(propertiesBuffer, project.getName());
+            writeIfChanged(new File(vaultDir, Constants.PROPERTIES_XML), propertiesBuffer.toByteArray());
             writeFilters(sourceFilters);
             copyFile("/vault/config.xml", new File(vaultDir, Constants.CONFIG_XML));
             copyFile("/vault/settings.xml", new File(vaultDir, Constants.SETTINGS_XML));
@@ -507,10 +555,13 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
                     vaultDefinitionFolder.mkdir();
                 }
                 copyFile("/vault/definition/.content.xml", new File(vaultDefinitionFolder, ".content.xml"));
-                FileUtils.copyFile(thumbnailImage, new File(vaultDefinitionFolder, "thumbnail.png"));
+                writeIfChanged(new File(vaultDefinitionFolder, "thumbnail.png"), Files.readAllBytes(thumbnailImage.toPath()));
             }
 
             writeManifest(getGeneratedManifestFile(), dependenciesString, dependenciesLocations, vaultProperties);
+            if (fingerprint != null) {
+                storeFingerprint(fingerprintFile, fingerprint);
+            }
         } catch (IOException | ManifestException | DependencyResolutionRequiredException | ConfigurationException e) {
             throw new MojoExecutionException(e.toString(), e);
         }
@@ -523,8 +574,144 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         MavenArchiver mavenArchiver = new MavenArchiver();
         mavenArchiver.setCreatedBy("Apache Jackrabbit FileVault - Package Maven Plugin", "org.apache.jackrabbit", "filevault-package-maven-plugin");
         Manifest manifest = mavenArchiver.getManifest(session, project, getMavenArchiveConfiguration(vaultProperties, dependenciesString, dependenciesLocations));
-        try (OutputStream out = new FileOutputStream(file)) {
-            manifest.write(out);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        writeIfChanged(file, out.toByteArray());
+    }
+
+    /**
+     * Writes the given content to the given file unless the file already has exactly that content.
+     * This keeps the last modification date of unchanged files so that subsequent goals can rely on it.
+     * @param file the file to write
+     * @param content the new content
+     * @return {@code true} in case the file has been written, {@code false} if it was left untouched
+     * @throws IOException in case the file could not be read or written
+     */
+    static boolean writeIfChanged(File file, byte[] content) throws IOException {
+        if (file.isFile() && file.length() == content.length && Arrays.equals(Files.readAllBytes(file.toPath()), content)) {
+            return false;
+        }
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+        return true;
+    }
+
+    /**
+     * Calculates the fingerprint of everything the generated metadata depends on.
+     * @param metaInfDirectory the META-INF/vault source directory (may be {@code null})
+     * @return the fingerprint
+     * @throws IOException in case some input could not be read
+     */
+    String calculateInputFingerprint(File metaInfDirectory) throws IOException {
+        InputFingerprint fingerprint = new InputFingerprint();
+        fingerprint.addValue("pluginVersion", getClass().getPackage().getImplementationVersion());
+        fingerprint.addValue("project", project.getId());
+        fingerprint.addFile("pom", project.getFile());
+        // inherited properties and plugin configuration
+        for (MavenProject parent = project.getParent(); parent != null; parent = parent.getParent()) {
+            fingerprint.addValue("parent", parent.getId());
+            fingerprint.addFile("parent.pom", parent.getFile());
+        }
+        fingerprint.addValue("group", group);
+        fingerprint.addValue("name", name);
+        fingerprint.addValue("version", version);
+        fingerprint.addValue("prefix", prefix);
+        fingerprint.addValue("outputTimestamp", outputTimestamp);
+        fingerprint.addValue("packageType", packageType);
+        fingerprint.addValue("accessControlHandling", accessControlHandling);
+        fingerprint.addValue("requiresRoot", requiresRoot);
+        fingerprint.addValue("allowIndexDefinitions", allowIndexDefinitions);
+        fingerprint.addValue("properties", properties);
+        fingerprint.addValue("dependencies", dependencies.size());
+        for (MavenBasedPackageDependency dependency : dependencies) {
+            dependency.addToFingerprint(fingerprint);
+        }
+        fingerprint.addValue("embeddeds", embeddeds.length);
+        for (Embedded embedded : embeddeds) {
+            embedded.addToFingerprint(fingerprint);
+        }
+        fingerprint.addValue("embeddedTarget", embeddedTarget);
+        fingerprint.addValue("failOnMissingEmbed", failOnMissingEmbed);
+        fingerprint.addValue("subPackages", subPackages.length);
+        for (SubPackage subPackage : subPackages) {
+            subPackage.addToFingerprint(fingerprint);
+        }
+        fingerprint.addValue("filters", filters.getSourceAsString());
+        fingerprint.addFile("filterSource", filterSource, true, path -> true);
+        if (metaInfDirectory != null) {
+            fingerprint.addFile("metaInfFilter", new File(metaInfDirectory, Constants.FILTER_XML), true, path -> true);
+        }
+        // a filter.xml provided via the resource plugin (the generated one has a last modification date of 0)
+        File generatedFilterFile = getGeneratedFilterFile();
+        if (generatedFilterFile.lastModified() != 0) {
+            fingerprint.addFile("providedFilter", generatedFilterFile, true, path -> true);
+        }
+        fingerprint.addValue("importPackage", importPackage);
+        fingerprint.addFile("generatedImportPackage", generatedImportPackage, true, path -> true);
+        fingerprint.addFile("thumbnailImage", thumbnailImage);
+        if (archive != null) {
+            fingerprint.addValue("archive.manifestEntries", archive.getManifestEntries());
+            fingerprint.addFile("archive.manifestFile", archive.getManifestFile());
+        }
+        // the dependencies determine the embedded files, sub packages and package dependencies
+        for (Artifact artifact : new TreeMap<>(project.getArtifacts().stream()
+                .collect(Collectors.toMap(Artifact::getId, Function.identity(), (a, b) -> a))).values()) {
+            fingerprint.addValue("artifact", artifact.getId());
+            File file = artifact.getFile();
+            if (file != null && file.isDirectory()) {
+                // not yet packaged reactor module, only its metadata is relevant
+                fingerprint.addFile("artifact.properties", getModulePropertiesFile(artifact), true, path -> true);
+            } else {
+                fingerprint.addFile("artifact.file", file);
+            }
+        }
+        return fingerprint.getValue();
+    }
+
+    /**
+     * Calculates the fingerprint of the generated metadata.
+     * @return the fingerprint
+     * @throws IOException in case some generated file could not be read
+     */
+    private String calculateOutputFingerprint() throws IOException {
+        InputFingerprint fingerprint = new InputFingerprint();
+        fingerprint.addFile("vaultDir", getGeneratedVaultDir(), true, path -> true);
+        fingerprint.addFile("manifest", getGeneratedManifestFile(), true, path -> true);
+        return fingerprint.getValue();
+    }
+
+    /**
+     * 
+     * @param fingerprintFile the file containing the fingerprint of the previous execution
+     * @param fingerprint the fingerprint of the current inputs
+     * @return {@code true} in case the inputs have not changed and the generated metadata is still the one created by the previous execution
+     * @throws IOException in case the fingerprint file could not be read
+     */
+    boolean isUpToDate(File fingerprintFile, String fingerprint) throws IOException {
+        if (!fingerprintFile.isFile()) {
+            return false;
+        }
+        Properties fingerprintProperties = new Properties();
+        try (InputStream input = new FileInputStream(fingerprintFile)) {
+            fingerprintProperties.load(input);
+        }
+        if (!fingerprint.equals(fingerprintProperties.getProperty(FINGERPRINT_PROPERTY_INPUTS))) {
+            getLog().debug("Inputs of package metadata have changed since the last execution");
+            return false;
+        }
+        if (!calculateOutputFingerprint().equals(fingerprintProperties.getProperty(FINGERPRINT_PROPERTY_OUTPUTS))) {
+            getLog().debug("Package metadata has been modified since the last execution");
+            return false;
+        }
+        return true;
+    }
+
+    void storeFingerprint(File fingerprintFile, String fingerprint) throws IOException {
+        Properties fingerprintProperties = new Properties();
+        fingerprintProperties.setProperty(FINGERPRINT_PROPERTY_INPUTS, fingerprint);
+        fingerprintProperties.setProperty(FINGERPRINT_PROPERTY_OUTPUTS, calculateOutputFingerprint());
+        try (OutputStream output = new FileOutputStream(fingerprintFile)) {
+            fingerprintProperties.store(output, "Fingerprint of the inputs and outputs of the last metadata generation");
         }
     }
     
@@ -543,7 +730,7 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
      * @throws IOException if an I/O error occurs
      * @throws MojoExecutionException if the build fails
      */
-    private String computeFilters(File vaultMetaDir) throws IOException, MojoExecutionException {
+    String computeFilters(File vaultMetaDir) throws IOException, MojoExecutionException {
         // backward compatibility: if implicit filter exists, use it. but check for conflicts
         File filterFile = getGeneratedFilterFile();
         if (filterFile.exists() && filterFile.lastModified() != 0) {
@@ -566,6 +753,7 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         }
 
         // if last modified of vault-work/META-INF/vault/filter.xml == 0 -> delete it
+        // (a rewrite with the same content is not observable, as the generated file always has a last modification time of 0)
         if (filterFile.exists() && filterFile.lastModified() == 0) {
             try {
                 Files.delete(filterFile.toPath());
@@ -640,7 +828,7 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         }
     }
 
-    private void writeFilters(String sourceFilters) throws IOException, MojoExecutionException {
+    void writeFilters(String sourceFilters) throws IOException, MojoExecutionException {
         // if no filter is defined at all, fail
         if (filters.getFilterSets().isEmpty()) {
             throw new MojoExecutionException("No workspace filter defined!");
@@ -649,11 +837,11 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         File filterFile = getGeneratedFilterFile();
         // if the source filters and the generated filters are the same, copy the source file to retain the comments
         if (filterSource != null && filters.getSourceAsString().equals(sourceFilters)) {
-            FileUtils.copyFile(filterSource, filterFile);
+            writeIfChanged(filterFile, Files.readAllBytes(filterSource.toPath()));
         } else {
             // generate xml and write to filter.xml
             getLog().info("Generating filter.xml from plugin configuration");
-            FileUtils.fileWrite(filterFile.getAbsolutePath(), filters.getSourceAsString());
+            writeIfChanged(filterFile, filters.getSourceAsString().getBytes(StandardCharsets.UTF_8));
         }
 
         // update the last modified time of filter.xml to for generated filters
@@ -742,7 +930,7 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
     private String computeDependencies() throws IOException {
         String dependenciesString = null;
         if (!dependencies.isEmpty()) {
-            MavenBasedPackageDependency.resolve(project, getLog(), dependencies);
+            MavenBasedPackageDependency.resolve(project, getLog(), dependencies, PackageMetadataCache.get(session, getPluginContext()));
             Dependency[] vaultDependencies = dependencies.stream().map(MavenBasedPackageDependency::getPackageDependency).toArray(Dependency[]::new);
             dependenciesString = Dependency.toString(vaultDependencies);
         }
@@ -752,7 +940,7 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
     private String computeDependenciesLocations() throws IOException {
         String dependenciesLocations = null;
         if (!dependencies.isEmpty()) {
-            MavenBasedPackageDependency.resolve(project, getLog(), dependencies);
+            MavenBasedPackageDependency.resolve(project, getLog(), dependencies, PackageMetadataCache.get(session, getPluginContext()));
             // pid = uri
             dependenciesLocations = dependencies.stream().filter(a -> a.getInfo() != null).map(a -> a.getInfo().getId().toString() + "=" + a.getLocation()).collect(Collectors.joining(","));
         }
@@ -878,10 +1066,20 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
     }
     
 
+    /**
+     * @return the index of the project's artifacts shared by all embeds and sub packages of this execution
+     */
+    private ArtifactIndex getArtifactIndex() {
+        if (artifactIndex == null) {
+            artifactIndex = new ArtifactIndex(project);
+        }
+        return artifactIndex;
+    }
+
     private Map<String, File> getEmbeddeds() throws MojoFailureException, ConfigurationException {
         Map<String, File> fileMap = new HashMap<>();
         for (Embedded emb : embeddeds) {
-            final Collection<Artifact> artifacts = emb.getMatchingArtifacts(project);
+            final Collection<Artifact> artifacts = emb.getMatchingArtifacts(getArtifactIndex());
             if (artifacts.isEmpty()) {
                 if (failOnMissingEmbed) {
                     throw new MojoFailureException("Embedded artifact specified " + emb + ", but no matching dependency artifact found. Add the missing dependency or fix the embed definition.");
@@ -962,10 +1160,10 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
     }
 
     private Map<String, File> getSubPackages() throws MojoFailureException, ConfigurationException {
-        final String propsRelPath = Constants.META_DIR + "/" + Constants.PROPERTIES_XML;
         Map<String, File> fileMap = new HashMap<>();
+        final PackageMetadataCache metadataCache = PackageMetadataCache.get(session, getPluginContext());
         for (SubPackage pack : subPackages) {
-            final Collection<Artifact> artifacts = pack.getMatchingArtifacts(project);
+            final Collection<Artifact> artifacts = pack.getMatchingArtifacts(getArtifactIndex());
             if (artifacts.isEmpty()) {
                 getLog().warn("No matching artifacts for sub package " + pack);
                 continue;
@@ -974,46 +1172,21 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
             // get the package path
             getLog().info("Embedding subpackage --- " + pack + " ---");
             for (Artifact artifact : artifacts) {
-                final Properties props = new Properties();
+                final Properties props;
 
                 final File source = artifact.getFile();
                 if (source.isDirectory()) {
-                    File otherWorkDirectory = null;
-                    final MavenProject otherProject = findModuleForArtifact(artifact);
-                    if (otherProject != null) {
-                        final PluginDescriptor pluginDescriptor = (PluginDescriptor) this.getPluginContext().get("pluginDescriptor");
-                        if (pluginDescriptor != null) {
-                            Map<String, Object> otherContext = this.session.getPluginContext(pluginDescriptor, otherProject);
-                            otherWorkDirectory = getArtifactWorkDirectoryLookup(otherContext).get(getModuleArtifactKey(artifact));
-                        }
-                    }
-
-                    // if not identifiable as a filevault content-package dependency, assume a generic archive layout.
-                    if (otherWorkDirectory == null) {
-                        otherWorkDirectory = source; // points to "target/classes"
-                    }
-
-                    File propsXml = new File(otherWorkDirectory, propsRelPath);
-                    if (!propsXml.exists()) {
-                        // fallback to work dir (assuming the same folder name)
-                        propsXml = new File(otherWorkDirectory.getParent(), workDirectory.getName() + "/" + propsRelPath);
-                    }
-                    try (InputStream input = new FileInputStream(propsXml)) {
-                        props.loadFromXML(input);
+                    File propsXml = getModulePropertiesFile(artifact);
+                    try {
+                        props = metadataCache.getProperties(propsXml);
                     } catch (IOException e) {
                         throw new MojoFailureException("Could not read META-INF/vault/properties.xml from directory '" +
-                                otherWorkDirectory + "' to extract metadata: " + e.getMessage(), e);
+                                propsXml.getParentFile() + "' to extract metadata: " + e.getMessage(), e);
                     }
                 } else {
                     // load properties
-                    try (ZipFile zip = new ZipFile(source)) {
-                        ZipEntry e = zip.getEntry(propsRelPath);
-                        if (e == null) {
-                            throw new IOException("Package does not contain 'META-INF/vault/properties.xml'");
-                        }
-                        try (InputStream in = zip.getInputStream(e)) {
-                            props.loadFromXML(in);
-                        }
+                    try {
+                        props = metadataCache.getProperties(source);
                     } catch (IOException e) {
                         throw new MojoFailureException("Could not open subpackage '" + source + "' to extract metadata: " + e.getMessage(), e);
                     }
@@ -1036,6 +1209,37 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         return fileMap;
     }
 
+    /**
+     * Returns the properties.xml of the reactor module producing the given artifact, which has not been packaged yet.
+     *
+     * @param artifact the artifact whose file points to a directory
+     * @return the properties.xml below the work directory of the module
+     */
+    private File getModulePropertiesFile(final Artifact artifact) {
+        final String propsRelPath = Constants.META_DIR + "/" + Constants.PROPERTIES_XML;
+        File otherWorkDirectory = null;
+        final MavenProject otherProject = findModuleForArtifact(artifact);
+        if (otherProject != null) {
+            final PluginDescriptor pluginDescriptor = (PluginDescriptor) this.getPluginContext().get("pluginDescriptor");
+            if (pluginDescriptor != null) {
+                Map<String, Object> otherContext = this.session.getPluginContext(pluginDescriptor, otherProject);
+                otherWorkDirectory = getArtifactWorkDirectoryLookup(otherContext).get(getModuleArtifactKey(artifact));
+            }
+        }
+
+        // if not identifiable as a filevault content-package dependency, assume a generic archive layout.
+        if (otherWorkDirectory == null) {
+            otherWorkDirectory = artifact.getFile(); // points to "target/classes"
+        }
+
+        File propsXml = new File(otherWorkDirectory, propsRelPath);
+        if (!propsXml.exists()) {
+            // fallback to work dir (assuming the same folder name)
+            propsXml = new File(otherWorkDirectory.getParent(), workDirectory.getName() + "/" + propsRelPath);
+        }
+        return propsXml;
+    }
+
     /**
      * Establishes a session-shareable workDirectory lookup map for the given pluginContext.
      *
@@ -1051,6 +1255,49 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
         return (Map<String, File>) pluginContext.get(workDirectoryLookupKey);
     }
 
+    /**
+     * Establishes a session-shareable lookup map of the reactor modules for the given pluginContext. The map is populated once
+     * from the given projects, multiple projects sharing the same key are kept in the order of the given projects.
+     *
+     * @param pluginContext a Map retrieved from {@link MavenSession#getPluginContext(PluginDescriptor, MavenProject)}.
+     * @param projects the projects of the session
+     * @param keyFunction the function computing the key from a module artifact
+     * @return a lookup Map. The key is {@link #getModuleArtifactKey(Artifact)} and value are the projects producing the artifact.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, List<MavenProject>> getModuleLookup(final Map pluginContext, final Collection<MavenProject> projects,
+            final Function<Artifact, String> keyFunction) {
+        final String moduleLookupKey = "moduleLookup";
+        synchronized (pluginContext) {
+            Map<String, List<MavenProject>> moduleLookup = (Map<String, List<MavenProject>>) pluginContext.get(moduleLookupKey);
+            if (moduleLookup == null) {
+                moduleLookup = new HashMap<>();
+                for (MavenProject project : projects) {
+                    moduleLookup.computeIfAbsent(keyFunction.apply(project.getArtifact()), key -> new ArrayList<>(1)).add(project);
+                }
+                moduleLookup = Collections.unmodifiableMap(moduleLookup);
+                pluginContext.put(moduleLookupKey, moduleLookup);
+            }
+            return moduleLookup;
+        }
+    }
+
+    /**
+     * 
+     * @param moduleLookup the lookup created with {@link #getModuleLookup(Map, Collection, Function)}
+     * @param key the key of the artifact
+     * @param excludedProject the project to skip
+     * @return the first project producing the artifact with the given key apart from the excluded one, or {@code null}
+     */
+    static MavenProject findModule(final Map<String, List<MavenProject>> moduleLookup, final String key, final MavenProject excludedProject) {
+        for (MavenProject module : moduleLookup.getOrDefault(key, Collections.emptyList())) {
+            if (module != excludedProject) {
+                return module;
+            }
+        }
+        return null;
+    }
+
     /**
      * Find the other project which produces the provided artifact.
      *
@@ -1058,15 +1305,14 @@ public class GenerateMetadataMojo extends AbstractMetadataPackageMojo {
      * @return another project that is a dependency of thisProject
      */
     MavenProject findModuleForArtifact(final Artifact artifact) {
-        for (MavenProject otherProject : session.getProjects()) {
-            if (otherProject != this.project) {
-                final Artifact otherArtifact = otherProject.getArtifact();
-                if (getModuleArtifactKey(artifact).equals(getModuleArtifactKey(otherArtifact))) {
-                    return otherProject;
-                }
-            }
+        // the lookup is shared via the plugin context of the top level project, so it is only built once per session
+        Map pluginContext = getPluginContext();
+        final PluginDescriptor pluginDescriptor = (PluginDescriptor) pluginContext.get("pluginDescriptor");
+        if (pluginDescriptor != null && session.getTopLevelProject() != null) {
+            pluginContext = session.getPluginContext(pluginDescriptor, session.getTopLevelProject());
         }
-        return null;
+        return findModule(getModuleLookup(pluginContext, session.getProjects(), this::getModuleArtifactKey),
+                getModuleArtifactKey(artifact), this.project);
     }
 
     /**
@@ -22,10 +22,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collection;
 
+import org.apache.jackrabbit.filevault.maven.packaging.impl.InputFingerprint;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageMetadataCache;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.PackageInfo;
 import org.apache.jackrabbit.vault.packaging.VersionRange;
-import org.apache.jackrabbit.vault.packaging.impl.DefaultPackageInfo;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.plugin.logging.Log;
@@ -127,8 +128,23 @@ public class MavenBasedPackageDependency {
      * dependency is not a content package.
      */
     public static void resolve(final MavenProject project, final Log log, final Collection<MavenBasedPackageDependency> dependencies) throws IOException {
+        resolve(project, log, dependencies, new PackageMetadataCache());
+    }
+
+    /**
+     * Converts a list of {@link MavenBasedPackageDependency} instances to vault dependencies.
+     *
+     * @param project the Maven project
+     * @param log the Logger
+     * @param dependencies The list of {@link MavenBasedPackageDependency} instances to convert.
+     * @param metadataCache the cache from which to retrieve the package metadata
+     * @throws IOException in case meta information could not be read from the project dependency or the 
+     * dependency is not a content package.
+     */
+    public static void resolve(final MavenProject project, final Log log, final Collection<MavenBasedPackageDependency> dependencies,
+            final PackageMetadataCache metadataCache) throws IOException {
         for (MavenBasedPackageDependency dependency : dependencies) {
-            dependency.resolve(project, log);
+            dependency.resolve(project, log, metadataCache);
         }
     }
 
@@ -140,7 +156,7 @@ public class MavenBasedPackageDependency {
      * @throws URISyntaxException 
      */
     @SuppressWarnings("deprecation")
-    private void resolve(final MavenProject project, final Log log) throws IOException {
+    private void resolve(final MavenProject project, final Log log, final PackageMetadataCache metadataCache) throws IOException {
         if (isResolved) {
             return;
         } else {
@@ -157,7 +173,7 @@ public class MavenBasedPackageDependency {
                     if (a.getArtifactId().equals(artifactId) && a.getGroupId().equals(groupId) && StringUtils.equals(a.getClassifier(), classifier)) {
                         // check if file exists and if it points to a real file (might also point to a classes dir)
                         try {
-                            readMetaData(a.getFile(), log);
+                            readMetaData(a.getFile(), log, metadataCache);
                             mavenVersion = a.getVersion();
                             foundMavenDependency = true;
                         } catch (IOException e) {
@@ -184,18 +200,22 @@ public class MavenBasedPackageDependency {
     }
 
     public void readMetaData(File file, Log log) throws IOException {
+        readMetaData(file, log, new PackageMetadataCache());
+    }
+
+    public void readMetaData(File file, Log log, PackageMetadataCache metadataCache) throws IOException {
         PackageInfo info;
         if (file.isDirectory()) {
             log.info("Trying to extract package info from folder '" + file + "' as no package is availabe for the given dependency " + this);
-            info = DefaultPackageInfo.read(file);
+            info = metadataCache.getPackageInfo(file);
             if (info == null) {
                 // fallback to work dir
                 File fallbackDirectory = new File(file.getParent(), "vault-work");
                 log.info("Trying to extract package info from fallback folder '" + fallbackDirectory + "' as no package is availabe for the given dependency " + this);
-                info = DefaultPackageInfo.read(fallbackDirectory);
+                info = metadataCache.getPackageInfo(fallbackDirectory);
             }
         } else {
-            info = DefaultPackageInfo.read(file);
+            info = metadataCache.getPackageInfo(file);
         }
         if (info != null) {
             PackageId id = info.getId();
@@ -240,6 +260,19 @@ public class MavenBasedPackageDependency {
         return null;
     }
 
+    /**
+     * Adds all configured fields to the given fingerprint.
+     * @param fingerprint the fingerprint
+     */
+    void addToFingerprint(@NotNull InputFingerprint fingerprint) {
+        fingerprint.addValue("group", group);
+        fingerprint.addValue("groupId", groupId);
+        fingerprint.addValue("name", name);
+        fingerprint.addValue("artifactId", artifactId);
+        fingerprint.addValue("classifier", classifier);
+        fingerprint.addValue("version", version);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("Dependency{");
@@ -21,6 +21,9 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ArtifactIndex;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.CompiledStringFilterSet;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.InputFingerprint;
 import org.apache.jackrabbit.filevault.maven.packaging.impl.StringFilterSet;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.maven.artifact.Artifact;
@@ -127,18 +130,49 @@ public class SimpleEmbedded {
 
     public Collection<Artifact> getMatchingArtifacts(final Collection<Artifact> deps) {
         final List<Artifact> matches = new ArrayList<Artifact>();
+        final CompiledStringFilterSet groupIds = groupId.compile();
+        final CompiledStringFilterSet artifactIds = artifactId.compile();
         for (Artifact artifact : deps) {
-            if (groupId.contains(artifact.getGroupId())
-                    && artifactId.contains(artifact.getArtifactId())
-                    && (scope == null || scope.include(artifact))
-                    && (type == null || type.contains(artifact.getType()))
-                    && (classifier == null || classifier.contains(artifact.getClassifier()))) {
+            if (groupIds.contains(artifact.getGroupId())
+                    && artifactIds.contains(artifact.getArtifactId())
+                    && matchesScopeTypeAndClassifier(artifact)) {
                 matches.add(artifact);
             }
         }
         return matches;
     }
 
+    /**
+     * Same as {@link #getMatchingArtifacts(MavenProject)} but evaluated against an index which should be shared between all
+     * embeds of one execution.
+     * @param index the index of the project's artifacts
+     * @return the matching artifacts
+     */
+    public Collection<Artifact> getMatchingArtifacts(final ArtifactIndex index) {
+        return index.getMatchingArtifacts(excludeTransitive, groupId, artifactId, this::matchesScopeTypeAndClassifier);
+    }
+
+    private boolean matchesScopeTypeAndClassifier(Artifact artifact) {
+        return (scope == null || scope.include(artifact))
+                && (type == null || type.compile().contains(artifact.getType()))
+                && (classifier == null || classifier.compile().contains(artifact.getClassifier()));
+    }
+
+    /**
+     * Adds all fields of this configuration to the given fingerprint.
+     * @param fingerprint the fingerprint
+     */
+    void addToFingerprint(@NotNull InputFingerprint fingerprint) {
+        fingerprint.addValue("groupId", groupId.toString());
+        fingerprint.addValue("artifactId", artifactId.toString());
+        fingerprint.addValue("scope", scope != null ? scope.getScope() : null);
+        fingerprint.addValue("type", type != null ? type.toString() : null);
+        fingerprint.addValue("classifier", classifier != null ? classifier.toString() : null);
+        fingerprint.addValue("filter", filter);
+        fingerprint.addValue("isAllVersionsFilter", isAllVersionsFilter);
+        fingerprint.addValue("excludeTransitive", excludeTransitive);
+    }
+
     @NotNull
     public StringBuilder toString(@Nullable StringBuilder builder) {
         if (builder == null) {
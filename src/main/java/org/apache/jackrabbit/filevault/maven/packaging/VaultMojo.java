@@ -19,7 +19,14 @@ package org.apache.jackrabbit.filevault.maven.packaging;
 import static org.codehaus.plexus.archiver.util.DefaultFileSet.fileSet;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -27,14 +34,41 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
+import java.util.zip.Deflater;
+
+import org.apache.jackrabbit.filevault.maven.packaging.impl.CanonicalEntryOrder;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.CompressionPolicy;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ContentHashIndex;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.FileTreeSnapshot;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.FilterRoot;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.InputFingerprint;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageSplitter;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageSplitter.SubPackage;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PathFilterPruner;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PathFingerprintSet;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.StreamingResourceFilter;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.TokenScanner;
 import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.jackrabbit.vault.util.Constants;
@@ -57,10 +91,12 @@ import org.apache.maven.shared.filtering.MavenFileFilter;
 import org.apache.maven.shared.filtering.MavenFilteringException;
 import org.apache.maven.shared.filtering.MavenResourcesExecution;
 import org.apache.maven.shared.filtering.MavenResourcesFiltering;
+import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
 import org.codehaus.plexus.archiver.FileSet;
 import org.codehaus.plexus.archiver.jar.ManifestException;
 import org.codehaus.plexus.archiver.util.DefaultFileSet;
-import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.components.io.fileselectors.FileSelector;
+import org.codehaus.plexus.components.io.resources.ResourceFactory;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.StringUtils;
 import org.jetbrains.annotations.NotNull;
@@ -69,10 +105,40 @@ import org.jetbrains.annotations.NotNull;
 @Mojo(name = "package", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.COMPILE, threadSafe = true)
 public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
 
-    private static final String PACKAGE_TYPE = "zip";
+    static final String PACKAGE_TYPE = "zip";
 
     static final String PACKAGE_EXT = "." + PACKAGE_TYPE;
 
+    /** The name of the file below the {@link AbstractMetadataPackageMojo#workDirectory} storing the fingerprint of the last execution's inputs. */
+    static final String FINGERPRINT_FILE_NAME = "package.fingerprint";
+
+    /** The name of the file below the {@link AbstractMetadataPackageMojo#workDirectory} recording the sources of the entries of the last created package. */
+    static final String INCREMENTAL_INDEX_FILE_NAME = "package.index";
+
+    /** The name of the file below the {@link AbstractMetadataPackageMojo#workDirectory} caching which source files contain filtering delimiters. */
+    static final String FILTERING_CACHE_FILE_NAME = "filtering.cache";
+
+    /** The name of the directory below the {@link AbstractMetadataPackageMojo#workDirectory} containing the sub packages and their metadata
+     * in case the package is split (see {@link VaultMojo#splitMaxSize}). */
+    static final String SPLIT_DIRECTORY_NAME = "split";
+
+    /** Files in the {@link AbstractMetadataPackageMojo#workDirectory} which are not supposed to end up in the package. */
+    private static final List<String> WORK_DIRECTORY_INTERNAL_FILES = Arrays.asList(FINGERPRINT_FILE_NAME, GenerateMetadataMojo.FINGERPRINT_FILE_NAME, INCREMENTAL_INDEX_FILE_NAME, FILTERING_CACHE_FILE_NAME,
+            SPLIT_DIRECTORY_NAME, SPLIT_DIRECTORY_NAME + "/**");
+
+    /** Files in the {@link AbstractMetadataPackageMojo#workDirectory} which are generated for the container and each sub package in case the package is split. */
+    private static final List<String> SPLIT_PACKAGE_METADATA_FILES = Arrays.asList(Constants.META_DIR + "/" + Constants.FILTER_XML,
+            Constants.META_DIR + "/" + Constants.PROPERTIES_XML, JarFile.MANIFEST_NAME);
+
+    /** The maximum value of {@link VaultMojo#compressionProbeSize} in kilobytes, as each compression thread allocates a buffer of that size. */
+    private static final int MAX_COMPRESSION_PROBE_SIZE = 4096;
+
+    private static final String FINGERPRINT_PROPERTY_INPUTS = "inputs";
+
+    private static final String FINGERPRINT_PROPERTY_OUTPUT_SIZE = "output.size";
+
+    private static final String FINGERPRINT_PROPERTY_OUTPUT_LAST_MODIFIED = "output.lastModified";
+
     private static final Collection<File> STATIC_META_INF_FILES = Arrays.asList(new File(Constants.META_DIR, Constants.CONFIG_XML),
             new File(Constants.META_DIR, Constants.SETTINGS_XML));
 
@@ -168,6 +234,164 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
     @Parameter(property="vault.supportMultiLineFiltering", defaultValue = "false")
     private boolean supportMultiLineFiltering;
 
+    /** The number of threads used to compress the package entries. With {@code 0} the default archiver implementation is used.
+     * Otherwise the entries are compressed concurrently but still written in a deterministic order, i.e. the resulting package
+     * does not depend on the number of threads (in combination with {@code outputTimestamp} it is reproducible).
+     * It is not byte-identical to the package written by the default archiver though: the manifest may have a different attribute order,
+     * parent directory entries may be placed and attributed differently and no archiver-specific extra fields are written.
+     * The names, contents and modification times of all other entries are the same.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.compressionThreads", defaultValue = "0")
+    private int compressionThreads;
+
+    /** List of file extensions (without leading dot, case-insensitive) whose entries are stored without compression in the package.
+     * Useful for content which is already compressed like embedded bundles, sub packages, images or videos, e.g.
+     * 
+     * <pre>
+     * &lt;storedFileExtensions&gt;
+     *   &lt;storedFileExtension&gt;jar&lt;/storedFileExtension&gt;
+     *   &lt;storedFileExtension&gt;zip&lt;/storedFileExtension&gt;
+     *   &lt;storedFileExtension&gt;png&lt;/storedFileExtension&gt;
+     * &lt;/storedFileExtensions&gt;
+     * </pre>
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.storedFileExtensions")
+    private List<String> storedFileExtensions;
+
+    /** List of {@link CompressionRule}s defining the compression level for entries matching an Ant-style path pattern (relative to the package root).
+     * The first matching rule wins, level {@code 0} stores the entry without compression.
+     * Entries with one of the {@link #storedFileExtensions} are always stored.
+     * 
+     * @since 1.1.3 */
+    @Parameter
+    private List<CompressionRule> compressionRules;
+
+    /** The number of kilobytes which are deflated upfront for each compressed entry. In case those don't shrink the entry is stored without
+     * compression instead. {@code 0} disables probing, the maximum is {@code 4096} (i.e. 4 MB), as each of the {@link #compressionThreads}
+     * allocates a buffer of that size.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.compressionProbeSize", defaultValue = "0")
+    private int compressionProbeSize;
+
+    /** Set to {@code true} to skip creating the package in case neither its inputs nor the package created by the previous execution
+     * have changed. The inputs are the paths, sizes and modification dates of all source files, the generated metadata, the embedded
+     * files and the relevant parameters of this goal. Their fingerprint is stored in the {@link AbstractMetadataPackageMojo#workDirectory}.
+     * If the package is up to date it is only attached as project artifact.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.skipIfUpToDate", defaultValue = "false")
+    private boolean skipIfUpToDate;
+
+    /** Set to {@code true} to only compress the entries whose source files have changed (in size or modification date) since the previous
+     * execution. The compressed data of all other entries is copied from the previously created package. The result is equal to the
+     * one of a full build.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.incremental", defaultValue = "false")
+    private boolean incremental;
+
+    /** Set to {@code true} to filter the resources (see {@link #enableJcrRootFiltering} and {@link #enableMetaInfFiltering}) while
+     * writing them to the package instead of creating filtered copies below {@code target/filteredFiles} first.
+     * The {@link #delimiters}, {@link #escapeString} and {@link #nonFilteredFileExtensions} are respected in the same way.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.streamFiltering", defaultValue = "false")
+    private boolean streamFiltering;
+
+    /** Set to {@code true} to package the {@code jcr_root} source directory without keeping its entries in memory. The source directory
+     * is walked once for detecting duplicates and once for the check of uncovered files, its entries are only enumerated again while
+     * writing the package. The entry names for detecting uncovered source files and for skipping duplicate entries in the package are kept
+     * in compact sets indexed by their 64-bit fingerprints, which store the names UTF-8 encoded in large pages.
+     * <p>
+     * The memory required per entry is bounded to at most 64 bytes plus the length of the entry name for each of the two sets, plus the central directory record
+     * which is kept by the ZIP writer until the package is complete (around 150 bytes plus twice the length of the entry name). The
+     * {@link #leanZipWriter} only keeps the serialized record (46 bytes plus the length of the entry name) and spills it to a temporary
+     * file once the central directory exceeds 1 MB. Only the {@link #incremental} mode keeps an additional index of all entries in memory.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.boundedMemory", defaultValue = "false")
+    private boolean boundedMemory;
+
+    /** Set to {@code true} to write the package with a lean ZIP writer instead of the one from Commons Compress. It writes the local headers
+     * of the already compressed entries directly and serializes their central directory records immediately. The compression threads reuse
+     * their deflaters and buffers and the sizes and modification dates of the source files are taken over from the directory scan instead
+     * of being looked up again. Stored entries exceeding 1 MB, usually embedded bundles and sub packages (see {@link #storedFileExtensions}),
+     * are transferred directly from their source files into the package after their CRC has been calculated by the compression threads.
+     * Always uses the concurrent compression (see {@link #compressionThreads}).
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.leanZipWriter", defaultValue = "false")
+    private boolean leanZipWriter;
+
+    /** Set to {@code true} to only package the files below each filter root which are contained in the according filter set, i.e. the
+     * include and exclude rules are evaluated against the repository path of the node serialized by each file. Files ending with
+     * {@code .xml} are kept if they may be a full coverage aggregate of a contained node, directories and their {@code .content.xml}
+     * are kept as long as any of their descendants are kept. Pruned files are neither read nor added to the package, their number and
+     * size is logged. As they are no longer covered by the package they are reported by {@link #failOnUncoveredSourceFiles}.
+     * <p>
+     * Not supported in combination with {@link #boundedMemory}.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.pruneExcludedContent", defaultValue = "false")
+    private boolean pruneExcludedContent;
+
+    /** The maximum size in bytes of the content (i.e. the source files and embedded files) of a single package. In case it is exceeded
+     * the filter roots are distributed in the order of the filter among several sub packages, each one containing consecutive filter roots
+     * together with the embedded files covered by them, and a {@code filter.xml} with only the according filter sets. The sub packages get the
+     * package id of this package with the suffix {@code -part<n>} appended to the name, each one depending on its predecessor. Their
+     * {@code properties.xml} and {@code MANIFEST.MF} are derived from the ones of this package, a package type {@code mixed} is detected
+     * again for each sub package from its own content. The resulting package is a container for all sub packages (below {@code /etc/packages}).
+     * A single filter root exceeding the limit on its own ends up in a separate sub package. The sizes are taken from the directory scan,
+     * no file is read for partitioning. {@code 0} disables the limit.
+     * <p>
+     * Requires a {@code jcr_root} source directory and a filter, ignored with a warning in combination with {@link #boundedMemory},
+     * not supported in combination with {@link #incremental} (for the sub packages).
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.splitMaxSize", defaultValue = "0")
+    private long splitMaxSize;
+
+    /** The maximum number of entries (files and directories) of a single package. Otherwise the same as {@link #splitMaxSize}.
+     * {@code 0} disables the limit.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.splitMaxEntries", defaultValue = "0")
+    private int splitMaxEntries;
+
+    /** Set to {@code true} to write the entries of the package in a canonical order instead of the order in which they are collected:
+     * {@code META-INF/MANIFEST.MF} first, then {@code META-INF/vault}, then {@code jcr_root} with each directory (and its {@code .content.xml})
+     * directly preceding its descendants. This allows consumers to install the package while reading it sequentially.
+     * All entries are collected before the first one is written, which increases the memory usage with {@link #boundedMemory}.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.canonicalEntryOrder", defaultValue = "false")
+    private boolean canonicalEntryOrder;
+
+    /** Set to {@code true} to fail the build in case the entries of the package (also the one being up to date, see {@link #skipIfUpToDate})
+     * are not stored in the order described at {@link #canonicalEntryOrder}.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.verifyEntryOrder", defaultValue = "false")
+    private boolean verifyEntryOrder;
+
+    /** Set to {@code true} to add an index with the path, size and content hash of each file entry of the package at
+     * {@code META-INF/vault/content-index.json}. It allows to compare two packages without inflating any entry. The hashes are calculated
+     * from the bytes being read for compression (by the compression threads), so no additional pass over the sources is necessary.
+     * The index is the last entry of the package.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.contentHashIndex", defaultValue = "false")
+    private boolean contentHashIndex;
+
+    /** The algorithm of the content hashes in the {@link #contentHashIndex}, either {@code XXH64} (the 64-bit xxHash) or {@code SHA_256}.
+     * 
+     * @since 1.1.3 */
+    @Parameter(property = "vault.contentHashAlgorithm", defaultValue = "XXH64")
+    private ContentHashIndex.Algorithm contentHashAlgorithm;
+
     @Parameter(defaultValue = "${session}", readonly = true, required = false)
     protected MavenSession session;
 
@@ -192,6 +416,12 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
     /** All file names (relative to the zip root) which are supposed to not get overwritten in the package. The value is the source file. */
     private Map<File, File> protectedFiles = new HashMap<>();
 
+    private List<FilterWrapper> filterWrappers;
+
+    private StreamingResourceFilter streamingResourceFilter;
+
+    private TokenScanner tokenScanner;
+
     /** Creates a {@link FileSet} for the archiver
      * 
      * @param directory the directory
@@ -232,20 +462,126 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
      */
     protected void addFileToArchive(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver archiver, File sourceFile,
             String destFileName) throws MavenFilteringException {
+        addFilesToArchive(mavenResourcesExecution, archiver, Collections.singletonMap(destFileName, sourceFile));
+    }
+
+    /**
+     * Adds files to the archiver and optionally applies some filtering. All files which need filtering are filtered with a single execution.
+     * @param mavenResourcesExecution
+     * @param archiver
+     * @param files a map with key = file name in the package and value = source file (the files are added in the iteration order)
+     * @throws MavenFilteringException in case filtering failed
+     */
+    protected void addFilesToArchive(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver archiver, Map<String, File> files)
+            throws MavenFilteringException {
+        Map<String, File> preparedFiles = prepareFilteredFiles(mavenResourcesExecution, files);
+        for (Map.Entry<String, File> entry : preparedFiles.entrySet()) {
+            addPreparedFileToArchive(mavenResourcesExecution, archiver, entry.getValue(), entry.getKey());
+        }
+    }
+
+    /**
+     * Creates filtered copies of all given files whose destination requires filtering with a single filtering execution.
+     * Does nothing in case of {@link #streamFiltering}.
+     * @param mavenResourcesExecution
+     * @param files a map with key = file name in the package and value = source file
+     * @return a map with key = file name in the package and value = filtered copy or source file (in the iteration order of {@code files})
+     * @throws MavenFilteringException in case filtering failed
+     */
+    private Map<String, File> prepareFilteredFiles(MavenResourcesExecution mavenResourcesExecution, Map<String, File> files) throws MavenFilteringException {
+        Map<String, File> preparedFiles = new LinkedHashMap<>();
+        // one resource per source and target directory
+        Map<List<File>, Resource> resources = new LinkedHashMap<>();
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            File sourceFile = entry.getValue();
+            Path destFile = Paths.get(entry.getKey());
+            if (!streamFiltering && requiresFiltering(mavenResourcesExecution, destFile, sourceFile)) {
+                getLog().debug("Apply filtering to " + sourceFile);
+                File targetDirectory = getFilteredFilesDirectory(destFile.getParent().toString());
+                Resource resource = resources.computeIfAbsent(Arrays.asList(sourceFile.getParentFile(), targetDirectory), key -> {
+                    Resource newResource = new Resource();
+                    newResource.setDirectory(key.get(0).getPath());
+                    newResource.setFiltering(true);
+                    newResource.setTargetPath(targetDirectory.getPath());
+                    return newResource;
+                });
+                resource.addInclude(sourceFile.getName());
+                sourceFile = new File(targetDirectory, sourceFile.getName());
+            }
+            preparedFiles.put(entry.getKey(), sourceFile);
+        }
+        if (!resources.isEmpty()) {
+            filterResources(mavenResourcesExecution, new ArrayList<>(resources.values()));
+        }
+        return preparedFiles;
+    }
+
+    /**
+     * Adds a file which has been returned by {@link #prepareFilteredFiles(MavenResourcesExecution, Map)} to the archiver.
+     * @param mavenResourcesExecution
+     * @param archiver
+     * @param file the filtered copy or source file
+     * @param destFileName
+     * @throws MavenFilteringException in case filtering failed
+     */
+    private void addPreparedFileToArchive(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver archiver, File file,
+            String destFileName) throws MavenFilteringException {
         Path destFile = Paths.get(destFileName);
-        if ((destFile.startsWith(Constants.ROOT_DIR) && enableJcrRootFiltering) ||
-            (destFile.startsWith(Constants.META_INF) && enableMetaInfFiltering)) {
-            getLog().info("Apply filtering to " + sourceFile);
-            Resource resource = new Resource();
-            resource.setDirectory(sourceFile.getParent());
-            resource.setIncludes(Collections.singletonList(sourceFile.getName()));
-            resource.setFiltering(true);
-            File newTargetDirectory = applyFiltering(destFile.getParent().toString(), mavenResourcesExecution, resource);
-            sourceFile = new File(newTargetDirectory, sourceFile.getName());
+        if (streamFiltering && requiresFiltering(mavenResourcesExecution, destFile, file)) {
+            getLog().info("Apply filtering to " + file);
+            String parent = destFile.getParent() != null ? normalizeEntryName(destFile.getParent().toString()) + "/" : "";
+            DefaultFileSet fileSet = fileSet(file.getParentFile())
+                    .prefixed(parent)
+                    .include(new String[] { file.getName() })
+                    .includeEmptyDirs(false);
+            fileSet.setStreamTransformer(getStreamingResourceFilter(mavenResourcesExecution));
+            archiver.addFileSet(fileSet);
+            return;
         }
-        getLog().debug("Adding file '" + sourceFile + "' to package at '" + destFileName + "'");
-        archiver.addFile(sourceFile, destFileName);
+        getLog().debug("Adding file '" + file + "' to package at '" + destFileName + "'");
+        archiver.addTransferableFile(file, destFileName);
+    }
 
+    private boolean isFilteringEnabled(Path destFile) {
+        return (destFile.startsWith(Constants.ROOT_DIR) && enableJcrRootFiltering) ||
+                (destFile.startsWith(Constants.META_INF) && enableMetaInfFiltering);
+    }
+
+    /**
+     * 
+     * @param mavenResourcesExecution
+     * @param destFile the file name in the package
+     * @param sourceFile the source file
+     * @return {@code true} in case filtering is enabled for the given file and it may be modified by the filtering, i.e. it
+     * contains the begin token of one of the {@link #delimiters}
+     * @throws MavenFilteringException in case the source file could not be scanned
+     */
+    private boolean requiresFiltering(MavenResourcesExecution mavenResourcesExecution, Path destFile, File sourceFile) throws MavenFilteringException {
+        if (!isFilteringEnabled(destFile)
+                || !mavenResourcesFiltering.filteredFileExtension(sourceFile.getName(), mavenResourcesExecution.getNonFilteredFileExtensions())) {
+            return false;
+        }
+        try {
+            if (!getTokenScanner(mavenResourcesExecution).containsToken(sourceFile)) {
+                getLog().debug("Skip filtering of " + sourceFile + " as it does not contain any delimiter");
+                return false;
+            }
+        } catch (IOException e) {
+            throw new MavenFilteringException("Could not scan " + sourceFile + " for delimiters", e);
+        }
+        return true;
+    }
+
+    private TokenScanner getTokenScanner(MavenResourcesExecution mavenResourcesExecution) throws IOException {
+        if (tokenScanner == null) {
+            tokenScanner = new TokenScanner(mavenResourcesExecution.getDelimiters(), getResourceCharset(mavenResourcesExecution))
+                    .loadCache(new File(workDirectory, FILTERING_CACHE_FILE_NAME));
+        }
+        return tokenScanner;
+    }
+
+    private static Charset getResourceCharset(MavenResourcesExecution mavenResourcesExecution) {
+        return mavenResourcesExecution.getEncoding() != null ? Charset.forName(mavenResourcesExecution.getEncoding()) : Charset.defaultCharset();
     }
 
     /**
@@ -261,6 +597,11 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
             (fileSet.getPrefix().startsWith(Constants.META_INF) && enableMetaInfFiltering)) {
             
             getLog().info("Apply filtering to FileSet below " + fileSet.getDirectory());
+            if (streamFiltering) {
+                fileSet.setStreamTransformer(getStreamingResourceFilter(mavenResourcesExecution));
+                archiver.addFileSet(fileSet);
+                return;
+            }
             Resource resource = new Resource();
             resource.setDirectory(fileSet.getDirectory().getPath());
             if (fileSet.getIncludes() != null) {
@@ -278,6 +619,41 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
         archiver.addFileSet(fileSet);
     }
 
+    /**
+     * Adds all entries of a snapshot to the archiver and optionally applies some filtering.
+     * @param mavenResourcesExecution
+     * @param archiver
+     * @param snapshot the snapshot
+     * @param prefix the prefix of the entry names
+     * @throws MavenFilteringException in case filtering failed
+     * @throws IOException in case some resource could not be created
+     */
+    protected void addSnapshotToArchive(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver archiver, FileTreeSnapshot snapshot, String prefix) throws MavenFilteringException, IOException {
+        // ignore directories added with no prefix (workDirectory)
+        boolean isFiltering = (prefix.startsWith(Constants.ROOT_DIR) && enableJcrRootFiltering) ||
+            (prefix.startsWith(Constants.META_INF) && enableMetaInfFiltering);
+        getLog().debug("Adding directory '" + snapshot.getDirectory() + "' to package at '" + prefix + "'");
+        String rootName = normalizeEntryName(prefix);
+        if (!rootName.isEmpty()) {
+            archiver.addResource(ResourceFactory.createResource(snapshot.getDirectory(), rootName), rootName, -1);
+        }
+        // only the files containing delimiters are filtered, all others are added directly
+        Map<String, File> filteredFiles = new LinkedHashMap<>();
+        for (Iterator<FileTreeSnapshot.Entry> iterator = snapshot.getEntries().iterator(); iterator.hasNext();) {
+            FileTreeSnapshot.Entry entry = iterator.next();
+            String name = normalizeEntryName(prefix + "/" + entry.getPath());
+            if (!entry.isDirectory() && isFiltering) {
+                filteredFiles.put(name, entry.getFile());
+            } else {
+                archiver.addSnapshotEntry(entry, name);
+            }
+        }
+        if (!filteredFiles.isEmpty()) {
+            getLog().info("Apply filtering to files below " + snapshot.getDirectory());
+            addFilesToArchive(mavenResourcesExecution, archiver, filteredFiles);
+        }
+    }
+
     private static String getString(FileSet fileSet) {
         StringBuilder sb = new StringBuilder("FileSet [");
         sb.append("directory=").append(fileSet.getDirectory());
@@ -288,17 +664,60 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
     }
 
     private @NotNull File applyFiltering(String prefix, MavenResourcesExecution mavenResourcesExecution, Resource resource) throws MavenFilteringException {
-        File targetPath = new File(project.getBuild().getDirectory(), "filteredFiles");
-        mavenResourcesExecution.setOutputDirectory(targetPath);
-        targetPath = new File(targetPath, prefix);
+        File targetPath = getFilteredFilesDirectory(prefix);
         // which path to set as target (is a temporary path)
-        getLog().debug("Applying filtering to resource " + resource);
         resource.setTargetPath(targetPath.getPath());
-        mavenResourcesExecution.setResources(Collections.singletonList(resource));
-        mavenResourcesFiltering.filterResources(mavenResourcesExecution);
+        filterResources(mavenResourcesExecution, Collections.singletonList(resource));
         return targetPath;
     }
 
+    private @NotNull File getFilteredFilesDirectory(String prefix) {
+        return new File(new File(project.getBuild().getDirectory(), "filteredFiles"), prefix);
+    }
+
+    private void filterResources(MavenResourcesExecution mavenResourcesExecution, List<Resource> resources) throws MavenFilteringException {
+        for (Resource resource : resources) {
+            getLog().debug("Applying filtering to resource " + resource);
+        }
+        mavenResourcesExecution.setOutputDirectory(new File(project.getBuild().getDirectory(), "filteredFiles"));
+        // the filter wrappers are only created once per execution of this goal (instead of once per filtering execution)
+        mavenResourcesExecution.setFilterWrappers(getFilterWrappers(mavenResourcesExecution));
+        mavenResourcesExecution.setUseDefaultFilterWrappers(false);
+        mavenResourcesExecution.setResources(resources);
+        mavenResourcesFiltering.filterResources(mavenResourcesExecution);
+    }
+
+    /**
+     * 
+     * @param mavenResourcesExecution the execution from which to take the filtering configuration
+     * @return the filter wrappers which are shared by all filtered resources of this execution
+     * @throws MavenFilteringException in case the filter wrappers could not be created
+     */
+    private List<FilterWrapper> getFilterWrappers(MavenResourcesExecution mavenResourcesExecution) throws MavenFilteringException {
+        if (filterWrappers == null) {
+            long startTime = System.nanoTime();
+            filterWrappers = mavenFileFilter.getDefaultFilterWrappers(mavenResourcesExecution);
+            getLog().debug("Created filter wrappers in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        }
+        return filterWrappers;
+    }
+
+    /**
+     * 
+     * @param mavenResourcesExecution the execution from which to take the filtering configuration
+     * @return the filter which is shared by all filtered resources of this execution
+     * @throws MavenFilteringException in case the filter wrappers could not be created
+     */
+    private StreamingResourceFilter getStreamingResourceFilter(MavenResourcesExecution mavenResourcesExecution) throws MavenFilteringException {
+        if (streamingResourceFilter == null) {
+            Charset charset = getResourceCharset(mavenResourcesExecution);
+            List<String> nonFilteredFileExtensions = mavenResourcesExecution.getNonFilteredFileExtensions();
+            streamingResourceFilter = new StreamingResourceFilter(getFilterWrappers(mavenResourcesExecution), charset,
+                    name -> mavenResourcesFiltering.filteredFileExtension(name, nonFilteredFileExtensions));
+        }
+        return streamingResourceFilter;
+    }
+
     private boolean isOverwritingProtectedFile(File zipFile, File sourceFile, boolean isProtected) {
         if (protectedFiles.containsKey(zipFile)) {
             return true;
@@ -309,41 +728,33 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
         return false;
     }
 
-    /** @param fileSet
+    /** @param snapshot
+     * @param prefix
      * @param isProtected
      * @return a map with key = file path in zip and value = absolute source file */
-    private Map<File, File> getOverwrittenProtectedFiles(FileSet fileSet, boolean isProtected) {
-        // copied from PlexusIoFileResourceCollection.getResources()
+    private Map<File, File> getOverwrittenProtectedFiles(FileTreeSnapshot snapshot, String prefix, boolean isProtected) {
         Map<File, File> overwrittenFiles = new HashMap<>();
-        final DirectoryScanner ds = new DirectoryScanner();
-        final File dir = fileSet.getDirectory();
-        ds.setBasedir(dir);
-        final String[] inc = fileSet.getIncludes();
-        if (inc != null && inc.length > 0) {
-            ds.setIncludes(inc);
-        }
-        final String[] exc = fileSet.getExcludes();
-        if (exc != null && exc.length > 0) {
-            ds.setExcludes(exc);
-        }
-        if (fileSet.isUsingDefaultExcludes()) {
-            ds.addDefaultExcludes();
-        }
-        ds.setCaseSensitive(fileSet.isCaseSensitive());
-        ds.setFollowSymlinks(false);
-        ds.scan();
-
-        String[] files = ds.getIncludedFiles();
-        for (String file : files) {
-            File zipFileEntry = new File(fileSet.getPrefix() + file);
-            File sourceFile = new File(fileSet.getDirectory(), file);
-            if (isOverwritingProtectedFile(zipFileEntry, sourceFile, isProtected)) {
-                overwrittenFiles.put(zipFileEntry, sourceFile);
+        for (Iterator<FileTreeSnapshot.Entry> iterator = snapshot.getFiles().iterator(); iterator.hasNext();) {
+            FileTreeSnapshot.Entry entry = iterator.next();
+            File zipFileEntry = new File(prefix + entry.getPath());
+            if (isOverwritingProtectedFile(zipFileEntry, entry.getFile(), isProtected)) {
+                overwrittenFiles.put(zipFileEntry, entry.getFile());
             }
         }
         return overwrittenFiles;
     }
 
+    private FileTreeSnapshot createSnapshot(File directory) throws IOException {
+        return createSnapshot(directory, excludes);
+    }
+
+    private FileTreeSnapshot createSnapshot(File directory, Collection<String> excludes) throws IOException {
+        long startTime = System.nanoTime();
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, excludes, addDefaultExcludes);
+        getLog().debug("Scanned '" + directory + "' in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        return snapshot;
+    }
+
     protected MavenResourcesExecution setupMavenResourcesExecution() {
         MavenResourcesExecution mavenResourcesExecution = new MavenResourcesExecution();
         mavenResourcesExecution.setEscapeString(escapeString);
@@ -389,24 +800,95 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
             Filters filters = loadGeneratedFilterFile();
             Map<String, File> embeddedFiles = getEmbeddedFilesMap();
 
-            ContentPackageArchiver contentPackageArchiver = new ContentPackageArchiver();
+            // scan all directories only once
+            FileTreeSnapshot metaInfSnapshot = null;
+            if (metaInfDirectory != null) {
+                // the filter.xml should always come from the work directory
+                metaInfSnapshot = createSnapshot(metaInfDirectory).exclude(Collections.singletonList(Constants.FILTER_XML));
+            }
+            FileTreeSnapshot workSnapshot = createSnapshot(workDirectory).exclude(WORK_DIRECTORY_INTERNAL_FILES);
+            boolean hasJcrSource = jcrSourceDirectory != null && jcrSourceDirectory.exists();
+            FileTreeSnapshot jcrSnapshot = null;
+            if (hasJcrSource && !boundedMemory) {
+                // the excludes are evaluated relative to each filter root (see prepareFilterRoot(...))
+                jcrSnapshot = createSnapshot(jcrSourceDirectory, Collections.emptyList());
+            } else if (hasJcrSource && pruneExcludedContent) {
+                getLog().warn("Parameter 'pruneExcludedContent' is not supported in combination with 'boundedMemory' and therefore ignored");
+            }
+
+            File fingerprintFile = new File(workDirectory, FINGERPRINT_FILE_NAME);
+            String fingerprint = null;
+            if (skipIfUpToDate) {
+                fingerprint = calculateInputFingerprint(metaInfSnapshot, workSnapshot, hasJcrSource ? jcrSourceDirectory : null, jcrSnapshot, embeddedFiles);
+                if (isUpToDate(fingerprintFile, fingerprint, finalFile)) {
+                    getLog().info("Content package " + finalFile + " is up to date, skip creating it.");
+                    verifyEntryOrder(finalFile);
+                    attachArtifact(finalFile);
+                    return;
+                }
+            }
+            // the fingerprint is only valid once the package has been successfully created
+            Files.deleteIfExists(fingerprintFile.toPath());
+
+            ContentPackageArchiver contentPackageArchiver = createContentPackageArchiver(incremental);
+
+            // partition the content upfront, as the metadata of the container differs
+            List<FilterRoot> filterRoots = null;
+            List<SubPackage> subPackages = Collections.emptyList();
+            FileTreeSnapshot packageMetaInfSnapshot = metaInfSnapshot;
+            FileTreeSnapshot packageWorkSnapshot = workSnapshot;
+            File manifestFile = getGeneratedManifestFile();
+            if (splitMaxSize > 0 || splitMaxEntries > 0) {
+                if (boundedMemory) {
+                    getLog().warn("Parameters 'splitMaxSize' and 'splitMaxEntries' are not supported in combination with 'boundedMemory' and therefore ignored");
+                } else if (jcrSnapshot == null || filters.getFilterSets().isEmpty()) {
+                    getLog().warn("Parameters 'splitMaxSize' and 'splitMaxEntries' require a jcr_root source directory and a filter and are therefore ignored");
+                } else {
+                    filterRoots = prepareFilterRoots(mavenResourcesExection, jcrSnapshot, filters.getFilterSets(), embeddedFiles);
+                    Properties properties = loadPackageProperties(mavenResourcesExection, metaInfSnapshot, workSnapshot);
+                    PackageSplitter splitter = new PackageSplitter(splitMaxSize, splitMaxEntries);
+                    subPackages = splitter.split(filters, filterRoots, embeddedFiles, jcrSnapshot, properties);
+                    if (subPackages.size() > 1) {
+                        getLog().info("Splitting content package into " + subPackages.size() + " sub packages");
+                        for (SubPackage subPackage : subPackages) {
+                            if (splitter.isExceeding(subPackage)) {
+                                getLog().warn("Filter root '" + subPackage.getFilter().getFilterSets().get(0).getRoot() + "' exceeds the maximum package size on its own ("
+                                        + subPackage.getSize() + " bytes, " + subPackage.getEntries() + " entries), it ends up in a separate sub package");
+                            }
+                        }
+                        File splitDirectory = new File(workDirectory, SPLIT_DIRECTORY_NAME);
+                        FileUtils.deleteDirectory(splitDirectory);
+                        Manifest manifest;
+                        try (InputStream input = new FileInputStream(manifestFile)) {
+                            manifest = new Manifest(input);
+                        }
+                        splitter.writeMetadata(splitDirectory, properties, manifest, project.getName());
+                        manifestFile = new File(splitDirectory, JarFile.MANIFEST_NAME);
+                        // the container only keeps the static metadata
+                        if (metaInfSnapshot != null) {
+                            packageMetaInfSnapshot = metaInfSnapshot.exclude(Collections.singletonList(Constants.PROPERTIES_XML));
+                        }
+                        packageWorkSnapshot = workSnapshot.exclude(SPLIT_PACKAGE_METADATA_FILES);
+                        contentPackageArchiver.addFile(new File(splitDirectory, Constants.FILTER_XML), Constants.META_DIR + "/" + Constants.FILTER_XML);
+                        contentPackageArchiver.addFile(new File(splitDirectory, Constants.PROPERTIES_XML), Constants.META_DIR + "/" + Constants.PROPERTIES_XML);
+                    } else {
+                        subPackages = Collections.emptyList();
+                    }
+                }
+            }
 
             // A map with key = relative file in zip and value = absolute source file name)
             Map<File, File> duplicateFiles = new HashMap<>();
-            contentPackageArchiver.setIncludeEmptyDirs(true);
-            if (metaInfDirectory != null) {
+            if (packageMetaInfSnapshot != null) {
                 // first add the metadata from the metaInfDirectory (they should take precedence over the generated ones from workDirectory,
                 // except for the filter.xml, which should always come from the work directory)
-                DefaultFileSet fileSet = createFileSet(metaInfDirectory, Constants.META_DIR + "/",
-                        Collections.singletonList(Constants.FILTER_XML));
-                duplicateFiles.putAll(getOverwrittenProtectedFiles(fileSet, true));
-                addFileSetToArchive(mavenResourcesExection, contentPackageArchiver, fileSet);
+                duplicateFiles.putAll(getOverwrittenProtectedFiles(packageMetaInfSnapshot, Constants.META_DIR + "/", true));
+                addSnapshotToArchive(mavenResourcesExection, contentPackageArchiver, packageMetaInfSnapshot, Constants.META_DIR + "/");
             }
             // then add all files from the workDirectory (they might overlap with the ones from metaInfDirectory, but the duplicates are
             // just ignored in the package)
-            DefaultFileSet fileSet = createFileSet(workDirectory, "");
             // issue warning in case of overlaps
-            Map<File, File> overwrittenWorkFiles = getOverwrittenProtectedFiles(fileSet, true);
+            Map<File, File> overwrittenWorkFiles = getOverwrittenProtectedFiles(packageWorkSnapshot, "", true);
             for (Entry<File, File> entry : overwrittenWorkFiles.entrySet()) {
                 String message = "Found duplicate file '" + entry.getKey() + "' from sources '" + protectedFiles.get(entry.getKey())
                         + "' and '" + entry.getValue() + "'.";
@@ -418,18 +900,33 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
                     getLog().warn(message);
                 }
             }
-            addFileSetToArchive(mavenResourcesExection, contentPackageArchiver, fileSet);
+            addSnapshotToArchive(mavenResourcesExection, contentPackageArchiver, packageWorkSnapshot, "");
 
-            // add embedded files
+            // add embedded files (in case of sub packages they are added to those)
             for (Map.Entry<String, File> entry : embeddedFiles.entrySet()) {
                 protectedFiles.put(new File(entry.getKey()), entry.getValue());
-                addFileToArchive(mavenResourcesExection, contentPackageArchiver, entry.getValue(), entry.getKey());
+            }
+            if (subPackages.isEmpty()) {
+                addFilesToArchive(mavenResourcesExection, contentPackageArchiver, embeddedFiles);
             }
 
             // include content from build only if it exists
-            if (jcrSourceDirectory != null && jcrSourceDirectory.exists()) {
-                Map<File, File> overwrittenFiles = addSourceDirectory(mavenResourcesExection, contentPackageArchiver, jcrSourceDirectory, filters, embeddedFiles);
-                duplicateFiles.putAll(overwrittenFiles);
+            if (hasJcrSource) {
+                PathFingerprintSet coveredEntries = null;
+                Collection<String> coveredFileNames = null;
+                if (boundedMemory) {
+                    coveredEntries = new PathFingerprintSet();
+                    for (String embeddedFile : embeddedFiles.keySet()) {
+                        coveredEntries.add(normalizeEntryName(embeddedFile));
+                    }
+                    duplicateFiles.putAll(addSourceDirectory(mavenResourcesExection, contentPackageArchiver, jcrSourceDirectory, filters, embeddedFiles, coveredEntries));
+                } else if (!subPackages.isEmpty()) {
+                    coveredFileNames = new ArrayList<>();
+                    duplicateFiles.putAll(addSubPackages(mavenResourcesExection, contentPackageArchiver, metaInfSnapshot, workSnapshot, jcrSnapshot,
+                            subPackages, coveredFileNames));
+                } else {
+                    duplicateFiles.putAll(addSourceDirectory(mavenResourcesExection, contentPackageArchiver, jcrSnapshot, filters, embeddedFiles, filterRoots));
+                }
 
                 if (!duplicateFiles.isEmpty()) {
                     for (Entry<File, File> entry : duplicateFiles.entrySet()) {
@@ -448,8 +945,14 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
                 }
 
                 // check for uncovered files (i.e. files from the source which are not even added to the content package)
-                Collection<File> uncoveredFiles = getUncoveredFiles(jcrSourceDirectory, excludes, prefix,
-                        contentPackageArchiver.getFiles().keySet());
+                long startTime = System.nanoTime();
+                Collection<File> uncoveredFiles;
+                if (coveredEntries != null) {
+                    uncoveredFiles = getUncoveredFiles(jcrSourceDirectory, coveredEntries);
+                } else {
+                    uncoveredFiles = getUncoveredFiles(jcrSnapshot.exclude(excludes), prefix, coveredFileNames != null ? coveredFileNames : contentPackageArchiver.getFiles().keySet());
+                }
+                getLog().info("Checked filter coverage of source files in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
                 if (!uncoveredFiles.isEmpty()) {
                     for (File uncoveredFile : uncoveredFiles) {
                         String message = "File '" + uncoveredFile
@@ -471,88 +974,617 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
             mavenArchiver.setArchiver(contentPackageArchiver);
             mavenArchiver.setOutputFile(finalFile);
             mavenArchiver.configureReproducible(outputTimestamp);
-            mavenArchiver.createArchive(null, project, getMavenArchiveConfiguration(getGeneratedManifestFile()));
-
-            // set the file for the project's artifact and ensure the
-            // artifact is correctly handled with the "zip" handler
-            // (workaround for MNG-1682)
-            final Artifact projectArtifact = project.getArtifact();
-            projectArtifact.setFile(finalFile);
-            projectArtifact.setArtifactHandler(artifactHandlerManager.getArtifactHandler(PACKAGE_TYPE));
+            mavenArchiver.createArchive(null, project, getMavenArchiveConfiguration(manifestFile));
+            verifyEntryOrder(finalFile);
 
+            if (incremental) {
+                getLog().info("Copied " + contentPackageArchiver.getRawCopiedEntries() + " unchanged entries from the previous content package");
+            }
+            if (tokenScanner != null) {
+                tokenScanner.storeCache(new File(workDirectory, FILTERING_CACHE_FILE_NAME));
+            }
+            attachArtifact(finalFile);
+            if (fingerprint != null) {
+                storeFingerprint(fingerprintFile, fingerprint, finalFile);
+            }
         } catch (IllegalStateException | ManifestException | IOException | DependencyResolutionRequiredException | ConfigurationException | MavenFilteringException e) {
             throw new MojoExecutionException(e.toString(), e);
         }
     }
 
-    private Map<File, File> addSourceDirectory(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver contentPackageArchiver, File jcrSourceDirectory, Filters filters,
-            Map<String, File> embeddedFiles) throws MavenFilteringException {
+    /**
+     * 
+     * @param incremental {@code true} to reuse the compressed entries of the previously created package (see {@link #incremental})
+     * @return a new archiver configured according to the parameters of this goal
+     * @throws MojoExecutionException in case the compression configuration is invalid
+     * @throws IOException in case some filter file could not be read
+     */
+    private ContentPackageArchiver createContentPackageArchiver(boolean incremental) throws MojoExecutionException, IOException {
+        ContentPackageArchiver contentPackageArchiver = new ContentPackageArchiver();
+        contentPackageArchiver.setCompactEntryTracking(boundedMemory);
+        contentPackageArchiver.setLeanZipWriter(leanZipWriter);
+        contentPackageArchiver.setCanonicalEntryOrder(canonicalEntryOrder);
+        if (contentHashIndex) {
+            contentPackageArchiver.setContentHashAlgorithm(contentHashAlgorithm);
+        }
+        contentPackageArchiver.setCompressionThreads(compressionThreads);
+        contentPackageArchiver.setCompressionPolicy(getCompressionPolicy());
+        if (incremental) {
+            contentPackageArchiver.setIncrementalIndexFile(new File(workDirectory, INCREMENTAL_INDEX_FILE_NAME));
+            if (enableMetaInfFiltering || enableJcrRootFiltering) {
+                // filtered entries may change without their source files
+                InputFingerprint filteringFingerprint = new InputFingerprint();
+                addFilteringInputs(filteringFingerprint);
+                contentPackageArchiver.setIncrementalSettings("filtering=" + filteringFingerprint.getValue());
+            }
+        }
+        contentPackageArchiver.setIncludeEmptyDirs(true);
+        return contentPackageArchiver;
+    }
+
+    /**
+     * Verifies the order of the entries in the given package in case {@link #verifyEntryOrder} is set.
+     * @param finalFile the package
+     * @throws MojoFailureException in case the entries are not in canonical order
+     * @throws IOException in case the package could not be read
+     */
+    private void verifyEntryOrder(File finalFile) throws MojoFailureException, IOException {
+        if (!verifyEntryOrder) {
+            return;
+        }
+        String violation = CanonicalEntryOrder.findViolation(finalFile);
+        if (violation != null) {
+            throw new MojoFailureException("The entries of content package " + finalFile + " are not in canonical order: " + violation);
+        }
+        getLog().info("Verified the canonical entry order of content package " + finalFile);
+    }
+
+    private void attachArtifact(File finalFile) {
+        // set the file for the project's artifact and ensure the
+        // artifact is correctly handled with the "zip" handler
+        // (workaround for MNG-1682)
+        final Artifact projectArtifact = project.getArtifact();
+        projectArtifact.setFile(finalFile);
+        projectArtifact.setArtifactHandler(artifactHandlerManager.getArtifactHandler(PACKAGE_TYPE));
+    }
+
+    /**
+     * Calculates the fingerprint over everything which may have an effect on the resulting package.
+     * @param metaInfSnapshot the snapshot of the META-INF/vault source directory (may be {@code null})
+     * @param workSnapshot the snapshot of the work directory
+     * @param jcrSourceDirectory the jcr_root source directory (may be {@code null})
+     * @param jcrSnapshot the snapshot of the jcr_root source directory (may be {@code null}, in which case the directory is walked)
+     * @param embeddedFiles the embedded files
+     * @return the fingerprint
+     * @throws IOException in case some input could not be read
+     */
+    private String calculateInputFingerprint(FileTreeSnapshot metaInfSnapshot, FileTreeSnapshot workSnapshot, File jcrSourceDirectory, FileTreeSnapshot jcrSnapshot,
+            Map<String, File> embeddedFiles) throws IOException {
+        InputFingerprint fingerprint = new InputFingerprint();
+        fingerprint.addValue("pluginVersion", getClass().getPackage().getImplementationVersion());
+        fingerprint.addValue("project", project.getId());
+        fingerprint.addFile("pom", project.getFile());
+        fingerprint.addValue("finalName", finalName);
+        fingerprint.addValue("outputDirectory", outputDirectory);
+        fingerprint.addValue("prefix", prefix);
+        fingerprint.addValue("outputTimestamp", outputTimestamp);
+        fingerprint.addValue("excludes", excludes);
+        fingerprint.addValue("addDefaultExcludes", addDefaultExcludes);
+        fingerprint.addValue("failOnDuplicateEntries", failOnDuplicateEntries);
+        fingerprint.addValue("failOnUncoveredSourceFiles", failOnUncoveredSourceFiles);
+        fingerprint.addValue("compressionThreads", compressionThreads);
+        fingerprint.addValue("storedFileExtensions", storedFileExtensions);
+        fingerprint.addValue("compressionRules", compressionRules);
+        fingerprint.addValue("compressionProbeSize", compressionProbeSize);
+        fingerprint.addValue("boundedMemory", boundedMemory);
+        fingerprint.addValue("leanZipWriter", leanZipWriter);
+        fingerprint.addValue("pruneExcludedContent", pruneExcludedContent);
+        fingerprint.addValue("splitMaxSize", splitMaxSize);
+        fingerprint.addValue("splitMaxEntries", splitMaxEntries);
+        fingerprint.addValue("canonicalEntryOrder", canonicalEntryOrder);
+        fingerprint.addValue("contentHashIndex", contentHashIndex);
+        fingerprint.addValue("contentHashAlgorithm", contentHashAlgorithm);
+        if (archive != null) {
+            fingerprint.addValue("archive.compress", archive.isCompress());
+            fingerprint.addValue("archive.addMavenDescriptor", archive.isAddMavenDescriptor());
+            fingerprint.addValue("archive.manifestEntries", archive.getManifestEntries());
+            fingerprint.addFile("archive.pomPropertiesFile", archive.getPomPropertiesFile());
+        }
+        fingerprint.addValue("enableMetaInfFiltering", enableMetaInfFiltering);
+        fingerprint.addValue("enableJcrRootFiltering", enableJcrRootFiltering);
+        if (enableMetaInfFiltering || enableJcrRootFiltering) {
+            fingerprint.addValue("streamFiltering", streamFiltering);
+            addFilteringInputs(fingerprint);
+        }
+        fingerprint.addSnapshot("metaInfDirectory", metaInfSnapshot, false);
+        // the generated metadata is small and its modification dates are not reliable (e.g. for the filter.xml)
+        fingerprint.addSnapshot("workDirectory", workSnapshot, true);
+        if (jcrSnapshot != null || jcrSourceDirectory == null) {
+            fingerprint.addSnapshot("jcrSourceDirectory", jcrSnapshot, false);
+        } else {
+            fingerprint.addValue("jcrSourceDirectory", jcrSourceDirectory);
+            // the excludes are evaluated relative to each filter root, therefore only the default excludes can be considered here
+            FileTreeSnapshot.walk(jcrSourceDirectory, "", Collections.emptyList(), addDefaultExcludes, entry -> {
+                if (!entry.isExcluded()) {
+                    fingerprint.addEntry(entry, false);
+                }
+            });
+        }
+        for (Map.Entry<String, File> entry : new TreeMap<>(embeddedFiles).entrySet()) {
+            fingerprint.addFile("embedded." + entry.getKey(), entry.getValue());
+        }
+        return fingerprint.getValue();
+    }
+
+    /**
+     * Adds everything which may have an effect on the filtered resources to the given fingerprint.
+     * @param fingerprint the fingerprint
+     * @throws IOException in case some filter file could not be read
+     */
+    private void addFilteringInputs(InputFingerprint fingerprint) throws IOException {
+        // the filtered values may come from everywhere
+        fingerprint.addValue("delimiters", delimiters);
+        fingerprint.addValue("useDefaultDelimiters", useDefaultDelimiters);
+        fingerprint.addValue("escapeString", escapeString);
+        fingerprint.addValue("escapedBackslashesInFilePath", escapedBackslashesInFilePath);
+        fingerprint.addValue("nonFilteredFileExtensions", nonFilteredFileExtensions);
+        fingerprint.addValue("supportMultiLineFiltering", supportMultiLineFiltering);
+        List<String> filters = filterFiles != null ? filterFiles : project.getBuild().getFilters();
+        fingerprint.addValue("filterFiles", filters);
+        for (String filter : filters) {
+            fingerprint.addFile("filterFile", new File(filter));
+        }
+        fingerprint.addValue("projectProperties", project.getProperties());
+        if (session != null) {
+            fingerprint.addValue("userProperties", session.getUserProperties());
+        }
+    }
+
+    /**
+     * 
+     * @param fingerprintFile the file containing the fingerprint of the previous execution
+     * @param fingerprint the fingerprint of the current inputs
+     * @param finalFile the package file
+     * @return {@code true} in case the inputs have not changed and the package is still the one created by the previous execution
+     * @throws IOException in case the fingerprint file could not be read
+     */
+    private boolean isUpToDate(File fingerprintFile, String fingerprint, File finalFile) throws IOException {
+        if (!fingerprintFile.isFile() || !finalFile.isFile()) {
+            return false;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(fingerprintFile)) {
+            properties.load(input);
+        }
+        if (!fingerprint.equals(properties.getProperty(FINGERPRINT_PROPERTY_INPUTS))) {
+            getLog().debug("Inputs of content package have changed since the last execution");
+            return false;
+        }
+        if (!Long.toString(finalFile.length()).equals(properties.getProperty(FINGERPRINT_PROPERTY_OUTPUT_SIZE))
+                || !Long.toString(finalFile.lastModified()).equals(properties.getProperty(FINGERPRINT_PROPERTY_OUTPUT_LAST_MODIFIED))) {
+            getLog().debug("Content package has been modified since the last execution");
+            return false;
+        }
+        return true;
+    }
+
+    private void storeFingerprint(File fingerprintFile, String fingerprint, File finalFile) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(FINGERPRINT_PROPERTY_INPUTS, fingerprint);
+        properties.setProperty(FINGERPRINT_PROPERTY_OUTPUT_SIZE, Long.toString(finalFile.length()));
+        properties.setProperty(FINGERPRINT_PROPERTY_OUTPUT_LAST_MODIFIED, Long.toString(finalFile.lastModified()));
+        try (OutputStream output = new FileOutputStream(fingerprintFile)) {
+            properties.store(output, "Fingerprint of the inputs of the last content package creation");
+        }
+    }
+
+    private Map<File, File> addSourceDirectory(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver contentPackageArchiver, FileTreeSnapshot jcrSnapshot, Filters filters,
+            Map<String, File> embeddedFiles, List<FilterRoot> filterRoots) throws MavenFilteringException, IOException {
         Map<File, File> duplicateFiles = new HashMap<>();
         // See GRANITE-16348
         // we want to build a list of all the root directories in the order they were specified in the filter
         // but ignore the roots that don't point to a directory
         List<PathFilterSet> filterSets = filters.getFilterSets();
         if (filterSets.isEmpty()) {
-            DefaultFileSet fileSet = createFileSet(jcrSourceDirectory, Constants.ROOT_DIR + prefix);
-            duplicateFiles.putAll(getOverwrittenProtectedFiles(fileSet, false));
-            addFileSetToArchive(mavenResourcesExecution, contentPackageArchiver, fileSet);
+            String destPath = Constants.ROOT_DIR + prefix;
+            FileTreeSnapshot snapshot = jcrSnapshot.exclude(excludes);
+            duplicateFiles.putAll(getOverwrittenProtectedFiles(snapshot, normalizeEntryName(destPath) + "/", false));
+            addSnapshotToArchive(mavenResourcesExecution, contentPackageArchiver, snapshot, destPath);
         } else {
-            for (PathFilterSet filterSet : filterSets) {
-                String relPath = PlatformNameFormat.getPlatformPath(filterSet.getRoot());
-                String destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + relPath);
+            if (filterRoots == null) {
+                filterRoots = prepareFilterRoots(mavenResourcesExecution, jcrSnapshot, filterSets, embeddedFiles);
+            }
+            duplicateFiles.putAll(addFilterRoots(mavenResourcesExecution, contentPackageArchiver, jcrSnapshot, filterRoots));
+        }
+        return duplicateFiles;
+    }
 
-                // CQ-4204625 skip embedded files, they have been added already
-                if (embeddedFiles.containsKey(destPath)) {
-                    continue;
+    /**
+     * Adds the given filter roots together with their ancestors.
+     * @param mavenResourcesExecution
+     * @param contentPackageArchiver the archiver
+     * @param jcrSnapshot the snapshot of the source directory
+     * @param filterRoots the prepared filter roots
+     * @return a map with key = file path in zip and value = absolute source file of all entries overwriting protected files
+     * @throws MavenFilteringException in case filtering failed
+     * @throws IOException in case some resource could not be created
+     */
+    private Map<File, File> addFilterRoots(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver contentPackageArchiver, FileTreeSnapshot jcrSnapshot,
+            List<FilterRoot> filterRoots) throws MavenFilteringException, IOException {
+        Map<File, File> duplicateFiles = new HashMap<>();
+        // filter all full coverage aggregates with a single execution
+        Map<String, File> aggregates = new LinkedHashMap<>();
+        for (FilterRoot filterRoot : filterRoots) {
+            if (filterRoot.getAggregateFile() != null) {
+                aggregates.put(filterRoot.getDestPath(), filterRoot.getAggregateFile());
+            }
+        }
+        Map<String, File> preparedAggregates = prepareFilteredFiles(mavenResourcesExecution, aggregates);
+        Set<String> resolvedAncestors = new HashSet<>();
+        int savedAncestorLookups = 0;
+        // the archiver and the duplicate detection always see the roots in the order of the filter
+        for (FilterRoot filterRoot : filterRoots) {
+            String destPath = filterRoot.getDestPath();
+            if (filterRoot.getAggregateFile() != null) {
+                if (isOverwritingProtectedFile(new File(destPath), filterRoot.getAggregateFile(), false)) {
+                    duplicateFiles.put(new File(destPath), filterRoot.getAggregateFile());
                 }
-                // check for full coverage aggregate
-                File sourceFile = new File(jcrSourceDirectory, relPath + ".xml");
-                if (sourceFile.isFile()) {
-                    destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + relPath + ".xml");
-                    if (isOverwritingProtectedFile(new File(destPath), sourceFile, false)) {
-                        duplicateFiles.put(new File(destPath), sourceFile);
-                    }
-                    addFileToArchive(mavenResourcesExecution, contentPackageArchiver, sourceFile, destPath);
-                    // similar to AbstractExporter all ancestors should be contained as well (see AggregateImpl.prepare(...))
-                    addAncestors(contentPackageArchiver, sourceFile, jcrSourceDirectory, destPath);
-                } else { 
-                    // root path for ancestors is in one of the parent directories?
-                    sourceFile = new File(jcrSourceDirectory, relPath);
-
-                    // traverse the ancestors until we find a existing directory (see CQ-4204625)
-                    while ((!sourceFile.exists() || !sourceFile.isDirectory())
-                            && !jcrSourceDirectory.equals(sourceFile)) {
-                        sourceFile = sourceFile.getParentFile();
-                        relPath = StringUtils.chomp(relPath, "/");
-                    }
+                addPreparedFileToArchive(mavenResourcesExecution, contentPackageArchiver, preparedAggregates.get(destPath), destPath);
+            } else {
+                duplicateFiles.putAll(getOverwrittenProtectedFiles(filterRoot.getSubTree(), destPath + "/", false));
+                addSnapshotToArchive(mavenResourcesExecution, contentPackageArchiver, filterRoot.getSubTree(), destPath + "/");
+            }
+            // similar to AbstractExporter all ancestors should be contained as well (see AggregateImpl.prepare(...))
+            savedAncestorLookups += addAncestors(contentPackageArchiver, path -> getFile(jcrSnapshot, path), filterRoot.getRelPath(), destPath,
+                    resolvedAncestors, null);
+        }
+        getLog().debug("Resolved " + resolvedAncestors.size() + " ancestor aggregates, saved " + savedAncestorLookups + " redundant lookups");
+        return duplicateFiles;
+    }
 
-                    if (!jcrSourceDirectory.equals(sourceFile)) {
-                        destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + relPath);
-                        DefaultFileSet fileSet = createFileSet(sourceFile, destPath + "/");
-                        duplicateFiles.putAll(getOverwrittenProtectedFiles(fileSet, false));
-                        addFileSetToArchive(mavenResourcesExecution, contentPackageArchiver, fileSet);
-                        // similar to AbstractExporter all ancestors should be contained as well (see AggregateImpl.prepare(...))
-                        addAncestors(contentPackageArchiver, sourceFile, jcrSourceDirectory, destPath);
-                    }
+    /**
+     * Loads the properties of this package. The ones from the {@code META-INF/vault} source directory take precedence over the generated ones.
+     * @param mavenResourcesExecution
+     * @param metaInfSnapshot the snapshot of the META-INF/vault source directory (may be {@code null})
+     * @param workSnapshot the snapshot of the work directory
+     * @return the (optionally filtered) properties
+     * @throws MavenFilteringException in case filtering failed
+     * @throws IOException in case the properties could not be read
+     */
+    private Properties loadPackageProperties(MavenResourcesExecution mavenResourcesExecution, FileTreeSnapshot metaInfSnapshot, FileTreeSnapshot workSnapshot)
+            throws MavenFilteringException, IOException {
+        String destFileName = Constants.META_DIR + "/" + Constants.PROPERTIES_XML;
+        FileTreeSnapshot.Entry entry = metaInfSnapshot != null ? metaInfSnapshot.getEntry(Constants.PROPERTIES_XML) : null;
+        if (entry == null || entry.isExcluded()) {
+            entry = workSnapshot.getEntry(destFileName);
+        }
+        if (entry == null || entry.isExcluded()) {
+            throw new IOException("Could not find " + destFileName + " in the work directory " + workDirectory);
+        }
+        File file = prepareFilteredFiles(mavenResourcesExecution, Collections.singletonMap(destFileName, entry.getFile())).get(destFileName);
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(file)) {
+            properties.loadFromXML(input);
+        }
+        return properties;
+    }
+
+    /**
+     * Creates all sub packages and adds them to the container.
+     * Each sub package is created like the container itself, but with the metadata written by {@link PackageSplitter#writeMetadata(File, Properties, Manifest, String)}.
+     * @param mavenResourcesExecution
+     * @param contentPackageArchiver the archiver of the container
+     * @param metaInfSnapshot the snapshot of the META-INF/vault source directory (may be {@code null})
+     * @param workSnapshot the snapshot of the work directory
+     * @param jcrSnapshot the snapshot of the source directory
+     * @param subPackages the sub packages
+     * @param coveredFileNames the collection to which to add the names of all entries of the sub packages
+     * @return a map with key = file path in zip and value = absolute source file of all entries overwriting protected files
+     * @throws MavenFilteringException in case filtering failed
+     * @throws IOException in case some sub package could not be created
+     * @throws MojoExecutionException in case the compression configuration is invalid
+     * @throws ManifestException in case the manifest of some sub package is invalid
+     * @throws DependencyResolutionRequiredException in case the manifest of some sub package could not be created
+     */
+    private Map<File, File> addSubPackages(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver contentPackageArchiver, FileTreeSnapshot metaInfSnapshot,
+            FileTreeSnapshot workSnapshot, FileTreeSnapshot jcrSnapshot, List<SubPackage> subPackages, Collection<String> coveredFileNames)
+            throws MavenFilteringException, IOException, MojoExecutionException, ManifestException, DependencyResolutionRequiredException {
+        Map<File, File> duplicateFiles = new HashMap<>();
+        File splitDirectory = new File(workDirectory, SPLIT_DIRECTORY_NAME);
+        for (SubPackage subPackage : subPackages) {
+            long startTime = System.nanoTime();
+            ContentPackageArchiver archiver = createContentPackageArchiver(false);
+            // the static metadata is shared with the container
+            if (metaInfSnapshot != null) {
+                addSnapshotToArchive(mavenResourcesExecution, archiver, metaInfSnapshot.exclude(Collections.singletonList(Constants.PROPERTIES_XML)),
+                        Constants.META_DIR + "/");
+            }
+            addSnapshotToArchive(mavenResourcesExecution, archiver, workSnapshot.exclude(SPLIT_PACKAGE_METADATA_FILES), "");
+            File metadataDirectory = subPackage.getDirectory();
+            archiver.addFile(new File(metadataDirectory, Constants.FILTER_XML), Constants.META_DIR + "/" + Constants.FILTER_XML);
+            archiver.addFile(new File(metadataDirectory, Constants.PROPERTIES_XML), Constants.META_DIR + "/" + Constants.PROPERTIES_XML);
+            addFilesToArchive(mavenResourcesExecution, archiver, subPackage.getEmbeddedFiles());
+            duplicateFiles.putAll(addFilterRoots(mavenResourcesExecution, archiver, jcrSnapshot, subPackage.getFilterRoots()));
+            coveredFileNames.addAll(archiver.getFiles().keySet());
+
+            File subPackageFile = new File(splitDirectory, subPackage.getId().getName() + PACKAGE_EXT);
+            MavenArchiver mavenArchiver = new MavenArchiver();
+            mavenArchiver.setArchiver(archiver);
+            mavenArchiver.setOutputFile(subPackageFile);
+            mavenArchiver.configureReproducible(outputTimestamp);
+            mavenArchiver.createArchive(null, project, getMavenArchiveConfiguration(new File(metadataDirectory, JarFile.MANIFEST_NAME)));
+            contentPackageArchiver.addFile(subPackageFile, Constants.ROOT_DIR + subPackage.getId().getInstallationPath() + PACKAGE_EXT);
+            getLog().info("Created sub package " + subPackage.getId() + " (" + subPackageFile.length() + " bytes) in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+        }
+        return duplicateFiles;
+    }
+
+    /**
+     * Adds the source directory without keeping its entries in memory (see {@link #boundedMemory}).
+     * @param mavenResourcesExecution
+     * @param contentPackageArchiver the archiver
+     * @param jcrSourceDirectory the source directory
+     * @param filters the filters
+     * @param embeddedFiles the embedded files
+     * @param coveredEntries the set to which to add all added entry names
+     * @return a map with key = file path in zip and value = absolute source file of all entries overwriting protected files
+     * @throws MavenFilteringException in case filtering failed
+     * @throws IOException in case the source directory could not be walked
+     */
+    private Map<File, File> addSourceDirectory(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver contentPackageArchiver, File jcrSourceDirectory,
+            Filters filters, Map<String, File> embeddedFiles, PathFingerprintSet coveredEntries) throws MavenFilteringException, IOException {
+        Map<File, File> duplicateFiles = new HashMap<>();
+        List<PathFilterSet> filterSets = filters.getFilterSets();
+        if (filterSets.isEmpty()) {
+            addDirectoryToArchive(mavenResourcesExecution, contentPackageArchiver, jcrSourceDirectory, "", normalizeEntryName(Constants.ROOT_DIR + prefix) + "/",
+                    duplicateFiles, coveredEntries);
+            return duplicateFiles;
+        }
+        Function<String, File> fileLookup = path -> {
+            File file = new File(jcrSourceDirectory, path);
+            return file.isFile() ? file : null;
+        };
+        Set<String> resolvedAncestors = new HashSet<>();
+        for (PathFilterSet filterSet : filterSets) {
+            // relative path in the source directory
+            String relPath = normalizeEntryName(PlatformNameFormat.getPlatformPath(filterSet.getRoot()));
+            String destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + "/" + relPath);
+
+            // CQ-4204625 skip embedded files, they have been added already
+            if (embeddedFiles.containsKey(destPath)) {
+                continue;
+            }
+            // check for full coverage aggregate
+            File aggregateFile = fileLookup.apply(relPath + ".xml");
+            if (aggregateFile != null) {
+                destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + "/" + relPath + ".xml");
+                if (isOverwritingProtectedFile(new File(destPath), aggregateFile, false)) {
+                    duplicateFiles.put(new File(destPath), aggregateFile);
+                }
+                coveredEntries.add(normalizeEntryName(destPath));
+                addFileToArchive(mavenResourcesExecution, contentPackageArchiver, aggregateFile, destPath);
+                addAncestors(contentPackageArchiver, fileLookup, relPath + ".xml", destPath, resolvedAncestors, coveredEntries);
+            } else {
+                // traverse the ancestors until we find a existing directory (see CQ-4204625)
+                while (!new File(jcrSourceDirectory, relPath).isDirectory() && !relPath.isEmpty()) {
+                    relPath = getParentPath(relPath);
+                }
+                if (!relPath.isEmpty()) {
+                    destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + "/" + relPath);
+                    addDirectoryToArchive(mavenResourcesExecution, contentPackageArchiver, jcrSourceDirectory, relPath, destPath + "/",
+                            duplicateFiles, coveredEntries);
+                    addAncestors(contentPackageArchiver, fileLookup, relPath, destPath, resolvedAncestors, coveredEntries);
                 }
-                
             }
         }
         return duplicateFiles;
     }
 
-    private void addAncestors(ContentPackageArchiver contentPackageArchiver, File inputFile, File inputRootFile, String destFile) {
-        // include up to (including root)
-        if (!inputFile.getAbsolutePath().startsWith(inputRootFile.getAbsolutePath())) {
-            return;
+    /**
+     * Adds a directory below the source directory as lazily evaluated file set. The given directory is walked once for detecting
+     * duplicates and recording the covered entries. The excludes are evaluated relative to the given directory.
+     * @param mavenResourcesExecution
+     * @param contentPackageArchiver the archiver
+     * @param jcrSourceDirectory the source directory
+     * @param relPath the path of the directory relative to the source directory (empty for the source directory itself)
+     * @param destPrefix the prefix of the entry names
+     * @param duplicateFiles the map to which to add all entries overwriting protected files
+     * @param coveredEntries the set to which to add all added entry names
+     * @throws MavenFilteringException in case filtering failed
+     * @throws IOException in case the directory could not be walked
+     */
+    private void addDirectoryToArchive(MavenResourcesExecution mavenResourcesExecution, ContentPackageArchiver contentPackageArchiver, File jcrSourceDirectory,
+            String relPath, String destPrefix, Map<File, File> duplicateFiles, PathFingerprintSet coveredEntries) throws MavenFilteringException, IOException {
+        File directory = new File(jcrSourceDirectory, relPath);
+        // the excludes are evaluated relative to the given directory
+        FileTreeSnapshot.walk(directory, "", excludes, addDefaultExcludes, entry -> {
+            if (!entry.isExcluded() && !entry.isDirectory()) {
+                File zipFileEntry = new File(destPrefix + entry.getPath());
+                if (isOverwritingProtectedFile(zipFileEntry, entry.getFile(), false)) {
+                    duplicateFiles.put(zipFileEntry, entry.getFile());
+                }
+                coveredEntries.add(normalizeEntryName(zipFileEntry.getPath()));
+            }
+        });
+        DefaultFileSet fileSet = fileSet(directory)
+                .prefixed(destPrefix)
+                .includeEmptyDirs(true);
+        // evaluate the excludes with the same semantics as during the walk
+        fileSet.setUsingDefaultExcludes(false);
+        Predicate<String> isExcluded = FileTreeSnapshot.createExcludeMatcher(excludes, addDefaultExcludes);
+        String normalizedPrefix = normalizeEntryName(destPrefix) + "/";
+        fileSet.setFileSelectors(new FileSelector[] { fileInfo -> {
+            String name = normalizeEntryName(fileInfo.getName());
+            // the name may already contain the prefix of the file set
+            if (name.startsWith(normalizedPrefix)) {
+                name = name.substring(normalizedPrefix.length());
+            }
+            return !isExcluded.test(name);
+        } });
+        addFileSetToArchive(mavenResourcesExecution, contentPackageArchiver, fileSet);
+    }
+
+    /**
+     * Prepares all filter roots concurrently.
+     * @param mavenResourcesExecution
+     * @param jcrSnapshot the snapshot of the source directory
+     * @param filterSets the filter sets
+     * @param embeddedFiles the embedded files
+     * @return the prepared filter roots in the order of the given filter sets (skipping the ones without sources)
+     * @throws MavenFilteringException in case some source file could not be scanned for delimiters
+     * @throws IOException
+     */
+    private List<FilterRoot> prepareFilterRoots(MavenResourcesExecution mavenResourcesExecution, FileTreeSnapshot jcrSnapshot,
+            List<PathFilterSet> filterSets, Map<String, File> embeddedFiles) throws MavenFilteringException, IOException {
+        long startTime = System.nanoTime();
+        if (enableJcrRootFiltering) {
+            // must be initialized before being used concurrently
+            getTokenScanner(mavenResourcesExecution);
+        }
+        int threads = Math.min(filterSets.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<FilterRoot>> futures = new ArrayList<>(filterSets.size());
+            for (PathFilterSet filterSet : filterSets) {
+                futures.add(executor.submit(() -> prepareFilterRoot(mavenResourcesExecution, jcrSnapshot, filterSet, embeddedFiles)));
+            }
+            List<FilterRoot> filterRoots = new ArrayList<>(filterSets.size());
+            for (Future<FilterRoot> future : futures) {
+                FilterRoot filterRoot = future.get();
+                if (filterRoot != null) {
+                    filterRoots.add(filterRoot);
+                }
+            }
+            getLog().debug("Prepared " + filterSets.size() + " filter roots with " + threads + " threads in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+            if (pruneExcludedContent) {
+                long prunedFiles = 0;
+                long prunedBytes = 0;
+                for (FilterRoot filterRoot : filterRoots) {
+                    if (filterRoot.getPruner() != null) {
+                        prunedFiles += filterRoot.getPruner().getPrunedFiles();
+                        prunedBytes += filterRoot.getPruner().getPrunedBytes();
+                    }
+                }
+                getLog().info("Pruned " + prunedFiles + " files (" + prunedBytes + " bytes) not contained in the filter");
+            }
+            return filterRoots;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preparing the filter roots", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof MavenFilteringException) {
+                throw (MavenFilteringException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Could not prepare the filter roots", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Prepares a single filter root. Must not modify any state of this mojo, as it is called concurrently.
+     * @param mavenResourcesExecution
+     * @param jcrSnapshot the snapshot of the source directory
+     * @param filterSet the filter set
+     * @param embeddedFiles the embedded files
+     * @return the prepared filter root or {@code null} in case it should be skipped
+     * @throws MavenFilteringException in case some source file could not be scanned for delimiters
+     */
+    private FilterRoot prepareFilterRoot(MavenResourcesExecution mavenResourcesExecution, FileTreeSnapshot jcrSnapshot, PathFilterSet filterSet,
+            Map<String, File> embeddedFiles) throws MavenFilteringException {
+        // relative path in the snapshot
+        String relPath = normalizeEntryName(PlatformNameFormat.getPlatformPath(filterSet.getRoot()));
+        String destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + "/" + relPath);
+
+        // CQ-4204625 skip embedded files, they have been added already
+        if (embeddedFiles.containsKey(destPath)) {
+            return null;
+        }
+        // check for full coverage aggregate
+        FileTreeSnapshot.Entry sourceEntry = jcrSnapshot.getEntry(relPath + ".xml");
+        if (sourceEntry != null && !sourceEntry.isDirectory()) {
+            destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + "/" + relPath + ".xml");
+            // scan upfront to fill the cache
+            requiresFiltering(mavenResourcesExecution, Paths.get(destPath), sourceEntry.getFile());
+            return new FilterRoot(filterSet, relPath + ".xml", destPath, sourceEntry.getFile(), null, null);
+        }
+        // root path for ancestors is in one of the parent directories?
+        sourceEntry = jcrSnapshot.getEntry(relPath);
+
+        // traverse the ancestors until we find a existing directory (see CQ-4204625)
+        while ((sourceEntry == null || !sourceEntry.isDirectory()) && !relPath.isEmpty()) {
+            relPath = getParentPath(relPath);
+            sourceEntry = jcrSnapshot.getEntry(relPath);
+        }
+        if (relPath.isEmpty()) {
+            return null;
+        }
+        destPath = FileUtils.normalize(Constants.ROOT_DIR + prefix + "/" + relPath);
+        // the excludes are evaluated relative to the filter root
+        FileTreeSnapshot subTree = jcrSnapshot.getSubTree(relPath).exclude(excludes);
+        PathFilterPruner pruner = null;
+        if (pruneExcludedContent) {
+            pruner = new PathFilterPruner(filterSet);
+            subTree = pruner.prune(subTree, relPath);
+        }
+        if (isFilteringEnabled(Paths.get(destPath))) {
+            // scan upfront to fill the cache
+            for (Iterator<FileTreeSnapshot.Entry> iterator = subTree.getFiles().iterator(); iterator.hasNext();) {
+                FileTreeSnapshot.Entry entry = iterator.next();
+                requiresFiltering(mavenResourcesExecution, Paths.get(destPath, entry.getPath()), entry.getFile());
+            }
+        }
+        return new FilterRoot(filterSet, relPath, destPath, null, subTree, pruner);
+    }
+
+    /**
+     * Adds the {@code .content.xml} of the given path and of all its ancestors (including the root).
+     * Each path is only resolved once per execution.
+     * @param contentPackageArchiver the archiver
+     * @param fileLookup returns the file for a path relative to the source directory or {@code null} in case it is not an existing file
+     * @param path the path relative to the source directory
+     * @param destFile the entry name in the package corresponding to the given path
+     * @param resolvedPaths the paths which have already been resolved (together with all their ancestors)
+     * @param coveredEntries the set to which to add all added entry names (may be {@code null})
+     * @return the number of lookups which have been saved due to already resolved paths
+     */
+    private int addAncestors(ContentPackageArchiver contentPackageArchiver, Function<String, File> fileLookup, String path, String destFile,
+            Set<String> resolvedPaths, PathFingerprintSet coveredEntries) {
+        if (!resolvedPaths.add(path)) {
+            // this path and all its ancestors have already been added
+            return path.isEmpty() ? 1 : StringUtils.countMatches(path, "/") + 2;
         }
         // is there an according .content.xml available? (ignore full-coverage files)
-        File genericAggregate = new File(inputFile, Constants.DOT_CONTENT_XML);
-        if (genericAggregate.exists()) {
+        File genericAggregate = fileLookup.apply(path.isEmpty() ? Constants.DOT_CONTENT_XML : path + "/" + Constants.DOT_CONTENT_XML);
+        if (genericAggregate != null) {
             getLog().debug("Adding ancestor file '" + genericAggregate + "' to package at '" + destFile + "/" + Constants.DOT_CONTENT_XML +"'");
             contentPackageArchiver.addFile(genericAggregate, destFile + "/" + Constants.DOT_CONTENT_XML);
+            if (coveredEntries != null) {
+                coveredEntries.add(normalizeEntryName(destFile + "/" + Constants.DOT_CONTENT_XML));
+            }
+        }
+        // include up to (including root)
+        if (!path.isEmpty()) {
+            return addAncestors(contentPackageArchiver, fileLookup, getParentPath(path), StringUtils.chomp(destFile, "/"), resolvedPaths, coveredEntries);
         }
-        addAncestors(contentPackageArchiver, inputFile.getParentFile(), inputRootFile, StringUtils.chomp(destFile, "/"));
+        return 0;
+    }
+
+    private static File getFile(FileTreeSnapshot snapshot, String path) {
+        FileTreeSnapshot.Entry entry = snapshot.getEntry(path);
+        return entry != null && !entry.isDirectory() ? entry.getFile() : null;
+    }
+
+    private static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
     }
 
     /** Checks if some files (optionally prefixed) below the given source directory are not listed in coveredFiles
@@ -563,39 +1595,114 @@ public class VaultMojo extends AbstractSourceAndMetadataPackageMojo {
      * @return the absolute file names in the source directory which are not already listed in {@code entryNames}. */
     protected static Collection<File> getUncoveredFiles(final File sourceDirectory, Collection<String> excludes, String prefix,
             Collection<String> coveredFileNames) {
-        // check for uncovered files (i.e. files from the source which are not even added to the content package)
-        // entry name still have platform-dependent separators here (https://github.com/codehaus-plexus/plexus-archiver/issues/129)
-        Collection<File> coveredFiles = coveredFileNames.stream()
-                .map(File::new)
-                .collect(Collectors.toList());
-
-        /*
-         * similar method as in {@link org.codehaus.plexus.components.io.resources.PlexusIoFileResourceCollection#getResources();}
-         */
-        DirectoryScanner scanner = new DirectoryScanner();
-        scanner.setBasedir(sourceDirectory);
-        scanner.setExcludes(excludes.toArray(new String[0]));
-        scanner.addDefaultExcludes();
-        scanner.scan();
+        try {
+            return getUncoveredFiles(FileTreeSnapshot.create(sourceDirectory, excludes, true), prefix, coveredFileNames);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not scan " + sourceDirectory, e);
+        }
+    }
 
-        Collection<File> allFiles = Stream.of(scanner.getIncludedFiles())
-                .map(File::new)
-                .collect(Collectors.toList());
+    /**
+     * Walks the source directory and checks if some files are not contained in the covered entries.
+     * @param sourceDirectory the source directory
+     * @param coveredEntries the normalized names of all entries in the package
+     * @return all files which don't have a corresponding package entry
+     * @throws IOException in case the source directory could not be walked
+     */
+    private Collection<File> getUncoveredFiles(File sourceDirectory, PathFingerprintSet coveredEntries) throws IOException {
+        String entryPrefix = Constants.ROOT_DIR + "/" + prefix + "/";
+        Collection<File> uncoveredFiles = new ArrayList<>();
+        FileTreeSnapshot.walk(sourceDirectory, "", excludes, addDefaultExcludes, entry -> {
+            if (!entry.isExcluded() && !entry.isDirectory() && !coveredEntries.contains(normalizeEntryName(entryPrefix + entry.getPath()))) {
+                uncoveredFiles.add(entry.getFile());
+            }
+        });
+        return uncoveredFiles;
+    }
 
-        return getUncoveredFiles(sourceDirectory, prefix, allFiles, coveredFiles);
+    /** Checks if some files (optionally prefixed) in the given snapshot are not listed in coveredFiles
+     * 
+     * @param snapshot the snapshot of the source directory
+     * @param prefix the optional prefix to prepend to the relative file name before comparing with {@code coveredFileNames}
+     * @param coveredFileNames the covered file names (should have relative file names), might have OS specific separators
+     * @return the absolute file names in the source directory which are not already listed in {@code entryNames}. */
+    static Collection<File> getUncoveredFiles(FileTreeSnapshot snapshot, String prefix, Collection<String> coveredFileNames) {
+        List<String> relativeFileNames = snapshot.getFiles().map(FileTreeSnapshot.Entry::getPath).collect(Collectors.toList());
+        return getUncoveredFiles(snapshot.getDirectory(), prefix, relativeFileNames, coveredFileNames);
     }
 
-    private static Collection<File> getUncoveredFiles(final File sourceDirectory, String prefix, final Collection<File> allFiles,
-            final Collection<File> coveredFiles) {
+    /**
+     * 
+     * @param sourceDirectory the source directory
+     * @param prefix the prefix
+     * @param relativeFileNames the names of all files below the source directory (relative to it)
+     * @param coveredFileNames the names of all entries in the package
+     * @return all files which don't have a corresponding package entry
+     */
+    static Collection<File> getUncoveredFiles(final File sourceDirectory, String prefix, final Collection<String> relativeFileNames,
+            final Collection<String> coveredFileNames) {
+        // entry name still have platform-dependent separators here (https://github.com/codehaus-plexus/plexus-archiver/issues/129)
+        Set<String> coveredFiles = new HashSet<>(coveredFileNames.size() * 4 / 3 + 1);
+        for (String coveredFileName : coveredFileNames) {
+            coveredFiles.add(normalizeEntryName(coveredFileName));
+        }
+        String entryPrefix = Constants.ROOT_DIR + "/" + prefix + "/";
         Collection<File> uncoveredFiles = new ArrayList<>();
-        for (File file : allFiles) {
-            if (!coveredFiles.contains(new File(Constants.ROOT_DIR + prefix, file.getPath()))) {
-                uncoveredFiles.add(new File(sourceDirectory, file.getPath()));
+        for (String relativeFileName : relativeFileNames) {
+            if (!coveredFiles.contains(normalizeEntryName(entryPrefix + relativeFileName))) {
+                uncoveredFiles.add(new File(sourceDirectory, relativeFileName));
             }
         }
         return uncoveredFiles;
     }
 
+    /**
+     * 
+     * @param entryName an entry name
+     * @return the entry name with forward slashes only, without duplicate slashes and without leading or trailing slashes
+     */
+    static String normalizeEntryName(String entryName) {
+        StringBuilder normalizedName = new StringBuilder(entryName.length());
+        for (int i = 0; i < entryName.length(); i++) {
+            char c = entryName.charAt(i);
+            if (c == '\\') {
+                c = '/';
+            }
+            if (c != '/' || (normalizedName.length() > 0 && normalizedName.charAt(normalizedName.length() - 1) != '/')) {
+                normalizedName.append(c);
+            }
+        }
+        int length = normalizedName.length();
+        if (length > 0 && normalizedName.charAt(length - 1) == '/') {
+            normalizedName.setLength(length - 1);
+        }
+        return normalizedName.toString();
+    }
+
+    private CompressionPolicy getCompressionPolicy() throws MojoExecutionException {
+        if (compressionProbeSize < 0 || compressionProbeSize > MAX_COMPRESSION_PROBE_SIZE) {
+            throw new MojoExecutionException("Parameter 'compressionProbeSize' must be between 0 and " + MAX_COMPRESSION_PROBE_SIZE
+                    + " but is " + compressionProbeSize);
+        }
+        try {
+            CompressionPolicy policy = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION, compressionProbeSize * 1024);
+            if (storedFileExtensions != null) {
+                policy.addStoredExtensions(storedFileExtensions);
+            }
+            if (compressionRules != null) {
+                for (CompressionRule rule : compressionRules) {
+                    if (rule.getPattern() == null) {
+                        throw new MojoExecutionException("Compression rule without pattern: " + rule);
+                    }
+                    policy.addRule(rule.getPattern(), rule.getLevel());
+                }
+            }
+            return policy;
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid compression configuration: " + e.getMessage(), e);
+        }
+    }
+
     private MavenArchiveConfiguration getMavenArchiveConfiguration(File manifestFile) {
         if (archive == null) {
             archive = new MavenArchiveConfiguration();
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.project.MavenProject;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index over the artifacts of a project which allows to efficiently evaluate many embed/sub package rules.
+ * The artifacts are indexed by group id and artifact id, literal filter entries are looked up directly
+ * and the outcome of filter sets containing regular expressions is evaluated only once per distinct
+ * group id/artifact id value and shared between all rules using the same filter set.
+ * Instances are not thread-safe and are supposed to be created once per mojo execution.
+ */
+public class ArtifactIndex {
+
+    private final MavenProject project;
+
+    private Index artifacts;
+
+    private Index dependencyArtifacts;
+
+    /**
+     * Creates a lazily populated index of the given project's artifacts and direct dependency artifacts.
+     * @param project the project
+     */
+    public ArtifactIndex(@NotNull MavenProject project) {
+        this.project = project;
+    }
+
+    /**
+     * Creates an index of the given artifacts which is used both with and without transitive artifacts.
+     * @param artifacts the artifacts
+     */
+    public ArtifactIndex(@NotNull Collection<Artifact> artifacts) {
+        this.project = null;
+        this.artifacts = new Index(artifacts);
+        this.dependencyArtifacts = this.artifacts;
+    }
+
+    /**
+     * Returns all matching artifacts in their original order.
+     * @param excludeTransitive {@code true} to only consider direct dependencies
+     * @param groupIds the filter for the group id
+     * @param artifactIds the filter for the artifact id
+     * @param predicate additional criteria for the artifacts matching both filters
+     * @return the matching artifacts
+     */
+    @SuppressWarnings("deprecation")
+    @NotNull
+    public List<Artifact> getMatchingArtifacts(boolean excludeTransitive, @NotNull StringFilterSet groupIds, @NotNull StringFilterSet artifactIds,
+            @NotNull Predicate<Artifact> predicate) {
+        final Index index;
+        if (excludeTransitive) {
+            if (dependencyArtifacts == null) {
+                dependencyArtifacts = new Index(project.getDependencyArtifacts());
+            }
+            index = dependencyArtifacts;
+        } else {
+            if (artifacts == null) {
+                artifacts = new Index(project.getArtifacts());
+            }
+            index = artifacts;
+        }
+        return index.getMatchingArtifacts(groupIds, artifactIds, predicate);
+    }
+
+    private static final class Index {
+
+        private final List<Artifact> artifacts;
+
+        private final Map<String, BitSet> byGroupId = new HashMap<>();
+
+        private final Map<String, BitSet> byArtifactId = new HashMap<>();
+
+        /** the artifacts matching a filter set, key is the string representation of the filter set */
+        private final Map<String, BitSet> groupIdMatches = new HashMap<>();
+
+        private final Map<String, BitSet> artifactIdMatches = new HashMap<>();
+
+        Index(Collection<Artifact> artifacts) {
+            this.artifacts = artifacts == null ? Collections.emptyList() : new ArrayList<>(artifacts);
+            for (int i = 0; i < this.artifacts.size(); i++) {
+                Artifact artifact = this.artifacts.get(i);
+                byGroupId.computeIfAbsent(artifact.getGroupId(), key -> new BitSet()).set(i);
+                byArtifactId.computeIfAbsent(artifact.getArtifactId(), key -> new BitSet()).set(i);
+            }
+        }
+
+        List<Artifact> getMatchingArtifacts(StringFilterSet groupIds, StringFilterSet artifactIds, Predicate<Artifact> predicate) {
+            BitSet candidates = (BitSet) getMatches(groupIds, byGroupId, groupIdMatches).clone();
+            candidates.and(getMatches(artifactIds, byArtifactId, artifactIdMatches));
+            List<Artifact> matches = new ArrayList<>();
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                Artifact artifact = artifacts.get(i);
+                if (predicate.test(artifact)) {
+                    matches.add(artifact);
+                }
+            }
+            return matches;
+        }
+
+        private BitSet getMatches(StringFilterSet filterSet, Map<String, BitSet> index, Map<String, BitSet> cache) {
+            return cache.computeIfAbsent(filterSet.toString(), key -> {
+                BitSet matches = new BitSet(artifacts.size());
+                Set<String> exactIncludes = filterSet.getExactIncludes();
+                if (exactIncludes != null) {
+                    for (String value : exactIncludes) {
+                        or(matches, index.get(value));
+                    }
+                } else {
+                    CompiledStringFilterSet compiledFilterSet = filterSet.compile();
+                    for (Map.Entry<String, BitSet> entry : index.entrySet()) {
+                        if (compiledFilterSet.contains(entry.getKey())) {
+                            or(matches, entry.getValue());
+                        }
+                    }
+                }
+                return matches;
+            });
+        }
+
+        private static void or(BitSet target, BitSet source) {
+            if (source != null) {
+                target.or(source);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Enumeration;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The order of entries in a content package which allows to install it while reading it sequentially:
+ * <ol>
+ * <li>{@code META-INF/} and {@code META-INF/MANIFEST.MF}</li>
+ * <li>all entries below {@code META-INF/vault/}</li>
+ * <li>all other entries below {@code META-INF/}</li>
+ * <li>all entries below {@code jcr_root/}</li>
+ * <li>all other entries</li>
+ * <li>the {@link ContentHashIndex}, as it can only be written once all other entries are complete</li>
+ * </ol>
+ * Within each group the entries are ordered by their path segments, i.e. each directory directly precedes its descendants.
+ * Within a directory the {@code .content.xml} comes first, so that the node type of a parent is known before any of its children,
+ * all other names are ordered lexicographically.
+ */
+public final class CanonicalEntryOrder implements Comparator<String> {
+
+    public static final CanonicalEntryOrder INSTANCE = new CanonicalEntryOrder();
+
+    private static final String META_INF_DIR = "META-INF/";
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private static final String VAULT_DIR = "META-INF/vault/";
+
+    private static final String ROOT_DIR = "jcr_root/";
+
+    private static final String DOT_CONTENT_XML = ".content.xml";
+
+    private CanonicalEntryOrder() {
+    }
+
+    /**
+     * Compares two entry names (with forward slashes, directories with a trailing slash).
+     */
+    @Override
+    public int compare(String name1, String name2) {
+        int result = Integer.compare(getGroup(name1), getGroup(name2));
+        if (result != 0) {
+            return result;
+        }
+        int start1 = 0;
+        int start2 = 0;
+        while (start1 < name1.length() && start2 < name2.length()) {
+            int end1 = getSegmentEnd(name1, start1);
+            int end2 = getSegmentEnd(name2, start2);
+            result = compareSegments(name1.substring(start1, end1), name2.substring(start2, end2));
+            if (result != 0) {
+                return result;
+            }
+            start1 = end1 + 1;
+            start2 = end2 + 1;
+        }
+        // an ancestor comes first
+        return Integer.compare(name1.length() - start1, name2.length() - start2);
+    }
+
+    private static int getGroup(String name) {
+        if (name.equals(ContentHashIndex.ENTRY_NAME)) {
+            return 6;
+        } else if (name.equals(META_INF_DIR)) {
+            return 0;
+        } else if (name.equals(MANIFEST_NAME)) {
+            return 1;
+        } else if (name.startsWith(VAULT_DIR)) {
+            return 2;
+        } else if (name.startsWith(META_INF_DIR)) {
+            return 3;
+        } else if (name.startsWith(ROOT_DIR)) {
+            return 4;
+        }
+        return 5;
+    }
+
+    private static int getSegmentEnd(String name, int start) {
+        int end = name.indexOf('/', start);
+        return end < 0 ? name.length() : end;
+    }
+
+    private static int compareSegments(String segment1, String segment2) {
+        if (segment1.equals(segment2)) {
+            return 0;
+        } else if (segment1.equals(DOT_CONTENT_XML)) {
+            return -1;
+        } else if (segment2.equals(DOT_CONTENT_XML)) {
+            return 1;
+        }
+        return segment1.compareTo(segment2);
+    }
+
+    /**
+     * Verifies that the entries of the given archive are stored in canonical order.
+     * @param archive the archive
+     * @return a description of the first pair of entries violating the canonical order or {@code null} in case all entries are in order
+     * @throws IOException in case the archive could not be read
+     */
+    public static @Nullable String findViolation(@NotNull File archive) throws IOException {
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            String previousName = null;
+            for (Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder(); entries.hasMoreElements();) {
+                String name = entries.nextElement().getName();
+                if (previousName != null && INSTANCE.compare(previousName, name) >= 0) {
+                    return "Entry '" + name + "' is stored after '" + previousName + "'";
+                }
+                previousName = name;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.jackrabbit.vault.fs.api.FilterSet.Entry;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable compiled form of a {@link StringFilterSet} which evaluates {@link StringFilterSet#contains(String)} with the same
+ * semantics (the last matching entry wins) but more efficiently:
+ * <ul>
+ * <li>literal entries are looked up in a hash map,</li>
+ * <li>all regular expression entries are merged into a single pattern whose alternatives are ordered from the last to the
+ * first entry, so that the first matching alternative is the one which determines the result,</li>
+ * <li>the regular expressions are not evaluated at all in case none of them could change the result any more.</li>
+ * </ul>
+ * Use {@link StringFilterSet#compile()} to create it.
+ */
+public class CompiledStringFilterSet {
+
+    /** detects constructs which don't work when the pattern is embedded in a bigger pattern (numbered back references, inline flags, quotes, named groups) */
+    private static final Pattern NON_EMBEDDABLE_PATTERN = Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[a-zA-Z-]|\\(\\?<[a-zA-Z]");
+
+    private final int size;
+
+    /** the result in case no entry matches */
+    private final boolean defaultResult;
+
+    /** the last literal entry for each string */
+    private final Map<String, IndexedEntry> exactEntries = new HashMap<>();
+
+    /** the regular expression entries, ordered from the last to the first entry */
+    private final List<IndexedEntry> regexEntries = new ArrayList<>();
+
+    /**
+     * {@code includesOnly[i]} is {@code true} in case all regex entries up to (excluding) {@code i} are includes,
+     * {@code excludesOnly[i]} accordingly for excludes
+     */
+    private final boolean[] includesOnly;
+
+    private final boolean[] excludesOnly;
+
+    /** the combined pattern or {@code null} in case the patterns are evaluated one by one */
+    private final Pattern combinedPattern;
+
+    CompiledStringFilterSet(@NotNull List<Entry<StringFilter>> entries) {
+        size = entries.size();
+        defaultResult = size == 0 || !entries.get(0).isInclude();
+        for (int i = 0; i < entries.size(); i++) {
+            Entry<StringFilter> entry = entries.get(i);
+            StringFilter filter = entry.getFilter();
+            if (filter.isExact()) {
+                exactEntries.put(filter.getPattern(), new IndexedEntry(i, entry.isInclude(), null, 0));
+            } else {
+                regexEntries.add(0, new IndexedEntry(i, entry.isInclude(), Pattern.compile(filter.getPattern()), 0));
+            }
+        }
+        includesOnly = new boolean[regexEntries.size() + 1];
+        excludesOnly = new boolean[regexEntries.size() + 1];
+        includesOnly[0] = true;
+        excludesOnly[0] = true;
+        for (int i = 0; i < regexEntries.size(); i++) {
+            includesOnly[i + 1] = includesOnly[i] && regexEntries.get(i).include;
+            excludesOnly[i + 1] = excludesOnly[i] && !regexEntries.get(i).include;
+        }
+        combinedPattern = combinePatterns();
+    }
+
+    private Pattern combinePatterns() {
+        if (regexEntries.size() < 2) {
+            return null;
+        }
+        StringBuilder combined = new StringBuilder();
+        int group = 1;
+        for (int i = 0; i < regexEntries.size(); i++) {
+            IndexedEntry entry = regexEntries.get(i);
+            String pattern = entry.pattern.pattern();
+            if (NON_EMBEDDABLE_PATTERN.matcher(pattern).find()) {
+                return null;
+            }
+            if (i > 0) {
+                combined.append('|');
+            }
+            combined.append('(').append(pattern).append(')');
+            regexEntries.set(i, new IndexedEntry(entry.position, entry.include, entry.pattern, group));
+            group += 1 + entry.pattern.matcher("").groupCount();
+        }
+        try {
+            return Pattern.compile(combined.toString());
+        } catch (PatternSyntaxException e) {
+            // fall back to evaluating the patterns one by one
+            return null;
+        }
+    }
+
+    /**
+     * @param value the value to check
+     * @return the same as {@link StringFilterSet#contains(String)} of the underlying filter set
+     */
+    public boolean contains(String value) {
+        if (size == 0) {
+            return true;
+        }
+        IndexedEntry exactEntry = exactEntries.get(value);
+        int position = exactEntry != null ? exactEntry.position : -1;
+        boolean result = exactEntry != null ? exactEntry.include : defaultResult;
+        // only the regex entries after the literal match may change the result
+        int candidates = 0;
+        while (candidates < regexEntries.size() && regexEntries.get(candidates).position > position) {
+            candidates++;
+        }
+        if (result ? includesOnly[candidates] : excludesOnly[candidates]) {
+            return result;
+        }
+        if (combinedPattern != null) {
+            Matcher matcher = combinedPattern.matcher(value);
+            if (matcher.matches()) {
+                for (int i = 0; i < candidates; i++) {
+                    IndexedEntry entry = regexEntries.get(i);
+                    if (matcher.start(entry.group) != -1) {
+                        return entry.include;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < candidates; i++) {
+                IndexedEntry entry = regexEntries.get(i);
+                if (entry.pattern.matcher(value).matches()) {
+                    return entry.include;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of entries of the underlying filter set
+     */
+    int size() {
+        return size;
+    }
+
+    private static final class IndexedEntry {
+
+        /** the position within the original filter set */
+        private final int position;
+
+        private final boolean include;
+
+        private final Pattern pattern;
+
+        /** the group within the combined pattern (only set for regular expression entries) */
+        private final int group;
+
+        IndexedEntry(int position, boolean include, Pattern pattern, int group) {
+            this.position = position;
+            this.include = include;
+            this.pattern = pattern;
+            this.group = group;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+import org.codehaus.plexus.util.SelectorUtils;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decides per entry whether and how strongly it is deflated.
+ * <ol>
+ * <li>Entries with one of the stored file extensions (case-insensitive) are stored.</li>
+ * <li>Otherwise the first matching pattern determines the level ({@link #STORED} or 1-9).</li>
+ * <li>Otherwise the default level is used.</li>
+ * </ol>
+ * In addition deflated entries may be probed: if deflating the first {@link #getProbeSize()} bytes does not shrink them,
+ * the entry is stored instead (which is typical for already compressed content like images, videos or archives).
+ */
+public class CompressionPolicy {
+
+    /** The level indicating that an entry is stored without compression. */
+    public static final int STORED = 0;
+
+    private final int defaultLevel;
+
+    private final Set<String> storedExtensions = new HashSet<>();
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    private final int probeSize;
+
+    /**
+     * Creates a policy deflating all entries with the given level.
+     * @param defaultLevel the level used for all entries
+     */
+    public CompressionPolicy(int defaultLevel) {
+        this(defaultLevel, 0);
+    }
+
+    /**
+     *
+     * @param defaultLevel the level used for entries not matching any rule
+     * @param probeSize the number of bytes to probe for deflated entries, {@code 0} to not probe at all
+     */
+    public CompressionPolicy(int defaultLevel, int probeSize) {
+        validateLevel(defaultLevel);
+        if (probeSize < 0) {
+            throw new IllegalArgumentException("The probe size must not be negative but is " + probeSize);
+        }
+        this.defaultLevel = defaultLevel;
+        this.probeSize = probeSize;
+    }
+
+    /**
+     * Stores all entries having one of the given file extensions.
+     * @param extensions the file extensions (without leading dot)
+     * @return this policy
+     */
+    public CompressionPolicy addStoredExtensions(@NotNull Collection<String> extensions) {
+        for (String extension : extensions) {
+            storedExtensions.add(extension.toLowerCase(Locale.ROOT));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a rule. Rules are evaluated in the order in which they have been added.
+     * @param pattern the Ant-style pattern matched against the entry name
+     * @param level the level ({@link #STORED} or 1-9)
+     * @return this policy
+     */
+    public CompressionPolicy addRule(@NotNull String pattern, int level) {
+        validateLevel(level);
+        rules.add(new Rule(pattern, level));
+        return this;
+    }
+
+    /**
+     * Returns the level for the given entry.
+     * @param entryName the entry name (with forward slashes)
+     * @return the level, either {@link #STORED}, {@link Deflater#DEFAULT_COMPRESSION} or 1-9
+     */
+    public int getLevel(@NotNull String entryName) {
+        if (!storedExtensions.isEmpty()) {
+            int dot = entryName.lastIndexOf('.');
+            if (dot > entryName.lastIndexOf('/') && storedExtensions.contains(entryName.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+                return STORED;
+            }
+        }
+        for (Rule rule : rules) {
+            if (SelectorUtils.matchPath(rule.pattern, entryName, "/", true)) {
+                return rule.level;
+            }
+        }
+        return defaultLevel;
+    }
+
+    /**
+     *
+     * @return the number of bytes being probed for deflated entries or {@code 0} if probing is disabled
+     */
+    public int getProbeSize() {
+        return probeSize;
+    }
+
+    /**
+     *
+     * @return {@code true} in case this policy may lead to other results than deflating everything with the default level
+     */
+    public boolean isSelective() {
+        return !storedExtensions.isEmpty() || !rules.isEmpty() || probeSize > 0;
+    }
+
+    /**
+     * 
+     * @return a description of this policy, equal for policies leading to the same compression decisions
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CompressionPolicy [defaultLevel=").append(defaultLevel);
+        builder.append(", storedExtensions=").append(new TreeSet<>(storedExtensions));
+        builder.append(", rules=").append(rules);
+        builder.append(", probeSize=").append(probeSize).append("]");
+        return builder.toString();
+    }
+
+    private static void validateLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ", must be between -1 and 9");
+        }
+    }
+
+    private static final class Rule {
+        private final String pattern;
+        private final int level;
+
+        Rule(String pattern, int level) {
+            this.pattern = pattern;
+            this.level = level;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + ":" + level;
+        }
+    }
+}
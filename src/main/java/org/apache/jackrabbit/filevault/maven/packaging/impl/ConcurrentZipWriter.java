@@ -0,0 +1,608 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.input.CountingInputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compresses zip entries on a pool of worker threads (scatter) and writes the compressed entries to the underlying
+ * {@link ZipArchiveOutputStream} or {@link LeanZipOutputStream} in exactly the order in which they have been added (gather).
+ * The resulting archive is therefore independent of the number of threads being used.
+ * <p>
+ * At most {@code 4 * threads} compressed entries are kept pending at any time. Each of them is buffered in memory up to
+ * {@link #MAX_IN_MEMORY_SIZE} bytes and spilled to a temporary file otherwise. Larger stored entries are not buffered at all:
+ * only their CRC is calculated upfront (in parallel) and their content is read again from the source while writing.
+ * For files written to a {@link LeanZipOutputStream} this is done via {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * Each worker thread reuses its {@link Deflater}s (one per level) and buffers for all entries it compresses.
+ * Optionally the worker threads calculate the content hash of each entry from the bytes being read for compression.
+ */
+public class ConcurrentZipWriter implements Closeable {
+
+    /** Supplies the uncompressed content of an entry. */
+    @FunctionalInterface
+    public interface EntrySource {
+        @NotNull InputStream open() throws IOException;
+    }
+
+    /** Writes an entry whose data has already been compressed and whose CRC and sizes are set. */
+    @FunctionalInterface
+    private interface RawEntryOutput {
+        void addRawEntry(@NotNull ZipArchiveEntry entry, @NotNull InputStream data) throws IOException;
+    }
+
+    static final int MAX_IN_MEMORY_SIZE = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RawEntryOutput output;
+
+    private final LeanZipOutputStream leanOutput;
+
+    private final ExecutorService executor;
+
+    private final CompressionPolicy policy;
+
+    private final int maxPendingEntries;
+
+    private final Deque<Future<CompressedEntry>> pendingEntries = new ArrayDeque<>();
+
+    private final Queue<Compressor> compressors = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<Compressor> compressor = ThreadLocal.withInitial(this::createCompressor);
+
+    private ContentHashIndex contentHashIndex;
+
+    /**
+     *
+     * @param output the stream to write the compressed entries to
+     * @param threads the number of threads used for compression
+     * @param level the deflate level (0-9 or {@link Deflater#DEFAULT_COMPRESSION})
+     */
+    public ConcurrentZipWriter(@NotNull ZipArchiveOutputStream output, int threads, int level) {
+        this(output, threads, new CompressionPolicy(level));
+    }
+
+    /**
+     *
+     * @param output the stream to write the compressed entries to
+     * @param threads the number of threads used for compression
+     * @param policy the policy determining the compression of each deflated entry
+     */
+    public ConcurrentZipWriter(@NotNull ZipArchiveOutputStream output, int threads, @NotNull CompressionPolicy policy) {
+        this(output::addRawArchiveEntry, null, threads, policy);
+    }
+
+    /**
+     *
+     * @param output the lean stream to write the compressed entries to
+     * @param threads the number of threads used for compression
+     * @param policy the policy determining the compression of each deflated entry
+     */
+    public ConcurrentZipWriter(@NotNull LeanZipOutputStream output, int threads, @NotNull CompressionPolicy policy) {
+        this(output::addRawEntry, output, threads, policy);
+    }
+
+    private ConcurrentZipWriter(@NotNull RawEntryOutput output, LeanZipOutputStream leanOutput, int threads, @NotNull CompressionPolicy policy) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one compression thread is required but got " + threads);
+        }
+        this.output = output;
+        this.leanOutput = leanOutput;
+        this.policy = policy;
+        this.maxPendingEntries = 4 * threads;
+        this.executor = Executors.newFixedThreadPool(threads, new CompressionThreadFactory());
+    }
+
+    /**
+     * Enables calculating the content hash of all entries subsequently added via {@link #addEntry(ZipArchiveEntry, EntrySource)} or
+     * {@link #addFileEntry(ZipArchiveEntry, File)}. The hashes of entries added via {@link #addRawEntry(ZipArchiveEntry, ZipFile, ZipArchiveEntry)}
+     * need to be added to the index by the caller. The index is complete after {@link #finish()}.
+     * @param contentHashIndex the index to which to add the hashes or {@code null} to not calculate any hashes
+     */
+    public void setContentHashIndex(@Nullable ContentHashIndex contentHashIndex) {
+        this.contentHashIndex = contentHashIndex;
+    }
+
+    /**
+     * Adds a directory entry.
+     * @param entry the entry, its name must end with a slash
+     * @throws IOException in case writing previously added entries failed
+     */
+    public void addDirectory(@NotNull ZipArchiveEntry entry) throws IOException {
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(0);
+        entry.setCompressedSize(0);
+        entry.setCrc(0);
+        enqueue(CompletableFuture.completedFuture(new CompressedEntry(entry, new SpillingOutputStream())));
+    }
+
+    /**
+     * Adds a file entry which is compressed asynchronously according to its method ({@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}).
+     * Entries with method {@link ZipEntry#DEFLATED} may still end up being stored according to the {@link CompressionPolicy}.
+     * @param entry the entry with the method being set
+     * @param source the source of the uncompressed content
+     * @throws IOException in case writing previously added entries failed
+     */
+    public void addEntry(@NotNull ZipArchiveEntry entry, @NotNull EntrySource source) throws IOException {
+        enqueue(executor.submit(() -> compress(entry, source, null)));
+    }
+
+    /**
+     * Adds a file entry in the same way as {@link #addEntry(ZipArchiveEntry, EntrySource)}. In case the entry ends up being stored and exceeds
+     * {@link #MAX_IN_MEMORY_SIZE} its content is transferred directly from the file while writing (if supported by the output).
+     * As the CRC has been calculated in a previous pass in that case, the file must not be modified in between. This is verified by its size and
+     * last modification time, i.e. a modification not changing the size within the timestamp resolution of the file system is not detected.
+     * @param entry the entry with the method being set
+     * @param file the file with the uncompressed content
+     * @throws IOException in case writing previously added entries failed
+     */
+    public void addFileEntry(@NotNull ZipArchiveEntry entry, @NotNull File file) throws IOException {
+        enqueue(executor.submit(() -> compress(entry, () -> new FileInputStream(file), file)));
+    }
+
+    /**
+     * Adds a file entry whose compressed data is copied verbatim from another archive without inflating and deflating it again.
+     * The method, CRC and sizes are taken over from the source entry, all other metadata from the given entry.
+     * @param entry the entry
+     * @param source the archive to copy from, must not be closed before this writer is finished
+     * @param sourceEntry the entry of the source archive
+     * @throws IOException in case writing previously added entries failed
+     */
+    public void addRawEntry(@NotNull ZipArchiveEntry entry, @NotNull ZipFile source, @NotNull ZipArchiveEntry sourceEntry) throws IOException {
+        entry.setMethod(sourceEntry.getMethod());
+        entry.setCrc(sourceEntry.getCrc());
+        entry.setSize(sourceEntry.getSize());
+        entry.setCompressedSize(sourceEntry.getCompressedSize());
+        enqueue(CompletableFuture.completedFuture(new CompressedEntry(entry, () -> {
+            InputStream input = source.getRawInputStream(sourceEntry);
+            if (input == null) {
+                throw new IOException("Entry " + sourceEntry.getName() + " does not belong to the source archive");
+            }
+            return input;
+        })));
+    }
+
+    /**
+     * Writes all pending entries to the underlying stream. Must be called before {@link #close()} for a complete archive.
+     * @throws IOException in case compressing or writing an entry failed
+     */
+    public void finish() throws IOException {
+        while (!pendingEntries.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Discards all entries which have not been written yet, stops the compression threads and releases their deflaters.
+     * Does not close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            discardPendingEntries();
+            if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Compressor releasedCompressor;
+                while ((releasedCompressor = compressors.poll()) != null) {
+                    releasedCompressor.end();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void discardPendingEntries() throws IOException {
+        Future<CompressedEntry> pendingEntry;
+        while ((pendingEntry = pendingEntries.poll()) != null) {
+            if (!pendingEntry.cancel(true)) {
+                try {
+                    pendingEntry.get().dispose();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // already reported or irrelevant as the archive is incomplete anyhow
+                }
+            }
+        }
+    }
+
+    private void enqueue(Future<CompressedEntry> entry) throws IOException {
+        pendingEntries.add(entry);
+        while (pendingEntries.size() > maxPendingEntries) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        CompressedEntry compressedEntry = get(pendingEntries.poll());
+        try {
+            checkUnmodified(compressedEntry);
+            if (compressedEntry.file != null && leanOutput != null) {
+                leanOutput.addRawEntry(compressedEntry.entry, compressedEntry.file);
+            } else {
+                try (CountingInputStream input = new CountingInputStream(compressedEntry.data.open())) {
+                    output.addRawEntry(compressedEntry.entry, input);
+                    if (input.getByteCount() != compressedEntry.entry.getCompressedSize()) {
+                        throw new IOException("The source of entry " + compressedEntry.entry.getName() + " has changed while writing");
+                    }
+                }
+            }
+            checkUnmodified(compressedEntry);
+        } finally {
+            compressedEntry.dispose();
+        }
+    }
+
+    /**
+     * Makes sure the file being read again has not been modified since its CRC has been calculated.
+     */
+    private static void checkUnmodified(CompressedEntry compressedEntry) throws IOException {
+        if (compressedEntry.file != null && compressedEntry.file.lastModified() != compressedEntry.lastModified) {
+            throw new IOException("The source of entry " + compressedEntry.entry.getName() + " has changed while writing");
+        }
+    }
+
+    private CompressedEntry compress(ZipArchiveEntry entry, EntrySource source, File file) throws IOException {
+        Compressor compressor = this.compressor.get();
+        CRC32 crc = new CRC32();
+        ContentHashIndex.Hasher hasher = contentHashIndex != null ? contentHashIndex.newHasher() : null;
+        SpillingOutputStream data = null;
+        // taken before the first pass to detect modifications until the content is read again
+        long lastModified = file != null ? file.lastModified() : 0;
+        try (InputStream input = source.open()) {
+            int level = entry.getMethod() == ZipEntry.STORED ? CompressionPolicy.STORED : policy.getLevel(entry.getName());
+            byte[] probe = null;
+            int probeLength = 0;
+            if (level != CompressionPolicy.STORED && policy.getProbeSize() > 0) {
+                probe = compressor.getProbe(policy.getProbeSize());
+                probeLength = readFully(input, probe);
+                if (!isShrinking(compressor.getDeflater(level), probe, probeLength, compressor.output)) {
+                    level = CompressionPolicy.STORED;
+                }
+            }
+            final Deflater deflater;
+            if (level != CompressionPolicy.STORED) {
+                entry.setMethod(ZipEntry.DEFLATED);
+                deflater = compressor.getDeflater(level);
+                data = new SpillingOutputStream();
+            } else {
+                entry.setMethod(ZipEntry.STORED);
+                deflater = null;
+                // large stored entries are read again from their source
+                data = new SpillingOutputStream(true);
+            }
+            long size = 0;
+            if (probeLength > 0) {
+                crc.update(probe, 0, probeLength);
+                if (hasher != null) {
+                    hasher.update(probe, 0, probeLength);
+                }
+                compressor.write(deflater, probe, probeLength, data);
+                size += probeLength;
+            }
+            byte[] buffer = compressor.input;
+            int length;
+            while ((length = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, length);
+                if (hasher != null) {
+                    hasher.update(buffer, 0, length);
+                }
+                compressor.write(deflater, buffer, length, data);
+                size += length;
+            }
+            if (deflater != null) {
+                compressor.finish(deflater, data);
+            }
+            data.close();
+            entry.setSize(size);
+            entry.setCrc(crc.getValue());
+            entry.setCompressedSize(data.size());
+            if (hasher != null) {
+                contentHashIndex.put(entry.getName(), size, hasher.getValue());
+            }
+        } catch (IOException | RuntimeException e) {
+            if (data != null) {
+                data.dispose();
+            }
+            throw e;
+        }
+        if (data.isDiscarded()) {
+            return new CompressedEntry(entry, source, file, lastModified);
+        }
+        return new CompressedEntry(entry, data);
+    }
+
+    private Compressor createCompressor() {
+        Compressor newCompressor = new Compressor();
+        compressors.add(newCompressor);
+        return newCompressor;
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int offset = 0;
+        int length;
+        while (offset < buffer.length && (length = input.read(buffer, offset, buffer.length - offset)) != -1) {
+            offset += length;
+        }
+        return offset;
+    }
+
+    /**
+     * 
+     * @return {@code true} in case deflating the given bytes with the given level results in less bytes
+     */
+    static boolean isShrinking(byte[] bytes, int length, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            return isShrinking(deflater, bytes, length, new byte[BUFFER_SIZE]);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static boolean isShrinking(Deflater deflater, byte[] bytes, int length, byte[] buffer) {
+        if (length == 0) {
+            return true;
+        }
+        deflater.reset();
+        deflater.setInput(bytes, 0, length);
+        deflater.finish();
+        long compressedLength = 0;
+        while (!deflater.finished() && compressedLength < length) {
+            compressedLength += deflater.deflate(buffer);
+        }
+        return compressedLength < length;
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for compressed entry");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IOException("Could not compress entry", cause);
+            }
+        }
+    }
+
+    private static final class CompressedEntry {
+        private final ZipArchiveEntry entry;
+        private final EntrySource data;
+        private final SpillingOutputStream buffer;
+        /** the file from which the content is read again (or {@code null}) */
+        private final File file;
+        /** the last modification time of {@link #file} before its CRC has been calculated */
+        private final long lastModified;
+
+        CompressedEntry(ZipArchiveEntry entry, SpillingOutputStream buffer) {
+            this.entry = entry;
+            this.data = buffer::openInputStream;
+            this.buffer = buffer;
+            this.file = null;
+            this.lastModified = 0;
+        }
+
+        CompressedEntry(ZipArchiveEntry entry, EntrySource data) {
+            this(entry, data, null, 0);
+        }
+
+        CompressedEntry(ZipArchiveEntry entry, EntrySource data, File file, long lastModified) {
+            this.entry = entry;
+            this.data = data;
+            this.buffer = null;
+            this.file = file;
+            this.lastModified = lastModified;
+        }
+
+        void dispose() throws IOException {
+            if (buffer != null) {
+                buffer.dispose();
+            }
+        }
+    }
+
+    /**
+     * Buffers in memory up to {@link ConcurrentZipWriter#MAX_IN_MEMORY_SIZE} bytes and spills to a temporary file
+     * (or discards all data, only counting the bytes) afterwards.
+     */
+    static final class SpillingOutputStream extends OutputStream {
+        private final boolean isDiscarding;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream fileOutput;
+        private long size;
+        private boolean isDiscarded;
+
+        SpillingOutputStream() {
+            this(false);
+        }
+
+        /**
+         * 
+         * @param isDiscarding {@code true} to discard the data instead of spilling it to a temporary file
+         */
+        SpillingOutputStream(boolean isDiscarding) {
+            this.isDiscarding = isDiscarding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (memory != null && size + len > MAX_IN_MEMORY_SIZE) {
+                if (isDiscarding) {
+                    isDiscarded = true;
+                } else {
+                    file = File.createTempFile("vault-compressed-", ".tmp");
+                    fileOutput = new FileOutputStream(file);
+                    memory.writeTo(fileOutput);
+                }
+                memory = null;
+            }
+            if (memory != null) {
+                memory.write(b, off, len);
+            } else if (fileOutput != null) {
+                fileOutput.write(b, off, len);
+            }
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOutput != null) {
+                fileOutput.close();
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        /**
+         * 
+         * @return {@code true} in case the data has been discarded as it exceeded the in-memory buffer
+         */
+        boolean isDiscarded() {
+            return isDiscarded;
+        }
+
+        InputStream openInputStream() throws IOException {
+            if (isDiscarded) {
+                throw new IllegalStateException("The data has been discarded");
+            }
+            if (memory != null) {
+                return new ByteArrayInputStream(memory.toByteArray());
+            } else {
+                return new FileInputStream(file);
+            }
+        }
+
+        void dispose() throws IOException {
+            close();
+            memory = null;
+            if (file != null) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * The deflaters and buffers of one compression thread.
+     */
+    private static final class Compressor {
+        private final Map<Integer, Deflater> deflaters = new HashMap<>();
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private byte[] probe;
+
+        /** @return the reset deflater for the given level (not changing the level of a deflater keeps the output deterministic) */
+        Deflater getDeflater(int level) {
+            Deflater deflater = deflaters.computeIfAbsent(level, l -> new Deflater(l, true));
+            deflater.reset();
+            return deflater;
+        }
+
+        byte[] getProbe(int size) {
+            if (probe == null || probe.length != size) {
+                probe = new byte[size];
+            }
+            return probe;
+        }
+
+        /** Writes the given bytes either deflated (if a deflater is given) or as is. */
+        void write(Deflater deflater, byte[] bytes, int length, OutputStream target) throws IOException {
+            if (deflater == null) {
+                target.write(bytes, 0, length);
+                return;
+            }
+            deflater.setInput(bytes, 0, length);
+            while (!deflater.needsInput()) {
+                target.write(output, 0, deflater.deflate(output));
+            }
+        }
+
+        void finish(Deflater deflater, OutputStream target) throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                target.write(output, 0, deflater.deflate(output));
+            }
+        }
+
+        void end() {
+            deflaters.values().forEach(Deflater::end);
+            deflaters.clear();
+        }
+    }
+
+    private static final class CompressionThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+        private final int poolNumber = POOL_NUMBER.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "vault-compression-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
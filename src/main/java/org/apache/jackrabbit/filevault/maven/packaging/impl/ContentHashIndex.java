@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the size and content hash of each file entry of a package, stored as JSON at {@link #ENTRY_NAME}:
+ * <pre>
+ * {
+ *   "algorithm": "xxh64",
+ *   "entries": [
+ *     {"path": "jcr_root/apps/.content.xml", "size": 123, "hash": "ef46db3751d8e999"},
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ * The entries are ordered by their path. The hashes are calculated from the uncompressed content while it is being compressed
+ * (see {@link ConcurrentZipWriter#setContentHashIndex(ContentHashIndex)}), therefore the index is written as last entry of the package.
+ * Entries may be added concurrently.
+ */
+public class ContentHashIndex {
+
+    public static final String ENTRY_NAME = "META-INF/vault/content-index.json";
+
+    /** The supported hash algorithms */
+    public enum Algorithm {
+        /** the 64-bit xxHash (see {@link XxHash64}) */
+        XXH64("xxh64"),
+        /** SHA-256 */
+        SHA_256("sha-256");
+
+        private final String name;
+
+        Algorithm(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 
+         * @return the name used in the index
+         */
+        public @NotNull String getName() {
+            return name;
+        }
+    }
+
+    /** Calculates the hash of a single entry. */
+    public interface Hasher {
+        void update(byte[] bytes, int offset, int length);
+
+        /**
+         * 
+         * @return the hash as lower case hex string
+         */
+        @NotNull String getValue();
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Algorithm algorithm;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ContentHashIndex(@NotNull Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public @NotNull Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * 
+     * @return a new hasher for the algorithm of this index
+     */
+    public @NotNull Hasher newHasher() {
+        if (algorithm == Algorithm.XXH64) {
+            XxHash64 hash = new XxHash64();
+            return new Hasher() {
+                @Override
+                public void update(byte[] bytes, int offset, int length) {
+                    hash.update(bytes, offset, length);
+                }
+
+                @Override
+                public @NotNull String getValue() {
+                    return String.format("%016x", hash.getValue());
+                }
+            };
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+        return new Hasher() {
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                digest.update(bytes, offset, length);
+            }
+
+            @Override
+            public @NotNull String getValue() {
+                return toHex(digest.digest());
+            }
+        };
+    }
+
+    /**
+     * Adds an entry. An entry which has been added before is replaced.
+     * @param name the entry name
+     * @param size the uncompressed size
+     * @param hash the content hash calculated with the {@link #getAlgorithm() algorithm} of this index
+     */
+    public void put(@NotNull String name, long size, @NotNull String hash) {
+        entries.put(name, new Entry(size, hash));
+    }
+
+    /**
+     * 
+     * @param name the entry name
+     * @return the hash of the given entry or {@code null} in case it is not contained in this index
+     */
+    public @Nullable String getHash(@NotNull String name) {
+        Entry entry = entries.get(name);
+        return entry != null ? entry.hash : null;
+    }
+
+    /**
+     * 
+     * @param action the action called with the name and hash of each entry
+     */
+    public void forEach(@NotNull BiConsumer<String, String> action) {
+        entries.forEach((name, entry) -> action.accept(name, entry.hash));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes this index as JSON (encoded with UTF-8).
+     * @param output the output stream, is not closed
+     * @throws IOException in case writing failed
+     */
+    public void write(@NotNull OutputStream output) throws IOException {
+        Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        writer.write("{\n  \"algorithm\": \"" + algorithm.getName() + "\",\n  \"entries\": [");
+        boolean isFirst = true;
+        for (Map.Entry<String, Entry> entry : new TreeMap<>(entries).entrySet()) {
+            writer.write(isFirst ? "\n" : ",\n");
+            writer.write("    {\"path\": ");
+            writeString(writer, entry.getKey());
+            writer.write(", \"size\": " + entry.getValue().size + ", \"hash\": \"" + entry.getValue().hash + "\"}");
+            isFirst = false;
+        }
+        writer.write("\n  ]\n}\n");
+        writer.flush();
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final String hash;
+
+        Entry(long size, String hash) {
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+}
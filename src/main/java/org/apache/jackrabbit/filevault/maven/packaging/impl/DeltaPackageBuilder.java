@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageDiff.Change;
+import org.apache.jackrabbit.vault.fs.api.FilterSet;
+import org.apache.jackrabbit.vault.fs.api.PathFilter;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.fs.filter.DefaultPathFilter;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates a delta package containing only the content which has been added or changed in a package compared to a base package.
+ * <p>
+ * Each added or changed node which is contained in the filter of the new package gets its own filter root, with the import mode and the
+ * rules of the original filter set covering it. A node serialized by a folder additionally excludes its child nodes being serialized by
+ * separate entries, so that unchanged siblings are neither touched nor removed. Each removed node gets a filter root as well, which
+ * removes it during installation, as it does not have any content in the delta package. The filter roots are ordered from the deepest
+ * to the most shallow one, so that each node is covered by its own filter root first. The entries are mapped to nodes in the same way
+ * as in {@link PackageDiff}, i.e. a full coverage aggregate {@code <name>.xml} gets the filter root {@code <name>} in both cases.
+ * <p>
+ * The entries of the changed nodes, their ancestor folders and the static metadata are copied in their compressed form from the new
+ * package. The {@code filter.xml} and {@code properties.xml} are generated, the latter is derived from the new package's properties
+ * with the name suffixed. The manifest, the package definition and the content index are not copied, as they would be outdated.
+ */
+public class DeltaPackageBuilder {
+
+    private static final String ROOT_PREFIX = Constants.ROOT_DIR + "/";
+
+    private static final String DIR_SUFFIX = ".dir";
+
+    private static final String FILTER_ENTRY = Constants.META_DIR + "/" + Constants.FILTER_XML;
+
+    private static final String PROPERTIES_ENTRY = Constants.META_DIR + "/" + Constants.PROPERTIES_XML;
+
+    private static final String DEFINITION_PREFIX = Constants.META_DIR + "/definition/";
+
+    private static final Set<String> REGENERATED_ENTRIES = new HashSet<>(Arrays.asList(
+            FILTER_ENTRY, PROPERTIES_ENTRY, JarFile.MANIFEST_NAME, ContentHashIndex.ENTRY_NAME));
+
+    private final File basePackage;
+
+    private final File newPackage;
+
+    private String nameSuffix = "-delta";
+
+    private PackageDiff diff;
+
+    private final DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+
+    private final Properties properties = new Properties();
+
+    private int copiedEntries;
+
+    public DeltaPackageBuilder(@NotNull File basePackage, @NotNull File newPackage) {
+        this.basePackage = basePackage;
+        this.newPackage = newPackage;
+    }
+
+    /**
+     * @param nameSuffix the suffix appended to the package name of the new package
+     */
+    public void setNameSuffix(@NotNull String nameSuffix) {
+        this.nameSuffix = nameSuffix;
+    }
+
+    /**
+     * Compares the packages and writes the delta package.
+     * @param destFile the delta package to create
+     * @throws IOException in case some package could not be read or the delta package could not be written
+     */
+    public void build(@NotNull File destFile) throws IOException {
+        diff = PackageDiff.compare(basePackage, newPackage);
+        try (ZipFile zipFile = new ZipFile(newPackage)) {
+            Map<String, List<ZipArchiveEntry>> entriesByNode = new LinkedHashMap<>();
+            List<ZipArchiveEntry> metadataEntries = new ArrayList<>();
+            RepositoryPathMapper mapper = new RepositoryPathMapper(path -> {
+                ZipArchiveEntry entry = zipFile.getEntry(ROOT_PREFIX + path);
+                return entry != null && !entry.isDirectory();
+            }, path -> isFullCoverageAggregate(zipFile, zipFile.getEntry(ROOT_PREFIX + path)));
+            try {
+                for (Enumeration<ZipArchiveEntry> entries = zipFile.getEntries(); entries.hasMoreElements();) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    if (entry.getName().startsWith(ROOT_PREFIX)) {
+                        String node = mapper.getAggregatePath(entry.getName().substring(ROOT_PREFIX.length()));
+                        entriesByNode.computeIfAbsent(node, k -> new ArrayList<>()).add(entry);
+                    } else if (!REGENERATED_ENTRIES.contains(entry.getName()) && !entry.getName().startsWith(DEFINITION_PREFIX)) {
+                        metadataEntries.add(entry);
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Set<String> changedNodes = new HashSet<>();
+            Set<String> removedNodes = new HashSet<>();
+            for (Map.Entry<String, Change> change : diff.getPathChanges().entrySet()) {
+                (change.getValue() == Change.REMOVED ? removedNodes : changedNodes).add(change.getKey());
+            }
+            createFilter(loadFilter(zipFile), entriesByNode, changedNodes, removedNodes);
+            try (InputStream input = getInputStream(zipFile, PROPERTIES_ENTRY)) {
+                properties.loadFromXML(input);
+            }
+            properties.setProperty(PackageProperties.NAME_NAME, properties.getProperty(PackageProperties.NAME_NAME, "") + nameSuffix);
+
+            Set<String> ancestorNodes = new HashSet<>();
+            for (String node : changedNodes) {
+                for (String ancestor = getParent(node); ancestor != null && ancestorNodes.add(ancestor); ancestor = getParent(ancestor)) {
+                    // collect all ancestors
+                }
+            }
+            try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(destFile)) {
+                copiedEntries = 0;
+                for (ZipArchiveEntry entry : metadataEntries) {
+                    copy(zipFile, entry, output);
+                }
+                addEntry(output, FILTER_ENTRY, filter.getSourceAsString().getBytes(StandardCharsets.UTF_8));
+                try (ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
+                    properties.storeToXML(buffer, null);
+                    addEntry(output, PROPERTIES_ENTRY, buffer.toByteArray());
+                }
+                for (Map.Entry<String, List<ZipArchiveEntry>> node : entriesByNode.entrySet()) {
+                    boolean changed = changedNodes.contains(node.getKey());
+                    if (changed || ancestorNodes.contains(node.getKey())) {
+                        for (ZipArchiveEntry entry : node.getValue()) {
+                            // ancestors only need to keep their node types
+                            if (changed || entry.isDirectory() || entry.getName().endsWith("/" + Constants.DOT_CONTENT_XML)) {
+                                copy(zipFile, entry, output);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void createFilter(DefaultWorkspaceFilter newFilter, Map<String, List<ZipArchiveEntry>> entriesByNode,
+            Set<String> changedNodes, Set<String> removedNodes) throws IOException {
+        Map<String, List<String>> childNodes = new HashMap<>();
+        for (String node : entriesByNode.keySet()) {
+            String parent = getParent(node);
+            if (parent != null) {
+                childNodes.computeIfAbsent(parent, k -> new ArrayList<>()).add(node);
+            }
+        }
+        Map<String, PathFilterSet> filterSets = new TreeMap<>(Comparator.reverseOrder());
+        for (String node : changedNodes) {
+            List<ZipArchiveEntry> entries = entriesByNode.get(node);
+            ZipArchiveEntry nodeFile = getNodeFile(entries);
+            PathFilterSet filterSet = narrow(newFilter, node);
+            if (filterSet == null) {
+                continue;
+            }
+            if (nodeFile == null) {
+                for (String child : childNodes.getOrDefault(node, Collections.emptyList())) {
+                    filterSet.addExclude(createPathFilter(escape(child) + "(/.*)?"));
+                }
+            }
+            filterSets.put(node, filterSet);
+        }
+        Set<String> removedRoots = new HashSet<>();
+        for (String node : new TreeSet<>(removedNodes)) {
+            // only the top most removed node needs to be removed explicitly, a node with remaining descendants is kept
+            if (hasAncestor(node, removedRoots) || childNodes.containsKey(node)) {
+                continue;
+            }
+            PathFilterSet filterSet = narrow(newFilter, node);
+            if (filterSet != null) {
+                filterSets.put(node, filterSet);
+                removedRoots.add(node);
+            }
+        }
+        for (PathFilterSet filterSet : filterSets.values()) {
+            filter.add(filterSet);
+        }
+    }
+
+    /**
+     * @param newFilter the filter of the new package
+     * @param path the repository path of a node
+     * @return a filter set with the given path as root and the import mode and rules of the filter set covering it in the given filter
+     *  or {@code null} in case the node is not contained in the filter
+     * @throws IOException in case some rule could not be copied
+     */
+    private static PathFilterSet narrow(DefaultWorkspaceFilter newFilter, String path) throws IOException {
+        PathFilterSet coveringSet = newFilter.getCoveringFilterSet(path);
+        if (coveringSet == null || !coveringSet.contains(path)) {
+            return null;
+        }
+        PathFilterSet filterSet = new PathFilterSet(path);
+        filterSet.setImportMode(coveringSet.getImportMode());
+        for (FilterSet.Entry<PathFilter> entry : coveringSet.getEntries()) {
+            if (entry.isInclude()) {
+                filterSet.addInclude(entry.getFilter());
+            } else {
+                filterSet.addExclude(entry.getFilter());
+            }
+        }
+        return filterSet;
+    }
+
+    /**
+     * @param entries the entries of a node
+     * @return the file serializing the node or {@code null} in case the node is serialized by a folder
+     */
+    private static ZipArchiveEntry getNodeFile(List<ZipArchiveEntry> entries) {
+        if (entries == null) {
+            return null;
+        }
+        for (ZipArchiveEntry entry : entries) {
+            String name = entry.getName();
+            if (!entry.isDirectory() && !name.endsWith("/" + Constants.DOT_CONTENT_XML) && !name.contains(DIR_SUFFIX + "/")) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isFullCoverageAggregate(ZipFile zipFile, ZipArchiveEntry entry) {
+        if (entry == null || entry.isDirectory()) {
+            return false;
+        }
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            return RepositoryPathMapper.isDocView(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static DefaultWorkspaceFilter loadFilter(ZipFile zipFile) throws IOException {
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        try (InputStream input = getInputStream(zipFile, FILTER_ENTRY)) {
+            filter.load(input);
+        } catch (ConfigurationException e) {
+            throw new IOException("Invalid filter in " + zipFile + ": " + e.getMessage(), e);
+        }
+        return filter;
+    }
+
+    private static InputStream getInputStream(ZipFile zipFile, String name) throws IOException {
+        ZipArchiveEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            throw new IOException("Could not find " + name + " in " + zipFile);
+        }
+        return zipFile.getInputStream(entry);
+    }
+
+    private void copy(ZipFile zipFile, ZipArchiveEntry entry, ZipArchiveOutputStream output) throws IOException {
+        try (InputStream input = zipFile.getRawInputStream(entry)) {
+            output.addRawArchiveEntry(entry, input);
+        }
+        copiedEntries++;
+    }
+
+    private static void addEntry(ZipArchiveOutputStream output, String name, byte[] data) throws IOException {
+        output.putArchiveEntry(new ZipArchiveEntry(name));
+        output.write(data);
+        output.closeArchiveEntry();
+    }
+
+    private static PathFilter createPathFilter(String pattern) throws IOException {
+        try {
+            return new DefaultPathFilter(pattern);
+        } catch (ConfigurationException e) {
+            throw new IOException("Invalid filter pattern " + pattern, e);
+        }
+    }
+
+    /**
+     * @param path a repository path
+     * @return the path with all regular expression meta characters escaped
+     */
+    static @NotNull String escape(@NotNull String path) {
+        StringBuilder escaped = new StringBuilder(path.length());
+        for (char c : path.toCharArray()) {
+            if ("\\.[]{}()<>*+-=!?^$|".indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static boolean hasAncestor(String path, Set<String> candidates) {
+        for (String ancestor = getParent(path); ancestor != null; ancestor = getParent(ancestor)) {
+            if (candidates.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getParent(String path) {
+        if ("/".equals(path)) {
+            return null;
+        }
+        int index = path.lastIndexOf('/');
+        return index == 0 ? "/" : path.substring(0, index);
+    }
+
+    /**
+     * @return the differences between the packages (only available after {@link #build(File)})
+     */
+    public PackageDiff getDiff() {
+        return diff;
+    }
+
+    /**
+     * @return the filter of the delta package
+     */
+    public @NotNull DefaultWorkspaceFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the properties of the delta package
+     */
+    public @NotNull Properties getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return the number of entries copied from the new package
+     */
+    public int getCopiedEntries() {
+        return copiedEntries;
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.MatchPatterns;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Snapshot of a directory tree, created with a single file system walk. Records the relative path, size and last modification time
+ * of each file and directory. Exclude patterns are evaluated once (relative to the snapshot's root directory) with the same semantics
+ * as in {@link org.codehaus.plexus.util.DirectoryScanner}. Excluded entries are still accessible via {@link #getEntry(String)}.
+ * Symbolic links are followed, but directories which would lead to a cycle are skipped.
+ */
+public class FileTreeSnapshot {
+
+    /** A single file or directory. */
+    public static final class Entry {
+        private final String path;
+        private final File file;
+        private final boolean isDirectory;
+        private final long size;
+        private final long lastModified;
+        private final boolean isExcluded;
+
+        Entry(String path, File file, boolean isDirectory, long size, long lastModified, boolean isExcluded) {
+            this.path = path;
+            this.file = file;
+            this.isDirectory = isDirectory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.isExcluded = isExcluded;
+        }
+
+        /**
+         * 
+         * @return the path relative to the snapshot's root directory with forward slashes
+         */
+        public @NotNull String getPath() {
+            return path;
+        }
+
+        public @NotNull File getFile() {
+            return file;
+        }
+
+        public boolean isDirectory() {
+            return isDirectory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isExcluded() {
+            return isExcluded;
+        }
+
+        /**
+         * Creates an entry for a single file or directory which is not part of a snapshot.
+         * @param file the file or directory
+         * @return the entry with the file name as path
+         * @throws IOException in case the attributes could not be read
+         */
+        public static @NotNull Entry of(@NotNull File file) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new Entry(file.getName(), file, attrs.isDirectory(), attrs.isDirectory() ? 0 : attrs.size(), attrs.lastModifiedTime().toMillis(), false);
+        }
+
+        Entry rebase(String newPath, boolean isExcluded) {
+            return new Entry(newPath, file, isDirectory, size, lastModified, isExcluded);
+        }
+    }
+
+    /** Receives the entries during a {@link FileTreeSnapshot#walk(File, String, Collection, boolean, EntryVisitor) walk}. */
+    @FunctionalInterface
+    public interface EntryVisitor {
+        void visit(@NotNull Entry entry) throws IOException;
+    }
+
+    private static final Comparator<Entry> PATH_COMPARATOR = Comparator.comparing(Entry::getPath);
+
+    private final File directory;
+
+    /** all entries (including the excluded ones) ordered by path */
+    private final List<Entry> entries;
+
+    private final Map<String, Entry> entriesByPath;
+
+    private final List<String> additionalExcludes;
+
+    private FileTreeSnapshot(File directory, List<Entry> entries, List<String> additionalExcludes) {
+        this.directory = directory;
+        this.entries = entries;
+        this.additionalExcludes = additionalExcludes;
+        this.entriesByPath = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (Entry entry : entries) {
+            entriesByPath.put(entry.getPath(), entry);
+        }
+    }
+
+    /**
+     * Walks the given directory.
+     * @param directory the root directory (may not exist, which leads to an empty snapshot)
+     * @param excludes the exclude patterns
+     * @param addDefaultExcludes {@code true} to exclude {@link AbstractScanner#DEFAULTEXCLUDES} in addition
+     * @return the snapshot
+     * @throws IOException in case the directory could not be walked
+     */
+    public static @NotNull FileTreeSnapshot create(@NotNull File directory, @NotNull Collection<String> excludes, boolean addDefaultExcludes) throws IOException {
+        PatternSet patterns = PatternSet.create(excludes, addDefaultExcludes);
+        List<Entry> entries = new ArrayList<>();
+        Path root = directory.toPath();
+        if (Files.isDirectory(root)) {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String platformPath = root.relativize(dir).toString();
+                    boolean isExcluded = patterns.matches(platformPath);
+                    entries.add(new Entry(toPath(platformPath), dir.toFile(), true, 0, attrs.lastModifiedTime().toMillis(), isExcluded));
+                    // all descendants would be excluded anyhow
+                    if (isExcluded && patterns.matchesRecursively(platformPath)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String platformPath = root.relativize(file).toString();
+                    entries.add(new Entry(toPath(platformPath), file.toFile(), false, attrs.size(), attrs.lastModifiedTime().toMillis(), patterns.matches(platformPath)));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    // stop at cycles caused by symbolic links
+                    if (exc instanceof FileSystemLoopException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exc;
+                }
+            });
+        }
+        entries.sort(PATH_COMPARATOR);
+        return new FileTreeSnapshot(directory, entries, Collections.emptyList());
+    }
+
+    /**
+     * Walks the given directory without keeping the entries in memory. In contrast to {@link #create(File, Collection, boolean)} the entries
+     * are not ordered by their path but the children of each directory are visited in lexicographical order (directly after the directory).
+     * @param directory the root directory (may not exist)
+     * @param path the relative path (with forward slashes) of the directory below the root directory which should be walked, empty for the root directory
+     * @param excludes the exclude patterns (relative to the root directory)
+     * @param addDefaultExcludes {@code true} to exclude {@link AbstractScanner#DEFAULTEXCLUDES} in addition
+     * @param visitor the visitor receiving all entries below the given path (including the excluded ones) with paths relative to the root directory
+     * @throws IOException in case the directory could not be walked or the visitor failed
+     */
+    public static void walk(@NotNull File directory, @NotNull String path, @NotNull Collection<String> excludes, boolean addDefaultExcludes,
+            @NotNull EntryVisitor visitor) throws IOException {
+        PatternSet patterns = PatternSet.create(excludes, addDefaultExcludes);
+        Path root = directory.toPath();
+        Path start = path.isEmpty() ? root : root.resolve(path);
+        if (Files.isDirectory(start)) {
+            walkDirectory(root, start, patterns, new ArrayList<>(Collections.singletonList(getFileKey(start))), visitor);
+        }
+    }
+
+    /**
+     * 
+     * @param excludes the exclude patterns
+     * @param addDefaultExcludes {@code true} to exclude {@link AbstractScanner#DEFAULTEXCLUDES} in addition
+     * @return a predicate evaluating whether a relative path (with forward slashes) is excluded with the same semantics as in a snapshot
+     */
+    public static @NotNull Predicate<String> createExcludeMatcher(@NotNull Collection<String> excludes, boolean addDefaultExcludes) {
+        PatternSet patterns = PatternSet.create(excludes, addDefaultExcludes);
+        return path -> patterns.matches(path.replace('/', File.separatorChar));
+    }
+
+    private static void walkDirectory(Path root, Path directory, PatternSet patterns, List<Object> ancestorKeys, EntryVisitor visitor) throws IOException {
+        List<Path> children;
+        try (Stream<Path> stream = Files.list(directory)) {
+            children = stream.sorted().collect(Collectors.toList());
+        }
+        for (Path child : children) {
+            // follows symbolic links
+            BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class);
+            String platformPath = root.relativize(child).toString();
+            boolean isExcluded = patterns.matches(platformPath);
+            if (attrs.isDirectory()) {
+                visitor.visit(new Entry(toPath(platformPath), child.toFile(), true, 0, attrs.lastModifiedTime().toMillis(), isExcluded));
+                Object key = getFileKey(child);
+                // all descendants would be excluded anyhow, also stop at cycles caused by symbolic links
+                if ((!isExcluded || !patterns.matchesRecursively(platformPath)) && !ancestorKeys.contains(key)) {
+                    ancestorKeys.add(key);
+                    walkDirectory(root, child, patterns, ancestorKeys, visitor);
+                    ancestorKeys.remove(ancestorKeys.size() - 1);
+                }
+            } else {
+                visitor.visit(new Entry(toPath(platformPath), child.toFile(), false, attrs.size(), attrs.lastModifiedTime().toMillis(), isExcluded));
+            }
+        }
+    }
+
+    private static Object getFileKey(Path directory) throws IOException {
+        Object key = Files.readAttributes(directory, BasicFileAttributes.class).fileKey();
+        return key != null ? key : directory.toRealPath();
+    }
+
+    private static String toPath(String platformPath) {
+        return platformPath.replace(File.separatorChar, '/');
+    }
+
+    public @NotNull File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 
+     * @return the exclude patterns which have been applied via {@link #exclude(Collection)} on top of the ones given during creation
+     */
+    public @NotNull List<String> getAdditionalExcludes() {
+        return additionalExcludes;
+    }
+
+    /**
+     * 
+     * @param path the relative path with forward slashes
+     * @return the entry (which might be excluded) or {@code null} in case it does not exist
+     */
+    public @Nullable Entry getEntry(@NotNull String path) {
+        return entriesByPath.get(path);
+    }
+
+    /**
+     * 
+     * @return all files and directories which are not excluded, ordered by their path
+     */
+    public @NotNull Stream<Entry> getEntries() {
+        return entries.stream().filter(entry -> !entry.isExcluded());
+    }
+
+    /**
+     * 
+     * @return all files which are not excluded, ordered by their path
+     */
+    public @NotNull Stream<Entry> getFiles() {
+        return getEntries().filter(entry -> !entry.isDirectory());
+    }
+
+    /**
+     * 
+     * @param path the relative path of a directory with forward slashes
+     * @return the snapshot of the given directory with all paths being relative to it
+     */
+    public @NotNull FileTreeSnapshot getSubTree(@NotNull String path) {
+        String prefix = path + "/";
+        // all descendants are ordered directly after the directory
+        int index = Collections.binarySearch(entries, new Entry(prefix, directory, false, 0, 0, false), PATH_COMPARATOR);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        List<Entry> subEntries = new ArrayList<>();
+        for (; index < entries.size() && entries.get(index).getPath().startsWith(prefix); index++) {
+            Entry entry = entries.get(index);
+            subEntries.add(entry.rebase(entry.getPath().substring(prefix.length()), entry.isExcluded()));
+        }
+        return new FileTreeSnapshot(new File(directory, path), subEntries, additionalExcludes);
+    }
+
+    /**
+     * 
+     * @param excludes additional exclude patterns
+     * @return a new snapshot in which all entries matching one of the given patterns are excluded as well
+     */
+    public @NotNull FileTreeSnapshot exclude(@NotNull Collection<String> excludes) {
+        PatternSet patterns = new PatternSet(excludes);
+        List<Entry> newEntries = entries.stream()
+                .map(entry -> entry.isExcluded() || !patterns.matches(entry.getPath().replace('/', File.separatorChar)) ? entry : entry.rebase(entry.getPath(), true))
+                .collect(Collectors.toList());
+        List<String> newAdditionalExcludes = new ArrayList<>(additionalExcludes);
+        newAdditionalExcludes.addAll(excludes);
+        return new FileTreeSnapshot(directory, newEntries, newAdditionalExcludes);
+    }
+
+    /**
+     * 
+     * @param predicate returns {@code true} for all entries which should be excluded
+     * @return a new snapshot in which all entries matching the given predicate are excluded as well
+     */
+    public @NotNull FileTreeSnapshot exclude(@NotNull Predicate<Entry> predicate) {
+        List<Entry> newEntries = entries.stream()
+                .map(entry -> entry.isExcluded() || !predicate.test(entry) ? entry : entry.rebase(entry.getPath(), true))
+                .collect(Collectors.toList());
+        return new FileTreeSnapshot(directory, newEntries, additionalExcludes);
+    }
+
+    /**
+     * Exclude patterns normalized in the same way as in {@link AbstractScanner}.
+     */
+    private static final class PatternSet {
+        private final MatchPatterns patterns;
+        /** all patterns ending with "**" which match all descendants of a matching directory as well */
+        private final MatchPatterns recursivePatterns;
+
+        static PatternSet create(Collection<String> excludes, boolean addDefaultExcludes) {
+            List<String> allExcludes = new ArrayList<>(excludes);
+            if (addDefaultExcludes) {
+                Collections.addAll(allExcludes, AbstractScanner.DEFAULTEXCLUDES);
+            }
+            return new PatternSet(allExcludes);
+        }
+
+        PatternSet(Collection<String> excludes) {
+            List<String> normalizedPatterns = excludes.stream().map(PatternSet::normalizePattern).collect(Collectors.toList());
+            patterns = MatchPatterns.from(normalizedPatterns.toArray(new String[0]));
+            recursivePatterns = MatchPatterns.from(normalizedPatterns.stream()
+                    .filter(pattern -> pattern.endsWith(File.separator + "**"))
+                    .toArray(String[]::new));
+        }
+
+        boolean matches(String platformPath) {
+            return patterns.matches(platformPath, true);
+        }
+
+        boolean matchesRecursively(String platformPath) {
+            return recursivePatterns.matches(platformPath, true);
+        }
+
+        private static String normalizePattern(String pattern) {
+            String normalizedPattern = pattern.trim();
+            if (normalizedPattern.startsWith("%regex[") || normalizedPattern.startsWith("%ant[")) {
+                return normalizedPattern;
+            }
+            normalizedPattern = normalizedPattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            if (normalizedPattern.endsWith(File.separator)) {
+                normalizedPattern += "**";
+            }
+            return normalizedPattern;
+        }
+    }
+}
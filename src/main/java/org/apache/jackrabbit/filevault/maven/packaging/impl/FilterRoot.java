@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The sources of a single filter root, i.e. either a full coverage aggregate or a directory.
+ */
+public final class FilterRoot {
+
+    private final PathFilterSet filterSet;
+
+    private final String relPath;
+
+    private final String destPath;
+
+    private final File aggregateFile;
+
+    private final FileTreeSnapshot subTree;
+
+    private final PathFilterPruner pruner;
+
+    /**
+     * 
+     * @param filterSet the filter set defining this root
+     * @param relPath the path relative to the source directory
+     * @param destPath the entry name in the package corresponding to {@code relPath}
+     * @param aggregateFile the full coverage aggregate (or {@code null})
+     * @param subTree the directory (in case there is no full coverage aggregate)
+     * @param pruner the pruner which has been applied to {@code subTree} (or {@code null})
+     */
+    public FilterRoot(@NotNull PathFilterSet filterSet, @NotNull String relPath, @NotNull String destPath, @Nullable File aggregateFile,
+            @Nullable FileTreeSnapshot subTree, @Nullable PathFilterPruner pruner) {
+        this.filterSet = filterSet;
+        this.relPath = relPath;
+        this.destPath = destPath;
+        this.aggregateFile = aggregateFile;
+        this.subTree = subTree;
+        this.pruner = pruner;
+    }
+
+    /**
+     * 
+     * @param subTree the new directory
+     * @return a copy of this filter root with the given directory
+     */
+    public @NotNull FilterRoot withSubTree(@NotNull FileTreeSnapshot subTree) {
+        return new FilterRoot(filterSet, relPath, destPath, aggregateFile, subTree, pruner);
+    }
+
+    public @NotNull PathFilterSet getFilterSet() {
+        return filterSet;
+    }
+
+    public @NotNull String getRelPath() {
+        return relPath;
+    }
+
+    public @NotNull String getDestPath() {
+        return destPath;
+    }
+
+    public @Nullable File getAggregateFile() {
+        return aggregateFile;
+    }
+
+    public @Nullable FileTreeSnapshot getSubTree() {
+        return subTree;
+    }
+
+    public @Nullable PathFilterPruner getPruner() {
+        return pruner;
+    }
+}
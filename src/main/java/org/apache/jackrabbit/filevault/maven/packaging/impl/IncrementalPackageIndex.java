@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records the size and last modification time of the source of each file entry of a package together with the settings used
+ * for compressing it. This allows to detect unchanged entries in a subsequent build, whose compressed data may then be copied
+ * from the previous package. Optionally also the content hashes of the entries are recorded (see {@link ContentHashIndex}), as they
+ * cannot be calculated for copied entries without inflating them.
+ */
+public class IncrementalPackageIndex {
+
+    private static final int VERSION = 2;
+
+    private final String settings;
+
+    private final Map<String, long[]> entries = new HashMap<>();
+
+    private final Map<String, String> contentHashes = new HashMap<>();
+
+    /**
+     * 
+     * @param settings the description of all settings having an effect on the compressed data of the entries
+     */
+    public IncrementalPackageIndex(@NotNull String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Loads a previously stored index.
+     * @param file the file
+     * @return the index or {@code null} in case the file does not exist or has an unsupported format
+     * @throws IOException in case the file could not be read
+     */
+    public static @Nullable IncrementalPackageIndex load(@NotNull File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != VERSION) {
+                return null;
+            }
+            IncrementalPackageIndex index = new IncrementalPackageIndex(input.readUTF());
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                index.put(input.readUTF(), input.readLong(), input.readLong());
+            }
+            size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                index.putContentHash(input.readUTF(), input.readUTF());
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Stores this index atomically.
+     * @param file the file
+     * @throws IOException in case the file could not be written
+     */
+    public void store(@NotNull File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            output.writeInt(VERSION);
+            output.writeUTF(settings);
+            output.writeInt(entries.size());
+            for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue()[0]);
+                output.writeLong(entry.getValue()[1]);
+            }
+            output.writeInt(contentHashes.size());
+            for (Map.Entry<String, String> entry : contentHashes.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeUTF(entry.getValue());
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public @NotNull String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Records the source of an entry.
+     * @param entryName the entry name
+     * @param size the size of the source
+     * @param lastModified the last modification time of the source
+     */
+    public void put(@NotNull String entryName, long size, long lastModified) {
+        entries.put(entryName, new long[] { size, lastModified });
+    }
+
+    /**
+     * 
+     * @param entryName the entry name
+     * @param size the size of the source
+     * @param lastModified the last modification time of the source
+     * @return {@code true} in case the entry has been recorded with exactly the same source size and last modification time
+     */
+    public boolean isUnchanged(@NotNull String entryName, long size, long lastModified) {
+        long[] source = entries.get(entryName);
+        return source != null && source[0] == size && source[1] == lastModified;
+    }
+
+    /**
+     * Records the content hash of an entry.
+     * @param entryName the entry name
+     * @param hash the content hash
+     */
+    public void putContentHash(@NotNull String entryName, @NotNull String hash) {
+        contentHashes.put(entryName, hash);
+    }
+
+    /**
+     * 
+     * @param entryName the entry name
+     * @return the recorded content hash or {@code null}
+     */
+    public @Nullable String getContentHash(@NotNull String entryName) {
+        return contentHashes.get(entryName);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Calculates a SHA-256 fingerprint over all inputs of a goal execution. Files are either represented by their path,
+ * size and last modification time or by their content. Two fingerprints are equal if all inputs have been added
+ * in the same order with the same values.
+ * <p>
+ * Each name and value is hashed with a length prefix and each value with a type marker, so that different inputs
+ * (e.g. a value containing a separator or a list with a different split of elements) never lead to the same serialization.
+ */
+public class InputFingerprint {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // type markers preceding the values
+    private static final byte NULL = 0;
+    private static final byte SCALAR = 1;
+    private static final byte MAP = 2;
+    private static final byte ITERABLE = 3;
+    private static final byte ELEMENT = 4;
+    private static final byte END = 5;
+    private static final byte DIRECTORY = 6;
+    private static final byte FILE = 7;
+
+    private final MessageDigest digest;
+
+    public InputFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    /**
+     * Adds a named value.
+     * @param name the name
+     * @param value the value (may be {@code null}), maps and iterables are added element by element
+     * @return this fingerprint
+     */
+    public InputFingerprint addValue(@NotNull String name, @Nullable Object value) {
+        update(name);
+        addValue(value);
+        return this;
+    }
+
+    private void addValue(@Nullable Object value) {
+        if (value == null) {
+            digest.update(NULL);
+        } else if (value instanceof Map) {
+            digest.update(MAP);
+            Map<?, ?> map = new TreeMap<>((Map<?, ?>) value);
+            // use a defined order
+            updateLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                addValue(entry.getKey());
+                addValue(entry.getValue());
+            }
+        } else if (value instanceof Iterable) {
+            digest.update(ITERABLE);
+            for (Object element : (Iterable<?>) value) {
+                digest.update(ELEMENT);
+                addValue(element);
+            }
+            digest.update(END);
+        } else {
+            digest.update(SCALAR);
+            update(String.valueOf(value));
+        }
+    }
+
+    /**
+     * Adds the path, size and last modification time of the given file. In case the file is a directory all files below it are added.
+     * @param name the name
+     * @param file the file or directory, may be {@code null} or not existing
+     * @return this fingerprint
+     * @throws IOException in case the file attributes could not be read
+     */
+    public InputFingerprint addFile(@NotNull String name, @Nullable File file) throws IOException {
+        return addFile(name, file, false, path -> true);
+    }
+
+    /**
+     * Adds the given file. In case the file is a directory all files below it are added.
+     * @param name the name
+     * @param file the file or directory, may be {@code null} or not existing
+     * @param hashContent {@code true} to hash the file contents, {@code false} to only add the size and last modification time
+     * @param filter the filter which files to consider (only evaluated for files below a given directory)
+     * @return this fingerprint
+     * @throws IOException in case the file could not be read
+     */
+    public InputFingerprint addFile(@NotNull String name, @Nullable File file, boolean hashContent, @NotNull Predicate<Path> filter) throws IOException {
+        addValue(name, file);
+        if (file == null || !file.exists()) {
+            return this;
+        }
+        Path root = file.toPath();
+        if (file.isDirectory()) {
+            // always iterate in the same order
+            Map<String, Path> files;
+            try (Stream<Path> stream = Files.walk(root)) {
+                files = stream.filter(path -> !path.equals(root) && filter.test(path))
+                        .collect(Collectors.toMap(path -> root.relativize(path).toString().replace(File.separatorChar, '/'), path -> path,
+                                (a, b) -> a, TreeMap::new));
+            }
+            for (Map.Entry<String, Path> entry : files.entrySet()) {
+                addPath(entry.getKey(), entry.getValue(), hashContent);
+            }
+        } else {
+            addPath("", root, hashContent);
+        }
+        return this;
+    }
+
+    /**
+     * Adds all (non-excluded) entries of the given snapshot.
+     * @param name the name
+     * @param snapshot the snapshot, may be {@code null}
+     * @param hashContent {@code true} to hash the file contents, {@code false} to only add the size and last modification time
+     * @return this fingerprint
+     * @throws IOException in case a file could not be read
+     */
+    public InputFingerprint addSnapshot(@NotNull String name, @Nullable FileTreeSnapshot snapshot, boolean hashContent) throws IOException {
+        addValue(name, snapshot != null ? snapshot.getDirectory() : null);
+        if (snapshot != null) {
+            for (Iterator<FileTreeSnapshot.Entry> iterator = snapshot.getEntries().iterator(); iterator.hasNext();) {
+                addEntry(iterator.next(), hashContent);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a single entry of a {@link FileTreeSnapshot} or of a {@link FileTreeSnapshot#walk(File, String, java.util.Collection, boolean, FileTreeSnapshot.EntryVisitor) walk}.
+     * @param entry the entry
+     * @param hashContent {@code true} to hash the file contents, {@code false} to only add the size and last modification time
+     * @return this fingerprint
+     * @throws IOException in case a file could not be read
+     */
+    public InputFingerprint addEntry(@NotNull FileTreeSnapshot.Entry entry, boolean hashContent) throws IOException {
+        update(entry.getPath());
+        if (entry.isDirectory()) {
+            digest.update(DIRECTORY);
+        } else {
+            addFileAttributes(entry.getFile().toPath(), entry.getSize(), entry.getLastModified(), hashContent);
+        }
+        return this;
+    }
+
+    private void addPath(String relativePath, Path path, boolean hashContent) throws IOException {
+        update(relativePath);
+        if (Files.isDirectory(path)) {
+            digest.update(DIRECTORY);
+            return;
+        }
+        addFileAttributes(path, Files.size(path), Files.getLastModifiedTime(path).toMillis(), hashContent);
+    }
+
+    private void addFileAttributes(Path path, long size, long lastModified, boolean hashContent) throws IOException {
+        digest.update(FILE);
+        updateLong(size);
+        if (hashContent) {
+            long contentLength = 0;
+            try (InputStream input = Files.newInputStream(path)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, length);
+                    contentLength += length;
+                }
+            }
+            // the content may differ from the given size in case the file has been modified in the meantime
+            updateLong(contentLength);
+        } else {
+            updateLong(lastModified);
+        }
+    }
+
+    /** Adds the given string prefixed by its length */
+    private void update(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        updateLong(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void updateLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (value >>> shift));
+        }
+    }
+
+    /**
+     * Finishes the calculation. The fingerprint must not be modified afterwards.
+     * @return the fingerprint as hex string
+     */
+    public @NotNull String getValue() {
+        byte[] hash = digest.digest();
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Minimal ZIP writer for entries whose CRC and sizes are known upfront (i.e. which have been compressed before).
+ * Writes the local file header directly followed by the (raw) data of each entry and finally the central directory.
+ * In contrast to {@link org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream} no entry objects are retained:
+ * the central directory records are serialized immediately into a buffer which is spilled to a temporary file once it exceeds
+ * {@link ConcurrentZipWriter#MAX_IN_MEMORY_SIZE}. ZIP64 extensions are only used where necessary.
+ * All entry names are encoded in UTF-8 (with the according general purpose flag).
+ */
+public class LeanZipOutputStream implements Closeable {
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_FILE_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private static final int VERSION_DEFAULT = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream output;
+
+    private final FileChannel channel;
+
+    private final ConcurrentZipWriter.SpillingOutputStream centralDirectory = new ConcurrentZipWriter.SpillingOutputStream();
+
+    private final byte[] header = new byte[64];
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private final Calendar calendar = Calendar.getInstance();
+
+    private long offset;
+
+    private long entries;
+
+    private boolean finished;
+
+    /**
+     * 
+     * @param output the stream to write to (should be buffered)
+     */
+    public LeanZipOutputStream(@NotNull OutputStream output) {
+        this.output = output;
+        this.channel = null;
+    }
+
+    /**
+     * 
+     * @param file the file to write to, allows to {@link #addRawEntry(ZipArchiveEntry, File) transfer} the content of other files directly
+     * @throws IOException in case the file could not be opened
+     */
+    public LeanZipOutputStream(@NotNull File file) throws IOException {
+        FileOutputStream fileOutput = new FileOutputStream(file);
+        this.output = new BufferedOutputStream(fileOutput, BUFFER_SIZE);
+        this.channel = fileOutput.getChannel();
+    }
+
+    /**
+     * Writes an entry.
+     * @param entry the entry with name, method, time, CRC, size, compressed size and external attributes being set
+     * @param rawData the already compressed data (exactly {@link ZipArchiveEntry#getCompressedSize()} bytes)
+     * @throws IOException in case writing failed
+     */
+    public void addRawEntry(@NotNull ZipArchiveEntry entry, @NotNull InputStream rawData) throws IOException {
+        byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+        long localHeaderOffset = writeLocalFileHeader(entry, name);
+        long copied = 0;
+        int read;
+        while ((read = rawData.read(buffer)) != -1) {
+            write(buffer, 0, read);
+            copied += read;
+        }
+        if (copied != entry.getCompressedSize()) {
+            throw new IOException("Expected " + entry.getCompressedSize() + " bytes for entry " + entry.getName() + " but got " + copied);
+        }
+        writeCentralDirectoryRecord(entry, name, localHeaderOffset);
+    }
+
+    /**
+     * Writes an entry whose data is the content of the given file. In case this stream has been created for a file
+     * the content is transferred via {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, i.e.
+     * without copying it through the Java heap. Only the size of the file is verified, the caller needs to make sure that its content
+     * still matches the CRC of the entry.
+     * @param entry the entry with name, method, time, CRC, size, compressed size and external attributes being set
+     * @param rawData the file containing the already compressed data (exactly {@link ZipArchiveEntry#getCompressedSize()} bytes)
+     * @throws IOException in case writing failed
+     */
+    public void addRawEntry(@NotNull ZipArchiveEntry entry, @NotNull File rawData) throws IOException {
+        if (channel == null) {
+            try (InputStream input = new FileInputStream(rawData)) {
+                addRawEntry(entry, input);
+            }
+            return;
+        }
+        try (FileChannel source = FileChannel.open(rawData.toPath(), StandardOpenOption.READ)) {
+            long size = entry.getCompressedSize();
+            if (source.size() != size) {
+                throw new IOException("Expected " + size + " bytes for entry " + entry.getName() + " but file " + rawData + " has " + source.size());
+            }
+            byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            long localHeaderOffset = writeLocalFileHeader(entry, name);
+            output.flush();
+            long position = 0;
+            while (position < size) {
+                long transferred = source.transferTo(position, size - position, channel);
+                if (transferred <= 0) {
+                    throw new IOException("Could not transfer " + rawData + " at position " + position);
+                }
+                position += transferred;
+            }
+            offset += size;
+            writeCentralDirectoryRecord(entry, name, localHeaderOffset);
+        }
+    }
+
+    /**
+     * 
+     * @return the offset of the local file header
+     */
+    private long writeLocalFileHeader(ZipArchiveEntry entry, byte[] name) throws IOException {
+        if (finished) {
+            throw new IOException("The archive has already been finished");
+        }
+        long size = entry.getSize();
+        long compressedSize = entry.getCompressedSize();
+        if (size < 0 || compressedSize < 0) {
+            throw new IOException("The sizes of entry " + entry.getName() + " are unknown");
+        }
+        // in case of ZIP64 both sizes are contained in the extra field
+        boolean isZip64 = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+        long localHeaderOffset = offset;
+        int length = 0;
+        length = putInt(header, length, LOCAL_FILE_HEADER_SIGNATURE);
+        length = putShort(header, length, getVersionNeeded(entry, localHeaderOffset));
+        length = putShort(header, length, UTF8_FLAG);
+        length = putShort(header, length, entry.getMethod());
+        length = putInt(header, length, toDosTime(entry.getTime()));
+        length = putInt(header, length, entry.getCrc());
+        length = putInt(header, length, isZip64 ? ZIP64_MAGIC : compressedSize);
+        length = putInt(header, length, isZip64 ? ZIP64_MAGIC : size);
+        length = putShort(header, length, name.length);
+        length = putShort(header, length, isZip64 ? 20 : 0);
+        write(header, 0, length);
+        write(name, 0, name.length);
+        if (isZip64) {
+            length = 0;
+            length = putShort(header, length, ZIP64_EXTRA_FIELD_ID);
+            length = putShort(header, length, 16);
+            length = putLong(header, length, size);
+            length = putLong(header, length, compressedSize);
+            write(header, 0, length);
+        }
+        return localHeaderOffset;
+    }
+
+    /** Serializes the central directory record (only the fields exceeding 32 bits are contained in the ZIP64 extra field) */
+    private void writeCentralDirectoryRecord(ZipArchiveEntry entry, byte[] name, long localHeaderOffset) throws IOException {
+        long size = entry.getSize();
+        long compressedSize = entry.getCompressedSize();
+        int version = getVersionNeeded(entry, localHeaderOffset);
+        boolean isSizeZip64 = size >= ZIP64_MAGIC;
+        boolean isCompressedSizeZip64 = compressedSize >= ZIP64_MAGIC;
+        boolean isOffsetZip64 = localHeaderOffset >= ZIP64_MAGIC;
+        int extraLength = (isSizeZip64 ? 8 : 0) + (isCompressedSizeZip64 ? 8 : 0) + (isOffsetZip64 ? 8 : 0);
+        int length = 0;
+        length = putInt(header, length, CENTRAL_FILE_HEADER_SIGNATURE);
+        length = putShort(header, length, (entry.getPlatform() << 8) | Math.max(version, VERSION_DEFLATED));
+        length = putShort(header, length, version);
+        length = putShort(header, length, UTF8_FLAG);
+        length = putShort(header, length, entry.getMethod());
+        length = putInt(header, length, toDosTime(entry.getTime()));
+        length = putInt(header, length, entry.getCrc());
+        length = putInt(header, length, isCompressedSizeZip64 ? ZIP64_MAGIC : compressedSize);
+        length = putInt(header, length, isSizeZip64 ? ZIP64_MAGIC : size);
+        length = putShort(header, length, name.length);
+        length = putShort(header, length, extraLength > 0 ? extraLength + 4 : 0);
+        length = putShort(header, length, 0); // comment length
+        length = putShort(header, length, 0); // disk number
+        length = putShort(header, length, entry.getInternalAttributes());
+        length = putInt(header, length, entry.getExternalAttributes());
+        length = putInt(header, length, isOffsetZip64 ? ZIP64_MAGIC : localHeaderOffset);
+        centralDirectory.write(header, 0, length);
+        centralDirectory.write(name, 0, name.length);
+        if (extraLength > 0) {
+            length = 0;
+            length = putShort(header, length, ZIP64_EXTRA_FIELD_ID);
+            length = putShort(header, length, extraLength);
+            if (isSizeZip64) {
+                length = putLong(header, length, size);
+            }
+            if (isCompressedSizeZip64) {
+                length = putLong(header, length, compressedSize);
+            }
+            if (isOffsetZip64) {
+                length = putLong(header, length, localHeaderOffset);
+            }
+            centralDirectory.write(header, 0, length);
+        }
+        entries++;
+    }
+
+    /**
+     * 
+     * @return the number of entries written so far
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * Writes the central directory. Does not close the underlying stream.
+     * @throws IOException in case writing failed
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        long centralDirectoryOffset = offset;
+        centralDirectory.close();
+        try (InputStream input = centralDirectory.openInputStream()) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                write(buffer, 0, read);
+            }
+        } finally {
+            centralDirectory.dispose();
+        }
+        long centralDirectorySize = offset - centralDirectoryOffset;
+        boolean isZip64 = entries >= ZIP64_MAGIC_SHORT || centralDirectorySize >= ZIP64_MAGIC || centralDirectoryOffset >= ZIP64_MAGIC;
+        int length = 0;
+        if (isZip64) {
+            long zip64EndOfCentralDirectoryOffset = offset;
+            length = putInt(header, length, ZIP64_END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            length = putLong(header, length, 44); // size of the remaining record
+            length = putShort(header, length, VERSION_ZIP64);
+            length = putShort(header, length, VERSION_ZIP64);
+            length = putInt(header, length, 0); // number of this disk
+            length = putInt(header, length, 0); // disk with the central directory
+            length = putLong(header, length, entries);
+            length = putLong(header, length, entries);
+            length = putLong(header, length, centralDirectorySize);
+            length = putLong(header, length, centralDirectoryOffset);
+            write(header, 0, length);
+            length = 0;
+            length = putInt(header, length, ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR_SIGNATURE);
+            length = putInt(header, length, 0); // disk with the ZIP64 end of central directory
+            length = putLong(header, length, zip64EndOfCentralDirectoryOffset);
+            length = putInt(header, length, 1); // total number of disks
+            write(header, 0, length);
+            length = 0;
+        }
+        length = putInt(header, length, END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+        length = putShort(header, length, 0); // number of this disk
+        length = putShort(header, length, 0); // disk with the central directory
+        length = putShort(header, length, (int) Math.min(entries, ZIP64_MAGIC_SHORT));
+        length = putShort(header, length, (int) Math.min(entries, ZIP64_MAGIC_SHORT));
+        length = putInt(header, length, Math.min(centralDirectorySize, ZIP64_MAGIC));
+        length = putInt(header, length, Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        length = putShort(header, length, 0); // comment length
+        write(header, 0, length);
+        output.flush();
+    }
+
+    /**
+     * Finishes the archive and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            centralDirectory.dispose();
+            output.close();
+        }
+    }
+
+    private void write(byte[] bytes, int off, int len) throws IOException {
+        output.write(bytes, off, len);
+        offset += len;
+    }
+
+    private static int getVersionNeeded(ZipArchiveEntry entry, long localHeaderOffset) {
+        if (entry.getSize() >= ZIP64_MAGIC || entry.getCompressedSize() >= ZIP64_MAGIC || localHeaderOffset >= ZIP64_MAGIC) {
+            return VERSION_ZIP64;
+        }
+        return entry.getMethod() == ZipEntry.DEFLATED ? VERSION_DEFLATED : VERSION_DEFAULT;
+    }
+
+    /** Converts to the MS-DOS date and time format (in the local time zone) */
+    private long toDosTime(long time) {
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            // 1980-01-01 00:00:00 is the minimum
+            return (1 << 21) | (1 << 16);
+        }
+        return ((year - 1980L) << 25) | ((calendar.get(Calendar.MONTH) + 1L) << 21) | ((long) calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | ((long) calendar.get(Calendar.HOUR_OF_DAY) << 11) | ((long) calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private static int putShort(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) value;
+        bytes[index + 1] = (byte) (value >>> 8);
+        return index + 2;
+    }
+
+    private static int putInt(byte[] bytes, int index, long value) {
+        bytes[index] = (byte) value;
+        bytes[index + 1] = (byte) (value >>> 8);
+        bytes[index + 2] = (byte) (value >>> 16);
+        bytes[index + 3] = (byte) (value >>> 24);
+        return index + 4;
+    }
+
+    private static int putLong(byte[] bytes, int index, long value) {
+        index = putInt(bytes, index, value);
+        return putInt(bytes, index, value >>> 32);
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.vault.fs.api.FilterSet;
+import org.apache.jackrabbit.vault.fs.api.PathFilter;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.fs.filter.DefaultPathFilter;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.PlatformNameFormat;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compares two content packages based on the metadata of their zip central directories.
+ * An entry is considered unchanged if its CRC-32 and uncompressed size are equal in both packages, so that no entry data
+ * needs to be inflated for that. Only entries whose metadata differs and which need to be evaluated semantically
+ * (i.e. {@code META-INF/vault/filter.xml} and {@code META-INF/vault/properties.xml}) as well as entries lacking a CRC-32 or size
+ * are read. Both packages are opened and read concurrently.
+ * <p>
+ * The changed entries below {@code jcr_root} are reported by the repository path of the aggregate they are part of
+ * (see {@link RepositoryPathMapper#getAggregatePath(String)}). To detect full coverage aggregates the beginning of the added, removed
+ * and changed xml files is read.
+ */
+public class PackageDiff {
+
+    public enum Change {
+        ADDED, REMOVED, CHANGED
+    }
+
+    private static final String ROOT_PREFIX = Constants.ROOT_DIR + "/";
+
+    private static final String FILTER_ENTRY = Constants.META_DIR + "/" + Constants.FILTER_XML;
+
+    private static final String PROPERTIES_ENTRY = Constants.META_DIR + "/" + Constants.PROPERTIES_XML;
+
+    private final SortedMap<String, Change> pathChanges = new TreeMap<>();
+
+    private final SortedMap<String, Change> metadataChanges = new TreeMap<>();
+
+    private final List<String> filterChanges = new ArrayList<>();
+
+    private final List<String> propertyChanges = new ArrayList<>();
+
+    private final AtomicInteger inflatedEntries = new AtomicInteger();
+
+    private PackageDiff() {
+    }
+
+    /**
+     * Compares the given packages.
+     * @param basePackage the package to compare against
+     * @param newPackage the package whose changes are reported
+     * @return the differences
+     * @throws IOException in case one of the packages cannot be read
+     */
+    public static @NotNull PackageDiff compare(@NotNull File basePackage, @NotNull File newPackage) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<ZipFile>> futures = Arrays.asList(
+                    executor.submit(() -> new ZipFile(basePackage)),
+                    executor.submit(() -> new ZipFile(newPackage)));
+            List<ZipFile> zipFiles = new ArrayList<>();
+            IOException exception = null;
+            for (Future<ZipFile> future : futures) {
+                try {
+                    zipFiles.add(get(future));
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+            try {
+                if (exception != null) {
+                    throw exception;
+                }
+                PackageDiff diff = new PackageDiff();
+                try {
+                    diff.compare(zipFiles.get(0), zipFiles.get(1), executor);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                return diff;
+            } finally {
+                for (ZipFile zipFile : zipFiles) {
+                    zipFile.close();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void compare(ZipFile baseZip, ZipFile newZip, ExecutorService executor) throws IOException {
+        Future<Map<String, ZipEntry>> baseFuture = executor.submit(() -> getEntries(baseZip));
+        Future<Map<String, ZipEntry>> newFuture = executor.submit(() -> getEntries(newZip));
+        Map<String, ZipEntry> baseEntries = get(baseFuture);
+        Map<String, ZipEntry> newEntries = get(newFuture);
+        RepositoryPathMapper baseMapper = createMapper(baseZip, baseEntries);
+        RepositoryPathMapper newMapper = createMapper(newZip, newEntries);
+
+        Map<String, Set<Change>> nodeChanges = new HashMap<>();
+        for (ZipEntry newEntry : newEntries.values()) {
+            ZipEntry baseEntry = baseEntries.get(newEntry.getName());
+            if (baseEntry == null) {
+                addChange(nodeChanges, newMapper, newEntry.getName(), Change.ADDED);
+            } else if (isChanged(baseZip, baseEntry, newZip, newEntry)) {
+                addChange(nodeChanges, newMapper, newEntry.getName(), Change.CHANGED);
+            }
+        }
+        for (ZipEntry baseEntry : baseEntries.values()) {
+            if (!newEntries.containsKey(baseEntry.getName())) {
+                addChange(nodeChanges, baseMapper, baseEntry.getName(), Change.REMOVED);
+            }
+        }
+        // the unchanged xml files are not read, therefore full coverage aggregates are checked separately
+        RepositoryPathMapper baseMetadataMapper = createMapper(baseZip, baseEntries, false);
+        RepositoryPathMapper newMetadataMapper = createMapper(newZip, newEntries, false);
+        Set<String> baseNodes = getNodes(baseEntries, baseMetadataMapper);
+        Set<String> newNodes = getNodes(newEntries, newMetadataMapper);
+        for (Map.Entry<String, Set<Change>> entry : nodeChanges.entrySet()) {
+            Set<Change> changes = entry.getValue();
+            Change change = changes.size() == 1 ? changes.iterator().next() : Change.CHANGED;
+            // a node which is serialized by other files in both packages (e.g. a folder which got a .content.xml) is changed
+            if (change == Change.ADDED && isNode(baseNodes, baseMapper, entry.getKey())
+                    || change == Change.REMOVED && isNode(newNodes, newMapper, entry.getKey())) {
+                change = Change.CHANGED;
+            }
+            pathChanges.put(entry.getKey(), change);
+        }
+
+        if (metadataChanges.containsKey(FILTER_ENTRY) || metadataChanges.containsKey(PROPERTIES_ENTRY)) {
+            Future<Map<String, String>> baseFilter = executor.submit(() -> loadFilter(baseZip, baseEntries.get(FILTER_ENTRY)));
+            Future<Map<String, String>> newFilter = executor.submit(() -> loadFilter(newZip, newEntries.get(FILTER_ENTRY)));
+            Future<Properties> baseProperties = executor.submit(() -> loadProperties(baseZip, baseEntries.get(PROPERTIES_ENTRY)));
+            Future<Properties> newProperties = executor.submit(() -> loadProperties(newZip, newEntries.get(PROPERTIES_ENTRY)));
+            if (metadataChanges.containsKey(FILTER_ENTRY)) {
+                compareFilters(get(baseFilter), get(newFilter));
+            }
+            if (metadataChanges.containsKey(PROPERTIES_ENTRY)) {
+                compareProperties(get(baseProperties), get(newProperties));
+            }
+        }
+    }
+
+    private void addChange(Map<String, Set<Change>> nodeChanges, RepositoryPathMapper mapper, String entryName, Change change) {
+        if (entryName.startsWith(ROOT_PREFIX)) {
+            nodeChanges.computeIfAbsent(mapper.getAggregatePath(entryName.substring(ROOT_PREFIX.length())), k -> EnumSet.noneOf(Change.class)).add(change);
+        } else if (!entryName.endsWith("/")) {
+            metadataChanges.put(entryName, change);
+        }
+    }
+
+    private boolean isChanged(ZipFile baseZip, ZipEntry baseEntry, ZipFile newZip, ZipEntry newEntry) throws IOException {
+        if (baseEntry.isDirectory() || newEntry.isDirectory()) {
+            return baseEntry.isDirectory() != newEntry.isDirectory();
+        }
+        if (baseEntry.getSize() >= 0 && newEntry.getSize() >= 0 && baseEntry.getSize() != newEntry.getSize()) {
+            return true;
+        }
+        if (baseEntry.getCrc() >= 0 && newEntry.getCrc() >= 0 && baseEntry.getSize() >= 0 && newEntry.getSize() >= 0) {
+            return baseEntry.getCrc() != newEntry.getCrc();
+        }
+        // the central directory lacks the metadata, therefore compare the content
+        inflatedEntries.addAndGet(2);
+        try (InputStream baseInput = baseZip.getInputStream(baseEntry);
+             InputStream newInput = newZip.getInputStream(newEntry)) {
+            return !IOUtils.contentEquals(baseInput, newInput);
+        }
+    }
+
+    private RepositoryPathMapper createMapper(ZipFile zipFile, Map<String, ZipEntry> entries) {
+        return createMapper(zipFile, entries, true);
+    }
+
+    /**
+     * @param zipFile the package
+     * @param entries the entries of the package by name
+     * @param isReadingAggregates {@code false} to never read the entries, i.e. to treat all xml files as regular files
+     * @return the mapper for the entries of the given package
+     */
+    private RepositoryPathMapper createMapper(ZipFile zipFile, Map<String, ZipEntry> entries, boolean isReadingAggregates) {
+        Map<String, Boolean> aggregates = new HashMap<>();
+        return new RepositoryPathMapper(path -> {
+            ZipEntry entry = entries.get(ROOT_PREFIX + path);
+            return entry != null && !entry.isDirectory();
+        }, path -> isReadingAggregates && aggregates.computeIfAbsent(path, k -> isFullCoverageAggregate(zipFile, entries.get(ROOT_PREFIX + path))));
+    }
+
+    private boolean isFullCoverageAggregate(ZipFile zipFile, @Nullable ZipEntry entry) {
+        if (entry == null || entry.isDirectory()) {
+            return false;
+        }
+        inflatedEntries.incrementAndGet();
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            return RepositoryPathMapper.isDocView(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param nodes the nodes of the package without taking into account full coverage aggregates
+     * @param mapper the mapper reading the aggregates of the same package
+     * @param node the repository path of a node
+     * @return {@code true} in case the node is serialized by some entry of the package
+     */
+    private static boolean isNode(Set<String> nodes, RepositoryPathMapper mapper, String node) {
+        if (nodes.contains(node)) {
+            return true;
+        }
+        if ("/".equals(node)) {
+            return false;
+        }
+        String aggregatePath = PlatformNameFormat.getPlatformPath(node).substring(1) + ".xml";
+        return node.equals(mapper.getAggregatePath(aggregatePath));
+    }
+
+    private static Map<String, ZipEntry> getEntries(ZipFile zipFile) {
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while (enumeration.hasMoreElements()) {
+            ZipEntry entry = enumeration.nextElement();
+            entries.put(entry.getName(), entry);
+        }
+        return entries;
+    }
+
+    private static Set<String> getNodes(Map<String, ZipEntry> entries, RepositoryPathMapper mapper) {
+        Set<String> nodes = new HashSet<>();
+        for (String name : entries.keySet()) {
+            if (name.startsWith(ROOT_PREFIX)) {
+                nodes.add(mapper.getAggregatePath(name.substring(ROOT_PREFIX.length())));
+            }
+        }
+        return nodes;
+    }
+
+    private Map<String, String> loadFilter(ZipFile zipFile, @Nullable ZipEntry entry) throws IOException {
+        Map<String, String> rules = new LinkedHashMap<>();
+        if (entry == null) {
+            return rules;
+        }
+        inflatedEntries.incrementAndGet();
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            filter.load(input);
+        } catch (ConfigurationException e) {
+            throw new IOException("Invalid filter in " + zipFile.getName() + ": " + e.getMessage(), e);
+        }
+        for (PathFilterSet filterSet : filter.getFilterSets()) {
+            rules.merge(filterSet.getRoot(), describe(filterSet), (a, b) -> a + "; " + b);
+        }
+        return rules;
+    }
+
+    private static String describe(PathFilterSet filterSet) {
+        StringBuilder description = new StringBuilder("mode=").append(filterSet.getImportMode().name().toLowerCase());
+        for (FilterSet.Entry<PathFilter> entry : filterSet.getEntries()) {
+            PathFilter filter = entry.getFilter();
+            description.append(entry.isInclude() ? ", include " : ", exclude ")
+                    .append(filter instanceof DefaultPathFilter ? ((DefaultPathFilter) filter).getPattern() : filter.toString());
+        }
+        return description.toString();
+    }
+
+    private Properties loadProperties(ZipFile zipFile, @Nullable ZipEntry entry) throws IOException {
+        Properties properties = new Properties();
+        if (entry == null) {
+            return properties;
+        }
+        inflatedEntries.incrementAndGet();
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            properties.loadFromXML(input);
+        }
+        return properties;
+    }
+
+    private void compareFilters(Map<String, String> baseRules, Map<String, String> newRules) {
+        for (Map.Entry<String, String> rule : newRules.entrySet()) {
+            String baseRule = baseRules.get(rule.getKey());
+            if (baseRule == null) {
+                filterChanges.add("added " + rule.getKey() + " (" + rule.getValue() + ")");
+            } else if (!baseRule.equals(rule.getValue())) {
+                filterChanges.add("changed " + rule.getKey() + " (" + baseRule + " -> " + rule.getValue() + ")");
+            }
+        }
+        for (Map.Entry<String, String> rule : baseRules.entrySet()) {
+            if (!newRules.containsKey(rule.getKey())) {
+                filterChanges.add("removed " + rule.getKey() + " (" + rule.getValue() + ")");
+            }
+        }
+    }
+
+    private void compareProperties(Properties baseProperties, Properties newProperties) {
+        Set<String> names = new TreeSet<>(baseProperties.stringPropertyNames());
+        names.addAll(newProperties.stringPropertyNames());
+        for (String name : names) {
+            String baseValue = baseProperties.getProperty(name);
+            String newValue = newProperties.getProperty(name);
+            if (baseValue == null) {
+                propertyChanges.add("added " + name + "=" + newValue);
+            } else if (newValue == null) {
+                propertyChanges.add("removed " + name + "=" + baseValue);
+            } else if (!Objects.equals(baseValue, newValue)) {
+                propertyChanges.add("changed " + name + "=" + baseValue + " -> " + newValue);
+            }
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while comparing packages", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to compare packages", e.getCause());
+        }
+    }
+
+    /**
+     * @return the added, removed and changed nodes by repository path
+     */
+    public @NotNull SortedMap<String, Change> getPathChanges() {
+        return Collections.unmodifiableSortedMap(pathChanges);
+    }
+
+    /**
+     * @return the added, removed and changed entries outside of {@code jcr_root} by entry name
+     */
+    public @NotNull SortedMap<String, Change> getMetadataChanges() {
+        return Collections.unmodifiableSortedMap(metadataChanges);
+    }
+
+    /**
+     * @return the descriptions of the added, removed and changed filter roots
+     */
+    public @NotNull List<String> getFilterChanges() {
+        return Collections.unmodifiableList(filterChanges);
+    }
+
+    /**
+     * @return the descriptions of the added, removed and changed package properties
+     */
+    public @NotNull List<String> getPropertyChanges() {
+        return Collections.unmodifiableList(propertyChanges);
+    }
+
+    /**
+     * @return the number of entries whose data has been inflated
+     */
+    public int getInflatedEntries() {
+        return inflatedEntries.get();
+    }
+
+    public boolean isEmpty() {
+        return pathChanges.isEmpty() && metadataChanges.isEmpty();
+    }
+
+    /**
+     * @return the human readable report of all differences, one per line
+     */
+    public @NotNull List<String> toReport() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Change> entry : pathChanges.entrySet()) {
+            lines.add(entry.getValue().name().toLowerCase() + " " + entry.getKey());
+        }
+        for (Map.Entry<String, Change> entry : metadataChanges.entrySet()) {
+            lines.add(entry.getValue().name().toLowerCase() + " entry " + entry.getKey());
+        }
+        for (String change : filterChanges) {
+            lines.add("filter: " + change);
+        }
+        for (String change : propertyChanges) {
+            lines.add("property: " + change);
+        }
+        return lines;
+    }
+}
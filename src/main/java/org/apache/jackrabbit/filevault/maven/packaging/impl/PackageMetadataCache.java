@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.jackrabbit.vault.packaging.PackageInfo;
+import org.apache.jackrabbit.vault.packaging.impl.DefaultPackageInfo;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Session-wide cache of the metadata of content packages, i.e. of their {@link PackageInfo} (id, filter and type) and their
+ * {@code properties.xml}. The metadata of each package is read only once per build and then shared among all mojos of all modules.
+ * <p>
+ * There is a single entry per absolute path of a package which is only valid as long as the size and last modification time
+ * of the package don't change, so that a package being rebuilt within the session is read again. For a package given as directory
+ * (i.e. the work directory of a module in the reactor) the size and last modification time of its {@code properties.xml} and
+ * {@code filter.xml} are used instead. Therefore rewriting a package with the same size within the timestamp resolution of the
+ * file system is not detected.
+ */
+public class PackageMetadataCache {
+
+    private static final String PLUGIN_CONTEXT_KEY = "packageMetadataCache";
+
+    private static final String PROPERTIES_PATH = Constants.META_DIR + "/" + Constants.PROPERTIES_XML;
+
+    private static final String FILTER_PATH = Constants.META_DIR + "/" + Constants.FILTER_XML;
+
+    /** key = absolute path of the package */
+    private final ConcurrentMap<String, Metadata> entries = new ConcurrentHashMap<>();
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /**
+     * Returns the cache shared via the plugin context of the session's top level project.
+     * Falls back to the given plugin context in case there is no session or the plugin descriptor is not available.
+     *
+     * @param session the Maven session (may be {@code null})
+     * @param pluginContext the plugin context of the executing mojo
+     * @return the cache
+     */
+    @SuppressWarnings("unchecked")
+    public static @NotNull PackageMetadataCache get(@Nullable MavenSession session, @NotNull Map pluginContext) {
+        Map sharedContext = pluginContext;
+        PluginDescriptor pluginDescriptor = (PluginDescriptor) pluginContext.get("pluginDescriptor");
+        if (session != null && pluginDescriptor != null && session.getTopLevelProject() != null) {
+            sharedContext = session.getPluginContext(pluginDescriptor, session.getTopLevelProject());
+        }
+        synchronized (sharedContext) {
+            PackageMetadataCache cache = (PackageMetadataCache) sharedContext.get(PLUGIN_CONTEXT_KEY);
+            if (cache == null) {
+                cache = new PackageMetadataCache();
+                sharedContext.put(PLUGIN_CONTEXT_KEY, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @param file the package file or directory
+     * @return the package info or {@code null} in case the given file is not a content package
+     * @throws IOException in case the package could not be read
+     * @see DefaultPackageInfo#read(File)
+     */
+    public @Nullable PackageInfo getPackageInfo(@NotNull File file) throws IOException {
+        Metadata metadata = getMetadata(file);
+        synchronized (metadata) {
+            if (metadata.packageInfo == null) {
+                reads.incrementAndGet();
+                metadata.packageInfo = Optional.ofNullable(DefaultPackageInfo.read(file));
+            }
+            return metadata.packageInfo.orElse(null);
+        }
+    }
+
+    /**
+     * @param file the package file, the package directory or the {@code properties.xml} file itself
+     * @return a copy of the package properties
+     * @throws IOException in case the properties could not be read
+     */
+    public @NotNull Properties getProperties(@NotNull File file) throws IOException {
+        Metadata metadata = getMetadata(file);
+        Properties copy = new Properties();
+        synchronized (metadata) {
+            if (metadata.properties == null) {
+                reads.incrementAndGet();
+                metadata.properties = readProperties(file);
+            }
+            copy.putAll(metadata.properties);
+        }
+        return copy;
+    }
+
+    /**
+     * @return the number of times metadata has actually been read from a package
+     */
+    public int getReads() {
+        return reads.get();
+    }
+
+    /**
+     * @param file the package file or directory
+     * @return the entry of the given package, a new one in case the package has been modified since the existing one has been created
+     */
+    private @NotNull Metadata getMetadata(@NotNull File file) {
+        Key key = new Key(file);
+        return entries.compute(key.path, (path, existing) -> existing != null && existing.key.equals(key) ? existing : new Metadata(key));
+    }
+
+    private static Properties readProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        if (file.isDirectory()) {
+            try (InputStream input = new FileInputStream(new File(file, PROPERTIES_PATH))) {
+                properties.loadFromXML(input);
+            }
+        } else if (file.getName().endsWith(".xml")) {
+            try (InputStream input = new FileInputStream(file)) {
+                properties.loadFromXML(input);
+            }
+        } else {
+            try (ZipFile zip = new ZipFile(file)) {
+                ZipEntry entry = zip.getEntry(PROPERTIES_PATH);
+                if (entry == null) {
+                    throw new IOException("Package does not contain '" + PROPERTIES_PATH + "'");
+                }
+                try (InputStream input = zip.getInputStream(entry)) {
+                    properties.loadFromXML(input);
+                }
+            }
+        }
+        return properties;
+    }
+
+    /** The metadata of a single package, each part is read lazily and only once */
+    private static final class Metadata {
+        private final Key key;
+        /** guarded by this */
+        private Optional<PackageInfo> packageInfo;
+        /** guarded by this */
+        private Properties properties;
+
+        Metadata(Key key) {
+            this.key = key;
+        }
+    }
+
+    /** The absolute path of a package together with the size and last modification time of the relevant files */
+    private static final class Key {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        Key(File file) {
+            this.path = file.getAbsolutePath();
+            if (file.isDirectory()) {
+                File propertiesFile = new File(file, PROPERTIES_PATH);
+                File filterFile = new File(file, FILTER_PATH);
+                this.size = propertiesFile.length() + filterFile.length();
+                this.lastModified = Math.max(propertiesFile.lastModified(), filterFile.lastModified());
+            } else {
+                this.size = file.length();
+                this.lastModified = file.lastModified();
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return size == other.size && lastModified == other.lastModified && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Splits an ordered list of items into consecutive parts which don't exceed a maximum size and/or number of entries.
+ * The order of the items is kept, i.e. each part only contains items which directly follow each other. A single item exceeding
+ * one of the limits on its own always ends up in a separate part.
+ */
+public class PackagePartitioner {
+
+    private final long maxSize;
+
+    private final long maxEntries;
+
+    /**
+     * 
+     * @param maxSize the maximum size of each part (0 or less for no limit)
+     * @param maxEntries the maximum number of entries of each part (0 or less for no limit)
+     */
+    public PackagePartitioner(long maxSize, long maxEntries) {
+        this.maxSize = maxSize;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 
+     * @param items the items in the order in which they should be partitioned
+     * @param sizeFunction returns the size of an item
+     * @param entriesFunction returns the number of entries of an item
+     * @return the parts, each one containing at least one item (empty in case there are no items)
+     */
+    public @NotNull <T> List<List<T>> partition(@NotNull List<T> items, @NotNull ToLongFunction<T> sizeFunction, @NotNull ToLongFunction<T> entriesFunction) {
+        List<List<T>> parts = new ArrayList<>();
+        List<T> part = new ArrayList<>();
+        long size = 0;
+        long entries = 0;
+        for (T item : items) {
+            long itemSize = sizeFunction.applyAsLong(item);
+            long itemEntries = entriesFunction.applyAsLong(item);
+            if (!part.isEmpty() && isExceeding(size + itemSize, entries + itemEntries)) {
+                parts.add(part);
+                part = new ArrayList<>();
+                size = 0;
+                entries = 0;
+            }
+            part.add(item);
+            size += itemSize;
+            entries += itemEntries;
+        }
+        if (!part.isEmpty()) {
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    /**
+     * 
+     * @param size the size
+     * @param entries the number of entries
+     * @return {@code true} in case the given size or number of entries exceeds one of the limits
+     */
+    public boolean isExceeding(long size, long entries) {
+        return (maxSize > 0 && size > maxSize) || (maxEntries > 0 && entries > maxEntries);
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Splits the content of a package into several sub packages being installed by a container package.
+ * <p>
+ * The filter sets are distributed (in their order) among sub packages by a {@link PackagePartitioner}. The size of each filter set is
+ * calculated from the snapshot of its filter root and the embedded files being covered by it, no file is read for that. Each embedded file
+ * ends up in the same sub package as the last filter set covering it. Source files which are covered by a filter set of a later sub package
+ * are only kept in the last sub package covering them, as that one is installed last and would otherwise remove them again.
+ * <p>
+ * The sub packages get the package id of the original package with the suffix {@code -part<n>} appended to the name, each one depending on
+ * its predecessor. Their metadata is derived from the original one, i.e. the {@code properties.xml} and the {@code MANIFEST.MF} only differ
+ * in the name, the dependencies, the filter roots and the package type. The package type is kept unless it is {@code mixed} (or not set),
+ * in which case it is detected from the filter sets and embedded files of each sub package in the same way as for the original package,
+ * as a part of a mixed package may well be a pure application or content package. The container gets the package type
+ * {@code container} and one filter root for each sub package.
+ */
+public class PackageSplitter {
+
+    private static final String PACKAGE_EXT = ".zip";
+
+    private final PackagePartitioner partitioner;
+
+    private List<SubPackage> subPackages = Collections.emptyList();
+
+    private final DefaultWorkspaceFilter containerFilter = new DefaultWorkspaceFilter();
+
+    /**
+     * 
+     * @param maxSize the maximum size of each sub package (0 or less for no limit)
+     * @param maxEntries the maximum number of entries of each sub package (0 or less for no limit)
+     */
+    public PackageSplitter(long maxSize, long maxEntries) {
+        this.partitioner = new PackagePartitioner(maxSize, maxEntries);
+    }
+
+    /**
+     * Distributes the filter sets and their content among sub packages. Nothing is written.
+     * @param filter the filter of the original package
+     * @param filterRoots the prepared filter roots in the order of the filter
+     * @param embeddedFiles the embedded files with key = entry name and value = source file
+     * @param jcrSnapshot the snapshot of the source directory
+     * @param properties the properties of the original package
+     * @return the sub packages in the order in which they need to be installed (a single one in case the content does not exceed the limits)
+     * @throws IOException in case some xml file could not be read
+     */
+    public @NotNull List<SubPackage> split(@NotNull DefaultWorkspaceFilter filter, @NotNull List<FilterRoot> filterRoots, @NotNull Map<String, File> embeddedFiles,
+            @NotNull FileTreeSnapshot jcrSnapshot, @NotNull Properties properties) throws IOException {
+        subPackages = partition(filter, filterRoots, embeddedFiles, properties);
+        if (subPackages.size() > 1) {
+            excludeOverlappingContent(jcrSnapshot);
+        }
+        return subPackages;
+    }
+
+    private List<SubPackage> partition(DefaultWorkspaceFilter filter, List<FilterRoot> filterRoots, Map<String, File> embeddedFiles, Properties properties) {
+        List<PathFilterSet> filterSets = filter.getFilterSets();
+        List<PathFilterSet> propertyFilterSets = filter.getPropertyFilterSets();
+        Map<PathFilterSet, FilterRoot> filterRootsBySet = new IdentityHashMap<>();
+        for (FilterRoot filterRoot : filterRoots) {
+            filterRootsBySet.put(filterRoot.getFilterSet(), filterRoot);
+        }
+        Map<PathFilterSet, Map<String, File>> embeddedFilesBySet = new IdentityHashMap<>();
+        RepositoryPathMapper mapper = new RepositoryPathMapper(path -> embeddedFiles.containsKey(Constants.ROOT_DIR + "/" + path), path -> false);
+        for (Map.Entry<String, File> entry : embeddedFiles.entrySet()) {
+            String repositoryPath = getRepositoryPath(mapper, entry.getKey());
+            PathFilterSet coveringFilterSet = filterSets.get(0);
+            for (int i = filterSets.size() - 1; i >= 0; i--) {
+                if (filterSets.get(i).contains(repositoryPath)) {
+                    coveringFilterSet = filterSets.get(i);
+                    break;
+                }
+            }
+            embeddedFilesBySet.computeIfAbsent(coveringFilterSet, key -> new LinkedHashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+        long[] sizes = new long[filterSets.size()];
+        long[] entries = new long[filterSets.size()];
+        for (int i = 0; i < filterSets.size(); i++) {
+            FilterRoot filterRoot = filterRootsBySet.get(filterSets.get(i));
+            if (filterRoot != null && filterRoot.getAggregateFile() != null) {
+                sizes[i] = filterRoot.getAggregateFile().length();
+                entries[i] = 1;
+            } else if (filterRoot != null) {
+                sizes[i] = filterRoot.getSubTree().getFiles().mapToLong(FileTreeSnapshot.Entry::getSize).sum();
+                entries[i] = filterRoot.getSubTree().getEntries().count() + 1;
+            }
+            for (File embeddedFile : embeddedFilesBySet.getOrDefault(filterSets.get(i), Collections.emptyMap()).values()) {
+                sizes[i] += embeddedFile.length();
+                entries[i]++;
+            }
+        }
+        List<Integer> indices = IntStream.range(0, filterSets.size()).boxed().collect(Collectors.toList());
+        List<List<Integer>> parts = partitioner.partition(indices, index -> sizes[index], index -> entries[index]);
+        List<SubPackage> result = new ArrayList<>(parts.size());
+        for (List<Integer> part : parts) {
+            SubPackage subPackage = new SubPackage(new PackageId(properties.getProperty(PackageProperties.NAME_GROUP),
+                    properties.getProperty(PackageProperties.NAME_NAME) + "-part" + (result.size() + 1),
+                    properties.getProperty(PackageProperties.NAME_VERSION)));
+            for (int index : part) {
+                PathFilterSet filterSet = filterSets.get(index);
+                if (index < propertyFilterSets.size()) {
+                    subPackage.filter.add(filterSet, propertyFilterSets.get(index));
+                } else {
+                    subPackage.filter.add(filterSet);
+                }
+                FilterRoot filterRoot = filterRootsBySet.get(filterSet);
+                if (filterRoot != null) {
+                    subPackage.filterRoots.add(filterRoot);
+                }
+                subPackage.embeddedFiles.putAll(embeddedFilesBySet.getOrDefault(filterSet, Collections.emptyMap()));
+                subPackage.size += sizes[index];
+                subPackage.entries += entries[index];
+            }
+            result.add(subPackage);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the source files from the filter roots which are covered by a filter set of a later sub package as well.
+     * This is the case for nested filter roots ending up in different sub packages.
+     * Directories are only removed in case they don't contain any remaining file.
+     * @param jcrSnapshot the snapshot of the source directory
+     * @throws IOException in case some xml file could not be read
+     */
+    private void excludeOverlappingContent(FileTreeSnapshot jcrSnapshot) throws IOException {
+        RepositoryPathMapper mapper = new RepositoryPathMapper(path -> {
+            FileTreeSnapshot.Entry entry = jcrSnapshot.getEntry(path);
+            return entry != null && !entry.isDirectory();
+        }, path -> {
+            FileTreeSnapshot.Entry entry = jcrSnapshot.getEntry(path);
+            if (entry == null || entry.isDirectory()) {
+                return false;
+            }
+            try (InputStream input = new FileInputStream(entry.getFile())) {
+                return RepositoryPathMapper.isDocView(input);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        List<PathFilterSet> laterFilterSets = new ArrayList<>();
+        try {
+            for (int i = subPackages.size() - 1; i >= 0; i--) {
+                SubPackage subPackage = subPackages.get(i);
+                if (!laterFilterSets.isEmpty()) {
+                    Predicate<String> isCoveredLater = platformPath -> {
+                        String nodePath = mapper.getNodePath(platformPath);
+                        return laterFilterSets.stream().anyMatch(filterSet -> filterSet.contains(nodePath));
+                    };
+                    for (ListIterator<FilterRoot> iterator = subPackage.filterRoots.listIterator(); iterator.hasNext();) {
+                        FilterRoot filterRoot = iterator.next();
+                        if (filterRoot.getAggregateFile() != null) {
+                            if (isCoveredLater.test(filterRoot.getRelPath())) {
+                                iterator.remove();
+                            }
+                        } else {
+                            iterator.set(filterRoot.withSubTree(excludeCoveredEntries(filterRoot.getSubTree(), filterRoot.getRelPath(), isCoveredLater)));
+                        }
+                    }
+                }
+                laterFilterSets.addAll(subPackage.filter.getFilterSets());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static FileTreeSnapshot excludeCoveredEntries(FileTreeSnapshot subTree, String relPath, Predicate<String> isCovered) {
+        FileTreeSnapshot remainingFiles = subTree.exclude(entry -> !entry.isDirectory() && isCovered.test(relPath + "/" + entry.getPath()));
+        Set<String> remainingDirectories = new HashSet<>();
+        remainingFiles.getFiles().forEach(entry -> {
+            // all ancestors of a remaining file are kept
+            String path = getParentPath(entry.getPath());
+            while (!path.isEmpty() && remainingDirectories.add(path)) {
+                path = getParentPath(path);
+            }
+        });
+        return remainingFiles.exclude(entry -> entry.isDirectory() && !remainingDirectories.contains(entry.getPath())
+                && isCovered.test(relPath + "/" + entry.getPath() + "/"));
+    }
+
+    /**
+     * 
+     * @param subPackage a sub package returned by {@link #split(DefaultWorkspaceFilter, List, Map, FileTreeSnapshot, Properties)}
+     * @return {@code true} in case the sub package exceeds the limits, which is only the case if it consists of a single filter set
+     */
+    public boolean isExceeding(@NotNull SubPackage subPackage) {
+        return partitioner.isExceeding(subPackage.size, subPackage.entries);
+    }
+
+    /**
+     * Writes the {@code filter.xml}, {@code properties.xml} and {@code META-INF/MANIFEST.MF} of the container directly into the given directory
+     * and the ones of each sub package into a sub directory named like the sub package (see {@link SubPackage#getDirectory()}).
+     * @param splitDirectory the directory
+     * @param properties the properties of the original package
+     * @param manifest the manifest of the original package
+     * @param comment the comment of the {@code properties.xml} files (may be {@code null})
+     * @throws IOException in case some file could not be written
+     */
+    public void writeMetadata(@NotNull File splitDirectory, @NotNull Properties properties, @NotNull Manifest manifest, @Nullable String comment) throws IOException {
+        String packageType = properties.getProperty(PackageProperties.NAME_PACKAGE_TYPE);
+        String dependencies = properties.getProperty(PackageProperties.NAME_DEPENDENCIES, "");
+        PackageId previousId = null;
+        for (SubPackage subPackage : subPackages) {
+            containerFilter.add(new PathFilterSet(subPackage.id.getInstallationPath() + PACKAGE_EXT));
+            Properties subPackageProperties = new Properties();
+            subPackageProperties.putAll(properties);
+            subPackageProperties.setProperty(PackageProperties.NAME_NAME, subPackage.id.getName());
+            String subPackageDependencies = dependencies;
+            if (previousId != null) {
+                String dependency = new Dependency(previousId).toString();
+                subPackageDependencies = dependencies.isEmpty() ? dependency : dependencies + "," + dependency;
+                subPackageProperties.setProperty(PackageProperties.NAME_DEPENDENCIES, subPackageDependencies);
+            }
+            String subPackageType = packageType;
+            if (packageType == null || PackageType.MIXED.name().equalsIgnoreCase(packageType)) {
+                subPackageType = detectPackageType(subPackage).name().toLowerCase();
+            }
+            subPackageProperties.setProperty(PackageProperties.NAME_PACKAGE_TYPE, subPackageType);
+            subPackage.directory = new File(splitDirectory, subPackage.id.getName());
+            writeFilterAndProperties(subPackage.directory, subPackage.filter, subPackageProperties, comment);
+
+            Manifest subPackageManifest = new Manifest(manifest);
+            Attributes attributes = subPackageManifest.getMainAttributes();
+            attributes.putValue(PackageProperties.MF_KEY_PACKAGE_ID, subPackage.id.toString());
+            if (subPackageDependencies.isEmpty()) {
+                attributes.remove(new Attributes.Name(PackageProperties.MF_KEY_PACKAGE_DEPENDENCIES));
+            } else {
+                attributes.putValue(PackageProperties.MF_KEY_PACKAGE_DEPENDENCIES, subPackageDependencies);
+            }
+            writeManifest(new File(subPackage.directory, JarFile.MANIFEST_NAME), subPackageManifest, subPackageType, subPackage.filter);
+            previousId = subPackage.id;
+        }
+        Properties containerProperties = new Properties();
+        containerProperties.putAll(properties);
+        containerProperties.setProperty(PackageProperties.NAME_PACKAGE_TYPE, PackageType.CONTAINER.name().toLowerCase());
+        writeFilterAndProperties(splitDirectory, containerFilter, containerProperties, comment);
+        writeManifest(new File(splitDirectory, JarFile.MANIFEST_NAME), new Manifest(manifest), PackageType.CONTAINER.name().toLowerCase(), containerFilter);
+    }
+
+    /**
+     * Detects the package type of a sub package with the same rules being used for the original package: only filter roots below
+     * {@code /apps} or {@code /libs} result in {@code application}, only other ones in {@code content}, both of them or embedded files
+     * together with filter roots in {@code mixed}.
+     * @param subPackage the sub package
+     * @return the package type
+     */
+    private static PackageType detectPackageType(SubPackage subPackage) {
+        boolean hasApps = false;
+        boolean hasOther = false;
+        for (PathFilterSet filterSet : subPackage.filter.getFilterSets()) {
+            if (PathFilterSet.TYPE_CLEANUP.equals(filterSet.getType())) {
+                continue;
+            }
+            String root = filterSet.getRoot();
+            if ("/apps".equals(root) || root.startsWith("/apps/") || "/libs".equals(root) || root.startsWith("/libs/")) {
+                hasApps = true;
+            } else {
+                hasOther = true;
+            }
+        }
+        if (subPackage.embeddedFiles.isEmpty()) {
+            if (hasApps && !hasOther) {
+                return PackageType.APPLICATION;
+            } else if (hasOther && !hasApps) {
+                return PackageType.CONTENT;
+            }
+            return PackageType.MIXED;
+        }
+        return hasApps || hasOther ? PackageType.MIXED : PackageType.CONTAINER;
+    }
+
+    private static void writeFilterAndProperties(File directory, DefaultWorkspaceFilter filter, Properties properties, String comment) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        Files.write(new File(directory, Constants.FILTER_XML).toPath(), filter.getSourceAsString().getBytes(StandardCharsets.UTF_8));
+        try (OutputStream output = new FileOutputStream(new File(directory, Constants.PROPERTIES_XML))) {
+            properties.storeToXML(output, comment);
+        }
+    }
+
+    private static void writeManifest(File manifestFile, Manifest manifest, String packageType, DefaultWorkspaceFilter filter) throws IOException {
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_TYPE, packageType);
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_ROOTS, filter.getFilterSets().stream()
+                .map(PathFilterSet::getRoot).distinct().sorted().collect(Collectors.joining(",")));
+        File directory = manifestFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        try (OutputStream output = new FileOutputStream(manifestFile)) {
+            manifest.write(output);
+        }
+    }
+
+    /**
+     * 
+     * @return the filter of the container, only valid after {@link #writeMetadata(File, Properties, Manifest, String)}
+     */
+    public @NotNull DefaultWorkspaceFilter getContainerFilter() {
+        return containerFilter;
+    }
+
+    /**
+     * 
+     * @param mapper the mapper
+     * @param entryName the name of an entry below {@code jcr_root}
+     * @return the repository path of the node serialized by the entry
+     */
+    private static String getRepositoryPath(RepositoryPathMapper mapper, String entryName) {
+        String path = entryName.replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        if (path.startsWith(Constants.ROOT_DIR + "/")) {
+            path = path.substring(Constants.ROOT_DIR.length() + 1);
+        }
+        return mapper.getNodePath(path);
+    }
+
+    private static String getParentPath(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+
+    /** A sub package holding a part of the content of the original package */
+    public static final class SubPackage {
+
+        private final PackageId id;
+
+        private final DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+
+        private final List<FilterRoot> filterRoots = new ArrayList<>();
+
+        private final Map<String, File> embeddedFiles = new LinkedHashMap<>();
+
+        private long size;
+
+        private long entries;
+
+        private File directory;
+
+        SubPackage(PackageId id) {
+            this.id = id;
+        }
+
+        public @NotNull PackageId getId() {
+            return id;
+        }
+
+        /**
+         * 
+         * @return the filter sets of this sub package
+         */
+        public @NotNull DefaultWorkspaceFilter getFilter() {
+            return filter;
+        }
+
+        /**
+         * 
+         * @return the filter roots of this sub package in the order of the filter
+         */
+        public @NotNull List<FilterRoot> getFilterRoots() {
+            return filterRoots;
+        }
+
+        /**
+         * 
+         * @return the embedded files being covered by the filter sets of this sub package
+         */
+        public @NotNull Map<String, File> getEmbeddedFiles() {
+            return embeddedFiles;
+        }
+
+        /**
+         * 
+         * @return the size of the content in bytes (before excluding the overlapping content)
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * 
+         * @return the number of entries of the content (before excluding the overlapping content)
+         */
+        public long getEntries() {
+            return entries;
+        }
+
+        /**
+         * 
+         * @return the directory containing the {@code filter.xml}, {@code properties.xml} and {@code META-INF/MANIFEST.MF} of this sub package
+         * (only set once the metadata has been written)
+         */
+        public @Nullable File getDirectory() {
+            return directory;
+        }
+    }
+}
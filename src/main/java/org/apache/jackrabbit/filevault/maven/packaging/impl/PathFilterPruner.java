@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Excludes all entries of a filter root's snapshot which are not contained in the according {@link PathFilterSet}, i.e. which would
+ * be skipped during installation anyhow. Each candidate file is evaluated against the repository path of the node it serializes
+ * (see {@link RepositoryPathMapper}). As no file is read, a file ending with {@code .xml} may be a full coverage aggregate and is
+ * therefore evaluated for both the node with and without the extension.
+ * Directories and their {@code .content.xml} are only pruned in case neither their node nor any of their descendants are contained,
+ * so that the ancestors of contained nodes keep their node types.
+ * Only the snapshot's metadata is evaluated, no file is read.
+ */
+public class PathFilterPruner {
+
+    private static final String XML_EXTENSION = ".xml";
+
+    private final PathFilterSet filterSet;
+
+    private long prunedFiles;
+
+    private long prunedBytes;
+
+    public PathFilterPruner(@NotNull PathFilterSet filterSet) {
+        this.filterSet = filterSet;
+    }
+
+    /**
+     * 
+     * @param subTree the snapshot of a directory below {@code jcr_root}
+     * @param relPath the platform path of the snapshot's directory relative to {@code jcr_root} with forward slashes
+     * @return a new snapshot in which all entries not being contained in the filter set are excluded
+     */
+    public @NotNull FileTreeSnapshot prune(@NotNull FileTreeSnapshot subTree, @NotNull String relPath) {
+        RepositoryPathMapper mapper = createMapper(subTree, relPath);
+        // first pass: all regular files, keeping track of the directories with contained descendants
+        Set<String> requiredDirectories = new HashSet<>();
+        Set<String> prunedPaths = new HashSet<>();
+        boolean isAnyContained = false;
+        for (Iterator<FileTreeSnapshot.Entry> iterator = subTree.getFiles().iterator(); iterator.hasNext();) {
+            FileTreeSnapshot.Entry entry = iterator.next();
+            String path = entry.getPath();
+            String name = getName(path);
+            if (Constants.DOT_CONTENT_XML.equals(name)) {
+                continue;
+            }
+            String nodePath = getRepositoryPath(mapper, subTree, relPath, path);
+            boolean isContained = filterSet.contains(nodePath);
+            if (!isContained && name.endsWith(XML_EXTENSION)) {
+                // may be a full coverage aggregate
+                isContained = filterSet.contains(nodePath.substring(0, nodePath.length() - XML_EXTENSION.length()));
+            }
+            if (isContained) {
+                addAncestors(requiredDirectories, path);
+                isAnyContained = true;
+            } else {
+                prunedPaths.add(path);
+            }
+        }
+        // second pass: directories being contained themselves
+        for (Iterator<FileTreeSnapshot.Entry> iterator = subTree.getEntries().filter(FileTreeSnapshot.Entry::isDirectory).iterator(); iterator.hasNext();) {
+            String path = iterator.next().getPath();
+            if (filterSet.contains(getRepositoryPath(mapper, subTree, relPath, path))) {
+                requiredDirectories.add(path);
+                addAncestors(requiredDirectories, path);
+                isAnyContained = true;
+            }
+        }
+        // third pass: prune the remaining directories and their .content.xml
+        boolean isRootRequired = isAnyContained || filterSet.contains(getRepositoryPath(mapper, subTree, relPath, ""));
+        for (Iterator<FileTreeSnapshot.Entry> iterator = subTree.getEntries().iterator(); iterator.hasNext();) {
+            FileTreeSnapshot.Entry entry = iterator.next();
+            String path = entry.getPath();
+            String directory;
+            if (entry.isDirectory()) {
+                directory = path;
+            } else if (Constants.DOT_CONTENT_XML.equals(getName(path))) {
+                directory = getParent(path);
+            } else {
+                continue;
+            }
+            if (directory.isEmpty() ? !isRootRequired : !requiredDirectories.contains(directory)) {
+                prunedPaths.add(path);
+            }
+        }
+        if (prunedPaths.isEmpty()) {
+            return subTree;
+        }
+        for (String path : prunedPaths) {
+            FileTreeSnapshot.Entry entry = subTree.getEntry(path);
+            if (!entry.isDirectory()) {
+                prunedFiles++;
+                prunedBytes += entry.getSize();
+            }
+        }
+        return subTree.exclude(entry -> prunedPaths.contains(entry.getPath()));
+    }
+
+    /**
+     * 
+     * @return the number of files which have been pruned so far
+     */
+    public long getPrunedFiles() {
+        return prunedFiles;
+    }
+
+    /**
+     * 
+     * @return the accumulated size of all files which have been pruned so far
+     */
+    public long getPrunedBytes() {
+        return prunedBytes;
+    }
+
+    private static void addAncestors(Set<String> directories, String path) {
+        String parent = getParent(path);
+        while (!parent.isEmpty() && directories.add(parent)) {
+            parent = getParent(parent);
+        }
+    }
+
+    /**
+     * 
+     * @return the repository path of the node serialized by the given file or directory, taking into account {@code .dir} directories
+     */
+    static String getRepositoryPath(FileTreeSnapshot subTree, String relPath, String path) {
+        return getRepositoryPath(createMapper(subTree, relPath), subTree, relPath, path);
+    }
+
+    private static String getRepositoryPath(RepositoryPathMapper mapper, FileTreeSnapshot subTree, String relPath, String path) {
+        String platformPath = relPath.isEmpty() ? path : path.isEmpty() ? relPath : relPath + "/" + path;
+        return mapper.getNodePath(path.isEmpty() || isDirectory(subTree, path) ? platformPath + "/" : platformPath);
+    }
+
+    private static RepositoryPathMapper createMapper(FileTreeSnapshot subTree, String relPath) {
+        int prefixLength = relPath.isEmpty() ? 0 : relPath.length() + 1;
+        // only the files within the snapshot can be looked up
+        return new RepositoryPathMapper(path -> {
+            if (path.length() < prefixLength) {
+                return false;
+            }
+            FileTreeSnapshot.Entry entry = subTree.getEntry(path.substring(prefixLength));
+            return entry != null && !entry.isDirectory();
+        }, path -> false);
+    }
+
+    private static boolean isDirectory(FileTreeSnapshot subTree, String path) {
+        FileTreeSnapshot.Entry entry = subTree.getEntry(path);
+        return entry != null && entry.isDirectory();
+    }
+
+    private static String getName(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static String getParent(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
+    }
+}
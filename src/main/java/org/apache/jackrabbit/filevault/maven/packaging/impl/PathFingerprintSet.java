@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compact set of paths which is indexed by a 64-bit fingerprint of each path in an open-addressing hash table.
+ * The paths themselves are only kept UTF-8 encoded in large byte pages (instead of one {@link String} per path), they are only
+ * compared in case the fingerprints are equal, so that paths with the same fingerprint are still told apart correctly.
+ * Requires between 32 and 64 bytes per path for the hash table plus the length of the UTF-8 encoded path and 4 bytes.
+ */
+public class PathFingerprintSet {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int PAGE_SIZE = 64 * 1024;
+
+    private final ToLongFunction<CharSequence> fingerprintFunction;
+
+    /** {@code 0} marks an empty slot, therefore no fingerprint must be {@code 0} */
+    private long[] slots = new long[INITIAL_CAPACITY];
+
+    /** the reference of the path stored in {@link #pages} for each slot (page index in the upper, offset in the lower 32 bits) */
+    private long[] references = new long[INITIAL_CAPACITY];
+
+    /** each path is stored as its length (4 bytes) followed by its UTF-8 encoded bytes */
+    private final List<byte[]> pages = new ArrayList<>();
+
+    private int pagePosition;
+
+    private long pageBytes;
+
+    private int size;
+
+    public PathFingerprintSet() {
+        this(PathFingerprintSet::fingerprint);
+    }
+
+    /**
+     * Only used for testing the handling of colliding fingerprints.
+     * @param fingerprintFunction the function calculating the fingerprint which must never return {@code 0}
+     */
+    PathFingerprintSet(@NotNull ToLongFunction<CharSequence> fingerprintFunction) {
+        this.fingerprintFunction = fingerprintFunction;
+    }
+
+    /**
+     * 
+     * @param path the path
+     * @return a 64-bit fingerprint of the given path which is never {@code 0}
+     */
+    public static long fingerprint(@NotNull CharSequence path) {
+        // FNV-1a over all UTF-16 code units
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        // final mixing (from MurmurHash3) to spread the bits used as slot index
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * 
+     * @param path the path to add
+     * @return {@code true} in case the path has not been contained before
+     */
+    public boolean add(@NotNull CharSequence path) {
+        long fingerprint = fingerprintFunction.applyAsLong(path);
+        byte[] encodedPath = path.toString().getBytes(StandardCharsets.UTF_8);
+        int index = indexOf(fingerprint, encodedPath);
+        if (slots[index] != 0) {
+            return false;
+        }
+        slots[index] = fingerprint;
+        references[index] = store(encodedPath);
+        if (++size * 2 > slots.length) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * 
+     * @param path the path
+     * @return {@code true} in case the path has been added before
+     */
+    public boolean contains(@NotNull CharSequence path) {
+        return slots[indexOf(fingerprintFunction.applyAsLong(path), path.toString().getBytes(StandardCharsets.UTF_8))] != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 
+     * @return the number of bytes allocated by this set
+     */
+    public long getAllocatedBytes() {
+        return slots.length * 2L * Long.BYTES + pageBytes;
+    }
+
+    /**
+     * @return the index of the slot containing the given path or the empty slot where it is supposed to be added
+     */
+    private int indexOf(long fingerprint, byte[] encodedPath) {
+        int mask = slots.length - 1;
+        int index = (int) fingerprint & mask;
+        // linear probing, slots with the same fingerprint but a different path are skipped
+        while (slots[index] != 0 && (slots[index] != fingerprint || !isStored(references[index], encodedPath))) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private long store(byte[] encodedPath) {
+        int required = encodedPath.length + Integer.BYTES;
+        if (pages.isEmpty() || pagePosition + required > pages.get(pages.size() - 1).length) {
+            byte[] page = new byte[Math.max(PAGE_SIZE, required)];
+            pages.add(page);
+            pageBytes += page.length;
+            pagePosition = 0;
+        }
+        byte[] page = pages.get(pages.size() - 1);
+        int length = encodedPath.length;
+        page[pagePosition] = (byte) (length >>> 24);
+        page[pagePosition + 1] = (byte) (length >>> 16);
+        page[pagePosition + 2] = (byte) (length >>> 8);
+        page[pagePosition + 3] = (byte) length;
+        System.arraycopy(encodedPath, 0, page, pagePosition + Integer.BYTES, length);
+        long reference = ((long) (pages.size() - 1) << 32) | pagePosition;
+        pagePosition += required;
+        return reference;
+    }
+
+    private boolean isStored(long reference, byte[] encodedPath) {
+        byte[] page = pages.get((int) (reference >>> 32));
+        int offset = (int) reference;
+        int length = ((page[offset] & 0xff) << 24) | ((page[offset + 1] & 0xff) << 16) | ((page[offset + 2] & 0xff) << 8) | (page[offset + 3] & 0xff);
+        if (length != encodedPath.length) {
+            return false;
+        }
+        offset += Integer.BYTES;
+        for (int i = 0; i < length; i++) {
+            if (page[offset + i] != encodedPath[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resize() {
+        long[] newSlots = new long[slots.length * 2];
+        long[] newReferences = new long[slots.length * 2];
+        int mask = newSlots.length - 1;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != 0) {
+                // all paths are distinct, therefore the first empty slot is the right one
+                int index = (int) slots[i] & mask;
+                while (newSlots[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                newSlots[index] = slots[i];
+                newReferences[index] = references[i];
+            }
+        }
+        slots = newSlots;
+        references = newReferences;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.vault.util.Constants;
+import org.apache.jackrabbit.vault.util.PlatformNameFormat;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Maps the platform paths of files and directories below {@code jcr_root} to the repository paths of the nodes they serialize:
+ * <ul>
+ * <li>a {@code .content.xml} belongs to the node of its directory,</li>
+ * <li>a full coverage aggregate {@code <name>.xml} belongs to the node {@code <name>},</li>
+ * <li>a {@code <name>.dir} directory belongs to the node of the sibling file {@code <name>}, but only in case that file exists.</li>
+ * </ul>
+ * The underlying file system or package is only accessed through the lookups given in the constructor.
+ */
+public class RepositoryPathMapper {
+
+    private static final String DIR_SUFFIX = ".dir";
+
+    private static final String XML_EXTENSION = ".xml";
+
+    /** the number of leading bytes of an xml file which are evaluated to detect a full coverage aggregate */
+    private static final int DOCVIEW_SNIFF_LENGTH = 1024;
+
+    private final Predicate<String> isFile;
+
+    private final Predicate<String> isFullCoverageAggregate;
+
+    /**
+     * 
+     * @param isFile returns {@code true} for the platform path (relative to {@code jcr_root} with forward slashes) of an existing regular file
+     * @param isFullCoverageAggregate returns {@code true} for the platform path of an xml file being a full coverage aggregate, only called
+     * for files ending with {@code .xml} except for {@code .content.xml}
+     */
+    public RepositoryPathMapper(@NotNull Predicate<String> isFile, @NotNull Predicate<String> isFullCoverageAggregate) {
+        this.isFile = isFile;
+        this.isFullCoverageAggregate = isFullCoverageAggregate;
+    }
+
+    /**
+     * 
+     * @param platformPath the path relative to {@code jcr_root} with forward slashes, directories must end with a slash
+     * @return the repository path of the node serialized by the given file or directory
+     */
+    public @NotNull String getNodePath(@NotNull String platformPath) {
+        return getRepositoryPath(platformPath, false);
+    }
+
+    /**
+     * Same as {@link #getNodePath(String)} except for the files and directories below a {@code <name>.dir} directory which all belong
+     * to the node of the sibling file {@code <name>}.
+     * @param platformPath the path relative to {@code jcr_root} with forward slashes, directories must end with a slash
+     * @return the repository path of the top most node of the aggregate the given file or directory is part of
+     */
+    public @NotNull String getAggregatePath(@NotNull String platformPath) {
+        return getRepositoryPath(platformPath, true);
+    }
+
+    private String getRepositoryPath(String platformPath, boolean isStoppingAtDirSuffix) {
+        boolean isDirectory = platformPath.endsWith("/");
+        String path = isDirectory ? platformPath.substring(0, platformPath.length() - 1) : platformPath;
+        if (path.isEmpty()) {
+            return "/";
+        }
+        String[] segments = path.split("/");
+        int length = segments.length;
+        String name = segments[length - 1];
+        if (!isDirectory && Constants.DOT_CONTENT_XML.equals(name)) {
+            length--;
+        } else if (!isDirectory && name.endsWith(XML_EXTENSION) && isFullCoverageAggregate.test(path)) {
+            segments[length - 1] = name.substring(0, name.length() - XML_EXTENSION.length());
+        }
+        StringBuilder nodePath = new StringBuilder();
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            String segment = segments[i];
+            end += (i > 0 ? 1 : 0) + segment.length();
+            boolean isDirectorySegment = i < segments.length - 1 || isDirectory;
+            if (isDirectorySegment && segment.endsWith(DIR_SUFFIX) && segment.length() > DIR_SUFFIX.length()
+                    && isFile.test(path.substring(0, end - DIR_SUFFIX.length()))) {
+                // directory containing the serialization of a sibling file
+                nodePath.append('/').append(segment, 0, segment.length() - DIR_SUFFIX.length());
+                if (isStoppingAtDirSuffix) {
+                    break;
+                }
+            } else {
+                nodePath.append('/').append(segment);
+            }
+        }
+        if (nodePath.length() == 0) {
+            return "/";
+        }
+        return PlatformNameFormat.getRepositoryPath(nodePath.toString());
+    }
+
+    /**
+     * 
+     * @param input the input stream of an xml file, is not closed
+     * @return {@code true} in case the xml file is a document view serialization, i.e. a full coverage aggregate
+     * @throws IOException in case the input stream could not be read
+     */
+    public static boolean isDocView(@NotNull InputStream input) throws IOException {
+        byte[] buffer = new byte[DOCVIEW_SNIFF_LENGTH];
+        int length = IOUtils.read(input, buffer);
+        return new String(buffer, 0, length, StandardCharsets.UTF_8).contains("<jcr:root");
+    }
+}
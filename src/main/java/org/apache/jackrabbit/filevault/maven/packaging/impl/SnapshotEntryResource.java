@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Resource whose attributes are taken from a {@link FileTreeSnapshot.Entry} instead of being looked up from the file system
+ * (as done for {@link org.codehaus.plexus.components.io.resources.PlexusIoFileResource}).
+ */
+public class SnapshotEntryResource implements PlexusIoResource {
+
+    private final FileTreeSnapshot.Entry entry;
+
+    public SnapshotEntryResource(@NotNull FileTreeSnapshot.Entry entry) {
+        this.entry = entry;
+    }
+
+    public @NotNull File getFile() {
+        return entry.getFile();
+    }
+
+    @Override
+    public String getName() {
+        return entry.getFile().getPath();
+    }
+
+    @Override
+    public long getLastModified() {
+        return entry.getLastModified();
+    }
+
+    @Override
+    public boolean isExisting() {
+        return true;
+    }
+
+    @Override
+    public long getSize() {
+        return entry.isDirectory() ? UNKNOWN_RESOURCE_SIZE : entry.getSize();
+    }
+
+    @Override
+    public boolean isFile() {
+        return !entry.isDirectory();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return entry.isDirectory();
+    }
+
+    @Override
+    public InputStream getContents() throws IOException {
+        return new FileInputStream(entry.getFile());
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+        return entry.getFile().toURI().toURL();
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        // the snapshot resolves symbolic links
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.input.ReaderInputStream;
+import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
+import org.codehaus.plexus.components.io.functions.InputStreamTransformer;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Applies the Maven resource filtering while the resource is being read (e.g. for writing it to an archive), i.e. without creating
+ * an intermediate copy of the filtered file on disk. Uses the same chain of {@link FilterWrapper}s as
+ * {@link org.apache.maven.shared.filtering.MavenResourcesFiltering}, which is only created once for all resources.
+ * <p>
+ * Note that the plexus archiver still buffers the transformed content of each entry in memory (or in a temporary file for
+ * big entries), as the size and CRC of a zip entry have to be known before it is written. Therefore this only saves the copy
+ * below {@code target/filteredFiles} but not the second pass over the filtered content.
+ */
+public class StreamingResourceFilter implements InputStreamTransformer {
+
+    private final List<FilterWrapper> filterWrappers;
+
+    private final Charset charset;
+
+    private final Predicate<String> isFilteredFileName;
+
+    /**
+     * 
+     * @param filterWrappers the filter wrappers to apply (in the given order)
+     * @param charset the encoding of the resources
+     * @param isFilteredFileName evaluates whether a resource with the given file name should be filtered at all (e.g. based on its extension)
+     */
+    public StreamingResourceFilter(@NotNull List<FilterWrapper> filterWrappers, @NotNull Charset charset, @NotNull Predicate<String> isFilteredFileName) {
+        this.filterWrappers = filterWrappers;
+        this.charset = charset;
+        this.isFilteredFileName = isFilteredFileName;
+    }
+
+    @Override
+    public @NotNull InputStream transform(@NotNull PlexusIoResource resource, @NotNull InputStream inputStream) throws IOException {
+        if (!isFilteredFileName.test(resource.getName())) {
+            return inputStream;
+        }
+        return filter(inputStream);
+    }
+
+    /**
+     * 
+     * @param inputStream the unfiltered stream
+     * @return the filtered stream
+     */
+    public @NotNull InputStream filter(@NotNull InputStream inputStream) {
+        Reader reader = new InputStreamReader(inputStream, charset);
+        for (FilterWrapper filterWrapper : filterWrappers) {
+            reader = filterWrapper.getReader(reader);
+        }
+        return new ReaderInputStream(reader, charset);
+    }
+}
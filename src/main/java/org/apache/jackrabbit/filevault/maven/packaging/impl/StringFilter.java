@@ -51,6 +51,13 @@ public class StringFilter extends DefaultPathFilter {
         }
     }
 
+    /**
+     * @return {@code true} in case this filter only matches the given string literally, {@code false} in case it is a regular expression
+     */
+    public boolean isExact() {
+        return string != null;
+    }
+
     @Override
     public boolean matches(String path) {
         if (string == null) {
@@ -16,16 +16,22 @@
  */
 package org.apache.jackrabbit.filevault.maven.packaging.impl;
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.jackrabbit.vault.fs.api.FilterSet;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * {@code StringFilterSet}...
  */
 public class StringFilterSet extends FilterSet<StringFilter> {
 
+    private CompiledStringFilterSet compiled;
+
     public void addEntry(String pattern) throws ConfigurationException {
         if (pattern.startsWith("~")) {
             addExclude(new StringFilter(pattern.substring(1)));
@@ -55,6 +61,40 @@ public class StringFilterSet extends FilterSet<StringFilter> {
         }
     }
 
+    /**
+     * Returns the compiled form of this filter set which should be used when evaluating many values.
+     * The compiled form is reused until entries are added to this filter set.
+     * @return the compiled filter set
+     */
+    @NotNull
+    public CompiledStringFilterSet compile() {
+        List<Entry<StringFilter>> entries = getEntries();
+        if (compiled == null || compiled.size() != entries.size()) {
+            compiled = new CompiledStringFilterSet(entries);
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the strings contained in this filter set in case it only consists of literal includes.
+     * @return the included strings or {@code null} in case this filter set is empty or contains excludes or regular expressions
+     */
+    @Nullable
+    public Set<String> getExactIncludes() {
+        List<Entry<StringFilter>> entries = getEntries();
+        if (entries.isEmpty()) {
+            return null;
+        }
+        Set<String> includes = new HashSet<>();
+        for (Entry<StringFilter> entry: entries) {
+            if (!entry.isInclude() || !entry.getFilter().isExact()) {
+                return null;
+            }
+            includes.add(entry.getFilter().getPattern());
+        }
+        return includes;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Detects whether a file contains the begin token of at least one filtering delimiter. Files without any begin token are not modified
+ * by the Maven resource filtering and therefore don't need to be filtered at all.
+ * The files are scanned byte-wise (larger files are memory-mapped) and the result is cached per file (validated by size and
+ * last modification time). The cache can be persisted to be used by subsequent builds, only the files checked by this instance
+ * are kept in that case.
+ * <p>
+ * The cache is not validated by a hash of the file content, as calculating it would be as expensive as the scan itself.
+ * Instead a file whose modification time is within {@link #TIMESTAMP_RESOLUTION} of the scan is not cached, as a subsequent
+ * modification of the same size might not change its modification time. Still a modification of the same size which explicitly
+ * restores the previous modification time (or which is done on a file system with a skewed clock) is not detected, and the file
+ * is archived without filtering in case it was cached as not containing any begin token.
+ */
+public class TokenScanner {
+
+    private static final int VERSION = 1;
+
+    /** Files larger than this are memory-mapped instead of being read into a byte array */
+    static final int MAPPING_THRESHOLD = 64 * 1024;
+
+    /** The maximum size of a single mapped region */
+    static final int MAX_REGION_SIZE = 256 * 1024 * 1024;
+
+    /** The coarsest resolution of file modification times (FAT) in milliseconds */
+    static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private final byte[][] tokens;
+
+    private final String signature;
+
+    private final Map<String, long[]> cache = new ConcurrentHashMap<>();
+
+    /** the keys of all files checked by this instance */
+    private final Set<String> checkedKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 
+     * @param delimiters the filtering delimiters in the form 'beginToken*endToken' (or just 'token' if begin and end token are the same)
+     * @param charset the encoding of the files
+     */
+    public TokenScanner(@NotNull Collection<String> delimiters, @NotNull Charset charset) {
+        List<byte[]> tokens = new ArrayList<>();
+        boolean isScannable = isAsciiCompatible(charset);
+        for (String delimiter : delimiters) {
+            int index = delimiter.indexOf('*');
+            String beginToken = index >= 0 ? delimiter.substring(0, index) : delimiter;
+            if (beginToken.isEmpty()) {
+                isScannable = false;
+            } else {
+                tokens.add(beginToken.getBytes(charset));
+            }
+        }
+        // otherwise every file is regarded as containing a token
+        this.tokens = isScannable ? tokens.toArray(new byte[0][]) : null;
+        StringBuilder signature = new StringBuilder(charset.name());
+        for (String delimiter : delimiters) {
+            signature.append(' ').append(delimiter);
+        }
+        this.signature = signature.toString();
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        String ascii = "${}@";
+        return Arrays.equals(ascii.getBytes(StandardCharsets.US_ASCII), ascii.getBytes(charset));
+    }
+
+    /**
+     * Loads the cache of a previous build, in case it has been created for the same delimiters and charset.
+     * @param file the file
+     * @return this scanner
+     * @throws IOException in case the file could not be read
+     */
+    public @NotNull TokenScanner loadCache(@NotNull File file) throws IOException {
+        if (!file.isFile()) {
+            return this;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != VERSION || !input.readUTF().equals(signature)) {
+                return this;
+            }
+            int size = input.readInt();
+            for (int i = 0; i < size; i++) {
+                cache.put(input.readUTF(), new long[] { input.readLong(), input.readLong(), input.readBoolean() ? 1 : 0 });
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Stores the cache atomically. Entries of files which have not been checked by this instance (e.g. deleted ones) are dropped.
+     * @param file the file
+     * @throws IOException in case the file could not be written
+     */
+    public void storeCache(@NotNull File file) throws IOException {
+        cache.keySet().retainAll(checkedKeys);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            output.writeInt(VERSION);
+            output.writeUTF(signature);
+            output.writeInt(cache.size());
+            for (Map.Entry<String, long[]> entry : cache.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeLong(entry.getValue()[0]);
+                output.writeLong(entry.getValue()[1]);
+                output.writeBoolean(entry.getValue()[2] != 0);
+            }
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 
+     * @param file the file to scan
+     * @return {@code true} in case the file contains at least one begin token (or in case the tokens cannot be detected byte-wise)
+     * @throws IOException in case the file could not be read
+     */
+    public boolean containsToken(@NotNull File file) throws IOException {
+        if (tokens == null) {
+            return true;
+        }
+        String key = file.getAbsolutePath();
+        checkedKeys.add(key);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        long[] cachedResult = cache.get(key);
+        if (cachedResult != null && cachedResult[0] == size && cachedResult[1] == lastModified) {
+            return cachedResult[2] != 0;
+        }
+        long scanStart = System.currentTimeMillis();
+        boolean result = scan(file, size);
+        // otherwise a modification right after the scan might not change the modification time
+        if (lastModified < scanStart - TIMESTAMP_RESOLUTION) {
+            cache.put(key, new long[] { size, lastModified, result ? 1 : 0 });
+        }
+        return result;
+    }
+
+    private boolean scan(File file, long size) throws IOException {
+        if (size <= MAPPING_THRESHOLD) {
+            return containsToken(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+        }
+        int maxTokenLength = 0;
+        for (byte[] token : tokens) {
+            maxTokenLength = Math.max(maxTokenLength, token.length);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // consecutive regions overlap so that no token crossing a region boundary is missed
+            for (long position = 0; position < size; position += MAX_REGION_SIZE - maxTokenLength + 1) {
+                long regionSize = Math.min(MAX_REGION_SIZE, size - position);
+                if (containsToken(channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize))) {
+                    return true;
+                }
+                if (position + regionSize >= size) {
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    boolean containsToken(@NotNull ByteBuffer buffer) {
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit; i++) {
+            byte value = buffer.get(i);
+            for (byte[] token : tokens) {
+                if (value == token[0] && i + token.length <= limit && startsWith(buffer, i, token)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int index, byte[] token) {
+        for (int i = 1; i < token.length; i++) {
+            if (buffer.get(index + i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+/**
+ * Streaming implementation of the 64-bit <a href="https://github.com/Cyan4973/xxHash">xxHash</a> (XXH64) with seed 0.
+ * It is a non-cryptographic hash which is considerably cheaper to calculate than a message digest.
+ */
+public final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_SIZE = 32;
+
+    private long v1 = PRIME1 + PRIME2;
+    private long v2 = PRIME2;
+    private long v3 = 0;
+    private long v4 = -PRIME1;
+
+    private final byte[] stripe = new byte[STRIPE_SIZE];
+
+    private int stripeLength;
+
+    private long totalLength;
+
+    public void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+        if (stripeLength > 0) {
+            int count = Math.min(length, STRIPE_SIZE - stripeLength);
+            System.arraycopy(bytes, offset, stripe, stripeLength, count);
+            stripeLength += count;
+            offset += count;
+            if (stripeLength < STRIPE_SIZE) {
+                return;
+            }
+            processStripe(stripe, 0);
+            stripeLength = 0;
+        }
+        for (; offset + STRIPE_SIZE <= end; offset += STRIPE_SIZE) {
+            processStripe(bytes, offset);
+        }
+        System.arraycopy(bytes, offset, stripe, 0, end - offset);
+        stripeLength = end - offset;
+    }
+
+    private void processStripe(byte[] bytes, int offset) {
+        v1 = round(v1, getLong(bytes, offset));
+        v2 = round(v2, getLong(bytes, offset + 8));
+        v3 = round(v3, getLong(bytes, offset + 16));
+        v4 = round(v4, getLong(bytes, offset + 24));
+    }
+
+    /**
+     * 
+     * @return the hash of all bytes passed to {@link #update(byte[], int, int)} so far
+     */
+    public long getValue() {
+        long hash;
+        if (totalLength >= STRIPE_SIZE) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += totalLength;
+        int offset = 0;
+        for (; offset + 8 <= stripeLength; offset += 8) {
+            hash ^= round(0, getLong(stripe, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (offset + 4 <= stripeLength) {
+            hash ^= (getInt(stripe, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        for (; offset < stripeLength; offset++) {
+            hash ^= (stripe[offset] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return (getInt(bytes, offset) & 0xFFFFFFFFL) | ((long) getInt(bytes, offset + 4) << 32);
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
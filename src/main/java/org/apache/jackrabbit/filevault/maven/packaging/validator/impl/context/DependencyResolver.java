@@ -25,11 +25,11 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.jackrabbit.filevault.maven.packaging.MavenBasedPackageDependency;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageMetadataCache;
 import org.apache.jackrabbit.vault.packaging.Dependency;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.packaging.PackageInfo;
 import org.apache.jackrabbit.vault.packaging.VersionRange;
-import org.apache.jackrabbit.vault.packaging.impl.DefaultPackageInfo;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.RepositoryRequest;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
@@ -48,16 +48,18 @@ public class DependencyResolver {
     private final ResolutionErrorHandler resolutionErrorHandler;
     private final Map<Dependency, Artifact> mapPackageDependencyToMavenArtifact;
     private final Collection<PackageInfo> knownPackageInfos;
+    private final PackageMetadataCache metadataCache;
 
     public DependencyResolver(RepositoryRequest repositoryRequest, RepositorySystem repositorySystem,
             ResolutionErrorHandler resolutionErrorHandler, Map<Dependency, Artifact> mapPackageDependencyToMavenArtifact,
-            Collection<PackageInfo> knownPackageInfos) {
+            Collection<PackageInfo> knownPackageInfos, PackageMetadataCache metadataCache) {
         super();
         this.repositoryRequest = repositoryRequest;
         this.repositorySystem = repositorySystem;
         this.resolutionErrorHandler = resolutionErrorHandler;
         this.mapPackageDependencyToMavenArtifact = mapPackageDependencyToMavenArtifact;
         this.knownPackageInfos = knownPackageInfos;
+        this.metadataCache = metadataCache;
     }
 
     public List<PackageInfo> resolve(Dependency[] packageDependencies, Map<PackageId, URI> packageLocations, Log log) throws IOException {
@@ -129,7 +131,7 @@ public class DependencyResolver {
         Artifact artifact = repositorySystem.createArtifact(groupId, artifactId, version, "zip");
         File file = resolve(artifact, log);
         if (file != null) {
-            return DefaultPackageInfo.read(file);
+            return metadataCache.getPackageInfo(file);
         } else {
             return null;
         }
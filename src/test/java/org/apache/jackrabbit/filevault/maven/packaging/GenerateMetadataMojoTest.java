@@ -23,7 +23,12 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.jar.Attributes;
@@ -34,9 +39,14 @@ import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.jackrabbit.vault.fs.filter.DefaultPathFilter;
 import org.apache.jackrabbit.vault.packaging.PackageType;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.archiver.jar.ManifestException;
+import org.codehaus.plexus.util.FileUtils;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
@@ -80,6 +90,145 @@ public class GenerateMetadataMojoTest {
         Assert.assertEquals(expectedPathFilter, GenerateMetadataMojo.getPathFilterSetForEmbeddedFile("/etc/packages/some/weird/group/name-1.0.zip", true));
     }
 
+    @Test
+    public void testGetModuleLookup() {
+        MavenProject module1 = createProject("module1");
+        MavenProject module2 = createProject("module2");
+        MavenProject duplicateModule1 = createProject("module1");
+        Map<String, Object> pluginContext = new HashMap<>();
+        Map<String, List<MavenProject>> lookup = GenerateMetadataMojo.getModuleLookup(pluginContext,
+                Arrays.asList(module1, module2, duplicateModule1), Artifact::getId);
+        Assert.assertEquals(2, lookup.size());
+        Assert.assertEquals(Arrays.asList(module1, duplicateModule1), lookup.get(module1.getArtifact().getId()));
+        Assert.assertEquals(Collections.singletonList(module2), lookup.get(module2.getArtifact().getId()));
+        // the lookup is only built once per plugin context
+        Assert.assertSame(lookup, GenerateMetadataMojo.getModuleLookup(pluginContext, Collections.<MavenProject>emptyList(), Artifact::getId));
+    }
+
+    @Test
+    public void testFindModuleWithSameCoordinatesAsCurrentProject() {
+        MavenProject currentProject = createProject("module1");
+        MavenProject module1 = createProject("module1");
+        MavenProject module2 = createProject("module2");
+        Map<String, List<MavenProject>> lookup = GenerateMetadataMojo.getModuleLookup(new HashMap<>(),
+                Arrays.asList(currentProject, module1, module2), Artifact::getId);
+        // the current project is skipped, but the search continues with the other modules
+        Assert.assertSame(module1, GenerateMetadataMojo.findModule(lookup, module1.getArtifact().getId(), currentProject));
+        Assert.assertSame(currentProject, GenerateMetadataMojo.findModule(lookup, module1.getArtifact().getId(), module2));
+        Assert.assertNull(GenerateMetadataMojo.findModule(lookup, module2.getArtifact().getId(), module2));
+        Assert.assertNull(GenerateMetadataMojo.findModule(lookup, "unknown", currentProject));
+    }
+
+    private static MavenProject createProject(String artifactId) {
+        MavenProject project = new MavenProject();
+        project.setArtifact(new DefaultArtifact("group", artifactId, "1.0", "compile", "content-package", null, new DefaultArtifactHandler("zip")));
+        return project;
+    }
+
+    @Test
+    public void testWriteIfChanged() throws IOException {
+        File outputFile = new File(File.createTempFile("filevault-test-", null).getParentFile(), "filevault-test-" + System.nanoTime() + "/test.xml");
+        try {
+            byte[] content = "<test/>".getBytes(StandardCharsets.UTF_8);
+            Assert.assertTrue(GenerateMetadataMojo.writeIfChanged(outputFile, content));
+            Assert.assertTrue(outputFile.setLastModified(0));
+            Assert.assertFalse(GenerateMetadataMojo.writeIfChanged(outputFile, content));
+            Assert.assertEquals(0, outputFile.lastModified());
+            byte[] otherContent = "<other/>".getBytes(StandardCharsets.UTF_8);
+            Assert.assertTrue(GenerateMetadataMojo.writeIfChanged(outputFile, otherContent));
+            Assert.assertArrayEquals(otherContent, Files.readAllBytes(outputFile.toPath()));
+        } finally {
+            outputFile.delete();
+            outputFile.getParentFile().delete();
+        }
+    }
+
+    @Test
+    public void testSkipIfUpToDate() throws IOException, ConfigurationException {
+        File workDirectory = Files.createTempDirectory("filevault-test-").toFile();
+        try {
+            GenerateMetadataMojo mojo = new GenerateMetadataMojo();
+            mojo.workDirectory = workDirectory;
+            mojo.project = new MavenProject();
+            MavenProject parent = new MavenProject();
+            File parentPom = new File(workDirectory, "parent-pom.xml");
+            Files.write(parentPom.toPath(), "<project/>".getBytes(StandardCharsets.UTF_8));
+            parent.setFile(parentPom);
+            mojo.project.setParent(parent);
+            mojo.embeddeds = new Embedded[] { createEmbedded(null) };
+            File propertiesFile = new File(mojo.getGeneratedVaultDir(), "properties.xml");
+            GenerateMetadataMojo.writeIfChanged(propertiesFile, "<properties/>".getBytes(StandardCharsets.UTF_8));
+            File fingerprintFile = new File(workDirectory, GenerateMetadataMojo.FINGERPRINT_FILE_NAME);
+
+            String fingerprint = mojo.calculateInputFingerprint(null);
+            Assert.assertFalse(mojo.isUpToDate(fingerprintFile, fingerprint));
+            mojo.storeFingerprint(fingerprintFile, fingerprint);
+            Assert.assertTrue(mojo.isUpToDate(fingerprintFile, fingerprint));
+
+            // the configuration is fingerprinted by its values
+            mojo.embeddeds = new Embedded[] { createEmbedded("myclassifier") };
+            Assert.assertNotEquals(fingerprint, mojo.calculateInputFingerprint(null));
+            mojo.embeddeds = new Embedded[] { createEmbedded(null) };
+            Assert.assertEquals(fingerprint, mojo.calculateInputFingerprint(null));
+
+            // modified parent pom
+            long lastModified = parentPom.lastModified();
+            Assert.assertTrue(parentPom.setLastModified(lastModified + 10000));
+            Assert.assertNotEquals(fingerprint, mojo.calculateInputFingerprint(null));
+            Assert.assertTrue(parentPom.setLastModified(lastModified));
+            Assert.assertEquals(fingerprint, mojo.calculateInputFingerprint(null));
+
+            // modified output
+            GenerateMetadataMojo.writeIfChanged(propertiesFile, "<modified/>".getBytes(StandardCharsets.UTF_8));
+            Assert.assertFalse(mojo.isUpToDate(fingerprintFile, fingerprint));
+        } finally {
+            FileUtils.deleteDirectory(workDirectory);
+        }
+    }
+
+    @Test
+    public void testPreviouslyGeneratedFilterReplacedBySource() throws IOException, MojoExecutionException {
+        File workDirectory = Files.createTempDirectory("filevault-test-").toFile();
+        try {
+            // first execution with inline filters
+            GenerateMetadataMojo mojo = new GenerateMetadataMojo();
+            mojo.workDirectory = workDirectory;
+            mojo.filters.add(new PathFilterSet("/apps/generated"));
+            mojo.writeFilters(mojo.computeFilters(null));
+            File filterFile = mojo.getGeneratedFilterFile();
+            Assert.assertEquals(0, filterFile.lastModified());
+            Assert.assertTrue(new String(Files.readAllBytes(filterFile.toPath()), StandardCharsets.UTF_8).contains("/apps/generated"));
+
+            // second execution with a filter source instead
+            File filterSource = new File(workDirectory, "filter-source.xml");
+            byte[] sourceFilters = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- comment -->\n"
+                    + "<workspaceFilter version=\"1.0\">\n    <filter root=\"/apps/source\"/>\n</workspaceFilter>\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(filterSource.toPath(), sourceFilters);
+            mojo = new GenerateMetadataMojo();
+            mojo.workDirectory = workDirectory;
+            mojo.filterSource = filterSource;
+            String computedFilters = mojo.computeFilters(null);
+            // the previously generated filter is neither loaded nor kept
+            Assert.assertFalse(filterFile.exists());
+            Assert.assertEquals(1, mojo.filters.getFilterSets().size());
+            Assert.assertEquals("/apps/source", mojo.filters.getFilterSets().get(0).getRoot());
+            mojo.writeFilters(computedFilters);
+            Assert.assertArrayEquals(sourceFilters, Files.readAllBytes(filterFile.toPath()));
+        } finally {
+            FileUtils.deleteDirectory(workDirectory);
+        }
+    }
+
+    private static Embedded createEmbedded(String classifier) throws ConfigurationException {
+        Embedded embedded = new Embedded();
+        embedded.setArtifactId("artifact1");
+        embedded.setScope("compile");
+        if (classifier != null) {
+            embedded.setClassifier(classifier);
+        }
+        return embedded;
+    }
+
     @Test
     public void testWriteManifest() throws FileNotFoundException, ManifestException, DependencyResolutionRequiredException, IOException {
         GenerateMetadataMojo mojo = new GenerateMetadataMojo();
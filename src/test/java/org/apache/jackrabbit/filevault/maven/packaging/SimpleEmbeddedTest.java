@@ -19,6 +19,7 @@ package org.apache.jackrabbit.filevault.maven.packaging;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.jackrabbit.filevault.maven.packaging.impl.ArtifactIndex;
 import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DefaultArtifact;
@@ -95,6 +96,34 @@ public class SimpleEmbeddedTest {
         Assert.assertThat(embedded.getMatchingArtifacts(artifacts), Matchers.containsInAnyOrder(artifacts.get(4)));
     }
 
+    @Test
+    public void testMatchingArtifactsFromIndex() throws ConfigurationException {
+        ArtifactIndex index = new ArtifactIndex(artifacts);
+        assertSameMatchesFromIndex(index);
+        embedded.setGroupId("mygroupid");
+        assertSameMatchesFromIndex(index);
+        embedded.setArtifactId("/artifact[12]/,~artifact2");
+        assertSameMatchesFromIndex(index);
+        embedded.setType("bundle");
+        assertSameMatchesFromIndex(index);
+
+        // another embed with the same group filter shares the index
+        SimpleEmbedded otherEmbedded = new SimpleEmbedded();
+        otherEmbedded.setGroupId("mygroupid");
+        otherEmbedded.setArtifactId("artifact2,artifact3");
+        Assert.assertThat(otherEmbedded.getMatchingArtifacts(index), Matchers.contains(artifacts.get(1), artifacts.get(5), artifacts.get(6)));
+
+        otherEmbedded = new SimpleEmbedded();
+        otherEmbedded.setGroupId("~/my.*/");
+        Assert.assertThat(otherEmbedded.getMatchingArtifacts(index), Matchers.empty());
+        otherEmbedded.setArtifactId("unknown");
+        Assert.assertThat(otherEmbedded.getMatchingArtifacts(index), Matchers.empty());
+    }
+
+    private void assertSameMatchesFromIndex(ArtifactIndex index) {
+        Assert.assertEquals(embedded.getMatchingArtifacts(artifacts), embedded.getMatchingArtifacts(index));
+    }
+
     public final static class SimpleArtifact extends DefaultArtifact {
         SimpleArtifact(String groupId, String artifactId) {
             this(groupId, artifactId, null);
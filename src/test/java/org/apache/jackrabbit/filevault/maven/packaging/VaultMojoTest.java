@@ -17,11 +17,16 @@
 package org.apache.jackrabbit.filevault.maven.packaging;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.jackrabbit.filevault.maven.packaging.it.ProjectBuilder;
+import org.apache.jackrabbit.vault.util.Constants;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
@@ -45,4 +50,54 @@ public class VaultMojoTest {
         Collection<File> uncoveredFiles = VaultMojo.getUncoveredFiles(sourceDirectory, excludes, "", entryNames);
         Assert.assertThat(uncoveredFiles, Matchers.empty());
     }
+
+    @Test
+    public void testNormalizeEntryName() {
+        Assert.assertEquals("jcr_root/apps/file.txt", VaultMojo.normalizeEntryName("jcr_root\\apps\\file.txt"));
+        Assert.assertEquals("jcr_root/prefix/apps/file.txt", VaultMojo.normalizeEntryName("jcr_root//prefix//apps/file.txt"));
+        Assert.assertEquals("jcr_root/apps", VaultMojo.normalizeEntryName("/jcr_root/apps/"));
+    }
+
+    /** The indexed lookup must find the same uncovered files as the former nested loop over all package entries. */
+    @Test
+    public void testUncoveredFilesSameAsNestedLoop() {
+        List<String> relativeFileNames = new ArrayList<>();
+        List<String> entryNames = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String relativeFileName = "apps/component" + (i / 10) + "/file" + i + ".txt";
+            relativeFileNames.add(relativeFileName);
+            if (i % 7 == 0) {
+                // uncovered
+                continue;
+            } else if (i % 7 == 1) {
+                // below a different prefix
+                entryNames.add(new File("jcr_root/other/" + relativeFileName).getPath());
+            } else {
+                entryNames.add(new File("jcr_root/prefix/" + relativeFileName).getPath());
+            }
+        }
+        // directory entries and entries outside of jcr_root
+        entryNames.add(new File("jcr_root/prefix/apps").getPath());
+        entryNames.add(new File("META-INF/vault/filter.xml").getPath());
+        File sourceDirectory = new File("jcr_root");
+        for (String prefix : Arrays.asList("/prefix/", "/other/", "")) {
+            Collection<File> uncoveredFiles = VaultMojo.getUncoveredFiles(sourceDirectory, prefix, relativeFileNames, entryNames);
+            Assert.assertEquals(getUncoveredFilesWithNestedLoop(sourceDirectory, prefix, relativeFileNames, entryNames), uncoveredFiles);
+        }
+        // both the uncovered files and the ones below the other prefix
+        Assert.assertEquals(2 * (1000 / 7 + 1), VaultMojo.getUncoveredFiles(sourceDirectory, "/prefix/", relativeFileNames, entryNames).size());
+    }
+
+    /** The former implementation of {@link VaultMojo#getUncoveredFiles(File, String, Collection, Collection)} */
+    private static Collection<File> getUncoveredFilesWithNestedLoop(File sourceDirectory, String prefix, Collection<String> relativeFileNames,
+            Collection<String> coveredFileNames) {
+        Collection<File> coveredFiles = coveredFileNames.stream().map(File::new).collect(Collectors.toList());
+        Collection<File> uncoveredFiles = new ArrayList<>();
+        for (String relativeFileName : relativeFileNames) {
+            if (!coveredFiles.contains(new File(Constants.ROOT_DIR + prefix, relativeFileName))) {
+                uncoveredFiles.add(new File(sourceDirectory, relativeFileName));
+            }
+        }
+        return uncoveredFiles;
+    }
 }
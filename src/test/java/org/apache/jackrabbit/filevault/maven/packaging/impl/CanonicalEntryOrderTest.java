@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CanonicalEntryOrderTest {
+
+    private static final List<String> CANONICAL_NAMES = Arrays.asList(
+            "META-INF/",
+            "META-INF/MANIFEST.MF",
+            "META-INF/vault/",
+            "META-INF/vault/config.xml",
+            "META-INF/vault/filter.xml",
+            "META-INF/maven/",
+            "jcr_root/",
+            "jcr_root/.content.xml",
+            "jcr_root/apps/",
+            "jcr_root/apps/.content.xml",
+            "jcr_root/apps/a/",
+            "jcr_root/apps/a/.content.xml",
+            "jcr_root/apps/a/z.txt",
+            "jcr_root/apps/a-b/",
+            "jcr_root/apps/a.xml",
+            "jcr_root/libs/");
+
+    @Test
+    public void testSort() {
+        List<String> names = new ArrayList<>(CANONICAL_NAMES);
+        Collections.reverse(names);
+        Collections.sort(names, CanonicalEntryOrder.INSTANCE);
+        Assert.assertEquals(CANONICAL_NAMES, names);
+    }
+
+    @Test
+    public void testFindViolation() throws IOException {
+        File file = File.createTempFile("ordered", ".zip");
+        try {
+            writeArchive(file, CANONICAL_NAMES);
+            Assert.assertNull(CanonicalEntryOrder.findViolation(file));
+            List<String> names = new ArrayList<>(CANONICAL_NAMES);
+            Collections.swap(names, 8, 9);
+            writeArchive(file, names);
+            Assert.assertEquals("Entry 'jcr_root/apps/' is stored after 'jcr_root/apps/.content.xml'", CanonicalEntryOrder.findViolation(file));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    private static void writeArchive(File file, List<String> names) throws IOException {
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(file)) {
+            for (String name : names) {
+                output.putArchiveEntry(new ZipArchiveEntry(name));
+                output.closeArchiveEntry();
+            }
+        }
+    }
+}
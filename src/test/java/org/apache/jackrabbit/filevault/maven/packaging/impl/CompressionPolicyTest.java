@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressionPolicyTest {
+
+    @Test
+    public void testStoredExtensions() {
+        CompressionPolicy policy = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION).addStoredExtensions(Arrays.asList("jar", "PNG"));
+        Assert.assertEquals(CompressionPolicy.STORED, policy.getLevel("jcr_root/apps/install/bundle.jar"));
+        Assert.assertEquals(CompressionPolicy.STORED, policy.getLevel("jcr_root/content/dam/image.png"));
+        Assert.assertEquals(CompressionPolicy.STORED, policy.getLevel("jcr_root/content/dam/IMAGE.PNG"));
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel("jcr_root/apps/.content.xml"));
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel("jcr_root/apps/jar"));
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel("jcr_root/apps.jar/file"));
+        Assert.assertTrue(policy.isSelective());
+    }
+
+    @Test
+    public void testRules() {
+        CompressionPolicy policy = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION)
+                .addRule("jcr_root/content/dam/**", 1)
+                .addRule("**/*.zip", CompressionPolicy.STORED)
+                .addRule("jcr_root/content/**", 9);
+        Assert.assertEquals(1, policy.getLevel("jcr_root/content/dam/package.zip"));
+        Assert.assertEquals(CompressionPolicy.STORED, policy.getLevel("jcr_root/etc/packages/package.zip"));
+        Assert.assertEquals(9, policy.getLevel("jcr_root/content/site/.content.xml"));
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel("META-INF/vault/filter.xml"));
+    }
+
+    @Test
+    public void testNotSelective() {
+        Assert.assertFalse(new CompressionPolicy(Deflater.DEFAULT_COMPRESSION).isSelective());
+        Assert.assertTrue(new CompressionPolicy(Deflater.DEFAULT_COMPRESSION, 8192).isSelective());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() {
+        new CompressionPolicy(Deflater.DEFAULT_COMPRESSION).addRule("**", 10);
+    }
+}
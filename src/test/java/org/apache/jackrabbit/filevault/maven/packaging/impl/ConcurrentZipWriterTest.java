@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentZipWriterTest {
+
+    private static final int NUM_ENTRIES = 200;
+
+    @Test
+    public void testOutputIndependentOfNumberOfThreads() throws IOException {
+        byte[] expected = createArchive(1);
+        Assert.assertArrayEquals(expected, createArchive(2));
+        Assert.assertArrayEquals(expected, createArchive(8));
+    }
+
+    @Test
+    public void testLeanOutputIndependentOfNumberOfThreads() throws IOException {
+        byte[] expected = createLeanArchive(1);
+        Assert.assertArrayEquals(expected, createLeanArchive(8));
+    }
+
+    @Test
+    public void testReadLeanArchive() throws IOException {
+        File file = File.createTempFile("lean", ".zip");
+        try {
+            Files.write(file.toPath(), createLeanArchive(4));
+            try (ZipFile zipFile = new ZipFile(file)) {
+                ZipArchiveEntry directory = zipFile.getEntry("jcr_root/");
+                Assert.assertTrue(directory.isDirectory());
+                for (int i = 0; i < NUM_ENTRIES; i++) {
+                    ZipArchiveEntry entry = zipFile.getEntry("jcr_root/file" + i + ".txt");
+                    Assert.assertEquals(i % 3 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod());
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        Assert.assertArrayEquals(createContent(i), IOUtils.toByteArray(input));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testTransferLargeStoredFiles() throws IOException {
+        File directory = Files.createTempDirectory("sources").toFile();
+        File archive = new File(directory, "archive.zip");
+        try {
+            File[] files = new File[4];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new File(directory, "file" + i + ".txt");
+                // the first and the last file exceed the in-memory buffer
+                Files.write(files[i].toPath(), createContent(i * 50));
+            }
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            try (LeanZipOutputStream output = new LeanZipOutputStream(expected);
+                 ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 2, new CompressionPolicy(Deflater.DEFAULT_COMPRESSION))) {
+                for (File file : files) {
+                    writer.addEntry(createStoredEntry(file), () -> Files.newInputStream(file.toPath()));
+                }
+                writer.finish();
+            }
+            try (LeanZipOutputStream output = new LeanZipOutputStream(archive);
+                 ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 2, new CompressionPolicy(Deflater.DEFAULT_COMPRESSION))) {
+                for (File file : files) {
+                    writer.addFileEntry(createStoredEntry(file), file);
+                }
+                writer.finish();
+            }
+            Assert.assertArrayEquals(expected.toByteArray(), Files.readAllBytes(archive.toPath()));
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testContentHashIndex() throws IOException {
+        ContentHashIndex index = new ContentHashIndex(ContentHashIndex.Algorithm.XXH64);
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(new ByteArrayOutputStream());
+             ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 4, Deflater.DEFAULT_COMPRESSION)) {
+            writer.setContentHashIndex(index);
+            addEntries(writer);
+        }
+        Assert.assertEquals(NUM_ENTRIES, index.size());
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            byte[] content = createContent(i);
+            XxHash64 hash = new XxHash64();
+            hash.update(content, 0, content.length);
+            Assert.assertEquals(String.format("%016x", hash.getValue()), index.getHash("jcr_root/file" + i + ".txt"));
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        index.write(json);
+        String expectedEntry = "{\"path\": \"jcr_root/file0.txt\", \"size\": " + createContent(0).length + ", \"hash\": \"" + index.getHash("jcr_root/file0.txt") + "\"}";
+        Assert.assertTrue(json.toString("UTF-8").startsWith("{\n  \"algorithm\": \"xxh64\",\n  \"entries\": [\n    " + expectedEntry + ",\n"));
+    }
+
+    private static ZipArchiveEntry createStoredEntry(File file) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(file.getName());
+        entry.setTime(0);
+        entry.setMethod(ZipEntry.STORED);
+        return entry;
+    }
+
+    @Test
+    public void testReadArchive() throws IOException {
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(createArchive(4)))) {
+            ZipEntry entry = input.getNextEntry();
+            Assert.assertEquals("jcr_root/", entry.getName());
+            Assert.assertTrue(entry.isDirectory());
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                entry = input.getNextEntry();
+                Assert.assertEquals("jcr_root/file" + i + ".txt", entry.getName());
+                Assert.assertArrayEquals(createContent(i), IOUtils.toByteArray(input));
+            }
+            Assert.assertNull(input.getNextEntry());
+        }
+    }
+
+    @Test
+    public void testRawEntries() throws IOException {
+        byte[] expected = createArchive(4);
+        File previousFile = File.createTempFile("previous", ".zip");
+        try {
+            Files.write(previousFile.toPath(), expected);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ZipFile previous = new ZipFile(previousFile);
+                 ZipArchiveOutputStream output = new ZipArchiveOutputStream(bytes);
+                 ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 4, Deflater.DEFAULT_COMPRESSION)) {
+                ZipArchiveEntry directory = new ZipArchiveEntry("jcr_root/");
+                directory.setTime(0);
+                writer.addDirectory(directory);
+                for (int i = 0; i < NUM_ENTRIES; i++) {
+                    ZipArchiveEntry entry = new ZipArchiveEntry("jcr_root/file" + i + ".txt");
+                    entry.setTime(0);
+                    // copy every second entry
+                    if (i % 2 == 0) {
+                        writer.addRawEntry(entry, previous, previous.getEntry(entry.getName()));
+                    } else {
+                        entry.setMethod(i % 3 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+                        final byte[] content = createContent(i);
+                        writer.addEntry(entry, () -> new ByteArrayInputStream(content));
+                    }
+                }
+                writer.finish();
+            }
+            Assert.assertArrayEquals(expected, bytes.toByteArray());
+        } finally {
+            Files.delete(previousFile.toPath());
+        }
+    }
+
+    @Test
+    public void testCompressionPolicy() throws IOException {
+        byte[] random = new byte[100000];
+        new Random(0).nextBytes(random);
+        byte[] text = createContent(10);
+        CompressionPolicy policy = new CompressionPolicy(Deflater.DEFAULT_COMPRESSION, 8192).addStoredExtensions(Collections.singleton("jar"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(bytes);
+             ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 2, policy)) {
+            addEntry(writer, "bundle.jar", text);
+            addEntry(writer, "random.bin", random);
+            addEntry(writer, "text.txt", text);
+            writer.finish();
+        }
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEntry(input, "bundle.jar", ZipEntry.STORED, text);
+            assertEntry(input, "random.bin", ZipEntry.STORED, random);
+            assertEntry(input, "text.txt", ZipEntry.DEFLATED, text);
+        }
+    }
+
+    private static void addEntry(ConcurrentZipWriter writer, String name, byte[] content) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        writer.addEntry(entry, () -> new ByteArrayInputStream(content));
+    }
+
+    private static void assertEntry(ZipInputStream input, String name, int method, byte[] content) throws IOException {
+        ZipEntry entry = input.getNextEntry();
+        Assert.assertEquals(name, entry.getName());
+        Assert.assertEquals(method, entry.getMethod());
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(input));
+    }
+
+    @Test
+    public void testModifiedLargeStoredFile() throws IOException, InterruptedException {
+        File directory = Files.createTempDirectory("sources").toFile();
+        try {
+            File file = new File(directory, "file.txt");
+            byte[] content = createContent(150);
+            Files.write(file.toPath(), content);
+            CountDownLatch compressed = new CountDownLatch(1);
+            CountDownLatch modified = new CountDownLatch(1);
+            try (LeanZipOutputStream output = new LeanZipOutputStream(new File(directory, "archive.zip"));
+                 ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 1, new CompressionPolicy(Deflater.DEFAULT_COMPRESSION))) {
+                writer.addFileEntry(createStoredEntry(file), file);
+                // with a single thread the file has been compressed once the next entry is opened
+                writer.addEntry(createStoredEntry(new File(directory, "blocking.txt")), () -> {
+                    compressed.countDown();
+                    try {
+                        modified.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new ByteArrayInputStream(new byte[0]);
+                });
+                compressed.await();
+                // same size, but different CRC
+                content[0]++;
+                long lastModified = file.lastModified();
+                Files.write(file.toPath(), content);
+                Assert.assertTrue(file.setLastModified(lastModified + 10000));
+                modified.countDown();
+                writer.finish();
+                Assert.fail("The modification should have been detected");
+            } catch (IOException e) {
+                Assert.assertEquals("The source of entry file.txt has changed while writing", e.getMessage());
+            }
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailingSource() throws IOException {
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(new ByteArrayOutputStream());
+             ConcurrentZipWriter writer = new ConcurrentZipWriter(output, 2, Deflater.DEFAULT_COMPRESSION)) {
+            ZipArchiveEntry entry = new ZipArchiveEntry("failing.txt");
+            entry.setMethod(ZipEntry.DEFLATED);
+            writer.addEntry(entry, () -> {
+                throw new IOException("Cannot open");
+            });
+            writer.finish();
+        }
+    }
+
+    private static byte[] createArchive(int threads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(bytes);
+             ConcurrentZipWriter writer = new ConcurrentZipWriter(output, threads, Deflater.DEFAULT_COMPRESSION)) {
+            addEntries(writer);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void addEntries(ConcurrentZipWriter writer) throws IOException {
+        ZipArchiveEntry directory = new ZipArchiveEntry("jcr_root/");
+        directory.setTime(0);
+        writer.addDirectory(directory);
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            ZipArchiveEntry entry = new ZipArchiveEntry("jcr_root/file" + i + ".txt");
+            entry.setTime(0);
+            // mix stored and deflated entries
+            entry.setMethod(i % 3 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            final byte[] content = createContent(i);
+            writer.addEntry(entry, () -> new ByteArrayInputStream(content));
+        }
+        writer.finish();
+    }
+
+    private static byte[] createLeanArchive(int threads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (LeanZipOutputStream output = new LeanZipOutputStream(bytes);
+             ConcurrentZipWriter writer = new ConcurrentZipWriter(output, threads, new CompressionPolicy(Deflater.DEFAULT_COMPRESSION))) {
+            addEntries(writer);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] createContent(int index) {
+        StringBuilder content = new StringBuilder();
+        // some entries exceed the in-memory buffer
+        int lines = index % 50 == 0 ? 100000 : index * 10;
+        for (int i = 0; i < lines; i++) {
+            content.append("line ").append(i).append(" of entry ").append(index).append('\n');
+        }
+        return content.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jackrabbit.vault.fs.api.FilterSet;
+import org.apache.jackrabbit.vault.fs.api.PathFilter;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.filter.DefaultPathFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DeltaPackageBuilderTest {
+
+    private static final String FILTER = "<workspaceFilter version=\"1.0\">\n"
+            + "    <filter root=\"/apps/a\" mode=\"merge\"/>\n"
+            + "</workspaceFilter>\n";
+
+    private static final String PROPERTIES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
+            + "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+            + "<properties>\n<entry key=\"name\">test</entry>\n</properties>\n";
+
+    @Test
+    public void testEscape() {
+        Assert.assertEquals("/apps/a\\.b/c\\-d\\(1\\)", DeltaPackageBuilder.escape("/apps/a.b/c-d(1)"));
+    }
+
+    @Test
+    public void testBuild() throws IOException {
+        File base = File.createTempFile("base", ".zip");
+        File other = File.createTempFile("other", ".zip");
+        File delta = File.createTempFile("delta", ".zip");
+        try {
+            Map<String, String> baseEntries = new LinkedHashMap<>();
+            baseEntries.put("META-INF/vault/filter.xml", FILTER);
+            baseEntries.put("META-INF/vault/properties.xml", PROPERTIES);
+            baseEntries.put("jcr_root/", null);
+            baseEntries.put("jcr_root/apps/", null);
+            baseEntries.put("jcr_root/apps/a/", null);
+            baseEntries.put("jcr_root/apps/a/.content.xml", "<jcr:root title=\"old\"/>");
+            baseEntries.put("jcr_root/apps/a/unchanged/", null);
+            baseEntries.put("jcr_root/apps/a/unchanged/file.txt", "unchanged");
+            baseEntries.put("jcr_root/apps/a/changed.txt", "old");
+            baseEntries.put("jcr_root/apps/a/removed/", null);
+            baseEntries.put("jcr_root/apps/a/removed/file.txt", "removed");
+            writePackage(base, baseEntries);
+
+            Map<String, String> otherEntries = new LinkedHashMap<>(baseEntries);
+            otherEntries.put("jcr_root/apps/a/.content.xml", "<jcr:root title=\"new\"/>");
+            otherEntries.put("jcr_root/apps/a/changed.txt", "new");
+            otherEntries.remove("jcr_root/apps/a/removed/");
+            otherEntries.remove("jcr_root/apps/a/removed/file.txt");
+            writePackage(other, otherEntries);
+
+            DeltaPackageBuilder builder = new DeltaPackageBuilder(base, other);
+            builder.build(delta);
+
+            List<String> roots = new ArrayList<>();
+            for (PathFilterSet filterSet : builder.getFilter().getFilterSets()) {
+                roots.add(filterSet.getRoot() + " " + filterSet.getImportMode() + " " + getPatterns(filterSet));
+            }
+            Assert.assertEquals(Arrays.asList(
+                    "/apps/a/removed MERGE []",
+                    "/apps/a/changed.txt MERGE []",
+                    "/apps/a MERGE [-/apps/a/unchanged(/.*)?, -/apps/a/changed\\.txt(/.*)?]"), roots);
+            Assert.assertEquals("test-delta", builder.getProperties().getProperty("name"));
+
+            List<String> names = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(delta)) {
+                Collections.list(zipFile.entries()).forEach(entry -> names.add(entry.getName()));
+            }
+            Assert.assertEquals(Arrays.asList(
+                    "META-INF/vault/filter.xml",
+                    "META-INF/vault/properties.xml",
+                    "jcr_root/",
+                    "jcr_root/apps/",
+                    "jcr_root/apps/a/",
+                    "jcr_root/apps/a/.content.xml",
+                    "jcr_root/apps/a/changed.txt"), names);
+            Assert.assertEquals(5, builder.getCopiedEntries());
+        } finally {
+            Files.delete(base.toPath());
+            Files.delete(other.toPath());
+            Files.delete(delta.toPath());
+        }
+    }
+
+    @Test
+    public void testFullCoverageAggregates() throws IOException {
+        File base = File.createTempFile("base", ".zip");
+        File other = File.createTempFile("other", ".zip");
+        File delta = File.createTempFile("delta", ".zip");
+        try {
+            Map<String, String> baseEntries = new LinkedHashMap<>();
+            baseEntries.put("META-INF/vault/filter.xml", FILTER);
+            baseEntries.put("META-INF/vault/properties.xml", PROPERTIES);
+            baseEntries.put("jcr_root/", null);
+            baseEntries.put("jcr_root/apps/", null);
+            baseEntries.put("jcr_root/apps/a/", null);
+            baseEntries.put("jcr_root/apps/a/.content.xml", "<jcr:root/>");
+            baseEntries.put("jcr_root/apps/a/config.xml", "<jcr:root value=\"old\"/>");
+            baseEntries.put("jcr_root/apps/a/removed.xml", "<jcr:root/>");
+            baseEntries.put("jcr_root/apps/a/file.xml", "<root/>");
+            writePackage(base, baseEntries);
+
+            Map<String, String> otherEntries = new LinkedHashMap<>(baseEntries);
+            otherEntries.put("jcr_root/apps/a/config.xml", "<jcr:root value=\"new\"/>");
+            otherEntries.remove("jcr_root/apps/a/removed.xml");
+            writePackage(other, otherEntries);
+
+            DeltaPackageBuilder builder = new DeltaPackageBuilder(base, other);
+            builder.build(delta);
+
+            List<String> roots = new ArrayList<>();
+            for (PathFilterSet filterSet : builder.getFilter().getFilterSets()) {
+                roots.add(filterSet.getRoot() + " " + filterSet.getImportMode() + " " + getPatterns(filterSet));
+            }
+            // the aggregates are removed and changed via the node they serialize
+            Assert.assertEquals(Arrays.asList(
+                    "/apps/a/removed MERGE []",
+                    "/apps/a/config MERGE []"), roots);
+
+            List<String> names = new ArrayList<>();
+            try (ZipFile zipFile = new ZipFile(delta)) {
+                Collections.list(zipFile.entries()).forEach(entry -> names.add(entry.getName()));
+            }
+            Assert.assertEquals(Arrays.asList(
+                    "META-INF/vault/filter.xml",
+                    "META-INF/vault/properties.xml",
+                    "jcr_root/",
+                    "jcr_root/apps/",
+                    "jcr_root/apps/a/",
+                    "jcr_root/apps/a/.content.xml",
+                    "jcr_root/apps/a/config.xml"), names);
+        } finally {
+            Files.delete(base.toPath());
+            Files.delete(other.toPath());
+            Files.delete(delta.toPath());
+        }
+    }
+
+    private static List<String> getPatterns(PathFilterSet filterSet) {
+        List<String> patterns = new ArrayList<>();
+        for (FilterSet.Entry<PathFilter> entry : filterSet.getEntries()) {
+            patterns.add((entry.isInclude() ? "+" : "-") + ((DefaultPathFilter) entry.getFilter()).getPattern());
+        }
+        return patterns;
+    }
+
+    private static void writePackage(File file, Map<String, String> entries) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                output.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    output.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                output.closeEntry();
+            }
+        }
+    }
+}
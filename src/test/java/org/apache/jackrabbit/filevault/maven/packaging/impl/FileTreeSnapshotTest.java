@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileTreeSnapshotTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot").toFile();
+        for (String path : Arrays.asList("apps/.content.xml", "apps/.vlt", "apps/component/file.txt", "apps-other/file.txt",
+                ".git/config", "content/.content.xml")) {
+            FileUtils.write(new File(directory, path), path, StandardCharsets.UTF_8);
+        }
+        Assert.assertTrue(new File(directory, "empty").mkdir());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static List<String> getPaths(Stream<FileTreeSnapshot.Entry> entries) {
+        return entries.map(FileTreeSnapshot.Entry::getPath).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testExcludes() throws IOException {
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, Collections.singleton("**/.vlt"), true);
+        Assert.assertEquals(Arrays.asList("apps", "apps-other", "apps-other/file.txt", "apps/.content.xml", "apps/component",
+                "apps/component/file.txt", "content", "content/.content.xml", "empty"), getPaths(snapshot.getEntries()));
+        Assert.assertEquals(Arrays.asList("apps-other/file.txt", "apps/.content.xml", "apps/component/file.txt", "content/.content.xml"),
+                getPaths(snapshot.getFiles()));
+        // excluded entries are still accessible
+        FileTreeSnapshot.Entry entry = snapshot.getEntry("apps/.vlt");
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(entry.isExcluded());
+        Assert.assertEquals("apps/.vlt".length(), entry.getSize());
+        // the default excludes are not even walked
+        Assert.assertNull(snapshot.getEntry(".git/config"));
+    }
+
+    @Test
+    public void testWithoutDefaultExcludes() throws IOException {
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, Collections.emptyList(), false);
+        Assert.assertTrue(getPaths(snapshot.getFiles()).containsAll(Arrays.asList(".git/config", "apps/.vlt")));
+    }
+
+    @Test
+    public void testSubTree() throws IOException {
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, Collections.singleton("**/.vlt"), true).getSubTree("apps");
+        Assert.assertEquals(new File(directory, "apps"), snapshot.getDirectory());
+        Assert.assertEquals(Arrays.asList(".content.xml", "component", "component/file.txt"), getPaths(snapshot.getEntries()));
+        Assert.assertEquals(new File(directory, "apps/component/file.txt"), snapshot.getEntry("component/file.txt").getFile());
+    }
+
+    @Test
+    public void testAdditionalExcludes() throws IOException {
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, Collections.emptyList(), true).exclude(Collections.singletonList("apps/"));
+        Assert.assertEquals(Arrays.asList("apps-other/file.txt", "content/.content.xml"), getPaths(snapshot.getFiles()));
+        Assert.assertEquals(Collections.singletonList("apps/"), snapshot.getAdditionalExcludes());
+    }
+
+    @Test
+    public void testWalk() throws IOException {
+        List<String> paths = new ArrayList<>();
+        FileTreeSnapshot.walk(directory, "", Collections.singleton("**/.vlt"), true, entry -> {
+            if (!entry.isExcluded()) {
+                paths.add(entry.getPath());
+            }
+        });
+        // children directly follow their parent
+        Assert.assertEquals(Arrays.asList("apps", "apps/.content.xml", "apps/component", "apps/component/file.txt", "apps-other",
+                "apps-other/file.txt", "content", "content/.content.xml", "empty"), paths);
+
+        paths.clear();
+        FileTreeSnapshot.walk(directory, "apps", Collections.singleton("apps/component/**"), true, entry -> paths.add(entry.getPath() + (entry.isExcluded() ? " (excluded)" : "")));
+        Assert.assertEquals(Arrays.asList("apps/.content.xml", "apps/.vlt", "apps/component (excluded)"), paths);
+    }
+
+    @Test
+    public void testExcludeMatcher() {
+        Predicate<String> isExcluded = FileTreeSnapshot.createExcludeMatcher(Collections.singleton("apps/component/**"), true);
+        Assert.assertTrue(isExcluded.test("apps/component/file.txt"));
+        Assert.assertTrue(isExcluded.test("apps/.git"));
+        Assert.assertFalse(isExcluded.test("apps/.content.xml"));
+    }
+
+    @Test
+    public void testSubTreeWithRelativeExcludes() throws IOException {
+        // the excludes are evaluated relative to the sub tree
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, Collections.emptyList(), true).getSubTree("apps")
+                .exclude(Collections.singletonList("component/"));
+        Assert.assertEquals(Arrays.asList(".content.xml", ".vlt"), getPaths(snapshot.getFiles()));
+    }
+
+    @Test
+    public void testSymbolicLinkCycle() throws IOException {
+        Files.createSymbolicLink(new File(directory, "apps/component/loop").toPath(), new File(directory, "apps").toPath());
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(directory, Collections.singleton("**/.vlt"), true);
+        Assert.assertEquals(Arrays.asList("apps-other/file.txt", "apps/.content.xml", "apps/component/file.txt", "content/.content.xml"),
+                getPaths(snapshot.getFiles()));
+
+        List<String> paths = new ArrayList<>();
+        FileTreeSnapshot.walk(directory, "apps", Collections.singleton("**/.vlt"), true, entry -> {
+            if (!entry.isExcluded()) {
+                paths.add(entry.getPath());
+            }
+        });
+        Assert.assertEquals(Arrays.asList("apps/.content.xml", "apps/component", "apps/component/file.txt", "apps/component/loop"), paths);
+    }
+
+    @Test
+    public void testNonExistingDirectory() throws IOException {
+        FileTreeSnapshot snapshot = FileTreeSnapshot.create(new File(directory, "non-existing"), Collections.emptyList(), true);
+        Assert.assertEquals(0, snapshot.getEntries().count());
+    }
+}
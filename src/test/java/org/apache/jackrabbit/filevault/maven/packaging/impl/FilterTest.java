@@ -93,6 +93,56 @@ public class FilterTest extends TestCase {
         }
     }
 
+    public void testCompiledPatterns() throws ConfigurationException {
+        for (TestSet test: TESTS) {
+            StringFilterSet set = new StringFilterSet();
+            set.addEntries(test.pattern);
+            assertEquals(test.name, test.result, getCompiledMatching(set, TEST_STRINGS));
+        }
+    }
+
+    public void testCompiledMatchesUncompiled() throws ConfigurationException {
+        String[] patterns = new String[] {
+                "",
+                "/com\\.day\\..*/,~com.day.cq.impl",
+                "~/com\\.day\\..*/,com.day.cq.impl,/.*-test/,~artifact1-test",
+                "foo-bar,/(artifact)(\\d)-test/,~/artifact2-.*/,artifact2-test",
+                "/(a)rtifact\\1?.*/,~/(?i)FOO-.*/,com.day.cq",
+                "~foo-bar,~/.*cq.*/,/com\\.day\\.cq/",
+                "/\\Qfoo-bar\\E/,/art.*/,~/.*1.*/",
+                "/(?<v>\\d+)-a/,/(?<v>\\d+)-b/",
+                "/artifact(?<n>\\d)-test/,~/(?<n>artifact2)-.*/"
+        };
+        for (String pattern : patterns) {
+            StringFilterSet set = new StringFilterSet();
+            if (!pattern.isEmpty()) {
+                set.addEntries(pattern);
+            }
+            assertEquals(pattern, getMatching(set, TEST_STRINGS), getCompiledMatching(set, TEST_STRINGS));
+        }
+    }
+
+    public void testCompiledIsReusedUntilModified() throws ConfigurationException {
+        StringFilterSet set = new StringFilterSet();
+        set.addEntries("/com\\.day\\..*/");
+        CompiledStringFilterSet compiled = set.compile();
+        assertSame(compiled, set.compile());
+        set.addEntry("~com.day.cq");
+        assertNotSame(compiled, set.compile());
+        assertFalse(set.compile().contains("com.day.cq"));
+    }
+
+    private String[] getCompiledMatching(StringFilterSet set, String[] testStrings) {
+        CompiledStringFilterSet compiled = set.compile();
+        List<String> ret = new LinkedList<String>();
+        for (String name: testStrings) {
+            if (compiled.contains(name)) {
+                ret.add(name);
+            }
+        }
+        return ret.toArray(new String[ret.size()]);
+    }
+
     private String[] getMatching(StringFilterSet set, String[] testStrings) {
         List<String> ret = new LinkedList<String>();
         for (String name: testStrings) {
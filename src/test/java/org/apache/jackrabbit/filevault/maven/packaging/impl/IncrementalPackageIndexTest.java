@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IncrementalPackageIndexTest {
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        IncrementalPackageIndex index = new IncrementalPackageIndex("settings");
+        index.put("jcr_root/apps/.content.xml", 100, 1000);
+        index.put("jcr_root/apps/file.txt", 0, 2000);
+        index.putContentHash("jcr_root/apps/file.txt", "ef46db3751d8e999");
+        File file = File.createTempFile("package", ".index");
+        try {
+            index.store(file);
+            IncrementalPackageIndex loadedIndex = IncrementalPackageIndex.load(file);
+            Assert.assertNotNull(loadedIndex);
+            Assert.assertEquals("settings", loadedIndex.getSettings());
+            Assert.assertEquals(2, loadedIndex.size());
+            Assert.assertTrue(loadedIndex.isUnchanged("jcr_root/apps/.content.xml", 100, 1000));
+            Assert.assertTrue(loadedIndex.isUnchanged("jcr_root/apps/file.txt", 0, 2000));
+            Assert.assertFalse(loadedIndex.isUnchanged("jcr_root/apps/.content.xml", 101, 1000));
+            Assert.assertFalse(loadedIndex.isUnchanged("jcr_root/apps/.content.xml", 100, 1001));
+            Assert.assertFalse(loadedIndex.isUnchanged("jcr_root/apps/other.txt", 100, 1000));
+            Assert.assertEquals("ef46db3751d8e999", loadedIndex.getContentHash("jcr_root/apps/file.txt"));
+            Assert.assertNull(loadedIndex.getContentHash("jcr_root/apps/.content.xml"));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testLoadNonExisting() throws IOException {
+        Assert.assertNull(IncrementalPackageIndex.load(new File("non-existing.index")));
+    }
+}
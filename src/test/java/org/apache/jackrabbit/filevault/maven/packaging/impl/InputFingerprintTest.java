@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InputFingerprintTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("fingerprint").toFile();
+        FileUtils.write(new File(directory, "a/b.txt"), "content", StandardCharsets.UTF_8);
+        FileUtils.write(new File(directory, "c.txt"), "content", StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private String calculate(boolean hashContent) throws IOException {
+        return new InputFingerprint()
+                .addValue("param", "value")
+                .addValue("list", Arrays.asList("a", "b"))
+                .addFile("dir", directory, hashContent, path -> !path.getFileName().toString().equals("ignored"))
+                .getValue();
+    }
+
+    @Test
+    public void testStable() throws IOException {
+        Assert.assertEquals(calculate(false), calculate(false));
+        Assert.assertEquals(calculate(true), calculate(true));
+        Assert.assertEquals(64, calculate(false).length());
+    }
+
+    @Test
+    public void testValueChange() throws IOException {
+        String fingerprint = new InputFingerprint().addValue("param", "value").getValue();
+        Assert.assertNotEquals(fingerprint, new InputFingerprint().addValue("param", "value2").getValue());
+        Assert.assertNotEquals(fingerprint, new InputFingerprint().addValue("param2", "value").getValue());
+    }
+
+    @Test
+    public void testAmbiguousValues() throws IOException {
+        // different values whose concatenation with separators would be the same
+        Assert.assertNotEquals(new InputFingerprint().addValue("param", "a=b").getValue(),
+                new InputFingerprint().addValue("param=a", "b").getValue());
+        Assert.assertNotEquals(new InputFingerprint().addValue("list", Arrays.asList("a\nlist[1]=b")).getValue(),
+                new InputFingerprint().addValue("list", Arrays.asList("a", "b")).getValue());
+        Assert.assertNotEquals(new InputFingerprint().addValue("list", Arrays.asList("a,b")).getValue(),
+                new InputFingerprint().addValue("list", Arrays.asList("a", "b")).getValue());
+        Assert.assertNotEquals(new InputFingerprint().addValue("map", Collections.singletonMap("a=b", "c")).getValue(),
+                new InputFingerprint().addValue("map", Collections.singletonMap("a", "b=c")).getValue());
+        Assert.assertNotEquals(new InputFingerprint().addValue("param", null).getValue(),
+                new InputFingerprint().addValue("param", "null").getValue());
+        Assert.assertNotEquals(new InputFingerprint().addValue("param", Collections.emptyList()).getValue(),
+                new InputFingerprint().addValue("param", "").getValue());
+    }
+
+    @Test
+    public void testModifiedFile() throws IOException {
+        String fingerprint = calculate(false);
+        File file = new File(directory, "a/b.txt");
+        Assert.assertTrue(file.setLastModified(file.lastModified() - 10000));
+        Assert.assertNotEquals(fingerprint, calculate(false));
+    }
+
+    @Test
+    public void testModifiedContent() throws IOException {
+        String fingerprint = calculate(true);
+        File file = new File(directory, "a/b.txt");
+        long lastModified = file.lastModified();
+        // same size and modification date
+        FileUtils.write(file, "CONTENT", StandardCharsets.UTF_8);
+        Assert.assertTrue(file.setLastModified(lastModified));
+        Assert.assertNotEquals(fingerprint, calculate(true));
+    }
+
+    @Test
+    public void testAddedAndIgnoredFiles() throws IOException {
+        String fingerprint = calculate(false);
+        FileUtils.write(new File(directory, "ignored"), "content", StandardCharsets.UTF_8);
+        Assert.assertEquals(fingerprint, calculate(false));
+        FileUtils.write(new File(directory, "a/new.txt"), "content", StandardCharsets.UTF_8);
+        Assert.assertNotEquals(fingerprint, calculate(false));
+    }
+}
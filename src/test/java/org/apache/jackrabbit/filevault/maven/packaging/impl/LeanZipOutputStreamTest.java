@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LeanZipOutputStreamTest {
+
+    @Test
+    public void testReadWithJavaZipFile() throws IOException {
+        byte[] content = "some content".getBytes(StandardCharsets.UTF_8);
+        long time = 1500000000000L;
+        File file = File.createTempFile("lean", ".zip");
+        try {
+            try (LeanZipOutputStream output = new LeanZipOutputStream(Files.newOutputStream(file.toPath()))) {
+                ZipArchiveEntry directory = createEntry("jcr_root/", new byte[0], time);
+                directory.setUnixMode(UnixStat.DIR_FLAG | UnixStat.DEFAULT_DIR_PERM);
+                output.addRawEntry(directory, new ByteArrayInputStream(new byte[0]));
+                output.addRawEntry(createEntry("jcr_root/f\u00e4hre.txt", content, time), new ByteArrayInputStream(content));
+                Assert.assertEquals(2, output.getEntries());
+            }
+            try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(file)) {
+                Assert.assertEquals(2, zipFile.size());
+                Assert.assertTrue(zipFile.getEntry("jcr_root/").isDirectory());
+                ZipEntry entry = zipFile.getEntry("jcr_root/f\u00e4hre.txt");
+                Assert.assertNotNull(entry);
+                // MS-DOS times have a resolution of 2 seconds
+                Assert.assertEquals(time / 2000, entry.getTime() / 2000);
+                try (InputStream input = zipFile.getInputStream(entry)) {
+                    Assert.assertArrayEquals(content, IOUtils.toByteArray(input));
+                }
+            }
+            try (org.apache.commons.compress.archivers.zip.ZipFile zipFile = new org.apache.commons.compress.archivers.zip.ZipFile(file)) {
+                ZipArchiveEntry entry = zipFile.getEntry("jcr_root/");
+                Assert.assertEquals(UnixStat.DIR_FLAG | UnixStat.DEFAULT_DIR_PERM, entry.getUnixMode());
+            }
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testZip64EntryCount() throws IOException {
+        int numEntries = 70000;
+        File file = File.createTempFile("lean", ".zip");
+        try {
+            try (LeanZipOutputStream output = new LeanZipOutputStream(Files.newOutputStream(file.toPath()))) {
+                for (int i = 0; i < numEntries; i++) {
+                    byte[] content = Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+                    output.addRawEntry(createEntry("file" + i, content, 0), new ByteArrayInputStream(content));
+                }
+            }
+            try (java.util.zip.ZipFile zipFile = new java.util.zip.ZipFile(file)) {
+                Assert.assertEquals(numEntries, zipFile.size());
+            }
+            try (org.apache.commons.compress.archivers.zip.ZipFile zipFile = new org.apache.commons.compress.archivers.zip.ZipFile(file)) {
+                int count = 0;
+                for (Enumeration<ZipArchiveEntry> entries = zipFile.getEntries(); entries.hasMoreElements();) {
+                    ZipArchiveEntry entry = entries.nextElement();
+                    try (InputStream input = zipFile.getInputStream(entry)) {
+                        Assert.assertEquals("file" + IOUtils.toString(input, StandardCharsets.UTF_8), entry.getName());
+                    }
+                    count++;
+                }
+                Assert.assertEquals(numEntries, count);
+            }
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testSizeMismatch() throws IOException {
+        byte[] content = "some content".getBytes(StandardCharsets.UTF_8);
+        try (LeanZipOutputStream output = new LeanZipOutputStream(new ByteArrayOutputStream())) {
+            output.addRawEntry(createEntry("file", content, 0), new ByteArrayInputStream(content, 1, content.length - 1));
+        }
+    }
+
+    private static ZipArchiveEntry createEntry(String name, byte[] content, long time) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setTime(time);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setUnixMode(UnixStat.FILE_FLAG | UnixStat.DEFAULT_FILE_PERM);
+        return entry;
+    }
+}
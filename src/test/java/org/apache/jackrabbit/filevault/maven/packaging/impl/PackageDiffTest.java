@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageDiff.Change;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackageDiffTest {
+
+    @Test
+    public void testCompare() throws IOException {
+        File base = File.createTempFile("base", ".zip");
+        File other = File.createTempFile("other", ".zip");
+        try {
+            Map<String, String> baseEntries = new LinkedHashMap<>();
+            baseEntries.put("META-INF/vault/properties.xml", properties("name", "test", "version", "1.0", "description", "old"));
+            baseEntries.put("jcr_root/apps/", null);
+            baseEntries.put("jcr_root/apps/unchanged.txt", "unchanged");
+            baseEntries.put("jcr_root/apps/changed.txt", "old");
+            baseEntries.put("jcr_root/apps/removed.txt", "removed");
+            writePackage(base, baseEntries);
+
+            Map<String, String> otherEntries = new LinkedHashMap<>();
+            otherEntries.put("META-INF/vault/properties.xml", properties("name", "test", "version", "1.1", "group", "g"));
+            otherEntries.put("jcr_root/apps/", null);
+            otherEntries.put("jcr_root/apps/.content.xml", "<jcr:root/>");
+            otherEntries.put("jcr_root/apps/unchanged.txt", "unchanged");
+            otherEntries.put("jcr_root/apps/changed.txt", "new");
+            otherEntries.put("jcr_root/apps/added/", null);
+            writePackage(other, otherEntries);
+
+            PackageDiff diff = PackageDiff.compare(base, other);
+            SortedMap<String, Change> expected = new TreeMap<>();
+            expected.put("/apps", Change.CHANGED);
+            expected.put("/apps/added", Change.ADDED);
+            expected.put("/apps/changed.txt", Change.CHANGED);
+            expected.put("/apps/removed.txt", Change.REMOVED);
+            Assert.assertEquals(expected, diff.getPathChanges());
+            Assert.assertEquals(Change.CHANGED, diff.getMetadataChanges().get("META-INF/vault/properties.xml"));
+            Assert.assertEquals(Arrays.asList("removed description=old", "added group=g", "changed version=1.0 -> 1.1"),
+                    diff.getPropertyChanges());
+            Assert.assertTrue(diff.getFilterChanges().isEmpty());
+            // only the properties of both packages are read
+            Assert.assertEquals(2, diff.getInflatedEntries());
+            Assert.assertFalse(diff.isEmpty());
+
+            Assert.assertTrue(PackageDiff.compare(other, other).isEmpty());
+        } finally {
+            Files.delete(base.toPath());
+            Files.delete(other.toPath());
+        }
+    }
+
+    @Test
+    public void testCompareAggregates() throws IOException {
+        File base = File.createTempFile("base", ".zip");
+        File other = File.createTempFile("other", ".zip");
+        try {
+            Map<String, String> baseEntries = new LinkedHashMap<>();
+            baseEntries.put("jcr_root/apps/", null);
+            baseEntries.put("jcr_root/apps/image.png", "old");
+            baseEntries.put("jcr_root/apps/image.png.dir/.content.xml", "<jcr:root/>");
+            baseEntries.put("jcr_root/apps/config.xml", "<jcr:root jcr:primaryType=\"nt:unstructured\"/>");
+            baseEntries.put("jcr_root/apps/removed.xml", "<jcr:root jcr:primaryType=\"nt:unstructured\"/>");
+            writePackage(base, baseEntries);
+
+            Map<String, String> otherEntries = new LinkedHashMap<>();
+            otherEntries.put("jcr_root/apps/", null);
+            otherEntries.put("jcr_root/apps/image.png", "old");
+            otherEntries.put("jcr_root/apps/image.png.dir/.content.xml", "<jcr:root jcr:title=\"new\"/>");
+            otherEntries.put("jcr_root/apps/config.xml", "<jcr:root jcr:primaryType=\"sling:Folder\"/>");
+            otherEntries.put("jcr_root/apps/other.dir/file.txt", "added");
+            otherEntries.put("jcr_root/apps/file.xml", "<root/>");
+            writePackage(other, otherEntries);
+
+            PackageDiff diff = PackageDiff.compare(base, other);
+            SortedMap<String, Change> expected = new TreeMap<>();
+            expected.put("/apps/config", Change.CHANGED);
+            expected.put("/apps/file.xml", Change.ADDED);
+            expected.put("/apps/image.png", Change.CHANGED);
+            expected.put("/apps/other.dir/file.txt", Change.ADDED);
+            expected.put("/apps/removed", Change.REMOVED);
+            Assert.assertEquals(expected, diff.getPathChanges());
+        } finally {
+            Files.delete(base.toPath());
+            Files.delete(other.toPath());
+        }
+    }
+
+    private static String properties(String... keysAndValues) throws IOException {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        properties.storeToXML(output, null);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void writePackage(File file, Map<String, String> entries) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                output.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    output.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                output.closeEntry();
+            }
+        }
+    }
+}
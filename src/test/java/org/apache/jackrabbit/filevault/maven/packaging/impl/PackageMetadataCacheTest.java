@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackageMetadataCacheTest {
+
+    @Test
+    public void testGetProperties() throws IOException {
+        File directory = Files.createTempDirectory("metadata").toFile();
+        try {
+            File packageFile = new File(directory, "package.zip");
+            writePackage(packageFile, "1.0");
+            PackageMetadataCache cache = new PackageMetadataCache();
+            Assert.assertEquals("1.0", cache.getProperties(packageFile).getProperty("version"));
+            // modifying the returned properties must not affect the cache
+            cache.getProperties(packageFile).setProperty("version", "2.0");
+            Assert.assertEquals("1.0", cache.getProperties(packageFile).getProperty("version"));
+            Assert.assertEquals(1, cache.getReads());
+
+            // a rebuilt package is read again
+            writePackage(packageFile, "1.1.0");
+            Assert.assertEquals("1.1.0", cache.getProperties(packageFile).getProperty("version"));
+            Assert.assertEquals(2, cache.getReads());
+
+            File workDirectory = new File(directory, "vault-work");
+            File propertiesFile = new File(workDirectory, "META-INF/vault/properties.xml");
+            propertiesFile.getParentFile().mkdirs();
+            try (OutputStream output = new FileOutputStream(propertiesFile)) {
+                createProperties("3.0").storeToXML(output, null);
+            }
+            Assert.assertEquals("3.0", cache.getProperties(workDirectory).getProperty("version"));
+            Assert.assertEquals("3.0", cache.getProperties(propertiesFile).getProperty("version"));
+            Assert.assertEquals("3.0", cache.getProperties(workDirectory).getProperty("version"));
+            Assert.assertEquals(4, cache.getReads());
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testSingleEntryPerPackage() throws IOException {
+        File directory = Files.createTempDirectory("metadata").toFile();
+        try {
+            File packageFile = new File(directory, "package.zip");
+            writePackage(packageFile, "1.0");
+            PackageMetadataCache cache = new PackageMetadataCache();
+            cache.getPackageInfo(packageFile);
+            cache.getProperties(packageFile);
+            cache.getPackageInfo(packageFile);
+            cache.getProperties(packageFile);
+            Assert.assertEquals(2, cache.getReads());
+
+            // both parts of the entry are invalidated together
+            writePackage(packageFile, "1.1.0");
+            Assert.assertEquals("1.1.0", cache.getProperties(packageFile).getProperty("version"));
+            cache.getPackageInfo(packageFile);
+            Assert.assertEquals(4, cache.getReads());
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testGetPropertiesFromInvalidPackage() throws IOException {
+        File file = File.createTempFile("invalid", ".zip");
+        try {
+            try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+                output.putNextEntry(new ZipEntry("jcr_root/"));
+                output.closeEntry();
+            }
+            new PackageMetadataCache().getProperties(file);
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testGetSharedInstance() {
+        Map<String, Object> pluginContext = new HashMap<>();
+        PackageMetadataCache cache = PackageMetadataCache.get(null, pluginContext);
+        Assert.assertSame(cache, PackageMetadataCache.get(null, pluginContext));
+        Assert.assertNotSame(cache, PackageMetadataCache.get(null, new HashMap<>()));
+    }
+
+    private static Properties createProperties(String version) {
+        Properties properties = new Properties();
+        properties.setProperty("group", "test");
+        properties.setProperty("name", "package");
+        properties.setProperty("version", version);
+        return properties;
+    }
+
+    private static void writePackage(File file, String version) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+            output.putNextEntry(new ZipEntry("META-INF/vault/properties.xml"));
+            createProperties(version).storeToXML(output, null);
+            output.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PackagePartitionerTest {
+
+    @Test
+    public void testPartitionBySize() {
+        PackagePartitioner partitioner = new PackagePartitioner(10, 0);
+        List<List<Long>> parts = partitioner.partition(Arrays.asList(4L, 5L, 2L, 8L, 10L, 1L), Long::longValue, item -> 1);
+        Assert.assertEquals(Arrays.asList(Arrays.asList(4L, 5L), Arrays.asList(2L, 8L), Arrays.asList(10L), Arrays.asList(1L)), parts);
+    }
+
+    @Test
+    public void testPartitionByEntries() {
+        PackagePartitioner partitioner = new PackagePartitioner(0, 3);
+        List<List<Long>> parts = partitioner.partition(Arrays.asList(1L, 2L, 1L, 1L), item -> 100, Long::longValue);
+        Assert.assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(1L, 1L)), parts);
+    }
+
+    @Test
+    public void testOversizedItemInSeparatePart() {
+        PackagePartitioner partitioner = new PackagePartitioner(10, 0);
+        List<List<Long>> parts = partitioner.partition(Arrays.asList(1L, 20L, 1L), Long::longValue, item -> 1);
+        Assert.assertEquals(Arrays.asList(Arrays.asList(1L), Arrays.asList(20L), Arrays.asList(1L)), parts);
+        Assert.assertTrue(partitioner.isExceeding(20, 1));
+    }
+
+    @Test
+    public void testNoLimits() {
+        PackagePartitioner partitioner = new PackagePartitioner(0, 0);
+        List<List<Long>> parts = partitioner.partition(Arrays.asList(1L, 20L, 1L), Long::longValue, Long::longValue);
+        Assert.assertEquals(Collections.singletonList(Arrays.asList(1L, 20L, 1L)), parts);
+        Assert.assertTrue(partitioner.partition(Collections.<Long>emptyList(), Long::longValue, Long::longValue).isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.filevault.maven.packaging.impl.PackageSplitter.SubPackage;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.packaging.PackageProperties;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackageSplitterTest {
+
+    private static final List<String> FILES = Arrays.asList("apps/split/a/file.txt", "apps/split/a/nested/file.txt", "content/split/file.txt");
+
+    private File directory;
+
+    private File splitDirectory;
+
+    private FileTreeSnapshot snapshot;
+
+    private DefaultWorkspaceFilter filter;
+
+    private List<FilterRoot> filterRoots;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("splitter").toFile();
+        for (String path : FILES) {
+            FileUtils.write(new File(directory, "jcr_root/" + path), path, StandardCharsets.UTF_8);
+        }
+        splitDirectory = new File(directory, "split");
+        snapshot = FileTreeSnapshot.create(new File(directory, "jcr_root"), Collections.emptyList(), false);
+        filter = new DefaultWorkspaceFilter();
+        filterRoots = new ArrayList<>();
+        for (String root : Arrays.asList("/apps/split/a", "/apps/split/a/nested", "/content/split")) {
+            PathFilterSet filterSet = new PathFilterSet(root);
+            filter.add(filterSet);
+            String relPath = root.substring(1);
+            filterRoots.add(new FilterRoot(filterSet, relPath, "jcr_root/" + relPath, null, snapshot.getSubTree(relPath), null));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static Properties createProperties(String packageType) {
+        Properties properties = new Properties();
+        properties.setProperty(PackageProperties.NAME_GROUP, "my/group");
+        properties.setProperty(PackageProperties.NAME_NAME, "package");
+        properties.setProperty(PackageProperties.NAME_VERSION, "1.0");
+        properties.setProperty(PackageProperties.NAME_PACKAGE_TYPE, packageType);
+        properties.setProperty(PackageProperties.NAME_DEPENDENCIES, "my/group:dependency:1.0");
+        return properties;
+    }
+
+    private static Manifest createManifest() {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_ID, "my/group:package:1.0");
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_TYPE, "mixed");
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_ROOTS, "/apps/split/a,/apps/split/a/nested,/content/split");
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_DEPENDENCIES, "my/group:dependency:1.0");
+        attributes.putValue(PackageProperties.MF_KEY_PACKAGE_DESC, "description");
+        return manifest;
+    }
+
+    private static Properties loadProperties(File directory) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(new File(directory, "properties.xml"))) {
+            properties.loadFromXML(input);
+        }
+        return properties;
+    }
+
+    private static Attributes loadManifestAttributes(File directory) throws IOException {
+        try (InputStream input = new FileInputStream(new File(directory, JarFile.MANIFEST_NAME))) {
+            return new Manifest(input).getMainAttributes();
+        }
+    }
+
+    private static List<String> getFiles(FilterRoot filterRoot) {
+        return filterRoot.getSubTree().getFiles().map(FileTreeSnapshot.Entry::getPath).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSplitExcludesOverlappingContent() throws IOException {
+        // a: 4 entries, a/nested: 2 entries, content/split: 2 entries
+        PackageSplitter splitter = new PackageSplitter(0, 4);
+        List<SubPackage> subPackages = splitter.split(filter, filterRoots, Collections.emptyMap(), snapshot, createProperties("mixed"));
+        Assert.assertEquals(2, subPackages.size());
+        Assert.assertEquals("package-part1", subPackages.get(0).getId().getName());
+        Assert.assertEquals(Collections.singletonList("/apps/split/a"),
+                subPackages.get(0).getFilter().getFilterSets().stream().map(PathFilterSet::getRoot).collect(Collectors.toList()));
+        // the nested file is only contained in the later sub package
+        Assert.assertEquals(Collections.singletonList("file.txt"), getFiles(subPackages.get(0).getFilterRoots().get(0)));
+        Assert.assertEquals(Arrays.asList("/apps/split/a/nested", "/content/split"),
+                subPackages.get(1).getFilter().getFilterSets().stream().map(PathFilterSet::getRoot).collect(Collectors.toList()));
+        Assert.assertFalse(splitter.isExceeding(subPackages.get(0)));
+    }
+
+    @Test
+    public void testNoSplitBelowLimit() throws IOException {
+        PackageSplitter splitter = new PackageSplitter(0, 100);
+        List<SubPackage> subPackages = splitter.split(filter, filterRoots, Collections.emptyMap(), snapshot, createProperties("mixed"));
+        Assert.assertEquals(1, subPackages.size());
+        Assert.assertEquals(8, subPackages.get(0).getEntries());
+    }
+
+    @Test
+    public void testWriteMetadataOfMixedPackage() throws IOException {
+        // each filter root ends up in a separate sub package
+        PackageSplitter splitter = new PackageSplitter(0, 1);
+        List<SubPackage> subPackages = splitter.split(filter, filterRoots, Collections.emptyMap(), snapshot, createProperties("mixed"));
+        Assert.assertEquals(3, subPackages.size());
+        splitter.writeMetadata(splitDirectory, createProperties("mixed"), createManifest(), "comment");
+
+        List<String> expectedTypes = Arrays.asList("application", "application", "content");
+        for (int i = 0; i < subPackages.size(); i++) {
+            SubPackage subPackage = subPackages.get(i);
+            Assert.assertEquals(new File(splitDirectory, subPackage.getId().getName()), subPackage.getDirectory());
+            String expectedDependencies = "my/group:dependency:1.0";
+            if (i > 0) {
+                expectedDependencies += ",my/group:package-part" + i + ":1.0";
+            }
+            Properties properties = loadProperties(subPackage.getDirectory());
+            Assert.assertEquals(subPackage.getId().getName(), properties.getProperty(PackageProperties.NAME_NAME));
+            Assert.assertEquals(expectedTypes.get(i), properties.getProperty(PackageProperties.NAME_PACKAGE_TYPE));
+            Assert.assertEquals(expectedDependencies, properties.getProperty(PackageProperties.NAME_DEPENDENCIES));
+
+            Attributes attributes = loadManifestAttributes(subPackage.getDirectory());
+            Assert.assertEquals(subPackage.getId().toString(), attributes.getValue(PackageProperties.MF_KEY_PACKAGE_ID));
+            Assert.assertEquals(expectedTypes.get(i), attributes.getValue(PackageProperties.MF_KEY_PACKAGE_TYPE));
+            Assert.assertEquals(subPackage.getFilter().getFilterSets().get(0).getRoot(), attributes.getValue(PackageProperties.MF_KEY_PACKAGE_ROOTS));
+            Assert.assertEquals(expectedDependencies, attributes.getValue(PackageProperties.MF_KEY_PACKAGE_DEPENDENCIES));
+            Assert.assertEquals("description", attributes.getValue(PackageProperties.MF_KEY_PACKAGE_DESC));
+        }
+
+        Properties containerProperties = loadProperties(splitDirectory);
+        Assert.assertEquals("package", containerProperties.getProperty(PackageProperties.NAME_NAME));
+        Assert.assertEquals("container", containerProperties.getProperty(PackageProperties.NAME_PACKAGE_TYPE));
+        Attributes containerAttributes = loadManifestAttributes(splitDirectory);
+        Assert.assertEquals("my/group:package:1.0", containerAttributes.getValue(PackageProperties.MF_KEY_PACKAGE_ID));
+        Assert.assertEquals("container", containerAttributes.getValue(PackageProperties.MF_KEY_PACKAGE_TYPE));
+        Assert.assertEquals("/etc/packages/my/group/package-part1-1.0.zip,/etc/packages/my/group/package-part2-1.0.zip,"
+                + "/etc/packages/my/group/package-part3-1.0.zip", containerAttributes.getValue(PackageProperties.MF_KEY_PACKAGE_ROOTS));
+        Assert.assertEquals(3, splitter.getContainerFilter().getFilterSets().size());
+    }
+
+    @Test
+    public void testWriteMetadataKeepsExplicitPackageType() throws IOException {
+        PackageSplitter splitter = new PackageSplitter(0, 1);
+        List<SubPackage> subPackages = splitter.split(filter, filterRoots, Collections.emptyMap(), snapshot, createProperties("content"));
+        splitter.writeMetadata(splitDirectory, createProperties("content"), createManifest(), null);
+        for (SubPackage subPackage : subPackages) {
+            Assert.assertEquals("content", loadProperties(subPackage.getDirectory()).getProperty(PackageProperties.NAME_PACKAGE_TYPE));
+            Assert.assertEquals("content", loadManifestAttributes(subPackage.getDirectory()).getValue(PackageProperties.MF_KEY_PACKAGE_TYPE));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.filter.DefaultPathFilter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PathFilterPrunerTest {
+
+    private static final List<String> FILES = Arrays.asList("apps/.content.xml", "apps/foo/.content.xml", "apps/foo/aggregate.xml",
+            "apps/foo/image.png", "apps/foo/image.png.dir/.content.xml", "apps/foo/included/.content.xml", "apps/foo/included/file.txt",
+            "apps/foo/excluded/.content.xml", "apps/foo/excluded/file.txt", "apps/foo/excluded/nested/reincluded/.content.xml",
+            "apps/foo/other.dir/file.txt");
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("pruner").toFile();
+        for (String path : FILES) {
+            FileUtils.write(new File(directory, path), path, StandardCharsets.UTF_8);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testPrune() throws IOException, ConfigurationException {
+        PathFilterSet filterSet = new PathFilterSet("/apps/foo");
+        filterSet.addInclude(new DefaultPathFilter("/apps/foo(/.*)?"));
+        filterSet.addExclude(new DefaultPathFilter("/apps/foo/excluded(/.*)?"));
+        filterSet.addInclude(new DefaultPathFilter("/apps/foo/excluded/nested/reincluded(/.*)?"));
+        filterSet.addExclude(new DefaultPathFilter("/apps/foo/image\\.png"));
+        filterSet.addExclude(new DefaultPathFilter("/apps/foo/other\\.dir(/.*)?"));
+        PathFilterPruner pruner = new PathFilterPruner(filterSet);
+        FileTreeSnapshot subTree = FileTreeSnapshot.create(directory, Collections.emptyList(), false).getSubTree("apps/foo");
+        FileTreeSnapshot prunedSubTree = pruner.prune(subTree, "apps/foo");
+        Assert.assertEquals(Arrays.asList(".content.xml", "aggregate.xml", "excluded", "excluded/.content.xml", "excluded/nested",
+                "excluded/nested/reincluded", "excluded/nested/reincluded/.content.xml", "included", "included/.content.xml", "included/file.txt"),
+                prunedSubTree.getEntries().map(FileTreeSnapshot.Entry::getPath).collect(Collectors.toList()));
+        // pruned entries are excluded but still accessible
+        Assert.assertTrue(prunedSubTree.getEntry("image.png").isExcluded());
+        Assert.assertEquals(4, pruner.getPrunedFiles());
+        long expectedBytes = 0;
+        for (String path : Arrays.asList("apps/foo/image.png", "apps/foo/image.png.dir/.content.xml", "apps/foo/excluded/file.txt",
+                "apps/foo/other.dir/file.txt")) {
+            expectedBytes += path.length();
+        }
+        Assert.assertEquals(expectedBytes, pruner.getPrunedBytes());
+    }
+
+    @Test
+    public void testFullCoverageAggregate() throws IOException, ConfigurationException {
+        PathFilterSet filterSet = new PathFilterSet("/apps/foo/aggregate");
+        PathFilterPruner pruner = new PathFilterPruner(filterSet);
+        // the directory of an ancestor is used as root if the root directory does not exist
+        FileTreeSnapshot subTree = FileTreeSnapshot.create(directory, Collections.emptyList(), false).getSubTree("apps");
+        Assert.assertEquals(Arrays.asList(".content.xml", "foo", "foo/.content.xml", "foo/aggregate.xml"),
+                pruner.prune(subTree, "apps").getEntries().map(FileTreeSnapshot.Entry::getPath).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testRepositoryPath() throws IOException {
+        FileTreeSnapshot subTree = FileTreeSnapshot.create(directory, Collections.emptyList(), false).getSubTree("apps/foo");
+        Assert.assertEquals("/apps/foo", PathFilterPruner.getRepositoryPath(subTree, "apps/foo", ""));
+        Assert.assertEquals("/apps/foo/image.png", PathFilterPruner.getRepositoryPath(subTree, "apps/foo", "image.png.dir"));
+        // only directories with a sibling file are mapped
+        Assert.assertEquals("/apps/foo/other.dir/file.txt", PathFilterPruner.getRepositoryPath(subTree, "apps/foo", "other.dir/file.txt"));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathFingerprintSetTest {
+
+    @Test
+    public void testAddAndContains() {
+        PathFingerprintSet set = new PathFingerprintSet();
+        int size = 100000;
+        long pathBytes = 0;
+        for (int i = 0; i < size; i++) {
+            String path = "jcr_root/apps/test/" + i + "/.content.xml";
+            Assert.assertTrue(set.add(path));
+            pathBytes += path.length() + 4;
+        }
+        for (int i = 0; i < size; i++) {
+            Assert.assertFalse(set.add("jcr_root/apps/test/" + i + "/.content.xml"));
+            Assert.assertTrue(set.contains("jcr_root/apps/test/" + i + "/.content.xml"));
+            Assert.assertFalse(set.contains("jcr_root/apps/test/" + i + "/.content.xml2"));
+        }
+        Assert.assertEquals(size, set.size());
+        // bounded memory per path
+        Assert.assertTrue(set.getAllocatedBytes() <= 64L * size + pathBytes + 64 * 1024);
+    }
+
+    @Test
+    public void testCollidingFingerprints() {
+        // all paths have the same fingerprint
+        PathFingerprintSet set = new PathFingerprintSet(path -> 42);
+        Assert.assertTrue(set.add("jcr_root/apps/a"));
+        Assert.assertTrue(set.add("jcr_root/apps/b"));
+        Assert.assertFalse(set.add("jcr_root/apps/a"));
+        Assert.assertTrue(set.contains("jcr_root/apps/b"));
+        Assert.assertFalse(set.contains("jcr_root/apps/c"));
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertTrue(set.add("jcr_root/apps/\u00e4/" + i));
+        }
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertTrue(set.contains("jcr_root/apps/\u00e4/" + i));
+            Assert.assertFalse(set.add("jcr_root/apps/\u00e4/" + i));
+        }
+        Assert.assertEquals(2002, set.size());
+    }
+
+    @Test
+    public void testFingerprint() {
+        Assert.assertEquals(PathFingerprintSet.fingerprint("jcr_root/apps"), PathFingerprintSet.fingerprint(new StringBuilder("jcr_root/apps")));
+        Assert.assertNotEquals(PathFingerprintSet.fingerprint("jcr_root/apps"), PathFingerprintSet.fingerprint("jcr_root/apps/"));
+        Assert.assertNotEquals(PathFingerprintSet.fingerprint("\u0100"), PathFingerprintSet.fingerprint("\u0001"));
+        Assert.assertNotEquals(0, PathFingerprintSet.fingerprint(""));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RepositoryPathMapperTest {
+
+    private final Set<String> files = new HashSet<>(Arrays.asList("apps/a/b.txt", "apps/a/aggregate.xml", "apps/a/file.xml"));
+
+    private final RepositoryPathMapper mapper = new RepositoryPathMapper(files::contains, "apps/a/aggregate.xml"::equals);
+
+    @Test
+    public void testGetNodePath() {
+        Assert.assertEquals("/", mapper.getNodePath(""));
+        Assert.assertEquals("/", mapper.getNodePath("/"));
+        Assert.assertEquals("/", mapper.getNodePath(".content.xml"));
+        Assert.assertEquals("/apps/a", mapper.getNodePath("apps/a/"));
+        Assert.assertEquals("/apps/a", mapper.getNodePath("apps/a/.content.xml"));
+        Assert.assertEquals("/apps/a/b.txt", mapper.getNodePath("apps/a/b.txt"));
+        Assert.assertEquals("/apps/a/b.txt", mapper.getNodePath("apps/a/b.txt.dir/"));
+        Assert.assertEquals("/apps/a/b.txt", mapper.getNodePath("apps/a/b.txt.dir/.content.xml"));
+        Assert.assertEquals("/apps/a/b.txt/jcr:content/c", mapper.getNodePath("apps/a/b.txt.dir/_jcr_content/c"));
+        // only directories with a sibling file are mapped
+        Assert.assertEquals("/apps/a/other.dir/c", mapper.getNodePath("apps/a/other.dir/c"));
+        Assert.assertEquals("/apps/a/b.txt.dir", mapper.getNodePath("apps/a/b.txt.dir"));
+        // full coverage aggregates
+        Assert.assertEquals("/apps/a/aggregate", mapper.getNodePath("apps/a/aggregate.xml"));
+        Assert.assertEquals("/apps/a/file.xml", mapper.getNodePath("apps/a/file.xml"));
+    }
+
+    @Test
+    public void testGetAggregatePath() {
+        Assert.assertEquals("/apps/a/b.txt", mapper.getAggregatePath("apps/a/b.txt.dir/_jcr_content/c"));
+        Assert.assertEquals("/apps/a/other.dir/c", mapper.getAggregatePath("apps/a/other.dir/c"));
+        Assert.assertEquals("/apps/a/aggregate", mapper.getAggregatePath("apps/a/aggregate.xml"));
+    }
+
+    @Test
+    public void testIsDocView() throws IOException {
+        Assert.assertTrue(RepositoryPathMapper.isDocView(new ByteArrayInputStream(
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<jcr:root xmlns:jcr=\"http://www.jcp.org/jcr/1.0\"/>".getBytes(StandardCharsets.UTF_8))));
+        Assert.assertFalse(RepositoryPathMapper.isDocView(new ByteArrayInputStream("<root/>".getBytes(StandardCharsets.UTF_8))));
+        Assert.assertFalse(RepositoryPathMapper.isDocView(new ByteArrayInputStream(new byte[0])));
+    }
+}
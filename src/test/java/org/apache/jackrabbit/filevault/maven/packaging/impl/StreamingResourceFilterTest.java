@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.shared.filtering.DefaultMavenFileFilter;
+import org.apache.maven.shared.filtering.MavenFilteringException;
+import org.apache.maven.shared.filtering.MavenResourcesExecution;
+import org.apache.maven.shared.utils.io.FileUtils.FilterWrapper;
+import org.codehaus.plexus.components.io.resources.PlexusIoResource;
+import org.codehaus.plexus.components.io.resources.ResourceFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingResourceFilterTest {
+
+    @Test
+    public void testFilterWrappersAppliedInOrder() throws IOException {
+        StreamingResourceFilter filter = new StreamingResourceFilter(
+                Arrays.asList(new ReplacingFilterWrapper("${a}", "${b}"), new ReplacingFilterWrapper("${b}", "b\u00e4")),
+                StandardCharsets.UTF_8, name -> true);
+        try (InputStream input = filter.filter(toStream("value=${a}"))) {
+            Assert.assertEquals("value=b\u00e4", IOUtils.toString(input, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testNonFilteredFileName() throws IOException {
+        StreamingResourceFilter filter = new StreamingResourceFilter(
+                Collections.singletonList(new ReplacingFilterWrapper("${a}", "b")),
+                StandardCharsets.UTF_8, name -> !name.endsWith(".png"));
+        File file = File.createTempFile("resource", ".txt");
+        try {
+            Files.write(file.toPath(), "value=${a}".getBytes(StandardCharsets.UTF_8));
+            PlexusIoResource text = ResourceFactory.createResource(file, "jcr_root/apps/test.txt");
+            try (InputStream input = filter.transform(text, text.getContents())) {
+                Assert.assertEquals("value=b", IOUtils.toString(input, StandardCharsets.UTF_8));
+            }
+            PlexusIoResource image = ResourceFactory.createResource(file, "jcr_root/apps/test.png");
+            try (InputStream input = filter.transform(image, image.getContents())) {
+                Assert.assertEquals("value=${a}", IOUtils.toString(input, StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    @Test
+    public void testMavenFilteringWrappers() throws IOException, MavenFilteringException {
+        MavenResourcesExecution mavenResourcesExecution = new MavenResourcesExecution();
+        Properties properties = new Properties();
+        properties.setProperty("a", "b\u00e4");
+        mavenResourcesExecution.setAdditionalProperties(properties);
+        mavenResourcesExecution.setFilters(Collections.emptyList());
+        mavenResourcesExecution.setEscapeString("\\");
+        List<FilterWrapper> filterWrappers = new DefaultMavenFileFilter().getDefaultFilterWrappers(mavenResourcesExecution);
+        StreamingResourceFilter filter = new StreamingResourceFilter(filterWrappers, StandardCharsets.UTF_8, name -> true);
+        try (InputStream input = filter.filter(toStream("value=${a}\nat=@a@\nescaped=\\${a}\nunknown=${c}"))) {
+            Assert.assertEquals("value=b\u00e4\nat=b\u00e4\nescaped=${a}\nunknown=${c}", IOUtils.toString(input, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static InputStream toStream(String value) {
+        return new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Replaces a single token (not streaming, but sufficient for testing) */
+    private static final class ReplacingFilterWrapper extends FilterWrapper {
+        private final String token;
+        private final String value;
+
+        ReplacingFilterWrapper(String token, String value) {
+            this.token = token;
+            this.value = value;
+        }
+
+        @Override
+        public Reader getReader(Reader reader) {
+            try {
+                return new FilterReader(new StringReader(IOUtils.toString(reader).replace(token, value))) {};
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
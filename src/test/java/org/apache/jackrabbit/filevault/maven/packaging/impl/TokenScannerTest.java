@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokenScannerTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("tokenscanner").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testSmallFiles() throws IOException {
+        TokenScanner scanner = new TokenScanner(Arrays.asList("${*}", "@"), StandardCharsets.UTF_8);
+        Assert.assertTrue(scanner.containsToken(createFile("expression.txt", "value=${project.version}")));
+        Assert.assertTrue(scanner.containsToken(createFile("at.txt", "value=@project.version@")));
+        Assert.assertFalse(scanner.containsToken(createFile("none.txt", "value=$ {project.version}")));
+        Assert.assertFalse(scanner.containsToken(createFile("dollar.txt", "value=$")));
+        Assert.assertFalse(scanner.containsToken(createFile("empty.txt", "")));
+    }
+
+    @Test
+    public void testCustomDelimiters() throws IOException {
+        TokenScanner scanner = new TokenScanner(Collections.singleton("#{*}"), StandardCharsets.UTF_8);
+        Assert.assertTrue(scanner.containsToken(createFile("hash.txt", "value=#{project.version}")));
+        Assert.assertFalse(scanner.containsToken(createFile("expression.txt", "value=${project.version}")));
+    }
+
+    @Test
+    public void testLargeFile() throws IOException {
+        TokenScanner scanner = new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8);
+        char[] padding = new char[TokenScanner.MAPPING_THRESHOLD * 2];
+        Arrays.fill(padding, '$');
+        Assert.assertFalse(scanner.containsToken(createFile("large.txt", new String(padding))));
+        Assert.assertTrue(scanner.containsToken(createFile("largeWithToken.txt", new String(padding) + "{a}")));
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        TokenScanner scanner = new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8);
+        File file = createOldFile("file.txt", "value=${a}");
+        Assert.assertTrue(scanner.containsToken(file));
+        File cacheFile = new File(directory, "cache");
+        scanner.storeCache(cacheFile);
+
+        // only the cached result is used as long as size and modification time are the same
+        long lastModified = file.lastModified();
+        Files.write(file.toPath(), "value=$ a}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(lastModified));
+        Assert.assertTrue(new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8).loadCache(cacheFile).containsToken(file));
+        // the cache is ignored for different delimiters
+        Assert.assertFalse(new TokenScanner(Arrays.asList("${*}", "@"), StandardCharsets.UTF_8).loadCache(cacheFile).containsToken(file));
+
+        Assert.assertTrue(file.setLastModified(lastModified + 2000));
+        Assert.assertFalse(new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8).loadCache(cacheFile).containsToken(file));
+    }
+
+    @Test
+    public void testCacheOnlyKeepsCheckedFiles() throws IOException {
+        File file = createOldFile("file.txt", "value=${a}");
+        File otherFile = createOldFile("other.txt", "value");
+        File cacheFile = new File(directory, "cache");
+        TokenScanner scanner = new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8);
+        Assert.assertTrue(scanner.containsToken(file));
+        Assert.assertFalse(scanner.containsToken(otherFile));
+        scanner.storeCache(cacheFile);
+
+        // the next build only checks the other file
+        scanner = new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8).loadCache(cacheFile);
+        Assert.assertFalse(scanner.containsToken(otherFile));
+        scanner.storeCache(cacheFile);
+
+        // the entry of the first file has been dropped, i.e. it is scanned again despite the same size and modification time
+        long lastModified = file.lastModified();
+        Files.write(file.toPath(), "value=$ a}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(lastModified));
+        Assert.assertFalse(new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8).loadCache(cacheFile).containsToken(file));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileNotCached() throws IOException {
+        TokenScanner scanner = new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_8);
+        File file = createFile("file.txt", "value=${a}");
+        Assert.assertTrue(scanner.containsToken(file));
+
+        // a modification of the same size within the timestamp resolution is detected
+        long lastModified = file.lastModified();
+        Files.write(file.toPath(), "value=$ a}".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(lastModified));
+        Assert.assertFalse(scanner.containsToken(file));
+    }
+
+    @Test
+    public void testNonAsciiCompatibleCharset() throws IOException {
+        TokenScanner scanner = new TokenScanner(Collections.singleton("${*}"), StandardCharsets.UTF_16);
+        Assert.assertTrue(scanner.containsToken(createFile("none.txt", "value")));
+    }
+
+    private File createFile(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Creates a file whose modification time is well before the scan, so that its scan result is cached */
+    private File createOldFile(String name, String content) throws IOException {
+        File file = createFile(name, content);
+        Assert.assertTrue(file.setLastModified(System.currentTimeMillis() - 10 * TokenScanner.TIMESTAMP_RESOLUTION));
+        return file;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.impl;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class XxHash64Test {
+
+    @Test
+    public void testReferenceValues() {
+        Assert.assertEquals(0xef46db3751d8e999L, hash(new byte[0], 1));
+        Assert.assertEquals(0xd24ec4f1a98c6e5bL, hash("a".getBytes(StandardCharsets.US_ASCII), 1));
+        Assert.assertEquals(0x44bc2cf5ad770999L, hash("abc".getBytes(StandardCharsets.US_ASCII), 1));
+        Assert.assertEquals(0xfbcea83c8a378bf1L, hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII), 100));
+    }
+
+    @Test
+    public void testIndependentOfChunkSize() {
+        byte[] bytes = new byte[768];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        long expected = 0x8e03c838c596036fL;
+        for (int chunkSize : new int[] { 1, 7, 31, 32, 33, 100, bytes.length }) {
+            Assert.assertEquals("chunk size " + chunkSize, expected, hash(bytes, chunkSize));
+        }
+    }
+
+    private static long hash(byte[] bytes, int chunkSize) {
+        XxHash64 hash = new XxHash64();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            hash.update(bytes, offset, Math.min(chunkSize, bytes.length - offset));
+        }
+        return hash.getValue();
+    }
+}
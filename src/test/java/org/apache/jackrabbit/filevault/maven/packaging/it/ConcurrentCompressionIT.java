@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.it;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.it.VerificationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentCompressionIT {
+
+    private static final String TEST_PROJECT_NAME = "/default-test-projects/generic";
+
+    private ProjectBuilder verify(int compressionThreads) throws VerificationException, IOException {
+        return new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME)
+                .setProperty("vault.compressionThreads", Integer.toString(compressionThreads))
+                .build()
+                .verifyExpectedFiles()
+                .verifyExpectedFilesOrder()
+                .verifyExpectedManifest();
+    }
+
+    /** The concurrent compression only differs from the default archiver in the documented aspects (manifest serialization and directory entries) */
+    @Test
+    public void concurrent_compression_has_same_entries_as_default_archiver() throws Exception {
+        ProjectBuilder builder = verify(0);
+        File serialPackage = new File(builder.getTestProjectDir(), "target/serial-package.zip");
+        Files.copy(builder.getTestPackageFile().toPath(), serialPackage.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        builder = verify(2);
+
+        try (JarFile expected = new JarFile(serialPackage);
+             JarFile actual = new JarFile(builder.getTestPackageFile())) {
+            Assert.assertEquals(getEntryNames(expected), getEntryNames(actual));
+            for (ZipEntry expectedEntry : Collections.list(expected.entries())) {
+                if (expectedEntry.isDirectory() || expectedEntry.getName().equals(JarFile.MANIFEST_NAME)) {
+                    continue;
+                }
+                ZipEntry actualEntry = actual.getEntry(expectedEntry.getName());
+                String name = expectedEntry.getName();
+                Assert.assertEquals("Method of " + name, expectedEntry.getMethod(), actualEntry.getMethod());
+                Assert.assertEquals("Size of " + name, expectedEntry.getSize(), actualEntry.getSize());
+                Assert.assertEquals("CRC of " + name, expectedEntry.getCrc(), actualEntry.getCrc());
+                Assert.assertEquals("Modification time of " + name, expectedEntry.getTime(), actualEntry.getTime());
+                Assert.assertArrayEquals("Content of " + name, getContent(expected, expectedEntry), getContent(actual, actualEntry));
+            }
+            Attributes expectedAttributes = expected.getManifest().getMainAttributes();
+            Attributes actualAttributes = actual.getManifest().getMainAttributes();
+            // the default archiver may add attributes of its own
+            for (Object name : actualAttributes.keySet()) {
+                Assert.assertEquals("Manifest attribute " + name, expectedAttributes.get(name), actualAttributes.get(name));
+            }
+        }
+    }
+
+    @Test
+    public void concurrent_compression_is_independent_of_thread_count() throws Exception {
+        ProjectBuilder builder = verify(1);
+        File singleThreadPackage = new File(builder.getTestProjectDir(), "target/single-thread-package.zip");
+        Files.copy(builder.getTestPackageFile().toPath(), singleThreadPackage.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        builder = verify(4);
+        Assert.assertArrayEquals(Files.readAllBytes(singleThreadPackage.toPath()), Files.readAllBytes(builder.getTestPackageFile().toPath()));
+    }
+
+    private static Set<String> getEntryNames(ZipFile zipFile) {
+        Set<String> names = new HashSet<>();
+        for (ZipEntry entry : Collections.list(zipFile.entries())) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static byte[] getContent(ZipFile zipFile, ZipEntry entry) throws IOException {
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            return IOUtils.toByteArray(input);
+        }
+    }
+}
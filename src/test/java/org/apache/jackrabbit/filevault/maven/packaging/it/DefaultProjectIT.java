@@ -87,6 +87,16 @@ public class DefaultProjectIT {
         Assert.assertArrayEquals(digest1, digest2);
     }
  
+    @Test
+    public void generic_project_with_bounded_memory_contains_correct_files() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "generic")
+                .setProperty("vault.boundedMemory", "true")
+                .build()
+                .verifyExpectedFiles()
+                .verifyExpectedManifest();
+    }
+
     @Test
     public void generic_project_package_with_metainf_contains_correct_files() throws Exception {
         verify("generic-with-metainf");
@@ -123,6 +133,23 @@ public class DefaultProjectIT {
     
     }
 
+    @Test
+    public void generic_relative_excludes() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "generic-relative-excludes")
+                .build()
+                .verifyExpectedFiles();
+    }
+
+    @Test
+    public void generic_relative_excludes_with_bounded_memory() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "generic-relative-excludes")
+                .setProperty("vault.boundedMemory", "true")
+                .build()
+                .verifyExpectedFiles();
+    }
+
     @Test
     public void resource_empty_directories() throws Exception {
         new ProjectBuilder()
@@ -155,4 +182,13 @@ public class DefaultProjectIT {
                 .build()
                 .verifyExpectedFilesChecksum();
     }
+
+    @Test
+    public void overwritten_embed_not_failing_with_bounded_memory() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "overwritten-embed-not-failing")
+                .setProperty("vault.boundedMemory", "true")
+                .build()
+                .verifyExpectedFilesChecksum();
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.it;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class DeltaPackageIT {
+
+    private static final String TEST_PROJECT_NAME = "/package-diff/";
+
+    private static final String BASELINE = "org.apache.jackrabbit.filevault:package-plugin-test-pkg-base:1.0.0-SNAPSHOT";
+
+    @BeforeClass
+    public static void installBaseline() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "base")
+                .setTestPackageFile("target/package-plugin-test-pkg-base-1.0.0-SNAPSHOT.zip")
+                .setTestGoals("clean", "install")
+                .build();
+    }
+
+    @Test
+    public void creates_delta_package_against_baseline() throws Exception {
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "delta")
+                .setTestGoals("clean", "verify")
+                .setProperty("vault.delta.baseline", BASELINE)
+                // the delta package has no manifest
+                .setVerifyPackageContents(false)
+                .build();
+        File deltaPackage = new File(builder.getTestProjectDir(), "target/package-plugin-test-pkg-1.0.0-SNAPSHOT-delta.zip");
+        Assert.assertTrue("Delta package created", deltaPackage.isFile());
+
+        List<String> expectedEntries = readLines(builder, "expected-content-files.txt");
+        List<String> entries = new ArrayList<>();
+        try (ZipFile zipFile = new ZipFile(deltaPackage)) {
+            for (ZipEntry entry : Collections.list(zipFile.entries())) {
+                if (entry.getName().startsWith("jcr_root/")) {
+                    entries.add(entry.getName());
+                }
+            }
+        }
+        Assert.assertEquals(expectedEntries, entries);
+        Assert.assertEquals(readLines(builder, "expected-filter-roots.txt"), getFilterRoots(deltaPackage));
+        Assert.assertEquals("package-plugin-test-pkg-delta", getPackageProperty(deltaPackage, "name"));
+    }
+
+    @Test
+    public void creates_delta_package_with_custom_output_file_and_name_suffix() throws Exception {
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "delta")
+                .setTestGoals("clean", "verify")
+                .setProperty("vault.delta.baseline", BASELINE)
+                .setProperty("vault.delta.outputFile", "target/custom/hotfix.zip")
+                .setProperty("vault.delta.nameSuffix", "-hotfix")
+                .setVerifyPackageContents(false)
+                .build();
+        Assert.assertFalse(new File(builder.getTestProjectDir(), "target/package-plugin-test-pkg-1.0.0-SNAPSHOT-delta.zip").exists());
+        File deltaPackage = new File(builder.getTestProjectDir(), "target/custom/hotfix.zip");
+        Assert.assertTrue("Delta package created", deltaPackage.isFile());
+        Assert.assertEquals("package-plugin-test-pkg-hotfix", getPackageProperty(deltaPackage, "name"));
+    }
+
+    @Test
+    public void skip() throws Exception {
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "delta")
+                .setTestGoals("clean", "verify")
+                .setProperty("vault.delta.skip", "true")
+                .build();
+        Assert.assertFalse(new File(builder.getTestProjectDir(), "target/package-plugin-test-pkg-1.0.0-SNAPSHOT-delta.zip").exists());
+    }
+
+    @Test
+    public void fails_without_baseline() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "delta")
+                .setTestGoals("clean", "verify")
+                .setBuildExpectedToFail(true)
+                .build();
+    }
+
+    private static List<String> readLines(ProjectBuilder builder, String fileName) throws IOException {
+        return Files.readAllLines(new File(builder.getTestProjectDir(), fileName).toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> getFilterRoots(File deltaPackage) throws IOException, ConfigurationException {
+        DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+        try (ZipFile zipFile = new ZipFile(deltaPackage);
+             InputStream input = zipFile.getInputStream(zipFile.getEntry("META-INF/vault/filter.xml"))) {
+            filter.load(input);
+        }
+        List<String> roots = new ArrayList<>();
+        for (PathFilterSet filterSet : filter.getFilterSets()) {
+            roots.add(filterSet.getRoot());
+        }
+        return roots;
+    }
+
+    private static String getPackageProperty(File deltaPackage, String key) throws IOException {
+        Properties properties = new Properties();
+        try (ZipFile zipFile = new ZipFile(deltaPackage);
+             InputStream input = zipFile.getInputStream(zipFile.getEntry("META-INF/vault/properties.xml"))) {
+            properties.loadFromXML(input);
+        }
+        return properties.getProperty(key);
+    }
+}
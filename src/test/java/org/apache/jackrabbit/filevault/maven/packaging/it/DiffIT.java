@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.it;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiffIT {
+
+    private static final String TEST_PROJECT_NAME = "/package-diff/";
+
+    private File buildBasePackage() throws Exception {
+        return new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "base")
+                .setTestPackageFile("target/package-plugin-test-pkg-base-1.0.0-SNAPSHOT.zip")
+                .build()
+                .getTestPackageFile();
+    }
+
+    @Test
+    public void reports_changed_nodes() throws Exception {
+        File basePackage = buildBasePackage();
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "new")
+                .setTestGoals("clean", "verify")
+                .setProperty("vault.diff.basePackage", basePackage.getAbsolutePath())
+                .build();
+        List<String> expectedLines = Files.readAllLines(new File(builder.getTestProjectDir(), "expected-diff.txt").toPath(), StandardCharsets.UTF_8);
+        List<String> lines = Files.readAllLines(new File(builder.getTestProjectDir(), "target/diff.txt").toPath(), StandardCharsets.UTF_8);
+        // the package properties and the manifest differ as well
+        Assert.assertTrue("Report " + lines + " contains " + expectedLines, lines.containsAll(expectedLines));
+        for (String line : lines) {
+            Assert.assertFalse("Unchanged node reported: " + line, line.contains("/apps/test/unchanged.txt") || line.endsWith(" /apps/test"));
+        }
+    }
+
+    @Test
+    public void fails_on_differences() throws Exception {
+        File basePackage = buildBasePackage();
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "new")
+                .setTestGoals("clean", "verify")
+                .setProperty("vault.diff.basePackage", basePackage.getAbsolutePath())
+                .setProperty("vault.diff.failOnDifferences", "true")
+                .setBuildExpectedToFail(true)
+                .build();
+    }
+
+    @Test
+    public void skip() throws Exception {
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "new")
+                .setTestGoals("clean", "verify")
+                .setProperty("vault.diff.basePackage", "non-existing.zip")
+                .setProperty("vault.diff.skip", "true")
+                .build();
+        Assert.assertFalse(new File(builder.getTestProjectDir(), "target/diff.txt").exists());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.filevault.maven.packaging.it;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.jackrabbit.vault.fs.api.PathFilterSet;
+import org.apache.jackrabbit.vault.fs.config.ConfigurationException;
+import org.apache.jackrabbit.vault.fs.config.DefaultWorkspaceFilter;
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SplitPackageIT {
+
+    private static final String TEST_PROJECT_NAME = "/package-split/";
+
+    private static final String GROUP = "org.apache.jackrabbit.filevault";
+
+    private static final String NAME = "package-plugin-test-pkg";
+
+    private static final String VERSION = "1.0.0-SNAPSHOT";
+
+    @Test
+    public void splits_nested_filter_roots() throws Exception {
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "nested-roots")
+                .build()
+                .verifyExpectedFilter()
+                .verifyPackageProperty("packageType", "container");
+
+        List<PackageId> subPackageIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            subPackageIds.add(new PackageId(GROUP, NAME + "-part" + i, VERSION));
+        }
+        try (JarFile container = new JarFile(builder.getTestPackageFile())) {
+            Attributes attributes = container.getManifest().getMainAttributes();
+            Assert.assertEquals("container", attributes.getValue("Content-Package-Type"));
+            List<String> roots = new ArrayList<>();
+            for (PackageId id : subPackageIds) {
+                roots.add(id.getInstallationPath() + ".zip");
+            }
+            Assert.assertEquals(String.join(",", roots), attributes.getValue("Content-Package-Roots"));
+            List<String> contentEntries = new ArrayList<>();
+            for (ZipEntry entry : Collections.list(container.entries())) {
+                if (entry.getName().startsWith("jcr_root/") && !entry.isDirectory()) {
+                    contentEntries.add(entry.getName());
+                }
+            }
+            Assert.assertEquals(roots.stream().map(root -> "jcr_root" + root).collect(Collectors.toList()), contentEntries);
+        }
+
+        // key = entry name, value = the names of the sub packages containing it
+        Map<String, List<String>> subPackagesByFile = new HashMap<>();
+        PackageId previousId = null;
+        File extractDirectory = new File(builder.getTestProjectDir(), "target/sub-packages");
+        extractDirectory.mkdirs();
+        try (ZipFile container = new ZipFile(builder.getTestPackageFile())) {
+            for (PackageId id : subPackageIds) {
+                File subPackageFile = new File(extractDirectory, id.getName() + ".zip");
+                ZipEntry subPackageEntry = container.getEntry("jcr_root" + id.getInstallationPath() + ".zip");
+                Assert.assertNotNull("Container contains " + id, subPackageEntry);
+                try (InputStream input = container.getInputStream(subPackageEntry)) {
+                    Files.copy(input, subPackageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                try (ZipFile subPackage = new ZipFile(subPackageFile)) {
+                    Properties properties = new Properties();
+                    try (InputStream input = subPackage.getInputStream(subPackage.getEntry("META-INF/vault/properties.xml"))) {
+                        properties.loadFromXML(input);
+                    }
+                    Assert.assertEquals(id.getName(), properties.getProperty("name"));
+                    Assert.assertEquals("application", properties.getProperty("packageType"));
+                    List<String> expectedDependencies = new ArrayList<>();
+                    expectedDependencies.add(Dependency.fromString("my/group:dependency:1.0").toString());
+                    if (previousId != null) {
+                        expectedDependencies.add(new Dependency(previousId).toString());
+                    }
+                    List<String> dependencies = new ArrayList<>();
+                    for (Dependency dependency : Dependency.parse(properties.getProperty("dependencies"))) {
+                        dependencies.add(dependency.toString());
+                    }
+                    Assert.assertEquals(expectedDependencies, dependencies);
+                    verifySubPackageManifest(subPackageFile, id, "application", properties.getProperty("dependencies"));
+                    for (ZipEntry entry : Collections.list(subPackage.entries())) {
+                        if (entry.getName().startsWith("jcr_root/") && !entry.isDirectory()) {
+                            subPackagesByFile.computeIfAbsent(entry.getName(), key -> new ArrayList<>()).add(id.getName());
+                        }
+                    }
+                }
+                previousId = id;
+            }
+        }
+
+        // every file is contained in exactly one sub package, the one of the nested filter root is the later one
+        Map<String, List<String>> expectedSubPackagesByFile = new HashMap<>();
+        expectedSubPackagesByFile.put("jcr_root/apps/split/a/file.txt", Arrays.asList(NAME + "-part1"));
+        expectedSubPackagesByFile.put("jcr_root/apps/split/a/nested/file.txt", Arrays.asList(NAME + "-part2"));
+        expectedSubPackagesByFile.put("jcr_root/apps/split/b/file.txt", Arrays.asList(NAME + "-part2"));
+        expectedSubPackagesByFile.put("jcr_root/apps/split/c/file.txt", Arrays.asList(NAME + "-part3"));
+        Assert.assertEquals(expectedSubPackagesByFile, subPackagesByFile);
+    }
+
+    @Test
+    public void detects_package_type_of_each_sub_package() throws Exception {
+        ProjectBuilder builder = new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "mixed-roots")
+                .build()
+                .verifyExpectedFilter()
+                .verifyPackageProperty("packageType", "container");
+
+        List<String> expectedTypes = Arrays.asList("application", "content");
+        File extractDirectory = new File(builder.getTestProjectDir(), "target/sub-packages");
+        extractDirectory.mkdirs();
+        try (ZipFile container = new ZipFile(builder.getTestPackageFile())) {
+            for (int i = 1; i <= expectedTypes.size(); i++) {
+                PackageId id = new PackageId(GROUP, NAME + "-part" + i, VERSION);
+                File subPackageFile = new File(extractDirectory, id.getName() + ".zip");
+                try (InputStream input = container.getInputStream(container.getEntry("jcr_root" + id.getInstallationPath() + ".zip"))) {
+                    Files.copy(input, subPackageFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+                Properties properties = new Properties();
+                try (ZipFile subPackage = new ZipFile(subPackageFile);
+                     InputStream input = subPackage.getInputStream(subPackage.getEntry("META-INF/vault/properties.xml"))) {
+                    properties.loadFromXML(input);
+                }
+                Assert.assertEquals(expectedTypes.get(i - 1), properties.getProperty("packageType"));
+                verifySubPackageManifest(subPackageFile, id, expectedTypes.get(i - 1), properties.getProperty("dependencies"));
+            }
+        }
+    }
+
+    /**
+     * Verifies that the manifest of the sub package is derived from its own metadata, like the one of a package which is not split.
+     */
+    private static void verifySubPackageManifest(File subPackageFile, PackageId id, String packageType, String dependencies) throws IOException {
+        try (JarFile subPackage = new JarFile(subPackageFile)) {
+            Attributes attributes = subPackage.getManifest().getMainAttributes();
+            Assert.assertEquals(id.toString(), attributes.getValue("Content-Package-Id"));
+            Assert.assertEquals(packageType, attributes.getValue("Content-Package-Type"));
+            Assert.assertEquals(dependencies, attributes.getValue("Content-Package-Dependencies"));
+            String roots;
+            try (InputStream input = subPackage.getInputStream(subPackage.getEntry("META-INF/vault/filter.xml"))) {
+                DefaultWorkspaceFilter filter = new DefaultWorkspaceFilter();
+                filter.load(input);
+                roots = filter.getFilterSets().stream().map(PathFilterSet::getRoot).sorted().collect(Collectors.joining(","));
+            } catch (ConfigurationException e) {
+                throw new IOException(e);
+            }
+            Assert.assertEquals(roots, attributes.getValue("Content-Package-Roots"));
+        }
+    }
+
+    @Test
+    public void no_split_below_limit() throws Exception {
+        new ProjectBuilder()
+                .setTestProjectDir(TEST_PROJECT_NAME + "nested-roots")
+                .setProperty("split.maxEntries", "100")
+                .build()
+                .verifyPackageProperty("packageType", "application")
+                .verifyPackageProperty("name", NAME);
+    }
+}